@@ -0,0 +1,71 @@
+/*
+ * Copyright (c) Forge Development LLC
+ * SPDX-License-Identifier: LGPL-3.0-only
+ */
+
+package net.minecraftforge.modlauncher.jmh;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.Result;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.options.TimeValue;
+
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs the benchmarks that must not allocate with the GC profiler, and fails if the normalized allocation rate goes
+ * above the budget. The budget is in bytes per operation and defaults to less than a single byte, which leaves room for
+ * measurement noise while still catching any object allocated on the path.
+ */
+public class AllocationBudget {
+    private static final String BUDGET_PROPERTY = "modlauncher.jmh.allocBudget";
+    private static final String[] BENCHMARKS = {
+        TransformBenchmark.class.getName() + ".transformFiltered"
+    };
+
+    public static void main(String[] args) throws Exception {
+        final double budget = Double.parseDouble(System.getProperty(BUDGET_PROPERTY, "0.5"));
+
+        var options = new OptionsBuilder()
+            .include(String.join("|", BENCHMARKS).replace(".", "\\."))
+            .addProfiler(GCProfiler.class)
+            .forks(1)
+            .warmupIterations(3)
+            .warmupTime(TimeValue.seconds(2))
+            .measurementIterations(3)
+            .measurementTime(TimeValue.seconds(2))
+            .timeUnit(TimeUnit.NANOSECONDS)
+            .build();
+        Collection<RunResult> results = new Runner(options).run();
+
+        boolean failed = false;
+        for (var result : results) {
+            var name = result.getParams().getBenchmark();
+            var alloc = findAllocation(result);
+            if (alloc == null) {
+                System.err.println("No allocation rate reported for " + name + ", is the GC profiler supported on this VM?");
+                failed = true;
+            } else if (alloc.getScore() > budget) {
+                System.err.printf("%s allocates %.3f %s, budget is %.3f%n", name, alloc.getScore(), alloc.getScoreUnit(), budget);
+                failed = true;
+            } else {
+                System.out.printf("%s allocates %.3f %s, within budget of %.3f%n", name, alloc.getScore(), alloc.getScoreUnit(), budget);
+            }
+        }
+
+        if (failed || results.isEmpty())
+            System.exit(1);
+    }
+
+    private static Result<?> findAllocation(RunResult result) {
+        // Older JMH versions prefix secondary results with a middle dot
+        for (var entry : result.getSecondaryResults().entrySet()) {
+            if (entry.getKey().endsWith("gc.alloc.rate.norm"))
+                return entry.getValue();
+        }
+        return null;
+    }
+}
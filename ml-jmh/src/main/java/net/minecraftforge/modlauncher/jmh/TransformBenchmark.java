@@ -17,17 +17,22 @@ import org.openjdk.jmh.annotations.*;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
 import java.lang.reflect.InvocationTargetException;
 import java.util.EnumSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 @State(Scope.Benchmark)
 public class TransformBenchmark {
     private static final String TARGET_CLASS = "net.minecraftforge.modlauncher.testjar.TestClass";
+    private static final MethodHandle TRANSFORM = getTransform();
     private volatile ClassTransformer classTransformer;
-    private volatile Transform transform;
+    private volatile ClassTransformer filteredTransformer;
     private volatile byte[] classBytes;
+    private volatile byte[] emptyBytes = new byte[0];
 
     @Setup
     public void setup() throws Exception {
@@ -35,7 +40,8 @@ public class TransformBenchmark {
         final ModuleLayerHandler layerHandler = createLayerHandler();
         final LaunchPluginHandler lph = new LaunchPluginHandler(layerHandler);
         classTransformer = createClassTransformer(transformStore, lph, null);
-        transform = getTransform(classTransformer);
+        final LaunchPluginHandler filteredLph = new LaunchPluginHandler(layerHandler);
+        filteredTransformer = createClassTransformer(transformStore, filteredLph, null);
 
         try (InputStream is = getClass().getClassLoader().getResourceAsStream(TARGET_CLASS.replace('.', '/') + ".class")) {
             ByteArrayOutputStream bos = new ByteArrayOutputStream();
@@ -49,45 +55,66 @@ public class TransformBenchmark {
         }
 
         var plugins = UnsafeHacks.<LaunchPluginHandler, Map<String, ILaunchPluginService>>findField(LaunchPluginHandler.class, "plugins").get(lph);
-        plugins.put("dummy1", new ILaunchPluginService() {
+        plugins.put("dummy1", new DummyPlugin());
+        // Only handles the package of the target class, so other classes are skipped before the plugin is asked
+        var filteredPlugins = UnsafeHacks.<LaunchPluginHandler, Map<String, ILaunchPluginService>>findField(LaunchPluginHandler.class, "plugins").get(filteredLph);
+        filteredPlugins.put("dummy1", new DummyPlugin() {
             @Override
-            public String name() {
-                return "dummy1";
+            public Set<String> handledPackages() {
+                return Set.of(TARGET_CLASS.substring(0, TARGET_CLASS.lastIndexOf('.')));
             }
+        });
+    }
 
-            @Override
-            public boolean processClass(final Phase phase, final ClassNode classNode, final Type classType) {
-                return true;
-            }
+    private static class DummyPlugin implements ILaunchPluginService {
+        @Override
+        public String name() {
+            return "dummy1";
+        }
 
-            @Override
-            public <T> T getExtension() {
-                return null;
-            }
+        @Override
+        public boolean processClass(final Phase phase, final ClassNode classNode, final Type classType) {
+            return true;
+        }
 
-            @Override
-            public EnumSet<Phase> handlesClass(final Type classType, final boolean isEmpty) {
-                return EnumSet.of(Phase.BEFORE, Phase.AFTER);
-            }
-        });
+        @Override
+        public <T> T getExtension() {
+            return null;
+        }
+
+        @Override
+        public EnumSet<Phase> handlesClass(final Type classType, final boolean isEmpty) {
+            return EnumSet.of(Phase.BEFORE, Phase.AFTER);
+        }
     }
 
     @Benchmark
-    public int transformNoop() throws Exception {
-        byte[] result = transform.transform(new byte[0], "test.MyClass", "jmh");
+    public int transformNoop() throws Throwable {
+        byte[] result = (byte[]) TRANSFORM.invokeExact(classTransformer, emptyBytes, "test.MyClass", "jmh");
+        return result.length + 1;
+    }
+
+    /**
+     * A class no plugin handles, skipped by the package filter, which must not allocate, see {@link AllocationBudget}.
+     */
+    @Benchmark
+    public int transformFiltered() throws Throwable {
+        byte[] result = (byte[]) TRANSFORM.invokeExact(filteredTransformer, emptyBytes, "test.MyClass", "jmh");
         return result.length + 1;
     }
 
     @TearDown(Level.Iteration)
     public void clearLog() {
-        var auditTrail = UnsafeHacks.<ClassTransformer, TransformerAuditTrail>findField(ClassTransformer.class, "auditTrail").get(classTransformer);
-        var map = UnsafeHacks.<TransformerAuditTrail, Map<String, List<ITransformerActivity>>>findField(TransformerAuditTrail.class, "audit").get(auditTrail);
-        map.clear();
+        for (var transformer : List.of(classTransformer, filteredTransformer)) {
+            var auditTrail = UnsafeHacks.<ClassTransformer, TransformerAuditTrail>findField(ClassTransformer.class, "auditTrail").get(transformer);
+            var map = UnsafeHacks.<TransformerAuditTrail, Map<String, List<ITransformerActivity>>>findField(TransformerAuditTrail.class, "audit").get(auditTrail);
+            map.clear();
+        }
     }
 
     @Benchmark
-    public int transformDummyClass() throws Exception {
-        byte[] result = transform.transform(classBytes, TARGET_CLASS, "jmh");
+    public int transformDummyClass() throws Throwable {
+        byte[] result = (byte[]) TRANSFORM.invokeExact(classTransformer, classBytes, TARGET_CLASS, "jmh");
         return result.length + 1;
     }
 
@@ -103,14 +130,17 @@ public class TransformBenchmark {
         return ctr.newInstance(store, handler, loader);
     }
 
-    private interface Transform {
-        byte[] transform(byte[] bytes, String name, String context) throws Exception;
-    }
-
-    private static Transform getTransform(ClassTransformer transformer) throws NoSuchMethodException, SecurityException {
-        var mtd = ClassTransformer.class.getDeclaredMethod("transform", byte[].class, String.class, String.class);
-        UnsafeHacks.setAccessible(mtd);
-        return (bytes, name, context) -> (byte[])mtd.invoke(transformer, bytes, name, context);
+    /**
+     * A constant handle called with invokeExact, so calling it neither boxes nor allocates varargs arrays.
+     */
+    private static MethodHandle getTransform() {
+        try {
+            var mtd = ClassTransformer.class.getDeclaredMethod("transform", byte[].class, String.class, String.class);
+            UnsafeHacks.setAccessible(mtd);
+            return MethodHandles.lookup().unreflect(mtd);
+        } catch (ReflectiveOperationException e) {
+            return sneak(e);
+        }
     }
 
     @SuppressWarnings("unchecked")
@@ -0,0 +1,12 @@
+/*
+ * Copyright (c) Forge Development LLC
+ * SPDX-License-Identifier: LGPL-3.0-only
+ */
+
+package net.minecraftforge.modlauncher.testjar;
+
+/**
+ * Test class extending {@link TestClass} through {@link TestSubclass}
+ */
+public class TestIndirectSubclass extends TestSubclass {
+}
@@ -8,6 +8,9 @@ open module net.minecraftforge.modlauncher.test {
     requires cpw.mods.securejarhandler;
 
     requires org.junit.jupiter.api;
+    requires jdk.httpserver;
+    // Resolved for the HTTP cache backend, which only requires it statically
+    requires java.net.http;
     requires jopt.simple;
 
     requires org.objectweb.asm;
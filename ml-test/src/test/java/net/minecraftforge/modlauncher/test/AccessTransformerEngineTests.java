@@ -0,0 +1,179 @@
+/*
+ * Copyright (c) Forge Development LLC
+ * SPDX-License-Identifier: LGPL-3.0-only
+ */
+
+package net.minecraftforge.modlauncher.test;
+
+import cpw.mods.modlauncher.api.ITransformerActivity;
+import cpw.mods.modlauncher.api.ITransformerVotingContext;
+import cpw.mods.modlauncher.util.AccessTransformerEngine;
+import org.junit.jupiter.api.Test;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.tree.FieldNode;
+import org.objectweb.asm.tree.InsnNode;
+import org.objectweb.asm.tree.MethodInsnNode;
+import org.objectweb.asm.tree.MethodNode;
+import org.objectweb.asm.tree.VarInsnNode;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Test the access transformer engine
+ */
+class AccessTransformerEngineTests {
+    private static final String CLASS = "test/Access";
+
+    @Test
+    void testParse() {
+        var engine = AccessTransformerEngine.parse("test", """
+            # A comment
+            public test.Access
+            public test.Access field # A trailing comment
+
+            protected test.Access *()
+            private-f test.Other
+            """);
+        assertEquals(2, engine.size(), "Entries were not grouped by class");
+
+        assertThrows(IllegalArgumentException.class, () -> AccessTransformerEngine.parse("test", "publik test.Access"), "Invalid modifier was accepted");
+        assertThrows(IllegalArgumentException.class, () -> AccessTransformerEngine.parse("test", "public"), "Missing class was accepted");
+        assertThrows(IllegalArgumentException.class, () -> AccessTransformerEngine.parse("test", "public test.Access field extra"), "Extra element was accepted");
+        assertThrows(IllegalArgumentException.class, () -> AccessTransformerEngine.parse("test", "public test.Access (V"), "Invalid method was accepted");
+    }
+
+    @Test
+    void testMerge() {
+        var engine = AccessTransformerEngine.parse("test", """
+            protected test.Access field
+            public test.Access field
+            private test.Access field
+            public-f test.Access finalField
+            public+f test.Access finalField
+            public+f test.Access addedFinal
+            protected test.Access *
+            """);
+        var input = new ClassNode();
+        input.visit(Opcodes.V16, Opcodes.ACC_PUBLIC, CLASS, null, "java/lang/Object", null);
+        input.fields.add(new FieldNode(Opcodes.ACC_PRIVATE, "field", "I", null, null));
+        input.fields.add(new FieldNode(Opcodes.ACC_PRIVATE | Opcodes.ACC_FINAL, "finalField", "I", null, null));
+        input.fields.add(new FieldNode(Opcodes.ACC_PRIVATE, "addedFinal", "I", null, null));
+        input.fields.add(new FieldNode(Opcodes.ACC_PRIVATE, "other", "I", null, null));
+
+        var output = transform(engine, input);
+        assertEquals(Opcodes.ACC_PUBLIC, field(output, "field").access, "The most open access did not win");
+        assertEquals(Opcodes.ACC_PUBLIC, field(output, "finalField").access, "Removing final did not win");
+        assertEquals(Opcodes.ACC_PUBLIC | Opcodes.ACC_FINAL, field(output, "addedFinal").access, "Final was not added");
+        assertEquals(Opcodes.ACC_PROTECTED, field(output, "other").access, "Wildcard was not applied");
+    }
+
+    @Test
+    void testInvokeSpecial() {
+        var engine = AccessTransformerEngine.parse("test", "public test.Access opened()V");
+        var input = new ClassNode();
+        input.visit(Opcodes.V16, Opcodes.ACC_PUBLIC, CLASS, null, "java/lang/Object", null);
+        input.methods.add(method(Opcodes.ACC_PRIVATE, "opened", List.of()));
+        input.methods.add(method(Opcodes.ACC_PRIVATE, "closed", List.of()));
+        input.methods.add(method(Opcodes.ACC_PUBLIC, "call", List.of(
+            new VarInsnNode(Opcodes.ALOAD, 0),
+            new MethodInsnNode(Opcodes.INVOKESPECIAL, CLASS, "opened", "()V", false),
+            new VarInsnNode(Opcodes.ALOAD, 0),
+            new MethodInsnNode(Opcodes.INVOKESPECIAL, CLASS, "closed", "()V", false),
+            new VarInsnNode(Opcodes.ALOAD, 0),
+            new MethodInsnNode(Opcodes.INVOKESPECIAL, "java/lang/Object", "hashCode", "()I", false),
+            new InsnNode(Opcodes.POP)
+        )));
+
+        var output = transform(engine, input);
+        assertEquals(Opcodes.ACC_PUBLIC, method(output, "opened").access, "Method was not made public");
+        assertEquals(Opcodes.ACC_PRIVATE, method(output, "closed").access, "Other method was changed");
+
+        var calls = method(output, "call").instructions;
+        var opcodes = new int[3];
+        int count = 0;
+        for (var insn : calls) {
+            if (insn instanceof MethodInsnNode)
+                opcodes[count++] = insn.getOpcode();
+        }
+        assertEquals(3, count, "Calls were added or removed");
+        assertEquals(Opcodes.INVOKEVIRTUAL, opcodes[0], "Call to the opened method is not virtual");
+        assertEquals(Opcodes.INVOKESPECIAL, opcodes[1], "Call to the private method was changed");
+        assertEquals(Opcodes.INVOKESPECIAL, opcodes[2], "Call to the super class was changed");
+    }
+
+    private static ClassNode transform(AccessTransformerEngine engine, ClassNode input) {
+        var output = new ClassNode();
+        input.accept(engine.transform(output, context(input.name.replace('/', '.'))));
+        return output;
+    }
+
+    private static MethodNode method(int access, String name, List<org.objectweb.asm.tree.AbstractInsnNode> code) {
+        var ret = new MethodNode(access, name, "()V", null, null);
+        code.forEach(ret.instructions::add);
+        ret.instructions.add(new InsnNode(Opcodes.RETURN));
+        ret.maxStack = 1;
+        ret.maxLocals = 1;
+        return ret;
+    }
+
+    private static FieldNode field(ClassNode node, String name) {
+        return node.fields.stream().filter(f -> f.name.equals(name)).findFirst().orElseThrow();
+    }
+
+    private static MethodNode method(ClassNode node, String name) {
+        return node.methods.stream().filter(m -> m.name.equals(name)).findFirst().orElseThrow();
+    }
+
+    private static ITransformerVotingContext context(String className) {
+        return new ITransformerVotingContext() {
+            @Override
+            public String getClassName() {
+                return className;
+            }
+
+            @Override
+            public boolean doesClassExist() {
+                return true;
+            }
+
+            @Override
+            public byte[] getInitialClassSha256() {
+                return new byte[0];
+            }
+
+            @Override
+            public List<ITransformerActivity> getAuditActivities() {
+                return List.of();
+            }
+
+            @Override
+            public String getReason() {
+                return ITransformerActivity.CLASSLOADING_REASON;
+            }
+
+            @Override
+            public boolean applyFieldPredicate(FieldPredicate fieldPredicate) {
+                return false;
+            }
+
+            @Override
+            public boolean applyMethodPredicate(MethodPredicate methodPredicate) {
+                return false;
+            }
+
+            @Override
+            public boolean applyClassPredicate(ClassPredicate classPredicate) {
+                return false;
+            }
+
+            @Override
+            public boolean applyInstructionPredicate(InsnPredicate insnPredicate) {
+                return false;
+            }
+        };
+    }
+}
@@ -0,0 +1,150 @@
+/*
+ * Copyright (c) Forge Development LLC
+ * SPDX-License-Identifier: LGPL-3.0-only
+ */
+
+package net.minecraftforge.modlauncher.test;
+
+import cpw.mods.modlauncher.Launcher;
+import cpw.mods.modlauncher.api.IModuleLayerManager.Layer;
+import cpw.mods.modlauncher.api.ITransformer;
+import cpw.mods.modlauncher.api.ITransformerActivity;
+import net.minecraftforge.modlauncher.harness.ModLauncherTest;
+import net.minecraftforge.modlauncher.harness.SimpleClassTransformer;
+import net.minecraftforge.modlauncher.testjar.ModLauncherTestMarker;
+import net.minecraftforge.modlauncher.testjar.TestClass;
+import org.junit.jupiter.api.Test;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.tree.FieldNode;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.jar.JarFile;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+/**
+ * Test baking the game classes ahead of time, and serving them instead of transforming them. The transformer names the
+ * field it adds after the number of times it ran, so a baked class is told apart from a freshly transformed one.
+ */
+class BakedClassesTests {
+    private static final String BAKED_CLASSES = "cpw.mods.modlauncher.BakedClasses";
+    private static final String BAKED_JAR = "modlauncher.bakedJar";
+
+    @Test
+    void testBaked() throws Exception {
+        if (!ModLauncherTest.isTransformed()) {
+            ModLauncherTest.addPath(Layer.GAME, ModLauncherTest.getPath(ModLauncherTestMarker.class));
+            ModLauncherTest.addTransformer(new CountingTransformer());
+            ModLauncherTest.launch();
+            return;
+        }
+
+        Object loader = UnsafeHacksUtil.getInternalState(Launcher.INSTANCE, "classLoader");
+        Object transformer = UnsafeHacksUtil.getInternalState(loader, "classTransformer");
+        Object store = UnsafeHacksUtil.getInternalState(transformer, "transformers");
+        Object plugins = UnsafeHacksUtil.getInternalState(transformer, "pluginHandler");
+        Object fingerprint = UnsafeHacksUtil.invoke(loader, "getFingerprint");
+        var gameLayer = Launcher.INSTANCE.findLayerManager().orElseThrow().getLayer(Layer.GAME).orElseThrow();
+
+        var jar = Files.createTempDirectory("mltest-baked").resolve("baked.jar");
+        UnsafeHacksUtil.invoke(classForName(BAKED_CLASSES), "bake", jar, gameLayer, loader);
+        byte[] bakedBytes;
+        try (var file = new JarFile(jar.toFile())) {
+            var entry = file.getJarEntry(TestClass.class.getName().replace('.', '/') + ".class");
+            assertNotNull(entry, "Transformed class was not baked");
+            try (var in = file.getInputStream(entry)) {
+                bakedBytes = in.readAllBytes();
+            }
+            assertNull(file.getJarEntry(ModLauncherTestMarker.class.getName().replace('.', '/') + ".class"), "Untransformed class was baked");
+        }
+
+        Object baked = open(jar, fingerprint);
+        assertNotNull(baked, "Baked jar was not opened");
+        var input = read(TestClass.class);
+        assertArrayEquals(bakedBytes, get(baked, TestClass.class, input), "Baked class was not served");
+        var marker = read(ModLauncherTestMarker.class);
+        assertSame(marker, get(baked, ModLauncherTestMarker.class, marker), "Untransformed class was not served as is");
+
+        // Another version of the class than the one baked
+        var changed = input.clone();
+        changed[changed.length - 1]++;
+        assertNull(get(baked, TestClass.class, changed), "Baked class was served for other class bytes");
+
+        Object stale = UnsafeHacksUtil.newInstance(BAKED_CLASSES, jar, new JarFile(jar.toFile()), "00", UnsafeHacksUtil.getInternalState(baked, "classes"), fingerprint);
+        assertNull(get(stale, TestClass.class, input), "Baked class was served for other transformers");
+
+        System.setProperty(BAKED_JAR, jar.toString());
+        Object bakedTransformer;
+        try {
+            bakedTransformer = UnsafeHacksUtil.newInstance("cpw.mods.modlauncher.ClassTransformer", store, plugins, loader,
+                UnsafeHacksUtil.newInstance("cpw.mods.modlauncher.TransformerAuditTrail"), fingerprint);
+        } finally {
+            System.clearProperty(BAKED_JAR);
+        }
+        var bakedField = runField(bakedBytes);
+        assertEquals(bakedField, runField(transform(bakedTransformer, input, ITransformerActivity.CLASSLOADING_REASON)), "Baked class was not loaded");
+        assertNotEquals(bakedField, runField(transform(bakedTransformer, input, ITransformerActivity.COMPUTING_FRAMES_REASON)), "Baked class was used to compute frames");
+    }
+
+    private static Object open(Path jar, Object fingerprint) {
+        System.setProperty(BAKED_JAR, jar.toString());
+        try {
+            return UnsafeHacksUtil.invoke(classForName(BAKED_CLASSES), "open", fingerprint);
+        } finally {
+            System.clearProperty(BAKED_JAR);
+        }
+    }
+
+    private static byte[] get(Object baked, Class<?> cls, byte[] input) {
+        return UnsafeHacksUtil.invoke(baked, "get", cls.getName(), input, UnsafeHacksUtil.newInstance("cpw.mods.modlauncher.ClassDigest", (Object) input));
+    }
+
+    private static byte[] transform(Object transformer, byte[] input, String reason) {
+        return UnsafeHacksUtil.invoke(transformer, "transform", input, TestClass.class.getName(), reason);
+    }
+
+    private static byte[] read(Class<?> cls) throws IOException {
+        try (var in = cls.getResourceAsStream(cls.getSimpleName() + ".class")) {
+            assertNotNull(in, "Class bytes of " + cls.getName() + " not found");
+            return in.readAllBytes();
+        }
+    }
+
+    private static String runField(byte[] bytes) {
+        var node = new ClassNode();
+        new ClassReader(bytes).accept(node, 0);
+        return node.fields.stream().map(f -> f.name).filter(n -> n.startsWith("run_")).findFirst().orElseThrow();
+    }
+
+    private static Class<?> classForName(String name) {
+        try {
+            return Class.forName(name);
+        } catch (ClassNotFoundException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static class CountingTransformer extends SimpleClassTransformer implements ITransformer<ClassNode> {
+        private CountingTransformer() {
+            super(TestClass.class, count(new AtomicInteger()));
+        }
+
+        private static Function<ClassNode, ClassNode> count(AtomicInteger runs) {
+            return input -> {
+                input.fields.add(new FieldNode(Opcodes.ACC_PUBLIC | Opcodes.ACC_STATIC, "run_" + runs.incrementAndGet(), "I", null, null));
+                return input;
+            };
+        }
+    }
+}
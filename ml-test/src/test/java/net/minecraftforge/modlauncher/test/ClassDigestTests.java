@@ -0,0 +1,103 @@
+/*
+ * Copyright (c) Forge Development LLC
+ * SPDX-License-Identifier: LGPL-3.0-only
+ */
+
+package net.minecraftforge.modlauncher.test;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+/**
+ * Test the digests of class bytes, and the digests of jars remembered by path, size and modification time
+ */
+class ClassDigestTests {
+    private static final String CLASS_DIGEST = "cpw.mods.modlauncher.ClassDigest";
+    private static final String CONTENT_DIGESTS = "cpw.mods.modlauncher.ContentDigests";
+
+    @Test
+    void testSha256() throws Exception {
+        var input = "class bytes".getBytes(StandardCharsets.UTF_8);
+        Object digest = UnsafeHacksUtil.newInstance(CLASS_DIGEST, (Object) input);
+        byte[] sha256 = UnsafeHacksUtil.invoke(digest, "get");
+        assertArrayEquals(MessageDigest.getInstance("SHA-256").digest(input), sha256, "Digest is not the SHA-256 of the input");
+        assertSame(sha256, UnsafeHacksUtil.invoke(digest, "get"), "Digest was computed twice");
+        // SHA-256 is the cache key digest unless configured otherwise
+        assertSame(sha256, UnsafeHacksUtil.invoke(digest, "forCacheKey"), "Cache key digest was computed again");
+
+        Object empty = UnsafeHacksUtil.newInstance(CLASS_DIGEST, (Object) new byte[0]);
+        assertArrayEquals(MessageDigest.getInstance("SHA-256").digest(new byte[0]), UnsafeHacksUtil.invoke(empty, "get"), "Digest of no bytes is wrong");
+    }
+
+    @Test
+    void testMurmur3() {
+        // Reference values of MurmurHash3 x64 128 with a zero seed, covering every tail length branch
+        assertMurmur3("00000000000000000000000000000000", "");
+        assertMurmur3("029bbd41b3a7d8cb191dae486a901e5b", "hello");
+        assertMurmur3("a7aa22138df2b2a3c9e0d3676d090dfa", "modlauncher test");
+        assertMurmur3("cd90ca181fd27922a2eeaae96efe864e", "hello, modlauncher");
+        assertMurmur3("6c1b07bc7bbc4be347939ac4a93c437a", "The quick brown fox jumps over the lazy dog");
+    }
+
+    @Test
+    void testContentDigests() throws Exception {
+        var dir = Files.createTempDirectory("mltest-digests");
+        var jar = dir.resolve("a.jar");
+        var copy = dir.resolve("b.jar");
+        Files.writeString(jar, "jar content");
+        Files.writeString(copy, "jar content");
+        var time = FileTime.fromMillis(1_000_000_000_000L);
+        Files.setLastModifiedTime(jar, time);
+
+        var expected = toHex(MessageDigest.getInstance("SHA-256").digest("jar content".getBytes(StandardCharsets.UTF_8)));
+        assertEquals(expected, digest(jar), "Digest is not the SHA-256 of the jar");
+        assertEquals(expected, digest(copy), "Digest depends on the location of the jar");
+
+        // Same size and modification time, so the remembered digest is used without reading the jar
+        Files.writeString(jar, "jar CONTENT");
+        Files.setLastModifiedTime(jar, time);
+        assertEquals(expected, digest(jar), "Digest of an unchanged jar was computed again");
+
+        Files.setLastModifiedTime(jar, FileTime.fromMillis(time.toMillis() + 1000));
+        var changed = digest(jar);
+        assertNotEquals(expected, changed, "Digest of a changed jar was not computed again");
+        assertEquals(toHex(MessageDigest.getInstance("SHA-256").digest("jar CONTENT".getBytes(StandardCharsets.UTF_8))), changed, "Digest is not the SHA-256 of the changed jar");
+
+        Files.setLastModifiedTime(dir, time);
+        assertEquals(dir + "@" + time.toMillis(), digest(dir), "Exploded module is not identified by location and timestamp");
+    }
+
+    private static void assertMurmur3(String expected, String input) {
+        byte[] actual = UnsafeHacksUtil.invoke(classForName(CLASS_DIGEST), "murmur3", (Object) input.getBytes(StandardCharsets.UTF_8));
+        assertEquals(expected, toHex(actual), "MurmurHash3 of \"" + input + "\" is wrong");
+    }
+
+    private static String digest(Path path) {
+        return UnsafeHacksUtil.invoke(classForName(CONTENT_DIGESTS), "of", path);
+    }
+
+    private static String toHex(byte[] data) {
+        var ret = new StringBuilder(data.length * 2);
+        for (var b : data)
+            ret.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        return ret.toString();
+    }
+
+    private static Class<?> classForName(String name) {
+        try {
+            return Class.forName(name);
+        } catch (ClassNotFoundException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
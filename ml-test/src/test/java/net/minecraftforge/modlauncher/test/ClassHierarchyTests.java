@@ -0,0 +1,140 @@
+/*
+ * Copyright (c) Forge Development LLC
+ * SPDX-License-Identifier: LGPL-3.0-only
+ */
+
+package net.minecraftforge.modlauncher.test;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Test the class hierarchy answering common super class queries while computing frames. Everything is preloaded, so
+ * no loader is needed to answer.
+ */
+class ClassHierarchyTests {
+    private static final String HIERARCHY = "cpw.mods.modlauncher.ClassHierarchy";
+    private static final String HEADER = HIERARCHY + "$Header";
+    private static final String OBJECT = "java/lang/Object";
+
+    @Test
+    void testCommonSuperClass() {
+        Object hierarchy = hierarchy(headers());
+        assertEquals("A", common(hierarchy, "D", "C"), "Common super class of siblings' children");
+        assertEquals("A", common(hierarchy, "C", "D"), "Common super class is not symmetric");
+        assertEquals("B", common(hierarchy, "B", "D"), "Super class of a subclass");
+        assertEquals("B", common(hierarchy, "D", "B"), "Super class of a subclass");
+        assertEquals("A", common(hierarchy, "A", "A"), "Common super class of the same class");
+        assertEquals(OBJECT, common(hierarchy, "D", "E"), "Common super class of unrelated classes");
+        // Answered from the memo the second time
+        assertEquals("A", common(hierarchy, "D", "C"), "Remembered answer does not match");
+    }
+
+    @Test
+    void testInterfaceClosure() {
+        Object hierarchy = hierarchy(headers());
+        assertEquals("I", common(hierarchy, "I", "E"), "Interface inherited through another interface");
+        assertEquals("J", common(hierarchy, "E", "J"), "Directly implemented interface");
+        assertEquals("I", common(hierarchy, "F", "I"), "Interface implemented by a subclass");
+        assertEquals("I", common(hierarchy, "G", "I"), "Interface implemented by a super class");
+        assertEquals("I", common(hierarchy, "J", "I"), "Super interface");
+        assertEquals(OBJECT, common(hierarchy, "D", "I"), "Interface not implemented");
+        assertEquals(OBJECT, common(hierarchy, "I", "K"), "Unrelated interfaces");
+    }
+
+    @Test
+    void testPreloadMissing() {
+        var headers = headers();
+        headers.put("X", header("Missing", false));
+        headers.put("Y", header("X", false));
+        headers.put("Z", header(OBJECT, false, "Missing"));
+        Object hierarchy = UnsafeHacksUtil.newInstance(HIERARCHY);
+        int count = UnsafeHacksUtil.invoke(hierarchy, "preload", headers);
+        assertEquals(headers.size() - 3, count, "Classes with missing super types were preloaded");
+
+        var resolved = new HashSet<String>();
+        UnsafeHacksUtil.invoke(hierarchy, "forEachResolved", (Consumer<Object>) node -> resolved.add(UnsafeHacksUtil.invoke(node, "name")));
+        assertTrue(resolved.containsAll(Set.of(OBJECT, "A", "D", "G", "J")), "Complete classes were not resolved");
+        for (var name : new String[] { "X", "Y", "Z", "Missing" })
+            assertFalse(resolved.contains(name), name + " was resolved without its super types");
+    }
+
+    @Test
+    void testMemoLimit() {
+        int limit = UnsafeHacksUtil.getInternalState(forName(HIERARCHY), "MEMO_LIMIT");
+        int classes = (int) Math.ceil(Math.sqrt(limit)) + 1;
+        var headers = new LinkedHashMap<String, Object>();
+        headers.put(OBJECT, header(null, false));
+        for (int i = 0; i < classes; i++)
+            headers.put("C" + i, header(OBJECT, false));
+        Object hierarchy = hierarchy(headers);
+        Map<?, ?> memo = UnsafeHacksUtil.getInternalState(hierarchy, "commonSupers");
+
+        int i = 0, j = 0;
+        while (memo.size() < limit) {
+            common(hierarchy, "C" + i, "C" + j);
+            if (++j == classes) {
+                j = 0;
+                i++;
+            }
+        }
+        common(hierarchy, "C" + i, "C" + j);
+        assertEquals(1, memo.size(), "Memo was not cleared at its limit");
+        assertEquals(OBJECT, common(hierarchy, "C0", "C1"), "Answer after clearing does not match");
+    }
+
+    /**
+     * <pre>
+     * A, B extends A, C extends A, D extends B
+     * interface I, interface J extends I, interface K
+     * E implements J, F extends B implements I, G extends F
+     * </pre>
+     */
+    private static Map<String, Object> headers() {
+        var ret = new LinkedHashMap<String, Object>();
+        ret.put(OBJECT, header(null, false));
+        ret.put("A", header(OBJECT, false));
+        ret.put("B", header("A", false));
+        ret.put("C", header("A", false));
+        ret.put("D", header("B", false));
+        ret.put("I", header(OBJECT, true));
+        ret.put("J", header(OBJECT, true, "I"));
+        ret.put("K", header(OBJECT, true));
+        ret.put("E", header(OBJECT, false, "J"));
+        ret.put("F", header("B", false, "I"));
+        ret.put("G", header("F", false));
+        return ret;
+    }
+
+    private static Object header(String superName, boolean isInterface, String... interfaces) {
+        return UnsafeHacksUtil.newInstance(HEADER, superName, interfaces, isInterface, null);
+    }
+
+    private static Object hierarchy(Map<String, Object> headers) {
+        Object ret = UnsafeHacksUtil.newInstance(HIERARCHY);
+        int count = UnsafeHacksUtil.invoke(ret, "preload", headers);
+        assertEquals(headers.size(), count, "Not every class was preloaded");
+        return ret;
+    }
+
+    private static String common(Object hierarchy, String a, String b) {
+        return UnsafeHacksUtil.invoke(hierarchy, "getCommonSuperClass", a, b, null);
+    }
+
+    private static Class<?> forName(String name) {
+        try {
+            return Class.forName(name);
+        } catch (ClassNotFoundException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright (c) Forge Development LLC
+ * SPDX-License-Identifier: LGPL-3.0-only
+ */
+
+package net.minecraftforge.modlauncher.test;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Test the compiled filter rejecting classes that no transformer or launch plugin targets by name
+ */
+class ClassNameFilterTests {
+    private static final String FILTER = "cpw.mods.modlauncher.ClassNameFilter";
+
+    @Test
+    void testPackages() {
+        Object filter = build(List.of(), List.of("net.minecraft", "com/example/mod/"));
+        assertTrue(matches(filter, "net.minecraft.Main"), "Class in package was not matched");
+        assertTrue(matches(filter, "net.minecraft.world.level.Level"), "Class in nested package was not matched");
+        assertTrue(matches(filter, "net/minecraft/world/level/Level"), "Internal name was not matched");
+        assertTrue(matches(filter, "com.example.mod.Mod"), "Package added with '/' and a trailing separator was not matched");
+        assertFalse(matches(filter, "net.minecraftforge.Main"), "Package matched a longer package sharing its prefix");
+        assertFalse(matches(filter, "net.Main"), "Package matched a class of its parent package");
+        assertFalse(matches(filter, "net.minecraft"), "Package matched a class named like it");
+        assertFalse(matches(filter, "com.example.Mod"), "Package matched a class of its parent package");
+    }
+
+    @Test
+    void testClasses() {
+        Object filter = build(List.of("net.minecraft.Main", "com/example/Mod", "Default"), List.of("net.minecraft.Main"));
+        assertTrue(matches(filter, "net.minecraft.Main"), "Class was not matched");
+        assertTrue(matches(filter, "net/minecraft/Main"), "Internal name was not matched");
+        assertTrue(matches(filter, "com.example.Mod"), "Class added by internal name was not matched");
+        assertTrue(matches(filter, "net.minecraft.Main.Inner"), "Class in package named like a class was not matched");
+        assertTrue(matches(filter, "Default"), "Class in the default package was not matched");
+        assertFalse(matches(filter, "net.minecraft.Mai"), "Class matched a prefix of its name");
+        assertFalse(matches(filter, "net.minecraft.MainMenu"), "Class matched a longer name sharing its prefix");
+        assertFalse(matches(filter, "com.example.Mod.Inner"), "Class matched as a package");
+        assertFalse(matches(filter, "Other"), "Other class in the default package was matched");
+        assertFalse(matches(filter, "com.Default"), "Class in the default package matched a class of another package");
+    }
+
+    @Test
+    void testDefaultPackage() {
+        Object all = build(List.of("net.minecraft.Main"), List.of("net.minecraft", ""));
+        assertTrue(matches(all, "Default"), "Default package did not match a class in it");
+        assertTrue(matches(all, "com.example.Mod"), "Default package did not match a class in a package");
+        assertFalse((boolean) UnsafeHacksUtil.invoke(all, "isEmpty"), "Filter matching everything is empty");
+
+        Object none = build(List.of(), List.of());
+        assertFalse(matches(none, "Default"), "Empty filter matched a class in the default package");
+        assertFalse(matches(none, "net.minecraft.Main"), "Empty filter matched a class");
+        assertTrue((boolean) UnsafeHacksUtil.invoke(none, "isEmpty"), "Empty filter is not empty");
+    }
+
+    private static Object build(List<String> classes, List<String> packages) {
+        Object builder = UnsafeHacksUtil.invoke(classForName(FILTER), "builder");
+        UnsafeHacksUtil.invoke(builder, "addClasses", classes);
+        UnsafeHacksUtil.invoke(builder, "addPackages", packages);
+        return UnsafeHacksUtil.invoke(builder, "build");
+    }
+
+    private static boolean matches(Object filter, String className) {
+        return UnsafeHacksUtil.invoke(filter, "matches", className);
+    }
+
+    private static Class<?> classForName(String name) {
+        try {
+            return Class.forName(name);
+        } catch (ClassNotFoundException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
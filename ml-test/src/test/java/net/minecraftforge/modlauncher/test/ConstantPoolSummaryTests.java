@@ -0,0 +1,79 @@
+/*
+ * Copyright (c) Forge Development LLC
+ * SPDX-License-Identifier: LGPL-3.0-only
+ */
+
+package net.minecraftforge.modlauncher.test;
+
+import cpw.mods.modlauncher.api.ConstantPoolFilter;
+import org.junit.jupiter.api.Test;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Opcodes;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Test matching the references in the constant pool of a class against launch plugin prefilters
+ */
+class ConstantPoolSummaryTests {
+    @Test
+    void testTags() {
+        Object summary = summary();
+        assertTrue(matches(summary, ConstantPoolFilter.builder().referencesClass("test/Referenced").build()), "Class was not found");
+        assertTrue(matches(summary, ConstantPoolFilter.builder().referencesMethod("test/Owner", "compute", "(I)I").build()), "Method was not found");
+        assertTrue(matches(summary, ConstantPoolFilter.builder().referencesMethod("test/Owner", "compute").build()), "Method was not found without a descriptor");
+        assertTrue(matches(summary, ConstantPoolFilter.builder().referencesMethod("test/Interface", "run", "()V").build()), "Interface method was not found");
+        assertTrue(matches(summary, ConstantPoolFilter.builder().referencesField("test/Owner", "count", "I").build()), "Field was not found");
+        assertTrue(matches(summary, ConstantPoolFilter.builder().containsString("constant").build()), "String was not found");
+
+        assertFalse(matches(summary, ConstantPoolFilter.builder().referencesClass("test/OnlyUtf8").build()), "Plain UTF-8 entry matched as a class");
+        assertFalse(matches(summary, ConstantPoolFilter.builder().referencesClass("test/OnlyString").build()), "String matched as a class");
+        assertFalse(matches(summary, ConstantPoolFilter.builder().containsString("test/Referenced").build()), "Class matched as a string");
+        assertFalse(matches(summary, ConstantPoolFilter.builder().referencesMethod("test/Owner", "count").build()), "Field matched as a method");
+        assertFalse(matches(summary, ConstantPoolFilter.builder().referencesField("test/Owner", "compute").build()), "Method matched as a field");
+        assertFalse(matches(summary, ConstantPoolFilter.builder().referencesMethod("test/Owner", "compute", "(J)I").build()), "Method matched another descriptor");
+        assertFalse(matches(summary, ConstantPoolFilter.builder().referencesField("test/Other", "count", "I").build()), "Field matched another owner");
+
+        var any = ConstantPoolFilter.builder().referencesClass("test/Missing").containsString("constant").build();
+        assertTrue(matches(summary, any), "Filter did not match on any of its references");
+    }
+
+    @Test
+    void testWideConstants() {
+        // Longs and doubles take two slots, the references around them must still be found
+        var cw = new ClassWriter(0);
+        cw.visit(Opcodes.V16, Opcodes.ACC_PUBLIC, "test/Wide", null, "java/lang/Object", null);
+        cw.newConst(1L);
+        cw.newConst("between");
+        cw.newConst(2.0);
+        cw.newConst(3L);
+        cw.newField("test/Owner", "count", "I");
+        cw.newConst(4.0);
+        cw.visitEnd();
+        Object summary = UnsafeHacksUtil.newInstance("cpw.mods.modlauncher.ConstantPoolSummary", (Object) cw.toByteArray());
+        assertTrue(matches(summary, ConstantPoolFilter.builder().containsString("between").build()), "String between wide constants was not found");
+        assertTrue(matches(summary, ConstantPoolFilter.builder().referencesField("test/Owner", "count", "I").build()), "Field after wide constants was not found");
+        assertTrue(matches(summary, ConstantPoolFilter.builder().referencesClass("test/Wide").build()), "Class before wide constants was not found");
+        assertFalse(matches(summary, ConstantPoolFilter.builder().referencesClass("test/Missing").build()), "Missing class was found");
+    }
+
+    private static Object summary() {
+        var cw = new ClassWriter(0);
+        cw.visit(Opcodes.V16, Opcodes.ACC_PUBLIC, "test/Summary", null, "java/lang/Object", null);
+        cw.newClass("test/Referenced");
+        cw.newUTF8("test/OnlyUtf8");
+        cw.newConst("test/OnlyString");
+        cw.newConst("constant");
+        cw.newConst(42);
+        cw.newMethod("test/Owner", "compute", "(I)I", false);
+        cw.newMethod("test/Interface", "run", "()V", true);
+        cw.newField("test/Owner", "count", "I");
+        cw.visitEnd();
+        return UnsafeHacksUtil.newInstance("cpw.mods.modlauncher.ConstantPoolSummary", (Object) cw.toByteArray());
+    }
+
+    private static boolean matches(Object summary, ConstantPoolFilter filter) {
+        return UnsafeHacksUtil.invoke(summary, "matches", filter);
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright (c) Forge Development LLC
+ * SPDX-License-Identifier: LGPL-3.0-only
+ */
+
+package net.minecraftforge.modlauncher.test;
+
+import cpw.mods.modlauncher.Launcher;
+import cpw.mods.modlauncher.api.IModuleLayerManager.Layer;
+import cpw.mods.modlauncher.api.ITransformer;
+import cpw.mods.modlauncher.api.ITransformerActivity;
+import cpw.mods.modlauncher.api.ITransformerVotingContext;
+import cpw.mods.modlauncher.api.TransformerVoteResult;
+import net.minecraftforge.modlauncher.harness.ModLauncherTest;
+import net.minecraftforge.modlauncher.harness.SimpleClassTransformer;
+import net.minecraftforge.modlauncher.testjar.ModLauncherTestMarker;
+import net.minecraftforge.modlauncher.testjar.TestClass;
+import org.jetbrains.annotations.NotNull;
+import org.junit.jupiter.api.Test;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.tree.FieldNode;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+
+/**
+ * Test that a class transformed to compute frames is not transformed again when it is loaded. The transformer names
+ * the field it adds after the number of times it ran, so a reused class has the same field as the frames one.
+ */
+class FrameNodeReuseTests {
+    @Test
+    void testReused() throws Exception {
+        if (!ModLauncherTest.isTransformed()) {
+            ModLauncherTest.addPath(Layer.GAME, ModLauncherTest.getPath(ModLauncherTestMarker.class));
+            ModLauncherTest.addTransformer(new CountingTransformer(false));
+            ModLauncherTest.launch();
+            return;
+        }
+
+        var frames = runField(ITransformerActivity.COMPUTING_FRAMES_REASON);
+        assertEquals(frames, runField(ITransformerActivity.CLASSLOADING_REASON), "Class was transformed again when loaded");
+        assertNotEquals(frames, runField(ITransformerActivity.CLASSLOADING_REASON), "Node was reused twice");
+    }
+
+    @Test
+    void testReasonObserved() throws Exception {
+        if (!ModLauncherTest.isTransformed()) {
+            ModLauncherTest.addPath(Layer.GAME, ModLauncherTest.getPath(ModLauncherTestMarker.class));
+            ModLauncherTest.addTransformer(new CountingTransformer(true));
+            ModLauncherTest.launch();
+            return;
+        }
+
+        var frames = runField(ITransformerActivity.COMPUTING_FRAMES_REASON);
+        assertNotEquals(frames, runField(ITransformerActivity.CLASSLOADING_REASON), "Node was reused although its transformer read the reason");
+    }
+
+    private static String runField(String reason) throws IOException {
+        Object loader = UnsafeHacksUtil.getInternalState(Launcher.INSTANCE, "classLoader");
+        Object transformer = UnsafeHacksUtil.getInternalState(loader, "classTransformer");
+        byte[] input;
+        try (var in = TestClass.class.getResourceAsStream(TestClass.class.getSimpleName() + ".class")) {
+            assertNotNull(in, "Test class bytes not found");
+            input = in.readAllBytes();
+        }
+        byte[] output = UnsafeHacksUtil.invoke(transformer, "transform", input, TestClass.class.getName(), reason);
+        var node = new ClassNode();
+        new ClassReader(output).accept(node, 0);
+        return node.fields.stream().map(f -> f.name).filter(n -> n.startsWith("run_")).findFirst().orElseThrow();
+    }
+
+    private static class CountingTransformer extends SimpleClassTransformer implements ITransformer<ClassNode> {
+        private final boolean readsReason;
+
+        private CountingTransformer(boolean readsReason) {
+            super(TestClass.class, count(new AtomicInteger()));
+            this.readsReason = readsReason;
+        }
+
+        @Override
+        public @NotNull TransformerVoteResult castVote(ITransformerVotingContext context) {
+            if (readsReason)
+                context.getReason();
+            return TransformerVoteResult.YES;
+        }
+
+        private static Function<ClassNode, ClassNode> count(AtomicInteger runs) {
+            return input -> {
+                input.fields.add(new FieldNode(Opcodes.ACC_PUBLIC | Opcodes.ACC_STATIC, "run_" + runs.incrementAndGet(), "I", null, null));
+                return input;
+            };
+        }
+    }
+}
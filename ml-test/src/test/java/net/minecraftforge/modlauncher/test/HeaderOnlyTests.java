@@ -0,0 +1,128 @@
+/*
+ * Copyright (c) Forge Development LLC
+ * SPDX-License-Identifier: LGPL-3.0-only
+ */
+
+package net.minecraftforge.modlauncher.test;
+
+import cpw.mods.modlauncher.Launcher;
+import cpw.mods.modlauncher.api.IModuleLayerManager.Layer;
+import cpw.mods.modlauncher.api.ITransformer;
+import cpw.mods.modlauncher.api.ITransformerActivity;
+import net.minecraftforge.modlauncher.harness.ModLauncherTest;
+import net.minecraftforge.modlauncher.harness.SimpleClassTransformer;
+import net.minecraftforge.modlauncher.harness.SimpleFieldTransformer;
+import net.minecraftforge.modlauncher.harness.SimpleMethodTransformer;
+import net.minecraftforge.modlauncher.testjar.ModLauncherTestMarker;
+import net.minecraftforge.modlauncher.testjar.TestClass;
+import org.junit.jupiter.api.Test;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.tree.FieldNode;
+import org.objectweb.asm.tree.MethodNode;
+
+import java.io.IOException;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Test transforming classes only for their header, when they are needed to compute frames of another class
+ */
+class HeaderOnlyTests {
+    private static final String INTERFACE = "java/io/Serializable";
+    private static final String METHOD_DESC = "()Ljava/lang/String;";
+
+    @Test
+    void testHeaderOnly() throws Exception {
+        if (!ModLauncherTest.isTransformed()) {
+            addTransformers(true);
+            ModLauncherTest.launch();
+            return;
+        }
+
+        var full = transform(ITransformerActivity.CLASSLOADING_REASON);
+        var header = transform(ITransformerActivity.COMPUTING_FRAMES_REASON);
+        assertEquals(full.superName, header.superName, "Super class differs from the full transform");
+        assertEquals(full.interfaces, header.interfaces, "Interfaces differ from the full transform");
+        assertEquals(List.of(INTERFACE), header.interfaces, "Class transformer did not run");
+
+        assertEquals(Opcodes.ACC_PUBLIC, field(full).access & Opcodes.ACC_PUBLIC, "Field transformer did not run on the full transform");
+        assertTrue((method(full).access & Opcodes.ACC_SYNCHRONIZED) != 0, "Method transformer did not run on the full transform");
+        assertEquals(0, field(header).access & Opcodes.ACC_PUBLIC, "Field transformer ran on the header");
+        assertEquals(0, method(header).access & Opcodes.ACC_SYNCHRONIZED, "Method transformer ran on the header");
+        assertEquals(0, method(header).instructions.size(), "Header was transformed with its code");
+    }
+
+    @Test
+    void testHeaderOnlyNeedsOptIn() throws Exception {
+        if (!ModLauncherTest.isTransformed()) {
+            addTransformers(false);
+            ModLauncherTest.launch();
+            return;
+        }
+
+        var frames = transform(ITransformerActivity.COMPUTING_FRAMES_REASON);
+        assertEquals(List.of(INTERFACE), frames.interfaces, "Class transformer did not run");
+        assertTrue((method(frames).access & Opcodes.ACC_SYNCHRONIZED) != 0, "Class was transformed without its code");
+        assertTrue(method(frames).instructions.size() > 0, "Class was transformed without its code");
+    }
+
+    private static void addTransformers(boolean headerOnly) {
+        ModLauncherTest.addPath(Layer.GAME, ModLauncherTest.getPath(ModLauncherTestMarker.class));
+        ModLauncherTest.addTransformer(new InterfaceTransformer(headerOnly));
+        ModLauncherTest.addTransformer(new SimpleFieldTransformer(TestClass.class, "field", input -> {
+            input.access = (input.access & ~Opcodes.ACC_PRIVATE) | Opcodes.ACC_PUBLIC;
+            return input;
+        }));
+        ModLauncherTest.addTransformer(new SimpleMethodTransformer(TestClass.class, "method", METHOD_DESC, input -> {
+            input.access |= Opcodes.ACC_SYNCHRONIZED;
+            return input;
+        }));
+    }
+
+    private static ClassNode transform(String reason) throws IOException {
+        Object loader = UnsafeHacksUtil.getInternalState(Launcher.INSTANCE, "classLoader");
+        Object transformer = UnsafeHacksUtil.getInternalState(loader, "classTransformer");
+        byte[] input;
+        try (var in = TestClass.class.getResourceAsStream(TestClass.class.getSimpleName() + ".class")) {
+            assertNotNull(in, "Test class bytes not found");
+            input = in.readAllBytes();
+        }
+        byte[] output = UnsafeHacksUtil.invoke(transformer, "transform", input, TestClass.class.getName(), reason);
+        var ret = new ClassNode();
+        new ClassReader(output).accept(ret, 0);
+        return ret;
+    }
+
+    private static FieldNode field(ClassNode node) {
+        return node.fields.stream().filter(f -> f.name.equals("field")).findFirst().orElseThrow();
+    }
+
+    private static MethodNode method(ClassNode node) {
+        return node.methods.stream().filter(m -> m.name.equals("method") && m.desc.equals(METHOD_DESC)).findFirst().orElseThrow();
+    }
+
+    /**
+     * Adds an interface, which only changes the header of the class.
+     */
+    private static class InterfaceTransformer extends SimpleClassTransformer implements ITransformer<ClassNode> {
+        private final boolean headerOnly;
+
+        private InterfaceTransformer(boolean headerOnly) {
+            super(TestClass.class, input -> {
+                input.interfaces.add(INTERFACE);
+                return input;
+            });
+            this.headerOnly = headerOnly;
+        }
+
+        @Override
+        public boolean supportsHeaderOnly() {
+            return headerOnly;
+        }
+    }
+}
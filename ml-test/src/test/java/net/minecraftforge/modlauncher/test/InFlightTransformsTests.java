@@ -0,0 +1,124 @@
+/*
+ * Copyright (c) Forge Development LLC
+ * SPDX-License-Identifier: LGPL-3.0-only
+ */
+
+package net.minecraftforge.modlauncher.test;
+
+import cpw.mods.modlauncher.api.ITransformerActivity;
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Test that threads transforming the same class at once share the work, without ever deadlocking
+ */
+class InFlightTransformsTests {
+    private static final String IN_FLIGHT = "cpw.mods.modlauncher.InFlightTransforms";
+    private static final String WAITING = "cpw.mods.modlauncher.WaitingThreads";
+    private static final String CLASS = "test.InFlight";
+    private static final String REASON = ITransformerActivity.CLASSLOADING_REASON;
+
+    @Test
+    void testWaiterSharesResult() throws Exception {
+        Object inFlight = UnsafeHacksUtil.newInstance(IN_FLIGHT);
+        var input = new byte[] { 1 };
+        var output = new byte[] { 2 };
+        var transforms = new AtomicInteger();
+        var started = new CountDownLatch(1);
+        var release = new CountDownLatch(1);
+
+        var leader = CompletableFuture.supplyAsync(() -> run(inFlight, input, () -> {
+            transforms.incrementAndGet();
+            started.countDown();
+            await(release);
+            return output;
+        }));
+        assertTrue(started.await(10, TimeUnit.SECONDS), "Leader did not start");
+
+        var waiterThread = new AtomicReference<Thread>();
+        var waiter = CompletableFuture.supplyAsync(() -> {
+            waiterThread.set(Thread.currentThread());
+            return run(inFlight, input, () -> {
+                transforms.incrementAndGet();
+                return output;
+            });
+        });
+        // Only let the leader finish once the other thread is actually waiting on it
+        Map<Thread, Thread> waiting = UnsafeHacksUtil.getInternalState(Class.forName(WAITING), "WAITING");
+        for (int i = 0; i < 500 && (waiterThread.get() == null || !waiting.containsKey(waiterThread.get())); i++)
+            Thread.sleep(10);
+        assertTrue(waiting.containsKey(waiterThread.get()), "Second thread did not wait");
+        release.countDown();
+
+        assertArrayEquals(output, leader.get(10, TimeUnit.SECONDS), "Leader result does not match");
+        var shared = waiter.get(10, TimeUnit.SECONDS);
+        assertArrayEquals(output, shared, "Waiter result does not match");
+        assertNotSame(output, shared, "Waiter got the leader's array");
+        assertEquals(1, transforms.get(), "Class was transformed twice");
+    }
+
+    @Test
+    void testReentrant() {
+        Object inFlight = UnsafeHacksUtil.newInstance(IN_FLIGHT);
+        var input = new byte[] { 1 };
+        var transforms = new AtomicInteger();
+        // A plugin or frame computation asking for the class being transformed, on the same thread
+        var result = run(inFlight, input, () -> {
+            transforms.incrementAndGet();
+            var inner = run(inFlight, input, () -> {
+                transforms.incrementAndGet();
+                return new byte[] { 3 };
+            });
+            assertArrayEquals(new byte[] { 3 }, inner, "Nested transform result does not match");
+            return new byte[] { 2 };
+        });
+        assertArrayEquals(new byte[] { 2 }, result, "Outer transform result does not match");
+        assertEquals(2, transforms.get(), "Nested transform did not run");
+    }
+
+    @Test
+    void testBlockedLeader() throws Exception {
+        Object inFlight = UnsafeHacksUtil.newInstance(IN_FLIGHT);
+        var input = new byte[] { 1 };
+        var started = new CountDownLatch(1);
+        // Stands in for a class loading lock held by the waiter, which the leader needs to finish
+        var lock = new CountDownLatch(1);
+
+        var leader = CompletableFuture.supplyAsync(() -> run(inFlight, input, () -> {
+            started.countDown();
+            await(lock);
+            return new byte[] { 2 };
+        }));
+        assertTrue(started.await(10, TimeUnit.SECONDS), "Leader did not start");
+
+        var own = run(inFlight, input, () -> new byte[] { 3 });
+        assertArrayEquals(new byte[] { 3 }, own, "Waiter did not transform the class itself");
+        lock.countDown();
+        assertArrayEquals(new byte[] { 2 }, leader.get(10, TimeUnit.SECONDS), "Leader result does not match");
+    }
+
+    private static byte[] run(Object inFlight, byte[] input, Supplier<byte[]> transform) {
+        return UnsafeHacksUtil.invoke(inFlight, "run", CLASS, REASON, input, transform);
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            if (!latch.await(10, TimeUnit.SECONDS))
+                throw new IllegalStateException("Timed out");
+        } catch (InterruptedException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright (c) Forge Development LLC
+ * SPDX-License-Identifier: LGPL-3.0-only
+ */
+
+package net.minecraftforge.modlauncher.test;
+
+import org.junit.jupiter.api.Test;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+import org.objectweb.asm.tree.AbstractInsnNode;
+import org.objectweb.asm.tree.FieldInsnNode;
+import org.objectweb.asm.tree.InsnNode;
+import org.objectweb.asm.tree.LabelNode;
+import org.objectweb.asm.tree.LdcInsnNode;
+import org.objectweb.asm.tree.LineNumberNode;
+import org.objectweb.asm.tree.MethodInsnNode;
+import org.objectweb.asm.tree.MethodNode;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Test the summary of the instructions of a method shared by voters
+ */
+class InstructionIndexTests {
+    @Test
+    void testOpcodes() {
+        Object index = index();
+        assertEquals(2, count(index, Opcodes.IADD), "Opcode count does not match");
+        assertEquals(1, count(index, Opcodes.IRETURN), "Opcode count does not match");
+        assertEquals(3, count(index, Opcodes.LDC), "Opcode count does not match");
+        assertEquals(0, count(index, Opcodes.ISUB), "Missing opcode was counted");
+        assertEquals(0, count(index, -1), "Labels and line numbers were counted");
+        assertEquals(0, count(index, 256), "Opcode out of range was counted");
+        assertEquals(12, ((AbstractInsnNode[]) UnsafeHacksUtil.invoke(index, "getInstructions")).length, "Instructions do not match");
+    }
+
+    @Test
+    void testInvocations() {
+        Object index = index();
+        assertTrue(invokes(index, "test/Owner", "compute", "(I)I"), "Invocation was not found");
+        assertTrue(invokes(index, "test/Owner", "compute", null), "Invocation was not found without a descriptor");
+        assertFalse(invokes(index, "test/Owner", "compute", "(J)I"), "Invocation matched another descriptor");
+        assertFalse(invokes(index, "test/Other", "compute", null), "Invocation matched another owner");
+        assertFalse(invokes(index, "test/Owner", "count", null), "Field access matched as an invocation");
+        assertFalse(invokes(index, "test/Owner.compute", "(I)I", null), "Owner and name matched as one");
+    }
+
+    @Test
+    void testFieldAccesses() {
+        Object index = index();
+        assertTrue(accesses(index, "test/Owner", "count", "I"), "Field access was not found");
+        assertTrue(accesses(index, "test/Owner", "count", null), "Field access was not found without a descriptor");
+        assertFalse(accesses(index, "test/Owner", "count", "J"), "Field access matched another descriptor");
+        assertFalse(accesses(index, "test/Owner", "compute", null), "Invocation matched as a field access");
+    }
+
+    @Test
+    void testConstants() {
+        Object index = index();
+        assertTrue(loads(index, "constant"), "String constant was not found");
+        assertTrue(loads(index, 1000), "Integer constant was not found");
+        assertTrue(loads(index, Type.getObjectType("test/Owner")), "Type constant was not found");
+        assertFalse(loads(index, 1000L), "Integer constant matched a long of the same value");
+        assertFalse(loads(index, 1), "Constant pushed without LDC was found");
+        assertFalse(loads(index, "other"), "Missing constant was found");
+    }
+
+    private static Object index() {
+        var method = new MethodNode(Opcodes.ACC_PUBLIC | Opcodes.ACC_STATIC, "method", "()I", null, null);
+        var start = new LabelNode(new Label());
+        method.instructions.add(start);
+        method.instructions.add(new LineNumberNode(1, start));
+        method.instructions.add(new LdcInsnNode("constant"));
+        method.instructions.add(new LdcInsnNode(Type.getObjectType("test/Owner")));
+        method.instructions.add(new InsnNode(Opcodes.POP2));
+        method.instructions.add(new FieldInsnNode(Opcodes.GETSTATIC, "test/Owner", "count", "I"));
+        method.instructions.add(new LdcInsnNode(1000));
+        method.instructions.add(new InsnNode(Opcodes.IADD));
+        method.instructions.add(new MethodInsnNode(Opcodes.INVOKESTATIC, "test/Owner", "compute", "(I)I"));
+        method.instructions.add(new InsnNode(Opcodes.ICONST_1));
+        method.instructions.add(new InsnNode(Opcodes.IADD));
+        method.instructions.add(new InsnNode(Opcodes.IRETURN));
+        return UnsafeHacksUtil.newInstance("cpw.mods.modlauncher.InstructionIndex", method);
+    }
+
+    private static int count(Object index, int opcode) {
+        return UnsafeHacksUtil.invoke(index, "getOpcodeCount", opcode);
+    }
+
+    private static boolean invokes(Object index, String owner, String name, String descriptor) {
+        return UnsafeHacksUtil.invoke(index, "invokesMethod", owner, name, descriptor);
+    }
+
+    private static boolean accesses(Object index, String owner, String name, String descriptor) {
+        return UnsafeHacksUtil.invoke(index, "accessesField", owner, name, descriptor);
+    }
+
+    private static boolean loads(Object index, Object constant) {
+        return UnsafeHacksUtil.invoke(index, "loadsConstant", constant);
+    }
+}
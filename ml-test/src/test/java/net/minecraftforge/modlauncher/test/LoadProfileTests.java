@@ -0,0 +1,92 @@
+/*
+ * Copyright (c) Forge Development LLC
+ * SPDX-License-Identifier: LGPL-3.0-only
+ */
+
+package net.minecraftforge.modlauncher.test;
+
+import cpw.mods.modlauncher.api.ITransformerActivity;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Test recording the classes a launch transforms, and transforming them ahead of time on the next launch. Prewarming
+ * threads are stood in for by the test thread, there is no loader to prewarm with.
+ */
+class LoadProfileTests {
+    private static final String LOAD_PROFILE = "cpw.mods.modlauncher.LoadProfile";
+    private static final String ENTRY = LOAD_PROFILE + "$Entry";
+    private static final String LOADING = ITransformerActivity.CLASSLOADING_REASON;
+    private static final String FRAMES = ITransformerActivity.COMPUTING_FRAMES_REASON;
+
+    @Test
+    void testRecordAndReload() throws Exception {
+        var file = Files.createTempDirectory("mltest-profile").resolve("load-profile.bin");
+        Object profile = profile(file);
+        transform(profile, "test.A", LOADING, new byte[] { 1 }, () -> new byte[] { 2 });
+        transform(profile, "test.B", FRAMES, new byte[] { 1 }, () -> new byte[] { 2 });
+        transform(profile, "test.A", LOADING, new byte[] { 1 }, () -> new byte[] { 2 });
+        transform(profile, "test.C", LOADING, new byte[] { 1 }, () -> new byte[] { 2 });
+        UnsafeHacksUtil.invoke(profile, "save");
+
+        assertEquals(List.of("test.A/" + LOADING, "test.B/" + FRAMES, "test.C/" + LOADING), load(file), "Profile does not match the transformed classes");
+    }
+
+    @Test
+    void testPrewarm() throws Exception {
+        var file = Files.createTempDirectory("mltest-profile").resolve("load-profile.bin");
+        Object profile = profile(file);
+        var transforms = new AtomicInteger();
+        Supplier<byte[]> transform = () -> new byte[] { (byte) transforms.incrementAndGet() };
+
+        // Transformed ahead of time, as well as a class needed to compute its frames
+        prewarming(profile, "test.A", () -> {
+            var result = transform(profile, "test.A", LOADING, new byte[] { 1 }, () -> {
+                transform(profile, "test.Super", FRAMES, new byte[] { 1 }, transform);
+                return transform.get();
+            });
+            assertArrayEquals(new byte[] { 2 }, result, "Prewarmed result does not match");
+        });
+        prewarming(profile, "test.B", () -> transform(profile, "test.B", LOADING, new byte[] { 1 }, transform));
+        assertEquals(3, transforms.get(), "Classes were not transformed ahead of time");
+
+        assertArrayEquals(new byte[] { 2 }, transform(profile, "test.A", LOADING, new byte[] { 1 }, transform), "Prewarmed class was not used");
+        assertEquals(3, transforms.get(), "Prewarmed class was transformed again");
+        assertArrayEquals(new byte[] { 4 }, transform(profile, "test.B", LOADING, new byte[] { 9 }, transform), "Prewarmed class was used for other class bytes");
+        assertArrayEquals(new byte[] { 5 }, transform(profile, "test.A", LOADING, new byte[] { 1 }, transform), "Prewarmed class was used twice");
+
+        UnsafeHacksUtil.invoke(profile, "save");
+        assertEquals(List.of("test.A/" + LOADING, "test.B/" + LOADING), load(file), "Classes transformed while prewarming were recorded");
+    }
+
+    private static Object profile(Path file) {
+        return UnsafeHacksUtil.newInstance(LOAD_PROFILE, file, 1L << 20);
+    }
+
+    private static byte[] transform(Object profile, String className, String reason, byte[] input, Supplier<byte[]> transform) {
+        return UnsafeHacksUtil.invoke(profile, "transform", className, reason, input, transform);
+    }
+
+    private static void prewarming(Object profile, String className, Runnable action) {
+        ThreadLocal<Object> prewarming = UnsafeHacksUtil.getInternalState(profile.getClass(), "PREWARMING");
+        prewarming.set(UnsafeHacksUtil.newInstance(ENTRY, className, LOADING));
+        try {
+            action.run();
+        } finally {
+            prewarming.remove();
+        }
+    }
+
+    private static List<String> load(Path file) {
+        List<?> entries = UnsafeHacksUtil.invoke(profile(file), "load");
+        return entries.stream().map(e -> UnsafeHacksUtil.invoke(e, "className") + "/" + UnsafeHacksUtil.invoke(e, "reason")).toList();
+    }
+}
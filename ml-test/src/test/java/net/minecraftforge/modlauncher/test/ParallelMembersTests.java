@@ -0,0 +1,175 @@
+/*
+ * Copyright (c) Forge Development LLC
+ * SPDX-License-Identifier: LGPL-3.0-only
+ */
+
+package net.minecraftforge.modlauncher.test;
+
+import cpw.mods.modlauncher.Launcher;
+import cpw.mods.modlauncher.api.IModuleLayerManager.Layer;
+import cpw.mods.modlauncher.api.ITransformer;
+import cpw.mods.modlauncher.api.ITransformerActivity;
+import net.minecraftforge.modlauncher.harness.ModLauncherTest;
+import net.minecraftforge.modlauncher.harness.SimpleFieldTransformer;
+import net.minecraftforge.modlauncher.harness.SimpleMethodTransformer;
+import net.minecraftforge.modlauncher.testjar.ModLauncherTestMarker;
+import net.minecraftforge.modlauncher.testjar.TestClass;
+import org.junit.jupiter.api.Test;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.tree.FieldNode;
+import org.objectweb.asm.tree.InsnList;
+import org.objectweb.asm.tree.InsnNode;
+import org.objectweb.asm.tree.JumpInsnNode;
+import org.objectweb.asm.tree.LabelNode;
+import org.objectweb.asm.tree.LdcInsnNode;
+import org.objectweb.asm.tree.MethodInsnNode;
+import org.objectweb.asm.tree.MethodNode;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.IntConsumer;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Test transforming the members of a class in parallel, which must give the same class as transforming them one by one
+ */
+class ParallelMembersTests {
+    private static final String PARALLEL_MEMBERS = "cpw.mods.modlauncher.ParallelMembers";
+    private static final String TRANSFORMER = "cpw.mods.modlauncher.ClassTransformer";
+    private static final String PROPERTY = "modlauncher.parallelMembers";
+
+    @Test
+    void testSameAsSerial() throws Exception {
+        if (!ModLauncherTest.isTransformed()) {
+            ModLauncherTest.addPath(Layer.GAME, ModLauncherTest.getPath(ModLauncherTestMarker.class));
+            ModLauncherTest.addTransformer(new BranchTransformer());
+            ModLauncherTest.addTransformer(new PublicFieldTransformer());
+            System.setProperty(PROPERTY, "1");
+            try {
+                ModLauncherTest.launch();
+            } finally {
+                System.clearProperty(PROPERTY);
+            }
+            return;
+        }
+
+        Object loader = UnsafeHacksUtil.getInternalState(Launcher.INSTANCE, "classLoader");
+        Object parallel = UnsafeHacksUtil.getInternalState(loader, "classTransformer");
+        assertEquals(1, (int) UnsafeHacksUtil.getInternalState(parallel, "parallelMembers"), "Members are not transformed in parallel");
+        final String threshold = System.clearProperty(PROPERTY);
+        Object serial;
+        try {
+            serial = UnsafeHacksUtil.newInstance(TRANSFORMER, UnsafeHacksUtil.getInternalState(parallel, "transformers"),
+                UnsafeHacksUtil.getInternalState(parallel, "pluginHandler"), loader);
+        } finally {
+            System.setProperty(PROPERTY, threshold);
+        }
+        assertEquals(0, (int) UnsafeHacksUtil.getInternalState(serial, "parallelMembers"), "Members are transformed in parallel");
+
+        byte[] input;
+        try (var in = TestClass.class.getResourceAsStream(TestClass.class.getSimpleName() + ".class")) {
+            input = in.readAllBytes();
+        }
+        byte[] expected = transform(serial, input);
+        byte[] actual = transform(parallel, input);
+        assertArrayEquals(expected, actual, "Parallel transform differs from the serial one");
+
+        var inputNode = node(input);
+        var outputNode = node(actual);
+        assertEquals(inputNode.methods.stream().map(m -> m.name + m.desc).toList(), outputNode.methods.stream().map(m -> m.name + m.desc).toList(), "Methods are not in order");
+        assertEquals(inputNode.fields.stream().map(f -> f.name).toList(), outputNode.fields.stream().map(f -> f.name).toList(), "Fields are not in order");
+        var method = outputNode.methods.stream().filter(m -> m.name.equals("method")).findFirst().orElseThrow();
+        assertTrue(Arrays.stream(method.instructions.toArray()).anyMatch(i -> i instanceof LdcInsnNode ldc && "modified".equals(ldc.cst)), "Method was not transformed");
+    }
+
+    @Test
+    void testNested() {
+        // Every task waits for tasks of its own, which only works if waiting threads run them when the pool is busy
+        int count = Runtime.getRuntime().availableProcessors() * 4;
+        var seen = ConcurrentHashMap.<Integer>newKeySet();
+        assertTrue(forEach(count, i -> forEach(count, j -> seen.add(i * count + j))), "Tasks did not finish");
+        assertEquals(count * count, seen.size(), "Not every task ran");
+    }
+
+    @Test
+    void testFailure() {
+        var failure = assertThrows(IllegalStateException.class, () -> forEach(64, i -> {
+            if (i % 16 == 5)
+                throw new IllegalStateException(String.valueOf(i));
+        }), "Failure was not thrown");
+        assertEquals("5", failure.getMessage(), "Failure of the lowest index was not thrown");
+    }
+
+    private static boolean forEach(int count, IntConsumer task) {
+        return UnsafeHacksUtil.invoke(classForName(PARALLEL_MEMBERS), "forEach", count, task);
+    }
+
+    private static Class<?> classForName(String name) {
+        try {
+            return Class.forName(name);
+        } catch (ClassNotFoundException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static byte[] transform(Object transformer, byte[] input) {
+        return UnsafeHacksUtil.invoke(transformer, "transform", input, TestClass.class.getName(), ITransformerActivity.CLASSLOADING_REASON);
+    }
+
+    private static ClassNode node(byte[] bytes) {
+        var ret = new ClassNode();
+        new ClassReader(bytes).accept(ret, 0);
+        return ret;
+    }
+
+    /**
+     * Adds a branch to the method, so its frames have to be computed
+     */
+    private static class BranchTransformer extends SimpleMethodTransformer implements ITransformer<MethodNode> {
+        private BranchTransformer() {
+            super(TestClass.class, "method", "()Ljava/lang/String;", input -> {
+                var other = new LabelNode(new Label());
+                var insns = new InsnList();
+                insns.add(new MethodInsnNode(Opcodes.INVOKESTATIC, "java/lang/System", "nanoTime", "()J"));
+                insns.add(new InsnNode(Opcodes.LCONST_0));
+                insns.add(new InsnNode(Opcodes.LCMP));
+                insns.add(new JumpInsnNode(Opcodes.IFNE, other));
+                insns.add(new LdcInsnNode("zero"));
+                insns.add(new InsnNode(Opcodes.ARETURN));
+                insns.add(other);
+                insns.add(new LdcInsnNode("modified"));
+                insns.add(new InsnNode(Opcodes.ARETURN));
+                input.instructions = insns;
+                input.tryCatchBlocks.clear();
+                input.localVariables = null;
+                return input;
+            });
+        }
+
+        @Override
+        public boolean isThreadSafe() {
+            return true;
+        }
+    }
+
+    private static class PublicFieldTransformer extends SimpleFieldTransformer implements ITransformer<FieldNode> {
+        private PublicFieldTransformer() {
+            super(TestClass.class, "field", input -> {
+                input.access = (input.access & ~Opcodes.ACC_PRIVATE) | Opcodes.ACC_PUBLIC;
+                return input;
+            });
+        }
+
+        @Override
+        public boolean isThreadSafe() {
+            return true;
+        }
+    }
+}
@@ -0,0 +1,137 @@
+/*
+ * Copyright (c) Forge Development LLC
+ * SPDX-License-Identifier: LGPL-3.0-only
+ */
+
+package net.minecraftforge.modlauncher.test;
+
+import cpw.mods.modlauncher.InvalidLauncherSetupException;
+import cpw.mods.modlauncher.TransformationServiceDecorator;
+import cpw.mods.modlauncher.api.IEnvironment;
+import cpw.mods.modlauncher.api.ITransformationService;
+import cpw.mods.modlauncher.api.ITransformer;
+import org.jetbrains.annotations.NotNull;
+import org.junit.jupiter.api.Test;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Test the order transformation services run the lifecycle steps in
+ */
+class ServiceGraphTests {
+    private static final String GRAPH = "cpw.mods.modlauncher.ServiceGraph";
+    private static final String THREADS = "modlauncher.serviceThreads";
+
+    @Test
+    void testOrder() {
+        var graph = graph(
+            new Service("a", "c"),
+            new Service("b"),
+            new Service("c"),
+            new Service("d", "missing", "d")
+        );
+        assertEquals(List.of("b", "c", "a", "d"), run(graph, ServiceGraphTests::name), "Services did not run after their dependencies");
+    }
+
+    @Test
+    void testCycle() {
+        assertThrows(InvalidLauncherSetupException.class, () -> graph(
+            new Service("a", "b"),
+            new Service("b", "c"),
+            new Service("c", "a"),
+            new Service("d")
+        ), "Cycle was not detected");
+    }
+
+    @Test
+    void testConcurrent() throws Exception {
+        System.setProperty(THREADS, "4");
+        Object graph;
+        try {
+            graph = graph(
+                new Service("a"),
+                new Service("b"),
+                new Service("c", "a", "b")
+            );
+        } finally {
+            System.clearProperty(THREADS);
+        }
+
+        // Independent services only get past the latch if they run at the same time
+        var running = new CountDownLatch(2);
+        var finished = new CountDownLatch(2);
+        List<String> names = run(graph, service -> {
+            var name = name(service);
+            if (name.equals("c")) {
+                assertEquals(0, finished.getCount(), "Service ran before its dependencies finished");
+            } else {
+                running.countDown();
+                try {
+                    assertTrue(running.await(10, TimeUnit.SECONDS), "Independent services did not run concurrently");
+                } catch (InterruptedException e) {
+                    throw new IllegalStateException(e);
+                }
+                finished.countDown();
+            }
+            return name;
+        });
+        assertEquals(List.of("a", "b", "c"), names, "Results are not in order");
+
+        var failure = assertThrows(IllegalStateException.class, () -> run(graph, service -> {
+            if (name(service).equals("b"))
+                throw new IllegalStateException("b");
+            return name(service);
+        }), "Failure was not thrown");
+        assertEquals("b", failure.getMessage(), "Wrong failure was thrown");
+    }
+
+    private static Object graph(Service... services) {
+        var map = new LinkedHashMap<String, TransformationServiceDecorator>();
+        for (var service : services)
+            map.put(service.name(), UnsafeHacksUtil.newInstance(TransformationServiceDecorator.class.getName(), service));
+        return UnsafeHacksUtil.newInstance(GRAPH, map);
+    }
+
+    private static List<String> run(Object graph, Function<TransformationServiceDecorator, String> action) {
+        return UnsafeHacksUtil.invoke(graph, "run", "test", action);
+    }
+
+    private static String name(TransformationServiceDecorator decorator) {
+        return UnsafeHacksUtil.<ITransformationService>getInternalState(decorator, "service").name();
+    }
+
+    private record Service(String name, Set<String> runsAfter) implements ITransformationService {
+        private Service(String name, String... runsAfter) {
+            this(name, Set.of(runsAfter));
+        }
+
+        @Override
+        public @NotNull String name() {
+            return name;
+        }
+
+        @Override
+        public void initialize(IEnvironment environment) {
+        }
+
+        @Override
+        public void onLoad(IEnvironment env, Set<String> otherServices) {
+        }
+
+        @SuppressWarnings("rawtypes")
+        @Override
+        public @NotNull List<ITransformer> transformers() {
+            return List.of();
+        }
+    }
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright (c) Forge Development LLC
+ * SPDX-License-Identifier: LGPL-3.0-only
+ */
+
+package net.minecraftforge.modlauncher.test;
+
+import cpw.mods.modlauncher.api.IModuleLayerManager.Layer;
+import cpw.mods.modlauncher.api.ITransformer;
+import net.minecraftforge.modlauncher.harness.ModLauncherTest;
+import net.minecraftforge.modlauncher.harness.SimpleClassTransformer;
+import net.minecraftforge.modlauncher.harness.SimpleMethodTransformer;
+import net.minecraftforge.modlauncher.testjar.ModLauncherTestMarker;
+import net.minecraftforge.modlauncher.testjar.TestClass;
+import net.minecraftforge.modlauncher.testjar.TestIndirectSubclass;
+import net.minecraftforge.modlauncher.testjar.TestSubclass;
+import org.jetbrains.annotations.NotNull;
+import org.junit.jupiter.api.Test;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.tree.FieldNode;
+import org.objectweb.asm.tree.InsnNode;
+import org.objectweb.asm.tree.LdcInsnNode;
+import org.objectweb.asm.tree.MethodNode;
+
+import java.util.Set;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Test transformers targeting classes by pattern
+ */
+class TargetPatternTests {
+    @Test
+    void testPatterns() {
+        if (!ModLauncherTest.isTransformed()) {
+            ModLauncherTest.addPath(Layer.GAME, ModLauncherTest.getPath(ModLauncherTestMarker.class));
+            ModLauncherTest.addTransformer(new PatternClassTransformer(
+                ITransformer.TargetPattern.classes(ITransformer.TargetPattern.Scope.SUBCLASS, TestClass.class.getName(), ITransformer.TargetType.CLASS), "subclass_field"));
+            ModLauncherTest.addTransformer(new PatternClassTransformer(
+                ITransformer.TargetPattern.classes(ITransformer.TargetPattern.Scope.PACKAGE, TestClass.class.getPackageName(), ITransformer.TargetType.CLASS), "package_field"));
+            ModLauncherTest.addTransformer(new PatternMethodTransformer(
+                ITransformer.TargetPattern.methods(ITransformer.TargetPattern.Scope.CLASS, TestClass.class.getName(), "meth*", "()Ljava/lang/String;")));
+            ModLauncherTest.launch();
+        } else {
+            // Loaded first, while its super class is not loaded yet
+            assertEquals("added", UnsafeHacksUtil.getInternalState(TestIndirectSubclass.class, "subclass_field"), "Indirect subclass was not matched");
+            assertEquals("added", UnsafeHacksUtil.getInternalState(TestSubclass.class, "subclass_field"), "Subclass was not matched");
+            assertThrows(NoSuchFieldException.class, () -> TestClass.class.getDeclaredField("subclass_field"), "Super class matched its own subclass pattern");
+
+            assertEquals("added", UnsafeHacksUtil.getInternalState(TestClass.class, "package_field"), "Class was not matched by its package");
+            assertEquals("added", UnsafeHacksUtil.getInternalState(TestIndirectSubclass.class, "package_field"), "Class was not matched by its package");
+            assertEquals("pattern", TestClass.method(), "Method was not matched by its glob");
+        }
+    }
+
+    private static class PatternClassTransformer extends SimpleClassTransformer implements ITransformer<ClassNode> {
+        private final TargetPattern pattern;
+
+        private PatternClassTransformer(TargetPattern pattern, String field) {
+            super(TestClass.class, addField(field));
+            this.pattern = pattern;
+        }
+
+        @Override
+        public @NotNull Set<Target> targets() {
+            return Set.of();
+        }
+
+        @Override
+        public Set<TargetPattern> targetPatterns() {
+            return Set.of(pattern);
+        }
+
+        private static Function<ClassNode, ClassNode> addField(String name) {
+            return input -> {
+                input.fields.add(new FieldNode(Opcodes.ACC_PUBLIC | Opcodes.ACC_STATIC, name, "Ljava/lang/String;", null, "added"));
+                return input;
+            };
+        }
+    }
+
+    private static class PatternMethodTransformer extends SimpleMethodTransformer implements ITransformer<MethodNode> {
+        private final TargetPattern pattern;
+
+        private PatternMethodTransformer(TargetPattern pattern) {
+            super(TestClass.class, "method", "()Ljava/lang/String;", input -> {
+                input.instructions.clear();
+                input.instructions.add(new LdcInsnNode("pattern"));
+                input.instructions.add(new InsnNode(Opcodes.ARETURN));
+                return input;
+            });
+            this.pattern = pattern;
+        }
+
+        @Override
+        public @NotNull Set<Target> targets() {
+            return Set.of();
+        }
+
+        @Override
+        public Set<TargetPattern> targetPatterns() {
+            return Set.of(pattern);
+        }
+    }
+}
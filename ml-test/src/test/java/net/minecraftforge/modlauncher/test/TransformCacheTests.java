@@ -0,0 +1,194 @@
+/*
+ * Copyright (c) Forge Development LLC
+ * SPDX-License-Identifier: LGPL-3.0-only
+ */
+
+package net.minecraftforge.modlauncher.test;
+
+import com.sun.net.httpserver.HttpServer;
+import cpw.mods.modlauncher.Launcher;
+import cpw.mods.modlauncher.TransformingClassLoader;
+import cpw.mods.modlauncher.api.ITransformerActivity;
+import cpw.mods.modlauncher.serviceapi.ITransformCacheBackend;
+import net.minecraftforge.modlauncher.harness.ModLauncherTest;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.http.HttpTimeoutException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Test the transformed class cache
+ */
+class TransformCacheTests {
+    private static final String CACHE_DIR = "modlauncher.cacheDir";
+    private static final String BACKENDS = "modlauncher.cacheBackends";
+    private static final String MAX_SIZE = "modlauncher.cacheMaxSize";
+    private static final String CACHE_URL = "modlauncher.cacheUrl";
+    private static final String CACHE_TIMEOUT = "modlauncher.cacheTimeout";
+
+    @Test
+    void testHitMissAndCorrupt() throws Exception {
+        if (!ModLauncherTest.isTransformed()) {
+            System.setProperty(CACHE_DIR, Files.createTempDirectory("mltest-cache").toString());
+            System.setProperty(BACKENDS, "directory");
+            try {
+                ModLauncherTest.launch();
+            } finally {
+                System.clearProperty(CACHE_DIR);
+                System.clearProperty(BACKENDS);
+            }
+            return;
+        }
+
+        TransformingClassLoader loader = UnsafeHacksUtil.getInternalState(Launcher.INSTANCE, "classLoader");
+        Object transformer = UnsafeHacksUtil.getInternalState(loader, "classTransformer");
+        Object cache = UnsafeHacksUtil.getInternalState(transformer, "cache");
+        assertNotNull(cache, "Transform cache was not enabled");
+        var root = Path.of(System.getProperty(CACHE_DIR)).resolve("classes");
+
+        final byte[] input = { 1, 2, 3 };
+        final byte[] output = { 4, 5, 6 };
+        String key = UnsafeHacksUtil.invoke(cache, "key", new byte[32], "test.Cached", ITransformerActivity.CLASSLOADING_REASON);
+        assertNotEquals(key, UnsafeHacksUtil.invoke(cache, "key", new byte[32], "test.Cached", ITransformerActivity.COMPUTING_FRAMES_REASON), "Reason is not part of the key");
+
+        long misses = count(cache, "getMisses");
+        assertNull(UnsafeHacksUtil.invoke(cache, "get", key, input), "Empty cache returned an entry");
+        assertEquals(misses + 1, count(cache, "getMisses"), "Miss was not counted");
+
+        UnsafeHacksUtil.invoke(cache, "put", key, input, output);
+        var entry = waitFor(root, key);
+        long hits = count(cache, "getHits");
+        assertArrayEquals(output, UnsafeHacksUtil.<byte[]>invoke(cache, "get", key, input), "Cached class does not match");
+        assertEquals(hits + 1, count(cache, "getHits"), "Hit was not counted");
+
+        String unchanged = UnsafeHacksUtil.invoke(cache, "key", new byte[32], "test.Unchanged", ITransformerActivity.CLASSLOADING_REASON);
+        UnsafeHacksUtil.invoke(cache, "put", unchanged, input, input);
+        waitFor(root, unchanged);
+        assertSame(input, UnsafeHacksUtil.invoke(cache, "get", unchanged, input), "Untouched class was not returned as is");
+
+        Files.write(entry, new byte[] { 'M', 'L', 'T', 'C', 0 });
+        long corrupt = count(cache, "getCorrupt");
+        assertNull(UnsafeHacksUtil.invoke(cache, "get", key, input), "Corrupt entry was returned");
+        assertEquals(corrupt + 1, count(cache, "getCorrupt"), "Corrupt entry was not counted");
+        assertEquals(0, count(cache, "getEvictions"), "Entries were evicted below the size cap");
+    }
+
+    @Test
+    void testDirectoryEviction() throws Exception {
+        var dir = Files.createTempDirectory("mltest-cache");
+        System.setProperty(CACHE_DIR, dir.toString());
+        System.setProperty(MAX_SIZE, "1");
+        try {
+            ITransformCacheBackend backend = UnsafeHacksUtil.newInstance("cpw.mods.modlauncher.DirectoryCacheBackend");
+            assertTrue(backend.initialize(), "Directory backend was not enabled");
+            var root = dir.resolve("classes");
+            var data = new byte[400 * 1024];
+
+            // Timestamps are set explicitly, so the order does not depend on the file system resolution
+            backend.put("aa01", data);
+            backend.put("aa01", data);
+            assertEquals(data.length, count(backend, "getSize"), "Replaced entry was counted twice");
+            Files.setLastModifiedTime(root.resolve("aa").resolve("01"), FileTime.fromMillis(1000));
+            backend.put("bb02", data);
+            Files.setLastModifiedTime(root.resolve("bb").resolve("02"), FileTime.fromMillis(2000));
+            backend.put("cc03", data);
+
+            assertNull(backend.get("aa01"), "Least recently used entry was not evicted");
+            assertNotNull(backend.get("bb02"), "Evicted more than needed");
+            assertNotNull(backend.get("cc03"), "Evicted the newest entry");
+            assertEquals(1, count(backend, "getEvictions"), "Eviction was not counted");
+            assertEquals(2L * data.length, count(backend, "getSize"), "Size does not match the remaining entries");
+        } finally {
+            System.clearProperty(CACHE_DIR);
+            System.clearProperty(MAX_SIZE);
+        }
+    }
+
+    @Test
+    void testHttp() throws Exception {
+        ITransformCacheBackend backend = UnsafeHacksUtil.newInstance("cpw.mods.modlauncher.HttpCacheBackend");
+        assertFalse(backend.initialize(), "HTTP backend was enabled without a URL");
+
+        // A blob store which fails for keys starting with "bad", and answers too late for keys starting with "slow"
+        var blobs = new ConcurrentHashMap<String, byte[]>();
+        var server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/cache/", exchange -> {
+            var key = exchange.getRequestURI().getPath().substring("/cache/".length());
+            try (exchange) {
+                if (key.startsWith("bad")) {
+                    exchange.sendResponseHeaders(500, -1);
+                } else if (key.startsWith("slow")) {
+                    Thread.sleep(5000);
+                    exchange.sendResponseHeaders(404, -1);
+                } else if (exchange.getRequestMethod().equals("PUT")) {
+                    blobs.put(key, exchange.getRequestBody().readAllBytes());
+                    exchange.sendResponseHeaders(201, -1);
+                } else if (blobs.containsKey(key)) {
+                    var data = blobs.get(key);
+                    exchange.sendResponseHeaders(200, data.length);
+                    exchange.getResponseBody().write(data);
+                } else {
+                    exchange.sendResponseHeaders(404, -1);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        var executor = Executors.newCachedThreadPool();
+        server.setExecutor(executor);
+        server.start();
+        System.setProperty(CACHE_URL, "http://" + server.getAddress().getHostString() + ':' + server.getAddress().getPort() + "/cache");
+        System.setProperty(CACHE_TIMEOUT, "1000");
+        try {
+            assertTrue(backend.initialize(), "HTTP backend was not enabled");
+
+            var data = new byte[] { 1, 2, 3 };
+            assertNull(backend.get("aa01"), "Missing entry was returned");
+            backend.put("aa01", data);
+            assertArrayEquals(data, blobs.get("aa01"), "Entry was not uploaded");
+            assertArrayEquals(data, backend.get("aa01"), "Stored entry does not match");
+
+            assertThrows(IOException.class, () -> backend.get("bad01"), "Failed GET was not reported");
+            assertThrows(IOException.class, () -> backend.put("bad01", data), "Failed PUT was not reported");
+            assertThrows(HttpTimeoutException.class, () -> backend.get("slow01"), "Slow GET did not time out");
+            assertThrows(HttpTimeoutException.class, () -> backend.put("slow01", data), "Slow PUT did not time out");
+        } finally {
+            System.clearProperty(CACHE_URL);
+            System.clearProperty(CACHE_TIMEOUT);
+            server.stop(0);
+            executor.shutdownNow();
+        }
+    }
+
+    private static long count(Object cache, String getter) {
+        return UnsafeHacksUtil.<Long>invoke(cache, getter);
+    }
+
+    /**
+     * Entries are written on a background thread.
+     */
+    private static Path waitFor(Path root, String key) throws InterruptedException {
+        var ret = root.resolve(key.substring(0, 2)).resolve(key.substring(2));
+        for (int i = 0; i < 500 && !Files.exists(ret); i++)
+            Thread.sleep(10);
+        assertTrue(Files.exists(ret), "Cache entry " + key + " was not written");
+        return ret;
+    }
+}
@@ -26,7 +26,6 @@ import org.objectweb.asm.tree.MethodNode;
 import java.util.EnumMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
 import java.util.function.Function;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertTrue;
@@ -53,11 +52,13 @@ class TransformStoreTests {
 
             TransformStore store = UnsafeHacksUtil.getInternalState(Launcher.INSTANCE, "transformStore");
             EnumMap<LabelType, TransformList<?>> transformers = UnsafeHacksUtil.getInternalState(store, "transformers");
-            Set<String> targettedClasses = UnsafeHacksUtil.getInternalState(store, "classNeedsTransforming");
+            Object index = UnsafeHacksUtil.getInternalState(store, "index");
+            assertNotNull(index, "Transformers were not indexed");
+            Map<String, ?> targettedClasses = UnsafeHacksUtil.getInternalState(index, "classes");
             assertTrue(transformers.containsKey(LabelType.CLASS), "No Class Transformers not found");
             assertTrue(transformers.containsKey(LabelType.FIELD), "No Field Transformers not found");
             assertTrue(transformers.containsKey(LabelType.METHOD), "No Method Transformers not found");
-            assertTrue(targettedClasses.contains(Type.getInternalName(TestClass.class)), "TestClass was not found in classes needing transformed");
+            assertTrue(targettedClasses.containsKey(Type.getInternalName(TestClass.class)), "TestClass was not found in classes needing transformed");
 
             assertNotNull(expected, "Expected test transformers were not found");
             check(LabelType.CLASS.getFromMap(transformers), expected.cls, "Class Transformer not found");
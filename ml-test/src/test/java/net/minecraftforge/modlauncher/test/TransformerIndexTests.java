@@ -0,0 +1,158 @@
+/*
+ * Copyright (c) Forge Development LLC
+ * SPDX-License-Identifier: LGPL-3.0-only
+ */
+
+package net.minecraftforge.modlauncher.test;
+
+import cpw.mods.modlauncher.TransformStore;
+import cpw.mods.modlauncher.TransformTargetLabel;
+import cpw.mods.modlauncher.api.IEnvironment;
+import cpw.mods.modlauncher.api.ITransformationService;
+import cpw.mods.modlauncher.api.ITransformer;
+import cpw.mods.modlauncher.api.ITransformer.TargetPattern;
+import net.minecraftforge.modlauncher.harness.SimpleClassTransformer;
+import net.minecraftforge.modlauncher.harness.SimpleMethodTransformer;
+import net.minecraftforge.modlauncher.testjar.TestClass;
+import org.jetbrains.annotations.NotNull;
+import org.junit.jupiter.api.Test;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.tree.MethodNode;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Test the index of transformers by the class they target, built when the transform store is first used
+ */
+class TransformerIndexTests {
+    private static final ITransformationService SERVICE = new Service();
+    private static final String CLASS = TestClass.class.getName();
+    private static final String INTERNAL = CLASS.replace('.', '/');
+
+    @Test
+    void testByName() {
+        var store = new TransformStore();
+        var cls = new PriorityTransformer(0);
+        var method = new SimpleMethodTransformer(TestClass.class, "method", "()Ljava/lang/String;", Function.identity());
+        addTransformer(store, new TransformTargetLabel(CLASS), cls);
+        addTransformer(store, UnsafeHacksUtil.newInstance("cpw.mods.modlauncher.TransformTargetLabel", CLASS, "method", "()Ljava/lang/String;"), method);
+
+        Object targets = get(store, CLASS);
+        assertNotNull(targets, "Targeted class was not found");
+        assertSame(targets, get(store, INTERNAL), "Internal name did not find the same class");
+        assertNull(get(store, CLASS + "Other"), "Class sharing a prefix was found");
+        assertNull(get(store, TestClass.class.getPackageName() + ".Other"), "Class of the same package was found");
+
+        assertEquals(List.of(cls), wrapped(UnsafeHacksUtil.invoke(targets, "getClassTransformers")), "Class transformers do not match");
+        assertTrue((boolean) UnsafeHacksUtil.invoke(targets, "hasMethodTransformers"), "Class has no method transformers");
+        assertFalse((boolean) UnsafeHacksUtil.invoke(targets, "hasFieldTransformers"), "Class has field transformers");
+        assertEquals(List.of(method), wrapped(UnsafeHacksUtil.invoke(targets, "getMethodTransformers", methodNode("()Ljava/lang/String;"))), "Method transformers do not match");
+        assertEquals(List.of(), wrapped(UnsafeHacksUtil.invoke(targets, "getMethodTransformers", methodNode("()V"))), "Method with another descriptor was targeted");
+    }
+
+    @Test
+    void testOrder() {
+        var store = new TransformStore();
+        var low = new PriorityTransformer(-1);
+        var first = new PriorityTransformer(0);
+        var high = new PriorityTransformer(10);
+        var second = new PriorityTransformer(0);
+        for (var transformer : List.of(low, first, high, second))
+            addTransformer(store, new TransformTargetLabel(CLASS), transformer);
+
+        Object targets = get(store, CLASS);
+        assertEquals(List.of(high, first, second, low), wrapped(UnsafeHacksUtil.invoke(targets, "getClassTransformers")), "Transformers are not in priority then registration order");
+    }
+
+    @Test
+    void testPatterns() {
+        var store = new TransformStore();
+        var exact = new PriorityTransformer(0);
+        var pkg = new PriorityTransformer(1);
+        addTransformer(store, new TransformTargetLabel("test.pkg.A"), exact);
+        addPattern(store, TargetPattern.classes(TargetPattern.Scope.PACKAGE, "test.pkg", ITransformer.TargetType.CLASS), pkg);
+
+        assertEquals(List.of(pkg, exact), wrapped(UnsafeHacksUtil.invoke(get(store, "test.pkg.A"), "getClassTransformers")), "Pattern was not merged with the class");
+        Object b = get(store, "test.pkg.B");
+        assertEquals(List.of(pkg), wrapped(UnsafeHacksUtil.invoke(b, "getClassTransformers")), "Class was not matched by its package");
+        assertSame(b, get(store, "test/pkg/C"), "Classes matched by the same patterns do not share their entry");
+        assertEquals(List.of(pkg), wrapped(UnsafeHacksUtil.invoke(get(store, "test.pkg.sub.D"), "getClassTransformers")), "Class was not matched by its parent package");
+        assertNull(get(store, "test.pkgs.E"), "Class of a package sharing a prefix was matched");
+        assertNull(get(store, "test.F"), "Class of the parent package was matched");
+    }
+
+    @Test
+    void testRebuilt() {
+        var store = new TransformStore();
+        assertNull(get(store, CLASS), "Class was found in an empty store");
+        var cls = new PriorityTransformer(0);
+        addTransformer(store, new TransformTargetLabel(CLASS), cls);
+        assertEquals(List.of(cls), wrapped(UnsafeHacksUtil.invoke(get(store, CLASS), "getClassTransformers")), "Index was not rebuilt after adding a transformer");
+    }
+
+    private static void addTransformer(TransformStore store, TransformTargetLabel label, ITransformer<?> transformer) {
+        UnsafeHacksUtil.invoke(store, "addTransformer", label, transformer, SERVICE);
+    }
+
+    private static void addPattern(TransformStore store, TargetPattern pattern, ITransformer<?> transformer) {
+        UnsafeHacksUtil.invoke(store, "addPattern", pattern, transformer, SERVICE);
+    }
+
+    private static Object get(TransformStore store, String className) {
+        return UnsafeHacksUtil.invoke(store, "getTransformersFor", className);
+    }
+
+    private static List<Object> wrapped(ITransformer<?>[] holders) {
+        return Arrays.stream(holders).map(h -> UnsafeHacksUtil.invoke(h, "wrapped")).toList();
+    }
+
+    private static MethodNode methodNode(String descriptor) {
+        return new MethodNode(Opcodes.ACC_PUBLIC, "method", descriptor, null, null);
+    }
+
+    private static class PriorityTransformer extends SimpleClassTransformer implements ITransformer<ClassNode> {
+        private final int priority;
+
+        private PriorityTransformer(int priority) {
+            super(TestClass.class, Function.identity());
+            this.priority = priority;
+        }
+
+        @Override
+        public int priority() {
+            return priority;
+        }
+    }
+
+    private static class Service implements ITransformationService {
+        @Override
+        public @NotNull String name() {
+            return "test";
+        }
+
+        @Override
+        public void initialize(IEnvironment environment) {
+        }
+
+        @Override
+        public void onLoad(IEnvironment env, Set<String> otherServices) {
+        }
+
+        @SuppressWarnings("rawtypes")
+        @Override
+        public @NotNull List<ITransformer> transformers() {
+            return List.of();
+        }
+    }
+}
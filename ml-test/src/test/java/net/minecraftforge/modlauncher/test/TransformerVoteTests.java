@@ -0,0 +1,104 @@
+/*
+ * Copyright (c) Forge Development LLC
+ * SPDX-License-Identifier: LGPL-3.0-only
+ */
+
+package net.minecraftforge.modlauncher.test;
+
+import cpw.mods.modlauncher.api.IModuleLayerManager.Layer;
+import cpw.mods.modlauncher.api.ITransformer;
+import cpw.mods.modlauncher.api.ITransformerVotingContext;
+import cpw.mods.modlauncher.api.TransformerVoteResult;
+import net.minecraftforge.modlauncher.harness.ModLauncherTest;
+import net.minecraftforge.modlauncher.harness.SimpleClassTransformer;
+import net.minecraftforge.modlauncher.testjar.ModLauncherTestMarker;
+import net.minecraftforge.modlauncher.testjar.TestClass;
+import org.jetbrains.annotations.NotNull;
+import org.junit.jupiter.api.Test;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.tree.FieldNode;
+
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Test the order transformers vote in
+ */
+class TransformerVoteTests {
+    private static final String SERVICE = "test.harness.transformer.service";
+
+    @Test
+    void testVoteOrder() {
+        if (!ModLauncherTest.isTransformed()) {
+            ModLauncherTest.addPath(Layer.GAME, ModLauncherTest.getPath(ModLauncherTestMarker.class));
+            // Asked first, but defers until everyone else had their turn
+            ModLauncherTest.addTransformer(new OrderedTransformer("d", "deferred", 100, Set.of(), TransformerVoteResult.DEFER));
+            ModLauncherTest.addTransformer(new OrderedTransformer("c", "second", 0, Set.of(SERVICE + ":third"), TransformerVoteResult.YES));
+            ModLauncherTest.addTransformer(new OrderedTransformer("b", "third", 0, Set.of(), TransformerVoteResult.YES));
+            ModLauncherTest.addTransformer(new OrderedTransformer("x", "never", 0, Set.of(), TransformerVoteResult.NO));
+            ModLauncherTest.addTransformer(new OrderedTransformer("a", "first", 10, Set.of(), TransformerVoteResult.YES));
+            ModLauncherTest.launch();
+        } else {
+            assertEquals("abcd", UnsafeHacksUtil.getInternalState(TestClass.class, "vote_order"), "Transformers did not run in order");
+        }
+    }
+
+    /**
+     * Appends its value to a string field of the class when it runs, so the field ends up listing the transformers that
+     * ran, in order.
+     */
+    private static class OrderedTransformer extends SimpleClassTransformer implements ITransformer<ClassNode> {
+        private final String label;
+        private final int priority;
+        private final Set<String> runsAfter;
+        private final TransformerVoteResult vote;
+        private final AtomicInteger votes = new AtomicInteger();
+
+        private OrderedTransformer(String value, String label, int priority, Set<String> runsAfter, TransformerVoteResult vote) {
+            super(TestClass.class, append(value));
+            this.label = label;
+            this.priority = priority;
+            this.runsAfter = runsAfter;
+            this.vote = vote;
+        }
+
+        @Override
+        public String[] labels() {
+            return new String[] { label };
+        }
+
+        @Override
+        public int priority() {
+            return priority;
+        }
+
+        @Override
+        public Set<String> runsAfter() {
+            return runsAfter;
+        }
+
+        @Override
+        public @NotNull TransformerVoteResult castVote(ITransformerVotingContext context) {
+            // Deferring voters are asked twice each time the class is transformed
+            if (vote == TransformerVoteResult.DEFER)
+                return votes.incrementAndGet() % 2 == 1 ? TransformerVoteResult.DEFER : TransformerVoteResult.YES;
+            return vote;
+        }
+
+        private static Function<ClassNode, ClassNode> append(String value) {
+            return input -> {
+                var field = input.fields.stream().filter(f -> f.name.equals("vote_order")).findFirst().orElse(null);
+                if (field == null) {
+                    field = new FieldNode(Opcodes.ACC_PUBLIC | Opcodes.ACC_STATIC, "vote_order", "Ljava/lang/String;", null, "");
+                    input.fields.add(field);
+                }
+                field.value = field.value + value;
+                return input;
+            };
+        }
+    }
+}
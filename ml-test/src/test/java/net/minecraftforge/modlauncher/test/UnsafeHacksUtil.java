@@ -7,6 +7,8 @@ package net.minecraftforge.modlauncher.test;
 
 import net.minecraftforge.unsafe.UnsafeHacks;
 
+import java.lang.reflect.InvocationTargetException;
+
 public class UnsafeHacksUtil {
     @SuppressWarnings("unchecked")
     public static <T> T getInternalState(Object obj, String fieldName) {
@@ -30,6 +32,57 @@ public class UnsafeHacksUtil {
         }
     }
 
+    /**
+     * Invokes the declared method with that name and number of parameters.
+     */
+    public static <T> T invoke(Object obj, String methodName, Object... args) {
+        return invokeDeclared(obj.getClass(), obj, methodName, args);
+    }
+
+    /**
+     * Invokes the declared static method with that name and number of parameters.
+     */
+    public static <T> T invoke(Class<?> cls, String methodName, Object... args) {
+        return invokeDeclared(cls, null, methodName, args);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T invokeDeclared(Class<?> cls, Object obj, String methodName, Object... args) {
+        try {
+            for (var mtd : cls.getDeclaredMethods()) {
+                if (mtd.getName().equals(methodName) && mtd.getParameterCount() == args.length) {
+                    UnsafeHacks.setAccessible(mtd);
+                    return (T)mtd.invoke(obj, args);
+                }
+            }
+            throw new NoSuchMethodException(cls.getName() + '.' + methodName);
+        } catch (InvocationTargetException e) {
+            return sneak(e.getCause());
+        } catch (Exception e) {
+            return sneak(e);
+        }
+    }
+
+    /**
+     * Creates an instance through the declared constructor with that number of parameters.
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> T newInstance(String className, Object... args) {
+        try {
+            for (var ctr : Class.forName(className).getDeclaredConstructors()) {
+                if (ctr.getParameterCount() == args.length) {
+                    UnsafeHacks.setAccessible(ctr);
+                    return (T)ctr.newInstance(args);
+                }
+            }
+            throw new NoSuchMethodException(className + ".<init>");
+        } catch (InvocationTargetException e) {
+            return sneak(e.getCause());
+        } catch (Exception e) {
+            return sneak(e);
+        }
+    }
+
     @SuppressWarnings("unchecked")
     private static <E extends Throwable, R> R sneak(Throwable e) throws E {
         throw (E)e;
@@ -0,0 +1,108 @@
+/*
+ * Copyright (c) Forge Development LLC
+ * SPDX-License-Identifier: LGPL-3.0-only
+ */
+
+package net.minecraftforge.modlauncher.test;
+
+import org.junit.jupiter.api.Test;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.tree.InsnNode;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Test that untouched methods are copied from the original class bytes. Copied methods keep the max stack they were
+ * written with, which is deliberately too large, while methods written from the tree get it computed again.
+ */
+class UntouchedMethodsTests {
+    private static final String UNTOUCHED = "cpw.mods.modlauncher.UntouchedMethods";
+    private static final int ORIGINAL_MAX_STACK = 10;
+
+    @Test
+    void testCopiesUntouched() {
+        var reader = new ClassReader(original());
+        var clazz = read(reader);
+        Object untouched = UnsafeHacksUtil.newInstance(UNTOUCHED, reader, clazz, false);
+        UnsafeHacksUtil.invoke(untouched, "touched", clazz.methods.get(1));
+
+        var written = write(untouched, reader, clazz);
+        assertEquals(ORIGINAL_MAX_STACK, written.methods.get(0).maxStack, "Untouched method was not copied");
+        assertEquals(1, written.methods.get(1).maxStack, "Touched method was copied");
+
+        UnsafeHacksUtil.invoke(untouched, "touchedAll");
+        UnsafeHacksUtil.invoke(untouched, "resolve", clazz);
+        assertTrue(UnsafeHacksUtil.<Boolean>invoke(untouched, "isEmpty"), "Methods are untouched after touching all");
+    }
+
+    @Test
+    void testPerMethodFrames() {
+        var reader = new ClassReader(original());
+        var clazz = read(reader);
+        Object untouched = UnsafeHacksUtil.newInstance(UNTOUCHED, reader, clazz, true);
+        // Touched but unchanged methods are found by comparing them to the original
+        UnsafeHacksUtil.invoke(untouched, "touchedAll");
+        var changed = clazz.methods.get(1).instructions;
+        changed.insert(new InsnNode(Opcodes.POP));
+        changed.insert(new InsnNode(Opcodes.ICONST_1));
+
+        var written = write(untouched, reader, clazz);
+        assertEquals(ORIGINAL_MAX_STACK, written.methods.get(0).maxStack, "Unchanged method was not copied");
+        assertEquals(1, written.methods.get(1).maxStack, "Changed method was copied");
+
+        // Frames are only valid for the hierarchy they were computed against
+        reader = new ClassReader(original());
+        clazz = read(reader);
+        untouched = UnsafeHacksUtil.newInstance(UNTOUCHED, reader, clazz, true);
+        UnsafeHacksUtil.invoke(untouched, "touchedAll");
+        clazz.superName = "java/lang/Number";
+        UnsafeHacksUtil.invoke(untouched, "resolve", clazz);
+        assertTrue(UnsafeHacksUtil.<Boolean>invoke(untouched, "isEmpty"), "Methods were copied into a different hierarchy");
+    }
+
+    @Test
+    void testCopiesOnlyMatchingVersion() {
+        var reader = new ClassReader(original());
+        var clazz = read(reader);
+        Object untouched = UnsafeHacksUtil.newInstance(UNTOUCHED, reader, clazz, false);
+        clazz.version = Opcodes.V17;
+        assertFalse(UnsafeHacksUtil.<Boolean>invoke(untouched, "copies", clazz, clazz.methods.get(0)), "Method is copied into a different class version");
+    }
+
+    private static ClassNode read(ClassReader reader) {
+        var ret = new ClassNode(Opcodes.ASM9);
+        reader.accept(ret, 0);
+        return ret;
+    }
+
+    private static ClassNode write(Object untouched, ClassReader reader, ClassNode clazz) {
+        UnsafeHacksUtil.invoke(untouched, "resolve", clazz);
+        var cw = new ClassWriter(reader, ClassWriter.COMPUTE_MAXS);
+        UnsafeHacksUtil.invoke(untouched, "accept", clazz, cw);
+        return read(new ClassReader(cw.toByteArray()));
+    }
+
+    /**
+     * @return A class with two static methods, both written with a max stack larger than they need
+     */
+    private static byte[] original() {
+        var cw = new ClassWriter(0);
+        cw.visit(Opcodes.V16, Opcodes.ACC_PUBLIC, "test/Untouched", null, "java/lang/Object", null);
+        for (var name : new String[] { "first", "second" }) {
+            var mv = cw.visitMethod(Opcodes.ACC_PUBLIC | Opcodes.ACC_STATIC, name, "()V", null, null);
+            mv.visitCode();
+            mv.visitInsn(Opcodes.ICONST_0);
+            mv.visitInsn(Opcodes.POP);
+            mv.visitInsn(Opcodes.RETURN);
+            mv.visitMaxs(ORIGINAL_MAX_STACK, 0);
+            mv.visitEnd();
+        }
+        cw.visitEnd();
+        return cw.toByteArray();
+    }
+}
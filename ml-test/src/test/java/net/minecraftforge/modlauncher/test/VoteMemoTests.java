@@ -0,0 +1,159 @@
+/*
+ * Copyright (c) Forge Development LLC
+ * SPDX-License-Identifier: LGPL-3.0-only
+ */
+
+package net.minecraftforge.modlauncher.test;
+
+import cpw.mods.modlauncher.api.ITransformer;
+import cpw.mods.modlauncher.api.ITransformerActivity;
+import cpw.mods.modlauncher.api.ITransformerVotingContext;
+import cpw.mods.modlauncher.api.TransformerVoteResult;
+import net.minecraftforge.modlauncher.harness.SimpleClassTransformer;
+import net.minecraftforge.modlauncher.testjar.TestClass;
+import org.jetbrains.annotations.NotNull;
+import org.junit.jupiter.api.Test;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.tree.MethodNode;
+
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Test remembering the votes of deterministic transformers, and only reusing the ones that looked at the reason for
+ * that reason
+ */
+class VoteMemoTests {
+    private static final String VOTE_MEMO = "cpw.mods.modlauncher.VoteMemo";
+    private static final String LOADING = ITransformerActivity.CLASSLOADING_REASON;
+    private static final String FRAMES = ITransformerActivity.COMPUTING_FRAMES_REASON;
+
+    @Test
+    void testReused() {
+        Object memo = UnsafeHacksUtil.newInstance(VOTE_MEMO);
+        var transformer = new CountingTransformer(true, false);
+        var node = new ClassNode();
+        assertEquals(TransformerVoteResult.YES, vote(memo, transformer, node, context("test.A", FRAMES)), "Vote does not match");
+        assertEquals(TransformerVoteResult.YES, vote(memo, transformer, node, context("test.A", FRAMES)), "Remembered vote does not match");
+        var loading = context("test.A", LOADING);
+        vote(memo, transformer, node, loading);
+        assertEquals(1, transformer.votes, "Vote was not reused");
+        assertFalse((boolean) UnsafeHacksUtil.invoke(loading, "isReasonObserved"), "Reused vote observed the reason");
+
+        vote(memo, transformer, node, context("test.B", LOADING));
+        assertEquals(2, transformer.votes, "Vote was reused for another class");
+        vote(memo, transformer, new MethodNode(Opcodes.ACC_PUBLIC, "method", "()V", null, null), context("test.A", LOADING));
+        vote(memo, transformer, new MethodNode(Opcodes.ACC_PUBLIC, "method", "(I)V", null, null), context("test.A", LOADING));
+        assertEquals(4, transformer.votes, "Vote was reused for another element");
+
+        var other = new CountingTransformer(true, false);
+        vote(memo, other, node, context("test.A", LOADING));
+        assertEquals(1, other.votes, "Vote was reused for another transformer");
+    }
+
+    @Test
+    void testNotDeterministic() {
+        Object memo = UnsafeHacksUtil.newInstance(VOTE_MEMO);
+        var transformer = new CountingTransformer(false, false);
+        var node = new ClassNode();
+        vote(memo, transformer, node, context("test.A", LOADING));
+        vote(memo, transformer, node, context("test.A", LOADING));
+        assertEquals(2, transformer.votes, "Vote of a transformer that is not deterministic was reused");
+        assertTrue(((Map<?, ?>) UnsafeHacksUtil.getInternalState(memo, "votes")).isEmpty(), "Vote of a transformer that is not deterministic was remembered");
+    }
+
+    @Test
+    void testReasonObserved() {
+        Object memo = UnsafeHacksUtil.newInstance(VOTE_MEMO);
+        var transformer = new CountingTransformer(true, true);
+        var node = new ClassNode();
+        vote(memo, transformer, node, context("test.A", FRAMES));
+        var replayed = context("test.A", FRAMES);
+        vote(memo, transformer, node, replayed);
+        assertEquals(1, transformer.votes, "Vote was not reused for the reason it observed");
+        assertTrue((boolean) UnsafeHacksUtil.invoke(replayed, "isReasonObserved"), "Reused vote did not observe the reason");
+
+        vote(memo, transformer, node, context("test.A", LOADING));
+        assertEquals(2, transformer.votes, "Vote was reused for another reason than the one it observed");
+    }
+
+    @Test
+    void testObservedBefore() {
+        // Another vote on the same context looked at the reason first, so this one can't be told apart from it
+        Object memo = UnsafeHacksUtil.newInstance(VOTE_MEMO);
+        var transformer = new CountingTransformer(true, false);
+        var node = new ClassNode();
+        var observed = context("test.A", FRAMES);
+        UnsafeHacksUtil.invoke(observed, "observeReason");
+        vote(memo, transformer, node, observed);
+        vote(memo, transformer, node, context("test.A", FRAMES));
+        assertEquals(1, transformer.votes, "Vote was not reused for the same reason");
+        vote(memo, transformer, node, context("test.A", LOADING));
+        assertEquals(2, transformer.votes, "Vote cast after the reason was observed was reused for another reason");
+    }
+
+    @Test
+    void testLimit() {
+        Object memo = UnsafeHacksUtil.newInstance(VOTE_MEMO);
+        int limit = UnsafeHacksUtil.getInternalState(classForName(VOTE_MEMO), "LIMIT");
+        Map<?, ?> votes = UnsafeHacksUtil.getInternalState(memo, "votes");
+        var transformer = new CountingTransformer(true, false);
+        var node = new ClassNode();
+        for (int i = 0; i < limit; i++)
+            vote(memo, transformer, node, context("test.C" + i, LOADING));
+        assertEquals(limit, votes.size(), "Votes were not remembered up to the limit");
+
+        vote(memo, transformer, node, context("test.Full", LOADING));
+        assertEquals(1, votes.size(), "Memo did not start over when full");
+        vote(memo, transformer, node, context("test.C0", LOADING));
+        assertEquals(limit + 2, transformer.votes, "Vote was remembered past the limit");
+    }
+
+    private static TransformerVoteResult vote(Object memo, ITransformer<?> transformer, Object node, Object context) {
+        return UnsafeHacksUtil.invoke(memo, "castVote", transformer, node, context);
+    }
+
+    private static Object context(String className, String reason) {
+        return UnsafeHacksUtil.newInstance("cpw.mods.modlauncher.VotingContext", className, true, (Supplier<byte[]>) () -> new byte[0], List.of(), reason);
+    }
+
+    private static Class<?> classForName(String name) {
+        try {
+            return Class.forName(name);
+        } catch (ClassNotFoundException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static class CountingTransformer extends SimpleClassTransformer implements ITransformer<ClassNode> {
+        private final boolean deterministic;
+        private final boolean readsReason;
+        private int votes;
+
+        private CountingTransformer(boolean deterministic, boolean readsReason) {
+            super(TestClass.class, Function.identity());
+            this.deterministic = deterministic;
+            this.readsReason = readsReason;
+        }
+
+        @Override
+        public @NotNull TransformerVoteResult castVote(ITransformerVotingContext context) {
+            votes++;
+            if (readsReason)
+                context.getReason();
+            return TransformerVoteResult.YES;
+        }
+
+        @Override
+        public boolean isVoteDeterministic() {
+            return deterministic;
+        }
+    }
+}
@@ -46,7 +46,7 @@ class SimpleTransformer<T> implements ITransformer<T> {
     @Override
     public String toString() {
         String desc = switch (target.getTargetType()) {
-            case CLASS, PRE_CLASS -> target.className();
+            case CLASS, PRE_CLASS, CLASS_VISITOR -> target.className();
             case FIELD -> target.className() + '.' + target.elementName();
             case METHOD -> target.className() + '.' + target.elementName() + target.elementDescriptor();
         };
@@ -24,6 +24,7 @@ public class ArgumentHandler {
     //private OptionSpec<String> nonOption;
     private OptionSpec<String> launchTarget;
     private OptionSpec<String> uuidOption;
+    private OptionSpec<Path> bakeOption;
 
     record DiscoveryData(Path gameDir, String launchTarget, String[] arguments) {}
 
@@ -46,6 +47,7 @@ public class ArgumentHandler {
         minecraftJarOption = parser.accepts("minecraftJar", "Path to minecraft jar").withRequiredArg().withValuesConvertedBy(new PathConverter(PathProperties.READABLE)).withValuesSeparatedBy(',');
         uuidOption = parser.accepts("uuid", "The UUID of the logging in player").withRequiredArg();
         launchTarget = parser.accepts("launchTarget", "LauncherService target to launch").withRequiredArg();
+        bakeOption = parser.accepts("bakeTo", "Transform the game classes into this jar instead of launching").withRequiredArg().withValuesConvertedBy(new PathConverter());
 
         parserConsumer.accept(parser);
         /*this.nonOption =*/ parser.nonOptions();
@@ -66,6 +68,10 @@ public class ArgumentHandler {
         return this.optionSet.valueOf(launchTarget);
     }
 
+    Optional<Path> getBakeTarget() {
+        return Optional.ofNullable(this.optionSet.valueOf(bakeOption));
+    }
+
     private static ITransformationService.OptionResult optionResults(String serviceName, OptionSet set) {
         return new ITransformationService.OptionResult() {
             @Override
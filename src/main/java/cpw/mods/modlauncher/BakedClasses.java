@@ -0,0 +1,285 @@
+/*
+ * Copyright (c) Forge Development LLC
+ * SPDX-License-Identifier: LGPL-3.0-only
+ */
+
+package cpw.mods.modlauncher;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.module.ModuleReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.jar.Attributes;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+
+import static cpw.mods.modlauncher.LogMarkers.MODLAUNCHER;
+
+/**
+ * Game classes transformed ahead of time into a jar, see {@link #bake}. The manifest of the jar holds the fingerprint
+ * of the transformers and game jars that baked it (see {@link TransformCache#computeFingerprint}), and a section per
+ * class with the SHA-256 of its untransformed bytes. Classes the transformers left alone have a section but no entry.
+ * <p>
+ * At runtime the jar named by {@link #BAKED_JAR_PROPERTY} replaces transforming a class for loading, as long as the
+ * class bytes and the fingerprint are still the same as when it was baked. Like a {@link TransformCache}
+ * hit this skips the whole pipeline, plugin callbacks included. Anything else is transformed as usual.
+ */
+final class BakedClasses {
+    private static final Logger LOGGER = LogManager.getLogger();
+    /** Baked jar to load transformed classes from */
+    static final String BAKED_JAR_PROPERTY = "modlauncher.bakedJar";
+    /** Number of threads transforming classes while baking, all processors by default */
+    static final String BAKE_THREADS_PROPERTY = "modlauncher.bakeThreads";
+    private static final Attributes.Name FINGERPRINT = new Attributes.Name("ModLauncher-Fingerprint");
+    private static final Attributes.Name INPUT_DIGEST = new Attributes.Name("Input-SHA-256");
+    private static final Attributes.Name UNCHANGED = new Attributes.Name("Unchanged");
+
+    private final Path path;
+    private final JarFile jar;
+    private final String fingerprint;
+    private final LaunchFingerprint launchFingerprint;
+    private final Map<String, Baked> classes;
+    private volatile Boolean valid;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    private record Baked(byte[] input, boolean unchanged) {}
+
+    private BakedClasses(Path path, JarFile jar, String fingerprint, Map<String, Baked> classes, LaunchFingerprint launchFingerprint) {
+        this.path = path;
+        this.jar = jar;
+        this.fingerprint = fingerprint;
+        this.classes = classes;
+        this.launchFingerprint = launchFingerprint;
+    }
+
+    /**
+     * @param launchFingerprint The fingerprint of this launch, compared to the one the jar was baked with
+     * @return The baked classes named by {@link #BAKED_JAR_PROPERTY}, or null if there are none
+     */
+    @Nullable
+    static BakedClasses open(LaunchFingerprint launchFingerprint) {
+        var file = System.getProperty(BAKED_JAR_PROPERTY);
+        if (file == null || file.isEmpty())
+            return null;
+
+        final Path path = Path.of(file);
+        try {
+            var jar = new JarFile(path.toFile());
+            var manifest = jar.getManifest();
+            var fingerprint = manifest == null ? null : manifest.getMainAttributes().getValue(FINGERPRINT);
+            if (fingerprint == null) {
+                jar.close();
+                LOGGER.warn(MODLAUNCHER, "Ignoring baked jar {}, it has no transformer fingerprint", path);
+                return null;
+            }
+
+            var classes = new HashMap<String, Baked>(manifest.getEntries().size());
+            manifest.getEntries().forEach((entry, attributes) -> {
+                var digest = attributes.getValue(INPUT_DIGEST);
+                if (digest != null && entry.endsWith(".class"))
+                    classes.put(entry, new Baked(fromHex(digest), Boolean.parseBoolean(attributes.getValue(UNCHANGED))));
+            });
+            LOGGER.debug(MODLAUNCHER, "Loaded {} baked classes from {}", classes.size(), path);
+            return new BakedClasses(path, jar, fingerprint, classes, launchFingerprint);
+        } catch (IOException | IllegalArgumentException e) {
+            LOGGER.warn(MODLAUNCHER, "Failed to read baked jar {}", path, e);
+            return null;
+        }
+    }
+
+    /**
+     * @param className The binary name of the class
+     * @param input     The untransformed class bytes
+     * @param digest    The SHA-256 of the untransformed class bytes
+     * @return The baked class, the input itself if baking left it alone, or null if it has to be transformed
+     */
+    @Nullable
+    byte[] get(String className, byte[] input, ClassDigest digest) {
+        final String entry = className.replace('.', '/') + ".class";
+        final Baked baked = classes.get(entry);
+        if (baked == null || !isValid() || !Arrays.equals(baked.input(), digest.get())) {
+            misses.increment();
+            return null;
+        }
+        if (baked.unchanged()) {
+            hits.increment();
+            return input;
+        }
+
+        final JarEntry jarEntry = jar.getJarEntry(entry);
+        if (jarEntry == null) {
+            LOGGER.warn(MODLAUNCHER, "Baked jar {} lists {} in its manifest but does not contain it", path, entry);
+            misses.increment();
+            return null;
+        }
+        try (var in = jar.getInputStream(jarEntry)) {
+            final byte[] ret = in.readAllBytes();
+            hits.increment();
+            return ret;
+        } catch (IOException e) {
+            LOGGER.debug(MODLAUNCHER, "Failed to read baked class {} from {}", className, path, e);
+            misses.increment();
+            return null;
+        }
+    }
+
+    private boolean isValid() {
+        var ret = valid;
+        if (ret == null) {
+            // Checked on first use rather than when opened, as it hashes every game jar
+            valid = ret = fingerprint.equals(TransformCache.toHex(launchFingerprint.get()));
+            if (!ret)
+                LOGGER.warn(MODLAUNCHER, "Ignoring baked jar {}, it was baked with other transformers or game jars", path);
+        }
+        return ret;
+    }
+
+    @Override
+    public String toString() {
+        return "BakedClasses[" + path + ", hits=" + hits.sum() + ", misses=" + misses.sum() + ", size=" + classes.size() + "]";
+    }
+
+    /**
+     * Transforms every class of the game layer for loading, on a pool of worker threads, and writes the results to a
+     * baked jar. Classes that fail to transform are left out, and will be transformed when they are loaded. The launch
+     * plugins must have been initialized for the launch first, or they would bake different classes than they
+     * transform while the game runs.
+     */
+    static void bake(Path target, ModuleLayer gameLayer, TransformingClassLoader loader) {
+        var tasks = new ArrayList<Callable<Void>>();
+        var results = new ConcurrentHashMap<String, Result>();
+        var failures = new AtomicInteger();
+        var readers = new ArrayList<ModuleReader>();
+        try {
+            for (var module : gameLayer.configuration().modules()) {
+                var reader = module.reference().open();
+                readers.add(reader);
+                try (var entries = reader.list()) {
+                    entries.filter(BakedClasses::isClass).forEach(entry -> tasks.add(() -> {
+                        try {
+                            bake(reader, entry, loader, results);
+                        } catch (Exception | LinkageError e) {
+                            failures.incrementAndGet();
+                            LOGGER.warn(MODLAUNCHER, "Failed to bake {} of {}", entry, module.name(), e);
+                        }
+                        return null;
+                    }));
+                }
+            }
+
+            final int threads = Integer.getInteger(BAKE_THREADS_PROPERTY, Runtime.getRuntime().availableProcessors());
+            final AtomicInteger ids = new AtomicInteger();
+            final ForkJoinPool pool = new ForkJoinPool(threads, p -> {
+                var thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(p);
+                thread.setName("ModLauncher bake " + ids.incrementAndGet());
+                thread.setContextClassLoader(loader);
+                return thread;
+            }, null, false);
+            LOGGER.info(MODLAUNCHER, "Baking {} classes of {} modules on {} threads", tasks.size(), readers.size(), threads);
+            try {
+                for (var future : pool.invokeAll(tasks))
+                    future.get();
+            } finally {
+                pool.shutdown();
+            }
+            write(target, TransformCache.toHex(loader.getFingerprint().get()), results);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to bake classes to " + target, e);
+        } catch (InterruptedException | ExecutionException e) {
+            throw new IllegalStateException("Failed to bake classes to " + target, e);
+        } finally {
+            for (var reader : readers) {
+                try {
+                    reader.close();
+                } catch (IOException e) {
+                    LOGGER.debug(MODLAUNCHER, "Failed to close module reader", e);
+                }
+            }
+        }
+        LOGGER.info(MODLAUNCHER, "Baked {} classes to {}, {} failed", results.size(), target, failures.get());
+    }
+
+    private record Result(byte[] input, @Nullable byte[] output) {}
+
+    private static boolean isClass(String entry) {
+        // Versioned classes are served from the root by the module reader
+        return entry.endsWith(".class") && !entry.endsWith("module-info.class") && !entry.startsWith("META-INF/");
+    }
+
+    private static void bake(ModuleReader reader, String entry, TransformingClassLoader loader, Map<String, Result> results) throws IOException {
+        final byte[] input;
+        try (var in = reader.open(entry).orElseThrow(() -> new IOException("Missing " + entry))) {
+            input = in.readAllBytes();
+        }
+        final String className = entry.substring(0, entry.length() - ".class".length()).replace('/', '.');
+        final byte[] output = loader.bake(input, className);
+        results.put(entry, new Result(ClassDigest.sha256().digest(input), output == input || Arrays.equals(output, input) ? null : output));
+    }
+
+    private static void write(Path target, String fingerprint, Map<String, Result> results) throws IOException {
+        // Sorted, so baking the same classes gives the same jar
+        var sorted = new TreeMap<>(results);
+        var manifest = new Manifest();
+        manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+        manifest.getMainAttributes().put(FINGERPRINT, fingerprint);
+        sorted.forEach((entry, result) -> {
+            var attributes = new Attributes();
+            attributes.put(INPUT_DIGEST, TransformCache.toHex(result.input()));
+            if (result.output() == null)
+                attributes.put(UNCHANGED, "true");
+            manifest.getEntries().put(entry, attributes);
+        });
+
+        var parent = target.toAbsolutePath().getParent();
+        Files.createDirectories(parent);
+        var tmp = Files.createTempFile(parent, target.getFileName().toString(), ".tmp");
+        try (var out = new JarOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)), manifest)) {
+            for (var entry : sorted.entrySet()) {
+                if (entry.getValue().output() == null)
+                    continue;
+                out.putNextEntry(new JarEntry(entry.getKey()));
+                out.write(entry.getValue().output());
+                out.closeEntry();
+            }
+        } catch (IOException e) {
+            Files.deleteIfExists(tmp);
+            throw e;
+        }
+        Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static byte[] fromHex(String hex) {
+        if (hex.length() % 2 != 0)
+            throw new IllegalArgumentException("Invalid digest " + hex);
+        var ret = new byte[hex.length() / 2];
+        for (int i = 0; i < ret.length; i++) {
+            final int high = Character.digit(hex.charAt(i * 2), 16);
+            final int low = Character.digit(hex.charAt(i * 2 + 1), 16);
+            if (high < 0 || low < 0)
+                throw new IllegalArgumentException("Invalid digest " + hex);
+            ret[i] = (byte) (high << 4 | low);
+        }
+        return ret;
+    }
+}
@@ -0,0 +1,163 @@
+/*
+ * Copyright (c) Forge Development LLC
+ * SPDX-License-Identifier: LGPL-3.0-only
+ */
+
+package cpw.mods.modlauncher;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Locale;
+import java.util.function.Supplier;
+
+/**
+ * Digests of the untransformed bytes of one class, each computed at most once and shared by everything looking at
+ * the class during a single transformation: the voting context and the transformed class cache.
+ * <p>
+ * {@link #get()} is always the SHA-256 promised by {@link cpw.mods.modlauncher.api.ITransformerVotingContext#getInitialClassSha256()}.
+ * The digest used for cache keys can be changed with {@link #CACHE_KEY_ALGORITHM_PROPERTY}, to any {@link MessageDigest}
+ * algorithm or to {@value #FAST}, a 128 bit MurmurHash3. The latter is much cheaper but not collision resistant, which
+ * is fine as long as nobody crafts classes to poison the cache.
+ * <p>
+ * Digest instances are kept per thread, so class loading threads never contend on them.
+ */
+final class ClassDigest implements Supplier<byte[]> {
+    /** Digest algorithm of the class bytes in cache keys, SHA-256 by default */
+    static final String CACHE_KEY_ALGORITHM_PROPERTY = "modlauncher.cacheKeyDigest";
+    static final String SHA_256 = "SHA-256";
+    static final String FAST = "fast";
+    private static final ThreadLocal<MessageDigest> SHA256 = threadLocal(SHA_256);
+    private static final String CACHE_KEY_ALGORITHM = System.getProperty(CACHE_KEY_ALGORITHM_PROPERTY, SHA_256);
+    private static final ThreadLocal<MessageDigest> CACHE_KEY = cacheKeyDigest(CACHE_KEY_ALGORITHM);
+
+    private final byte[] input;
+    private byte[] sha256;
+    private byte[] cacheKey;
+
+    ClassDigest(byte[] input) {
+        this.input = input;
+    }
+
+    /**
+     * @return the SHA-256 of the input
+     */
+    @Override
+    public byte[] get() {
+        if (sha256 == null)
+            sha256 = sha256().digest(input);
+        return sha256;
+    }
+
+    /**
+     * @return the digest of the input in the algorithm configured for cache keys
+     */
+    byte[] forCacheKey() {
+        if (cacheKey == null) {
+            if (CACHE_KEY == null)
+                cacheKey = murmur3(input);
+            else if (CACHE_KEY == SHA256)
+                cacheKey = get();
+            else
+                cacheKey = CACHE_KEY.get().digest(input);
+        }
+        return cacheKey;
+    }
+
+    /**
+     * @return the name of the algorithm used by {@link #forCacheKey()}, entries made with another one must not match
+     */
+    static String getCacheKeyAlgorithm() {
+        return CACHE_KEY_ALGORITHM;
+    }
+
+    /**
+     * @return the SHA-256 digest of the calling thread, reset and ready for use
+     */
+    static MessageDigest sha256() {
+        final MessageDigest ret = SHA256.get();
+        ret.reset();
+        return ret;
+    }
+
+    private static ThreadLocal<MessageDigest> cacheKeyDigest(String algorithm) {
+        if (FAST.equals(algorithm.toLowerCase(Locale.ROOT)))
+            return null;
+        if (SHA_256.equalsIgnoreCase(algorithm))
+            return SHA256;
+        return threadLocal(algorithm);
+    }
+
+    private static ThreadLocal<MessageDigest> threadLocal(String algorithm) {
+        try {
+            // Fail on the first use instead of the first class
+            MessageDigest.getInstance(algorithm);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("Missing " + algorithm + " digest", e);
+        }
+        return ThreadLocal.withInitial(() -> {
+            try {
+                return MessageDigest.getInstance(algorithm);
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException("Missing " + algorithm + " digest", e);
+            }
+        });
+    }
+
+    /**
+     * MurmurHash3 x64 128 with a zero seed, the 128 bit result in little endian order.
+     */
+    static byte[] murmur3(byte[] data) {
+        final long c1 = 0x87c37b91114253d5L;
+        final long c2 = 0x4cf5ad432745937fL;
+        final ByteBuffer buf = ByteBuffer.wrap(data).order(ByteOrder.LITTLE_ENDIAN);
+        final int length = data.length;
+        final int tail = length & ~15;
+        long h1 = 0;
+        long h2 = 0;
+
+        for (int i = 0; i < tail; i += 16) {
+            long k1 = buf.getLong(i);
+            long k2 = buf.getLong(i + 8);
+
+            h1 ^= Long.rotateLeft(k1 * c1, 31) * c2;
+            h1 = Long.rotateLeft(h1, 27) + h2;
+            h1 = h1 * 5 + 0x52dce729;
+
+            h2 ^= Long.rotateLeft(k2 * c2, 33) * c1;
+            h2 = Long.rotateLeft(h2, 31) + h1;
+            h2 = h2 * 5 + 0x38495ab5;
+        }
+
+        long k1 = 0;
+        long k2 = 0;
+        for (int i = length - 1; i >= tail + 8; i--)
+            k2 |= (data[i] & 0xFFL) << ((i - tail - 8) * 8);
+        for (int i = Math.min(length, tail + 8) - 1; i >= tail; i--)
+            k1 |= (data[i] & 0xFFL) << ((i - tail) * 8);
+        if (length - tail > 8)
+            h2 ^= Long.rotateLeft(k2 * c2, 33) * c1;
+        if (length > tail)
+            h1 ^= Long.rotateLeft(k1 * c1, 31) * c2;
+
+        h1 ^= length;
+        h2 ^= length;
+        h1 += h2;
+        h2 += h1;
+        h1 = fmix(h1);
+        h2 = fmix(h2);
+        h1 += h2;
+        h2 += h1;
+        return ByteBuffer.allocate(16).order(ByteOrder.LITTLE_ENDIAN).putLong(h1).putLong(h2).array();
+    }
+
+    private static long fmix(long k) {
+        k ^= k >>> 33;
+        k *= 0xff51afd7ed558ccdL;
+        k ^= k >>> 33;
+        k *= 0xc4ceb9fe1a85ec53L;
+        k ^= k >>> 33;
+        return k;
+    }
+}
@@ -0,0 +1,278 @@
+/*
+ * Copyright (c) Forge Development LLC
+ * SPDX-License-Identifier: LGPL-3.0-only
+ */
+
+package cpw.mods.modlauncher;
+
+import org.jetbrains.annotations.Nullable;
+
+import java.util.BitSet;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+/**
+ * Class hierarchy used to answer {@link TransformerClassWriter#getCommonSuperClass(String, String)}.
+ * <p>
+ * Every class is interned once as a {@link Node} with an int id, pointing at its super class and direct interfaces.
+ * Nodes know their depth in the super class chain, so the common super class of two classes is found by walking both
+ * chains up to the same depth, and class ancestry is a walk of the depth difference. Interfaces get a second, dense
+ * index so the interfaces implemented by a class are a small bit set, only computed for classes that are actually
+ * tested against an interface. Answers are memoized per pair of ids.
+ * <p>
+ * Nodes are resolved at most once. The first thread asking for a class loads it, and threads asking for it meanwhile
+ * wait for that load instead of loading it again. No lock is held while loading, as a load can run the whole transform
+ * pipeline: whenever waiting could deadlock, takes too long, or the load failed, the waiting thread loads the class
+ * itself, see {@link WaitingThreads}.
+ */
+final class ClassHierarchy {
+    static final String OBJECT = "java/lang/Object";
+    private static final int MEMO_LIMIT = 1 << 16;
+
+    private final ConcurrentHashMap<String, Node> nodes = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Long, Node> commonSupers = new ConcurrentHashMap<>();
+    private final AtomicInteger nextId = new AtomicInteger();
+    private final AtomicInteger nextInterface = new AtomicInteger();
+
+    /**
+     * The parts of a class header the hierarchy needs. If the header was taken from a loaded class, its super types
+     * are taken from that class as well instead of going through the {@link Loader}.
+     */
+    record Header(@Nullable String superName, String[] interfaces, boolean isInterface, @Nullable Class<?> type) {
+        static Header of(Class<?> cls) {
+            var superClass = cls.getSuperclass();
+            var interfaces = cls.getInterfaces();
+            var names = new String[interfaces.length];
+            for (int i = 0; i < interfaces.length; i++)
+                names[i] = internalName(interfaces[i]);
+            // Class files of interfaces name Object as their super class, the reflection API does not
+            String superName = superClass != null ? internalName(superClass) : cls.isInterface() ? OBJECT : null;
+            return new Header(superName, names, cls.isInterface(), cls);
+        }
+
+        private static String internalName(Class<?> cls) {
+            return cls.getName().replace('.', '/');
+        }
+    }
+
+    @FunctionalInterface
+    interface Loader {
+        Header load(String internalName);
+    }
+
+    static final class Node {
+        private final int id;
+        private final String name;
+        private volatile boolean resolved;
+        private final AtomicReference<Resolution> resolution = new AtomicReference<>();
+        private @Nullable Node parent;
+        private Node[] interfaces;
+        private boolean isInterface;
+        private int depth;
+        private int interfaceIndex = -1;
+        private volatile BitSet interfaceClosure;
+
+        private Node(int id, String name) {
+            this.id = id;
+            this.name = name;
+        }
+
+        String name() {
+            return name;
+        }
+
+        @Nullable
+        Node parent() {
+            return parent;
+        }
+
+        Node[] interfaces() {
+            return interfaces;
+        }
+
+        boolean isInterface() {
+            return isInterface;
+        }
+
+        boolean isResolved() {
+            return resolved;
+        }
+    }
+
+    private record Resolution(Thread owner, CompletableFuture<Node> done) {}
+
+    /**
+     * Adds a class from its header, unless it is known already.
+     */
+    void define(String name, @Nullable String superName, String[] interfaces, boolean isInterface, Loader loader) {
+        resolve(name, new Header(superName, interfaces, isInterface, null), loader);
+    }
+
+    Node get(String name, Loader loader) {
+        return resolve(name, null, loader);
+    }
+
+    String getCommonSuperClass(String type1, String type2, Loader loader) {
+        final Node a = get(type1, loader);
+        final Node b = get(type2, loader);
+        final long key = ((long) a.id << 32) | (b.id & 0xFFFFFFFFL);
+        Node ret = commonSupers.get(key);
+        if (ret == null) {
+            ret = computeCommonSuperClass(a, b, loader);
+            if (commonSupers.size() >= MEMO_LIMIT)
+                commonSupers.clear();
+            commonSupers.put(key, ret);
+        }
+        return ret.name;
+    }
+
+    private Node computeCommonSuperClass(Node a, Node b, Loader loader) {
+        if (isAssignableFrom(a, b))
+            return a;
+        if (isAssignableFrom(b, a))
+            return b;
+        if (a.isInterface || b.isInterface)
+            return get(OBJECT, loader);
+
+        while (a.depth > b.depth)
+            a = a.parent;
+        while (b.depth > a.depth)
+            b = b.parent;
+        while (a != b && a != null && b != null) {
+            a = a.parent;
+            b = b.parent;
+        }
+        return a != null && a == b ? a : get(OBJECT, loader);
+    }
+
+    /**
+     * @return true if {@code type} is {@code target}, extends it or implements it
+     */
+    boolean isAssignableFrom(Node target, Node type) {
+        if (target == type)
+            return true;
+        if (target.isInterface)
+            return interfaceClosure(type).get(target.interfaceIndex);
+
+        Node node = type;
+        for (int i = type.depth - target.depth; i > 0 && node != null; i--)
+            node = node.parent;
+        return node == target;
+    }
+
+    private static BitSet interfaceClosure(Node node) {
+        var ret = node.interfaceClosure;
+        if (ret == null) {
+            ret = node.parent == null ? new BitSet() : (BitSet) interfaceClosure(node.parent).clone();
+            for (var itf : node.interfaces) {
+                if (itf.interfaceIndex >= 0)
+                    ret.set(itf.interfaceIndex);
+                ret.or(interfaceClosure(itf));
+            }
+            node.interfaceClosure = ret;
+        }
+        return ret;
+    }
+
+    private Node resolve(String name, @Nullable Header header, Loader loader) {
+        final Node node = nodes.computeIfAbsent(name, n -> new Node(nextId.getAndIncrement(), n));
+        if (node.resolved)
+            return node;
+
+        final Resolution resolution = new Resolution(Thread.currentThread(), new CompletableFuture<>());
+        final Resolution existing = node.resolution.compareAndExchange(null, resolution);
+        if (existing != null) {
+            // Bounded, the owner may be transforming the class and need a class loading lock we hold
+            if (WaitingThreads.join(existing.owner(), existing.done()) == null)
+                fill(node, header, loader);
+            return node;
+        }
+
+        try {
+            fill(node, header, loader);
+            resolution.done().complete(node);
+        } catch (Throwable t) {
+            resolution.done().completeExceptionally(t);
+            throw t;
+        } finally {
+            node.resolution.compareAndSet(resolution, null);
+        }
+        return node;
+    }
+
+    private void fill(Node node, @Nullable Header header, Loader loader) {
+        if (node.resolved)
+            return;
+
+        final Header data = header != null ? header : loader.load(node.name);
+        final Class<?> type = data.type();
+        Node parent = null;
+        if (data.superName() != null)
+            parent = resolve(data.superName(), type == null || type.getSuperclass() == null ? null : Header.of(type.getSuperclass()), loader);
+
+        final Class<?>[] interfaceTypes = type == null ? null : type.getInterfaces();
+        final Node[] interfaces = new Node[data.interfaces().length];
+        for (int i = 0; i < interfaces.length; i++)
+            interfaces[i] = resolve(data.interfaces()[i], interfaceTypes == null ? null : Header.of(interfaceTypes[i]), loader);
+
+        // Only taken to publish the node, a thread that had to load it as well may get here at the same time
+        synchronized (node) {
+            if (node.resolved)
+                return;
+            node.parent = parent;
+            node.interfaces = interfaces;
+            node.isInterface = data.isInterface();
+            node.depth = parent == null ? 0 : parent.depth + 1;
+            if (node.isInterface)
+                node.interfaceIndex = nextInterface.getAndIncrement();
+            // Publishes everything above
+            node.resolved = true;
+        }
+    }
+
+    /**
+     * Adds classes whose headers are already known, for example from a previous run. Classes referencing a super type
+     * that is neither known already nor part of {@code headers} are skipped.
+     *
+     * @return the number of classes added
+     */
+    int preload(Map<String, Header> headers) {
+        final Loader loader = name -> {
+            var ret = headers.get(name);
+            if (ret == null)
+                throw new MissingHeaderException();
+            return ret;
+        };
+        int count = 0;
+        for (var name : headers.keySet()) {
+            try {
+                get(name, loader);
+                count++;
+            } catch (MissingHeaderException e) {
+                // Incomplete entry, it will be loaded on demand instead
+            }
+        }
+        return count;
+    }
+
+    void forEachResolved(Consumer<Node> consumer) {
+        for (var node : nodes.values()) {
+            if (node.resolved)
+                consumer.accept(node);
+        }
+    }
+
+    int size() {
+        return nodes.size();
+    }
+
+    private static final class MissingHeaderException extends RuntimeException {
+        private MissingHeaderException() {
+            super(null, null, false, false);
+        }
+    }
+}
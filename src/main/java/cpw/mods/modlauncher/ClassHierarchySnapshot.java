@@ -0,0 +1,166 @@
+/*
+ * Copyright (c) Forge Development LLC
+ * SPDX-License-Identifier: LGPL-3.0-only
+ */
+
+package cpw.mods.modlauncher;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+
+import static cpw.mods.modlauncher.LogMarkers.MODLAUNCHER;
+
+/**
+ * Persists the {@link ClassHierarchy} used for frame computation across launches.
+ * <p>
+ * The snapshot is only reused if nothing that could change a class header changed: the Java runtime, and the
+ * fingerprint the transformed class cache uses (see {@link TransformCache#computeFingerprint}), which covers every
+ * transformer, launch plugin and jar visible to the transforming class loader by content. Jars are only hashed when
+ * they changed since they were last seen, see {@link ContentDigests}. With a matching snapshot, known classes never
+ * need to be loaded or transformed to answer {@link TransformerClassWriter#getCommonSuperClass(String, String)}.
+ * Computing the fingerprint takes a while, so the snapshot is loaded in the background, and classes load as usual
+ * until it is.
+ * <p>
+ * Stored next to the transformed class cache, so it is enabled by the same {@link TransformCache#CACHE_DIR_PROPERTY}.
+ */
+final class ClassHierarchySnapshot {
+    private static final Logger LOGGER = LogManager.getLogger();
+    private static final int MAGIC = 0x4D4C4348; // MLCH
+    private static final int VERSION = 1;
+    private static final String FILE_NAME = "hierarchy.bin";
+    private static final int NONE = -1;
+    private static final int MISSING = -2;
+    private static boolean installed;
+
+    private ClassHierarchySnapshot() {}
+
+    /**
+     * Starts loading the snapshot matching the current launch into the shared hierarchy on a background thread, and
+     * saves the hierarchy when the JVM exits. Only the first call has any effect.
+     */
+    static synchronized void install(LaunchFingerprint fingerprint) {
+        var dir = System.getProperty(TransformCache.CACHE_DIR_PROPERTY);
+        if (installed || dir == null || dir.isEmpty())
+            return;
+        installed = true;
+
+        var file = Path.of(dir).resolve(FILE_NAME);
+        var hierarchy = TransformerClassWriter.getHierarchy();
+        // Preloading goes through the hierarchy like any other lookup, so it can run while classes are loaded
+        var loader = new Thread(() -> {
+            try {
+                var count = load(hierarchy, file, computeKey(fingerprint));
+                LOGGER.debug(MODLAUNCHER, "Loaded {} classes from class hierarchy snapshot {}", count, file);
+            } catch (NoSuchFileException e) {
+                LOGGER.debug(MODLAUNCHER, "No class hierarchy snapshot at {}", file);
+            } catch (IOException | RuntimeException e) {
+                LOGGER.debug(MODLAUNCHER, "Failed to read class hierarchy snapshot {}", file, e);
+            }
+        }, "ModLauncher hierarchy snapshot loader");
+        loader.setDaemon(true);
+        loader.start();
+
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                save(hierarchy, file, computeKey(fingerprint));
+            } catch (IOException | RuntimeException e) {
+                LOGGER.debug(MODLAUNCHER, "Failed to write class hierarchy snapshot {}", file, e);
+            }
+        }, "ModLauncher hierarchy snapshot"));
+    }
+
+    /**
+     * @return the number of classes loaded, or -1 if the snapshot belongs to a different launch
+     */
+    static int load(ClassHierarchy hierarchy, Path file, byte[] key) throws IOException {
+        try (var in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION)
+                return -1;
+            var storedKey = new byte[in.readUnsignedShort()];
+            in.readFully(storedKey);
+            if (!Arrays.equals(key, storedKey))
+                return -1;
+
+            var names = new String[in.readInt()];
+            for (int i = 0; i < names.length; i++)
+                names[i] = in.readUTF();
+
+            var headers = new HashMap<String, ClassHierarchy.Header>(names.length * 2);
+            for (var name : names) {
+                int parent = in.readInt();
+                boolean complete = parent != MISSING;
+                boolean isInterface = in.readBoolean();
+                var interfaces = new String[in.readUnsignedShort()];
+                for (int i = 0; i < interfaces.length; i++) {
+                    int index = in.readInt();
+                    complete &= index != MISSING;
+                    interfaces[i] = index == MISSING ? null : names[index];
+                }
+                if (complete)
+                    headers.put(name, new ClassHierarchy.Header(parent == NONE ? null : names[parent], interfaces, isInterface, null));
+            }
+            return hierarchy.preload(headers);
+        }
+    }
+
+    static void save(ClassHierarchy hierarchy, Path file, byte[] key) throws IOException {
+        var nodes = new ArrayList<ClassHierarchy.Node>();
+        hierarchy.forEachResolved(nodes::add);
+        var indices = new IdentityHashMap<ClassHierarchy.Node, Integer>(nodes.size() * 2);
+        for (var node : nodes)
+            indices.put(node, indices.size());
+
+        Files.createDirectories(file.getParent());
+        var tmp = Files.createTempFile(file.getParent(), FILE_NAME, ".tmp");
+        try (var out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeShort(key.length);
+            out.write(key);
+            out.writeInt(nodes.size());
+            for (var node : nodes)
+                out.writeUTF(node.name());
+            for (var node : nodes) {
+                // Super types resolved while we were collecting may be missing, preload skips whatever references them
+                var parent = node.parent();
+                out.writeInt(parent == null ? NONE : indices.getOrDefault(parent, MISSING));
+                out.writeBoolean(node.isInterface());
+                var interfaces = node.interfaces();
+                out.writeShort(interfaces.length);
+                for (var itf : interfaces)
+                    out.writeInt(indices.getOrDefault(itf, MISSING));
+            }
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        LOGGER.debug(MODLAUNCHER, "Wrote {} classes to class hierarchy snapshot {}", nodes.size(), file);
+    }
+
+    static byte[] computeKey(LaunchFingerprint fingerprint) {
+        try {
+            var digest = MessageDigest.getInstance("SHA-256");
+            // The fingerprint only has the feature version, headers of the runtime image may change in updates
+            digest.update(("java " + Runtime.version() + '\n').getBytes(StandardCharsets.UTF_8));
+            digest.update(fingerprint.get());
+            return digest.digest();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("Missing SHA-256 digest", e);
+        }
+    }
+}
@@ -0,0 +1,168 @@
+/*
+ * Copyright (c) Forge Development LLC
+ * SPDX-License-Identifier: LGPL-3.0-only
+ */
+
+package cpw.mods.modlauncher;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Compiled set of class names and packages, used to reject classes before anything is allocated for them.
+ * <p>
+ * Names may use either '.' or '/' as separator. Matching walks the name once, hashing each package prefix as it goes
+ * and probing an open addressed table at every separator, so a lookup never allocates or locks.
+ * A package entry matches every class in that package and its sub packages.
+ */
+final class ClassNameFilter {
+    private static final byte CLASS = 1;
+    private static final byte PACKAGE = 2;
+    static final ClassNameFilter NONE = new ClassNameFilter(new String[1], new byte[1], 0, false);
+    static final ClassNameFilter ALL = new ClassNameFilter(new String[1], new byte[1], 0, true);
+
+    private final String[] names;
+    private final byte[] kinds;
+    private final int mask;
+    private final int size;
+    private final boolean matchAll;
+
+    private ClassNameFilter(String[] names, byte[] kinds, int size, boolean matchAll) {
+        this.names = names;
+        this.kinds = kinds;
+        this.mask = names.length - 1;
+        this.size = size;
+        this.matchAll = matchAll;
+    }
+
+    static Builder builder() {
+        return new Builder();
+    }
+
+    boolean matches(String className) {
+        if (matchAll)
+            return true;
+        if (size == 0)
+            return false;
+
+        int hash = 0;
+        final int length = className.length();
+        for (int i = 0; i < length; i++) {
+            char c = className.charAt(i);
+            if (c == '/')
+                c = '.';
+            if (c == '.' && contains(hash, className, i, PACKAGE))
+                return true;
+            hash = 31 * hash + c;
+        }
+        return contains(hash, className, length, CLASS);
+    }
+
+    boolean isEmpty() {
+        return !matchAll && size == 0;
+    }
+
+    private boolean contains(int hash, String className, int length, byte kind) {
+        for (int i = spread(hash) & mask; names[i] != null; i = (i + 1) & mask) {
+            if ((kinds[i] & kind) != 0 && regionEquals(names[i], className, length))
+                return true;
+        }
+        return false;
+    }
+
+    private static boolean regionEquals(String entry, String className, int length) {
+        if (entry.length() != length)
+            return false;
+        for (int i = 0; i < length; i++) {
+            char c = className.charAt(i);
+            if (c == '/')
+                c = '.';
+            if (entry.charAt(i) != c)
+                return false;
+        }
+        return true;
+    }
+
+    private static int spread(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+
+    @Override
+    public String toString() {
+        if (matchAll)
+            return "ClassNameFilter[*]";
+        var ret = new StringBuilder("ClassNameFilter[");
+        var first = true;
+        for (int i = 0; i < names.length; i++) {
+            if (names[i] == null)
+                continue;
+            if (!first)
+                ret.append(", ");
+            first = false;
+            if ((kinds[i] & CLASS) != 0)
+                ret.append(names[i]);
+            if (kinds[i] == (CLASS | PACKAGE))
+                ret.append(", ");
+            if ((kinds[i] & PACKAGE) != 0)
+                ret.append(names[i]).append(".*");
+        }
+        return ret.append(']').toString();
+    }
+
+    static final class Builder {
+        private final Map<String, Byte> entries = new HashMap<>();
+        private boolean matchAll;
+
+        private Builder() {}
+
+        Builder addClass(String className) {
+            entries.merge(className.replace('/', '.'), CLASS, (a, b) -> (byte)(a | b));
+            return this;
+        }
+
+        Builder addClasses(Collection<String> classNames) {
+            classNames.forEach(this::addClass);
+            return this;
+        }
+
+        /**
+         * The empty package matches every class.
+         */
+        Builder addPackage(String packageName) {
+            var name = packageName.replace('/', '.');
+            if (name.endsWith("."))
+                name = name.substring(0, name.length() - 1);
+            if (name.isEmpty())
+                matchAll = true;
+            else
+                entries.merge(name, PACKAGE, (a, b) -> (byte)(a | b));
+            return this;
+        }
+
+        Builder addPackages(Collection<String> packageNames) {
+            packageNames.forEach(this::addPackage);
+            return this;
+        }
+
+        ClassNameFilter build() {
+            if (matchAll)
+                return ALL;
+            if (entries.isEmpty())
+                return NONE;
+
+            int capacity = Integer.highestOneBit(Math.max(entries.size() * 2 - 1, 1)) << 1;
+            var names = new String[capacity];
+            var kinds = new byte[capacity];
+            int mask = capacity - 1;
+            entries.forEach((name, kind) -> {
+                int i = spread(name.hashCode()) & mask;
+                while (names[i] != null)
+                    i = (i + 1) & mask;
+                names[i] = name;
+                kinds[i] = kind;
+            });
+            return new ClassNameFilter(names, kinds, entries.size(), false);
+        }
+    }
+}
@@ -9,13 +9,14 @@ import cpw.mods.modlauncher.api.*;
 import cpw.mods.modlauncher.serviceapi.ILaunchPluginService;
 import org.apache.logging.log4j.*;
 import org.objectweb.asm.*;
+import org.jetbrains.annotations.Nullable;
 import org.objectweb.asm.tree.*;
 
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.security.*;
 import java.util.*;
+import java.util.function.Function;
 import java.util.function.Supplier;
 import static cpw.mods.modlauncher.LogMarkers.MODLAUNCHER;
 
@@ -26,86 +27,207 @@ public class ClassTransformer {
     private static final byte[] EMPTY = new byte[0];
     private static final Logger LOGGER = LogManager.getLogger();
     private static final Marker CLASSDUMP = MarkerManager.getMarker("CLASSDUMP");
+    /**
+     * Only run the transformers that can change the class header when a class is transformed to compute frames, on by
+     * default. Only used for classes whose transformers and plugins all declared they support it.
+     */
+    static final String HEADER_ONLY_PROPERTY = "modlauncher.headerOnlyHierarchy";
+    private static final boolean HEADER_ONLY = Boolean.parseBoolean(System.getProperty(HEADER_ONLY_PROPERTY, "true"));
+    private static final String HEADER_ONLY_CACHE_SUFFIX = "#header";
     private final TransformStore transformers;
     private final LaunchPluginHandler pluginHandler;
     private final TransformingClassLoader transformingClassLoader;
     private final TransformerAuditTrail auditTrail;
+    @Nullable
+    private final TransformCache cache;
+    @Nullable
+    private final BakedClasses baked;
+    private final TransformedNodeCache frameNodes = new TransformedNodeCache();
+    private final InFlightTransforms inFlight = new InFlightTransforms();
+    private final VoteMemo votes = new VoteMemo();
+    private final ClassHierarchy.Loader declaredLoader = TransformerClassWriter.declaredLoader(this);
+    private final int parallelMembers = ParallelMembers.threshold();
 
     ClassTransformer(TransformStore transformStore, LaunchPluginHandler pluginHandler, final TransformingClassLoader transformingClassLoader) {
-        this(transformStore, pluginHandler, transformingClassLoader, new TransformerAuditTrail());
+        this(transformStore, pluginHandler, transformingClassLoader, new TransformerAuditTrail(), null);
     }
 
-    ClassTransformer(final TransformStore transformStore, final LaunchPluginHandler pluginHandler, final TransformingClassLoader transformingClassLoader, final TransformerAuditTrail tat) {
+    /**
+     * @param fingerprint The fingerprint of the transforming class loader's launch, classes are never cached or baked
+     *                    without it
+     */
+    ClassTransformer(final TransformStore transformStore, final LaunchPluginHandler pluginHandler, final TransformingClassLoader transformingClassLoader, final TransformerAuditTrail tat,
+            @Nullable final LaunchFingerprint fingerprint) {
         this.transformers = transformStore;
         this.pluginHandler = pluginHandler;
         this.transformingClassLoader = transformingClassLoader;
         this.auditTrail = tat;
+        this.cache = fingerprint == null ? null : TransformCache.create(fingerprint);
+        this.baked = fingerprint == null ? null : BakedClasses.open(fingerprint);
     }
 
     byte[] transform(byte[] inputClass, String className, final String reason) {
-        final String internalName = className.replace('.', '/');
-        final Type classDesc = Type.getObjectType(internalName);
+        // Most classes are handled by nobody, nothing may be allocated or locked until we know otherwise
+        LaunchPluginHandler.PhaseSet launchPluginTransformerSet = pluginHandler.computeLaunchPluginPhases(className, inputClass.length == 0, reason, this.auditTrail);
 
-        final EnumMap<ILaunchPluginService.Phase, List<ILaunchPluginService>> launchPluginTransformerSet = pluginHandler.computeLaunchPluginTransformerSet(classDesc, inputClass.length == 0, reason, this.auditTrail);
-
-        final boolean needsTransforming = transformers.needsTransforming(internalName);
+        TransformerIndex.ClassTargets targets = transformers.getTransformersFor(className, inputClass, declaredLoader);
+        final boolean needsTransforming = targets != null;
         if (!needsTransforming && launchPluginTransformerSet.isEmpty()) {
             return inputClass;
         }
 
+        // Check the constant pool of classes that may not interest anyone, before parsing them
+        if (inputClass.length > 0 && (needsTransforming && targets.getPrefilter() != null || !launchPluginTransformerSet.isEmpty() && pluginHandler.hasPrefilters())) {
+            final ConstantPoolSummary constantPool = new ConstantPoolSummary(inputClass);
+            if (needsTransforming && targets.getPrefilter() != null && !constantPool.matches(targets.getPrefilter()))
+                targets = null;
+            launchPluginTransformerSet = pluginHandler.prefilter(launchPluginTransformerSet, constantPool);
+            if (targets == null && launchPluginTransformerSet.isEmpty())
+                return inputClass;
+        }
+
+        final Type classDesc = Type.getObjectType(className.replace('.', '/'));
+        final TransformerIndex.ClassTargets classTargets = targets;
+        final LaunchPluginHandler.PhaseSet plugins = launchPluginTransformerSet;
+
+        final boolean headerOnly = HEADER_ONLY && inputClass.length > 0 && reason.equals(ITransformerActivity.COMPUTING_FRAMES_REASON) &&
+            (classTargets == null || classTargets.supportsHeaderOnly()) && supportsHeaderOnly(plugins);
+        final String kind = headerOnly ? reason + HEADER_ONLY_CACHE_SUFFIX : reason;
+        // Parallel class loading, frame computation and plugins can all ask for the same class at once
+        return inFlight.run(className, kind, inputClass, () -> transform(inputClass, className, reason, kind, headerOnly, classDesc, classTargets, plugins));
+    }
+
+    private byte[] transform(byte[] inputClass, String className, final String reason, final String kind, final boolean headerOnly, final Type classDesc,
+            @Nullable final TransformerIndex.ClassTargets targets, final LaunchPluginHandler.PhaseSet launchPluginTransformerSet) {
+        final ClassDigest digest = new ClassDigest(inputClass.length > 0 ? inputClass : EMPTY);
+        if (baked != null && !headerOnly && inputClass.length > 0 && reason.equals(ITransformerActivity.CLASSLOADING_REASON)) {
+            final byte[] result = baked.get(className, inputClass, digest);
+            if (result != null) {
+                auditTrail.addReason(classDesc.getClassName(), reason);
+                return result;
+            }
+        }
+        final String cacheKey = cache == null ? null : cache.key(digest.forCacheKey(), className, kind);
+        if (cacheKey != null) {
+            final byte[] cached = cache.get(cacheKey, inputClass);
+            if (cached != null) {
+                auditTrail.addReason(classDesc.getClassName(), reason);
+                return cached;
+            }
+        }
+
+        final byte[] result = headerOnly ?
+            transformHeader(inputClass, className, reason, classDesc, targets, launchPluginTransformerSet, digest) :
+            transform(inputClass, className, reason, classDesc, targets, launchPluginTransformerSet, digest);
+        if (cacheKey != null)
+            cache.put(cacheKey, inputClass, result);
+        return result;
+    }
+
+    private byte[] transform(byte[] inputClass, String className, final String reason, final Type classDesc, @Nullable final TransformerIndex.ClassTargets targets,
+            final LaunchPluginHandler.PhaseSet launchPluginTransformerSet, final Supplier<byte[]> digest) {
+        final boolean needsTransforming = targets != null;
+        if (reason.equals(ITransformerActivity.CLASSLOADING_REASON) && launchPluginTransformerSet.get(ILaunchPluginService.Phase.BEFORE).isEmpty()) {
+            // Reuse the work done for this class while computing frames, only the plugins running after the transformers and the frames are still missing
+            final TransformedNodeCache.Cached transformed = frameNodes.take(className, inputClass);
+            if (transformed != null)
+                return reuse(transformed, className, reason, classDesc, launchPluginTransformerSet);
+        }
+
+        if (needsTransforming && inputClass.length > 0 && !targets.hasTreeTransformers() && launchPluginTransformerSet.isEmpty())
+            return stream(inputClass, className, reason, classDesc, targets, digest);
+
         ClassNode clazz = new ClassNode(Opcodes.ASM9);
-        Supplier<byte[]> digest;
+        UntouchedMethods untouched = null;
         boolean empty;
         if (inputClass.length > 0) {
             final ClassReader classReader = new ClassReader(inputClass);
             classReader.accept(clazz, 0);
-            digest = ()->getSha256().digest(inputClass);
+            untouched = new UntouchedMethods(classReader, clazz);
             empty = false;
         } else {
             clazz.name = classDesc.getInternalName();
             clazz.version = 52;
             clazz.superName = "java/lang/Object";
-            digest = ()->getSha256().digest(EMPTY);
             empty = true;
         }
         auditTrail.addReason(classDesc.getClassName(), reason);
 
-        final int preFlags = pluginHandler.offerClassNodeToPlugins(ILaunchPluginService.Phase.BEFORE, launchPluginTransformerSet.getOrDefault(ILaunchPluginService.Phase.BEFORE, Collections.emptyList()), clazz, classDesc, auditTrail, reason);
-        if (preFlags == ILaunchPluginService.ComputeFlags.NO_REWRITE && !needsTransforming && launchPluginTransformerSet.getOrDefault(ILaunchPluginService.Phase.AFTER, Collections.emptyList()).isEmpty()) {
+        final int preFlags = pluginHandler.offerClassNodeToPlugins(ILaunchPluginService.Phase.BEFORE, launchPluginTransformerSet.get(ILaunchPluginService.Phase.BEFORE), clazz, classDesc, auditTrail, reason);
+        if (preFlags == ILaunchPluginService.ComputeFlags.NO_REWRITE && !needsTransforming && launchPluginTransformerSet.get(ILaunchPluginService.Phase.AFTER).isEmpty()) {
             // Shortcut if there's no further work to do
             return inputClass;
         }
 
-        if (needsTransforming) {
-            VotingContext context = new VotingContext(className, empty, digest, auditTrail.getActivityFor(className), reason);
-
-            List<ITransformer<ClassNode>> preClassTransformers = new ArrayList<>(transformers.getTransformersFor(className, TransformTargetLabel.LabelType.PRE_CLASS));
-            clazz = this.performVote(preClassTransformers, clazz, context);
+        // Plugins don't tell us which methods they changed
+        if (untouched != null && preFlags != ILaunchPluginService.ComputeFlags.NO_REWRITE)
+            untouched.touchedAll();
 
-            List<FieldNode> fieldList = new ArrayList<>(clazz.fields.size());
-            // it's probably possible to inject "dummy" fields into this list for spawning new fields without class transform
-            for (FieldNode field : clazz.fields) {
-                List<ITransformer<FieldNode>> fieldTransformers = new ArrayList<>(transformers.getTransformersFor(className, field));
-                fieldList.add(this.performVote(fieldTransformers, field, context));
+        VotingContext context = null;
+        if (needsTransforming) {
+            context = new VotingContext(className, empty, digest, auditTrail.getActivityFor(className), reason);
+
+            clazz = this.performVote(targets.getPreClass(), clazz, context);
+            if (untouched != null && context.getTransformationCount() != 0)
+                untouched.touchedAll();
+
+            if (targets.hasFieldTransformers()) {
+                List<FieldNode> fieldList = performParallelVote(clazz.fields, targets::getFieldTransformers, context, null);
+                if (fieldList == null) {
+                    fieldList = new ArrayList<>(clazz.fields.size());
+                    // it's probably possible to inject "dummy" fields into this list for spawning new fields without class transform
+                    for (FieldNode field : clazz.fields)
+                        fieldList.add(this.performVote(targets.getFieldTransformers(field), field, context));
+                }
+                clazz.fields = fieldList;
             }
 
-            // it's probably possible to inject "dummy" methods into this list for spawning new methods without class transform
-            List<MethodNode> methodList = new ArrayList<>(clazz.methods.size());
-            for (MethodNode method : clazz.methods) {
-                List<ITransformer<MethodNode>> methodTransformers = new ArrayList<>(transformers.getTransformersFor(className, method));
-                methodList.add(this.performVote(methodTransformers, method, context));
+            if (targets.hasMethodTransformers()) {
+                List<MethodNode> methodList = performParallelVote(clazz.methods, targets::getMethodTransformers, context, untouched);
+                if (methodList == null) {
+                    // it's probably possible to inject "dummy" methods into this list for spawning new methods without class transform
+                    methodList = new ArrayList<>(clazz.methods.size());
+                    for (MethodNode method : clazz.methods) {
+                        final int before = context.getTransformationCount();
+                        methodList.add(this.performVote(targets.getMethodTransformers(method), method, context));
+                        if (untouched != null && context.getTransformationCount() != before)
+                            untouched.touched(method);
+                    }
+                }
+                clazz.methods = methodList;
             }
 
-            clazz.fields = fieldList;
-            clazz.methods = methodList;
-            List<ITransformer<ClassNode>> classTransformers = new ArrayList<>(transformers.getTransformersFor(className, TransformTargetLabel.LabelType.CLASS));
-            clazz = this.performVote(classTransformers, clazz, context);
+            final int beforeClass = context.getTransformationCount();
+            clazz = this.performVote(targets.getClassTransformers(), clazz, context);
+            if (untouched != null && context.getTransformationCount() != beforeClass)
+                untouched.touchedAll();
+        }
+
+        // Plugins are handed the reason, only the transformers' work can be reused when the class is loaded
+        ClassNode reusable = null;
+        if (context != null && !empty && frameNodes.isEnabled() && reason.equals(ITransformerActivity.COMPUTING_FRAMES_REASON) && launchPluginTransformerSet.get(ILaunchPluginService.Phase.BEFORE).isEmpty()) {
+            if (launchPluginTransformerSet.get(ILaunchPluginService.Phase.AFTER).isEmpty()) {
+                reusable = clazz;
+            } else {
+                reusable = new ClassNode(Opcodes.ASM9);
+                clazz.accept(reusable);
+            }
         }
 
-        final int postFlags = pluginHandler.offerClassNodeToPlugins(ILaunchPluginService.Phase.AFTER, launchPluginTransformerSet.getOrDefault(ILaunchPluginService.Phase.AFTER, Collections.emptyList()), clazz, classDesc, auditTrail, reason);
-        if (preFlags == ILaunchPluginService.ComputeFlags.NO_REWRITE && postFlags == ILaunchPluginService.ComputeFlags.NO_REWRITE && !needsTransforming) {
+        final int postFlags = pluginHandler.offerClassNodeToPlugins(ILaunchPluginService.Phase.AFTER, launchPluginTransformerSet.get(ILaunchPluginService.Phase.AFTER), clazz, classDesc, auditTrail, reason);
+        // Class visitors run last, while the class is written
+        final List<ITransformer<ClassVisitor>> visitors = needsTransforming ? voteVisitors(targets.getClassVisitors(), context) : List.of();
+        if (preFlags == ILaunchPluginService.ComputeFlags.NO_REWRITE && postFlags == ILaunchPluginService.ComputeFlags.NO_REWRITE && (!needsTransforming || (!empty && context.getTransformationCount() == 0))) {
+            // Nothing applied, every transformer voted no
             return inputClass;
         }
+        if (untouched != null) {
+            if (postFlags != ILaunchPluginService.ComputeFlags.NO_REWRITE)
+                untouched.touchedAll();
+            untouched.resolve(clazz);
+            if (untouched.isEmpty())
+                untouched = null;
+        }
 
         //Transformers always get compute_frames
         int mergedFlags = needsTransforming ? ILaunchPluginService.ComputeFlags.COMPUTE_FRAMES : (postFlags | preFlags);
@@ -114,14 +236,247 @@ public class ClassTransformer {
         if (reason.equals(ITransformerActivity.COMPUTING_FRAMES_REASON))
             mergedFlags &= ~ILaunchPluginService.ComputeFlags.COMPUTE_FRAMES;
 
-        final ClassWriter cw = TransformerClassWriter.createClassWriter(mergedFlags, this, clazz);
-        clazz.accept(cw);
+        // Frames of the methods written from the tree can be computed on their own, unless class visitors change them while writing
+        if ((mergedFlags & ILaunchPluginService.ComputeFlags.COMPUTE_FRAMES) != 0 && visitors.isEmpty() && (clazz.version & 0xFFFF) >= Opcodes.V1_7 && ParallelMembers.isEnabled(parallelMembers, clazz.methods.size()) && computeFrames(clazz, untouched)) {
+            mergedFlags &= ~ILaunchPluginService.ComputeFlags.COMPUTE_FRAMES;
+        }
+
+        final byte[] result = write(clazz, mergedFlags, untouched, visitors, context);
+        // The node does not include what the class visitors do, and a copy has lost track of the untouched methods
+        if (reusable != null && !context.isReasonObserved() && visitors.isEmpty() && context.getTransformationCount() != 0)
+            frameNodes.put(className, inputClass, reusable, reusable == clazz ? untouched : null);
         if (LOGGER.isEnabled(Level.TRACE) && ITransformerActivity.CLASSLOADING_REASON.equals(reason) && LOGGER.isEnabled(Level.TRACE, CLASSDUMP)) {
-            dumpClass(cw.toByteArray(), className);
+            dumpClass(result, className);
+        }
+        return result;
+    }
+
+    /**
+     * Loads a class from the node its transformers produced while computing frames. The plugins running after the
+     * transformers are offered it again, this time for loading, then it is written with frames.
+     */
+    private byte[] reuse(final TransformedNodeCache.Cached transformed, String className, final String reason, final Type classDesc, final LaunchPluginHandler.PhaseSet launchPluginTransformerSet) {
+        auditTrail.addReason(classDesc.getClassName(), reason);
+        final ClassNode clazz = transformed.node();
+        UntouchedMethods untouched = transformed.untouched();
+        final int postFlags = pluginHandler.offerClassNodeToPlugins(ILaunchPluginService.Phase.AFTER, launchPluginTransformerSet.get(ILaunchPluginService.Phase.AFTER), clazz, classDesc, auditTrail, reason);
+        if (untouched != null && postFlags != ILaunchPluginService.ComputeFlags.NO_REWRITE) {
+            untouched.touchedAll();
+            untouched.resolve(clazz);
+            if (untouched.isEmpty())
+                untouched = null;
+        }
+        final byte[] result = write(clazz, ILaunchPluginService.ComputeFlags.COMPUTE_FRAMES, untouched, List.of(), null);
+        if (LOGGER.isEnabled(Level.TRACE) && LOGGER.isEnabled(Level.TRACE, CLASSDUMP)) {
+            dumpClass(result, className);
+        }
+        return result;
+    }
+
+    /**
+     * Votes on and transforms the members of a large class in parallel, if enabled and all of their transformers are
+     * thread safe. Each member gets its own voting context, which is joined back in member order.
+     *
+     * @return The transformed members in their original order, or null if they have to be transformed one by one
+     */
+    @SuppressWarnings("unchecked")
+    @Nullable
+    private <T> List<T> performParallelVote(List<T> members, Function<T, ITransformer<T>[]> transformersFor, VotingContext context, @Nullable UntouchedMethods untouched) {
+        final int size = members.size();
+        if (!ParallelMembers.isEnabled(parallelMembers, size))
+            return null;
+        final ITransformer<T>[][] transformers = new ITransformer[size][];
+        for (int i = 0; i < size; i++) {
+            transformers[i] = transformersFor.apply(members.get(i));
+            if (!ParallelMembers.isThreadSafe(transformers[i]))
+                return null;
+        }
+
+        final Object[] results = new Object[size];
+        final VotingContext[] contexts = new VotingContext[size];
+        final List<ITransformer<?>>[] applied = new List[size];
+        final boolean finished = ParallelMembers.forEach(size, i -> {
+            if (transformers[i].length == 0) {
+                results[i] = members.get(i);
+                return;
+            }
+            final VotingContext forked = context.fork();
+            final List<ITransformer<?>> audit = new ArrayList<>();
+            results[i] = performVote(transformers[i], members.get(i), forked, audit);
+            contexts[i] = forked;
+            applied[i] = audit;
+        });
+        // A member may be half transformed, so it can't be transformed again
+        if (!finished)
+            throw new IllegalStateException("Timed out transforming the members of " + context.getClassName() + " in parallel");
+
+        final List<T> ret = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            ret.add((T) results[i]);
+            if (contexts[i] == null)
+                continue;
+            for (var transformer : applied[i])
+                auditTrail.addTransformerAuditTrail(context.getClassName(), ((TransformerHolder<?>) transformer).owner(), transformer);
+            if (context.join(contexts[i]) != 0 && untouched != null)
+                untouched.touched((MethodNode) members.get(i));
+        }
+        return ret;
+    }
+
+    /**
+     * Computes the frames of the methods that will be written from the tree in parallel, each in a class of its own.
+     * The class can then be written without computing frames.
+     *
+     * @return false if it took too long, the methods were left as they are and the frames are computed while writing
+     */
+    private boolean computeFrames(final ClassNode clazz, @Nullable final UntouchedMethods untouched) {
+        final List<MethodNode> methods = clazz.methods;
+        final MethodNode[] framed = new MethodNode[methods.size()];
+        final String[] interfaces = clazz.interfaces.toArray(new String[0]);
+        final boolean finished = ParallelMembers.forEach(methods.size(), i -> {
+            final MethodNode method = methods.get(i);
+            if (method.instructions.size() == 0 || untouched != null && untouched.copies(clazz, method))
+                return;
+            final ClassWriter cw = TransformerClassWriter.createClassWriter(ILaunchPluginService.ComputeFlags.COMPUTE_FRAMES, this, clazz);
+            cw.visit(clazz.version, clazz.access, clazz.name, null, clazz.superName, interfaces);
+            method.accept(cw);
+            cw.visitEnd();
+            final ClassNode single = new ClassNode(Opcodes.ASM9);
+            new ClassReader(cw.toByteArray()).accept(single, 0);
+            framed[i] = single.methods.get(0);
+        });
+        if (!finished)
+            return false;
+        for (int i = 0; i < framed.length; i++) {
+            if (framed[i] != null)
+                methods.set(i, framed[i]);
+        }
+        return true;
+    }
+
+    private static boolean supportsHeaderOnly(final LaunchPluginHandler.PhaseSet plugins) {
+        for (var phase : ILaunchPluginService.Phase.values()) {
+            for (var plugin : plugins.get(phase)) {
+                if (!plugin.supportsHeaderOnly())
+                    return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Transforms a class that is only needed for its header, to resolve the class hierarchy while computing frames.
+     * The class is parsed without code, and only the transformers that can change the header run: pre class, class and
+     * class visitor transformers, and launch plugins. All of them declared they support it, see
+     * {@link ITransformer#supportsHeaderOnly()} and {@link ILaunchPluginService#supportsHeaderOnly()}.
+     * The result has no method bodies and must only be used to read the header.
+     */
+    private byte[] transformHeader(byte[] inputClass, String className, final String reason, final Type classDesc, @Nullable final TransformerIndex.ClassTargets targets,
+            final LaunchPluginHandler.PhaseSet launchPluginTransformerSet, final Supplier<byte[]> digest) {
+        ClassNode clazz = new ClassNode(Opcodes.ASM9);
+        new ClassReader(inputClass).accept(clazz, ClassReader.SKIP_CODE | ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES);
+        auditTrail.addReason(classDesc.getClassName(), reason);
+
+        final int preFlags = pluginHandler.offerClassNodeToPlugins(ILaunchPluginService.Phase.BEFORE, launchPluginTransformerSet.get(ILaunchPluginService.Phase.BEFORE), clazz, classDesc, auditTrail, reason);
+
+        VotingContext context = null;
+        if (targets != null) {
+            context = new VotingContext(className, false, digest, auditTrail.getActivityFor(className), reason);
+            clazz = this.performVote(targets.getPreClass(), clazz, context);
+            clazz = this.performVote(targets.getClassTransformers(), clazz, context);
         }
+
+        final int postFlags = pluginHandler.offerClassNodeToPlugins(ILaunchPluginService.Phase.AFTER, launchPluginTransformerSet.get(ILaunchPluginService.Phase.AFTER), clazz, classDesc, auditTrail, reason);
+        final List<ITransformer<ClassVisitor>> visitors = context != null ? voteVisitors(targets.getClassVisitors(), context) : List.of();
+        if (preFlags == ILaunchPluginService.ComputeFlags.NO_REWRITE && postFlags == ILaunchPluginService.ComputeFlags.NO_REWRITE && (context == null || context.getTransformationCount() == 0))
+            return inputClass;
+
+        final ClassWriter cw = new ClassWriter(0);
+        clazz.accept(chain(visitors, cw, context));
+        return cw.toByteArray();
+    }
+
+    /**
+     * Writes the class, copying the methods nobody touched straight from the original bytes when possible.
+     * Frames are then only computed for the methods that are emitted from the tree.
+     */
+    private byte[] write(final ClassNode clazz, final int flags, @Nullable final UntouchedMethods untouched, final List<ITransformer<ClassVisitor>> visitors, @Nullable final VotingContext context) {
+        final ClassWriter cw = TransformerClassWriter.createClassWriter(flags, this, untouched == null ? null : untouched.getReader());
+        final ClassVisitor cv = chain(visitors, TransformerClassWriter.front(cw), context);
+        if (untouched == null)
+            clazz.accept(cv);
+        else
+            untouched.accept(clazz, cv);
         return cw.toByteArray();
     }
 
+    /**
+     * Transforms a class only targeted by class visitor transformers in a single pass from the reader to the writer,
+     * without building a tree. Methods the visitors pass through are copied as they are, with their frames.
+     */
+    private byte[] stream(byte[] inputClass, String className, final String reason, final Type classDesc, final TransformerIndex.ClassTargets targets, final Supplier<byte[]> digest) {
+        auditTrail.addReason(classDesc.getClassName(), reason);
+        final VotingContext context = new VotingContext(className, false, digest, auditTrail.getActivityFor(className), reason);
+        final List<ITransformer<ClassVisitor>> visitors = voteVisitors(targets.getClassVisitors(), context);
+        if (visitors.isEmpty())
+            return inputClass;
+
+        final ClassReader reader = new ClassReader(inputClass);
+        int flags = 0;
+        for (var visitor : visitors)
+            flags |= visitor.getComputeFlags();
+        //Don't compute frames when loading for frame computation to avoid cycles
+        if (reason.equals(ITransformerActivity.COMPUTING_FRAMES_REASON))
+            flags &= ~ILaunchPluginService.ComputeFlags.COMPUTE_FRAMES;
+        final ClassWriter cw = TransformerClassWriter.createClassWriter(flags, this, reader);
+        reader.accept(chain(visitors, TransformerClassWriter.front(cw), context), 0);
+        final byte[] result = cw.toByteArray();
+        if (LOGGER.isEnabled(Level.TRACE) && ITransformerActivity.CLASSLOADING_REASON.equals(reason) && LOGGER.isEnabled(Level.TRACE, CLASSDUMP)) {
+            dumpClass(result, className);
+        }
+        return result;
+    }
+
+    /**
+     * Asks the class visitor transformers for their vote, in order. There is no node to wait on changes of, so deferring is not possible.
+     *
+     * @return The transformers that voted YES, in order
+     */
+    private List<ITransformer<ClassVisitor>> voteVisitors(ITransformer<ClassVisitor>[] transformers, VotingContext context) {
+        if (transformers.length == 0)
+            return List.of();
+
+        context.setNode(null);
+        List<ITransformer<ClassVisitor>> ret = null;
+        for (int i = 0; i < transformers.length; i++) {
+            final ITransformer<ClassVisitor> transformer = transformers[i];
+            final TransformerVoteResult result = votes.castVote(transformer, null, context);
+            switch (result) {
+                case REJECT -> throw new VoteRejectedException(List.of(new TransformerVote<>(result, transformer, i)), ClassVisitor.class);
+                case DEFER -> throw new VoteDeadlockException(List.of(new TransformerVote<>(result, transformer, i)), ClassVisitor.class);
+                case YES -> {
+                    if (ret == null)
+                        ret = new ArrayList<>(transformers.length - i);
+                    ret.add(transformer);
+                    context.markTransformed();
+                    auditTrail.addTransformerAuditTrail(context.getClassName(), ((TransformerHolder<?>) transformer).owner(), transformer);
+                }
+                case NO -> {}
+            }
+        }
+        return ret == null ? List.of() : ret;
+    }
+
+    /**
+     * Puts the visitors in front of the writer, the first one sees the class first.
+     */
+    private static ClassVisitor chain(final List<ITransformer<ClassVisitor>> visitors, final ClassVisitor writer, @Nullable final VotingContext context) {
+        ClassVisitor ret = writer;
+        for (int i = visitors.size() - 1; i >= 0; i--)
+            ret = visitors.get(i).transform(ret, context);
+        return ret;
+    }
+
     private static Path tempDir;
     private static void dumpClass(final byte[] clazz, String className) {
         if (tempDir == null) {
@@ -145,65 +500,67 @@ public class ClassTransformer {
         }
     }
 
-    private <T> T performVote(List<ITransformer<T>> transformers, T node, VotingContext context) {
-        context.setNode(node);
-        do {
-            EnumMap<TransformerVoteResult, List<TransformerVote<T>>> results = gatherVotes(transformers, context);
-
-            // Someone rejected the current state. We're done here, and cannot proceed.
-            if (results.containsKey(TransformerVoteResult.REJECT))
-                throw new VoteRejectedException(results.get(TransformerVoteResult.REJECT), node.getClass());
-
-            // Remove all the "NO" voters - they don't wish to participate in further voting rounds
-            var noVotes = results.get(TransformerVoteResult.NO);
-            if (noVotes != null)
-                transformers.removeAll(noVotes.stream().map(TransformerVote::transformer).toList());
-
-            // If there's at least one YES voter, let's apply the first one we find, remove them, and continue.
-            var yesVotes = results.get(TransformerVoteResult.YES);
-            if (yesVotes != null) {
-                final ITransformer<T> transformer = yesVotes.get(0).transformer();
-                node = transformer.transform(node, context);
-                auditTrail.addTransformerAuditTrail(context.getClassName(), ((TransformerHolder<?>) transformer).owner(), transformer);
-                transformers.remove(transformer);
-                continue;
-            }
-
-            // If we get here and find a DEFER, it means everyone just voted to DEFER. That's an untenable state and we cannot proceed.
-            if (results.containsKey(TransformerVoteResult.DEFER)) {
-                throw new VoteDeadlockException(results.get(TransformerVoteResult.DEFER), node.getClass());
-            }
-        }
-        while (!transformers.isEmpty());
-        return node;
-    }
-
-    private static <T> EnumMap<TransformerVoteResult, List<TransformerVote<T>>> gatherVotes(List<ITransformer<T>> transformers, VotingContext context) {
-        var results = new EnumMap<TransformerVoteResult, List<TransformerVote<T>>>(TransformerVoteResult.class);
-        for (ITransformer<T> transformer : transformers) {
-            var voteResult = transformer.castVote(context);
-            results.computeIfAbsent(voteResult, k -> new ArrayList<>())
-                    .add(new TransformerVote<>(voteResult, transformer));
-        }
-        return results;
+    /**
+     * Offers the node to each transformer in turn, in the order computed by {@link TransformerOrder}. Transformers
+     * voting YES are applied straight away, transformers voting DEFER are asked again once everyone else had their
+     * turn, for as long as that changes something. Deterministic votes are remembered across transformations of the
+     * same class, see {@link VoteMemo}.
+     */
+    private <T> T performVote(ITransformer<T>[] transformers, T node, VotingContext context) {
+        return performVote(transformers, node, context, null);
     }
 
-    private static MessageDigest getSha256() {
-        final class LazyInit {
-            private static final MessageDigest SHA256;
+    /**
+     * @param applied Collects the transformers applied, instead of adding them to the audit trail straight away
+     */
+    private <T> T performVote(ITransformer<T>[] transformers, T node, VotingContext context, @Nullable List<ITransformer<?>> applied) {
+        if (transformers.length == 0)
+            return node;
 
-            static {
-                try {
-                    SHA256 = MessageDigest.getInstance("SHA-256");
-                } catch (NoSuchAlgorithmException e) {
-                    throw new RuntimeException("HUH");
+        context.setNode(node);
+        BitSet deferred = null;
+        BitSet pending = null;
+        boolean progress;
+        do {
+            progress = false;
+            final int start = pending == null ? 0 : pending.nextSetBit(0);
+            for (int i = start; i >= 0 && i < transformers.length; i = pending == null ? i + 1 : pending.nextSetBit(i + 1)) {
+                final ITransformer<T> transformer = transformers[i];
+                final TransformerVoteResult result = votes.castVote(transformer, node, context);
+                switch (result) {
+                    // Someone rejected the current state. We're done here, and cannot proceed.
+                    case REJECT -> throw new VoteRejectedException(List.of(new TransformerVote<>(result, transformer, i)), node.getClass());
+                    case YES -> {
+                        node = transformer.transform(node, context);
+                        context.setNode(node);
+                        context.markTransformed();
+                        if (applied != null)
+                            applied.add(transformer);
+                        else
+                            auditTrail.addTransformerAuditTrail(context.getClassName(), ((TransformerHolder<?>) transformer).owner(), transformer);
+                        progress = true;
+                    }
+                    case DEFER -> {
+                        if (deferred == null)
+                            deferred = new BitSet(transformers.length);
+                        deferred.set(i);
+                    }
+                    // NO voters don't wish to participate any further
+                    case NO -> {}
                 }
             }
-
-            private LazyInit() {}
+            pending = deferred;
+            deferred = null;
+        } while (pending != null && progress);
+
+        // If we get here with someone still deferring, nobody else changed anything for them to wait on. That's an untenable state and we cannot proceed.
+        if (pending != null) {
+            final List<TransformerVote<T>> votes = new ArrayList<>();
+            for (int i = pending.nextSetBit(0); i >= 0; i = pending.nextSetBit(i + 1))
+                votes.add(new TransformerVote<>(TransformerVoteResult.DEFER, transformers[i], i));
+            throw new VoteDeadlockException(votes, node.getClass());
         }
-
-        return LazyInit.SHA256;
+        return node;
     }
 
     TransformingClassLoader getTransformingClassLoader() {
@@ -0,0 +1,90 @@
+/*
+ * Copyright (c) Forge Development LLC
+ * SPDX-License-Identifier: LGPL-3.0-only
+ */
+
+package cpw.mods.modlauncher;
+
+import cpw.mods.modlauncher.api.ConstantPoolFilter;
+import org.objectweb.asm.ClassReader;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * The references held by the constant pool of a class, decoded by one linear scan of the raw class bytes the first
+ * time a {@link ConstantPoolFilter} is checked. Nothing else of the class is parsed.
+ */
+final class ConstantPoolSummary {
+    private static final int CLASS = 7;
+    private static final int FIELD_REF = 9;
+    private static final int METHOD_REF = 10;
+    private static final int INTERFACE_METHOD_REF = 11;
+    private static final int STRING = 8;
+
+    private final byte[] bytes;
+    private Set<String> classes;
+    private Set<String> methods;
+    private Set<String> fields;
+    private Set<String> strings;
+
+    ConstantPoolSummary(byte[] bytes) {
+        this.bytes = bytes;
+    }
+
+    boolean matches(ConstantPoolFilter filter) {
+        if (classes == null)
+            scan();
+        for (var cls : filter.getClasses()) {
+            if (classes.contains(cls))
+                return true;
+        }
+        for (var method : filter.getMethods()) {
+            if (methods.contains(key(method.owner(), method.name(), method.descriptor())))
+                return true;
+        }
+        for (var field : filter.getFields()) {
+            if (fields.contains(key(field.owner(), field.name(), field.descriptor())))
+                return true;
+        }
+        for (var string : filter.getStrings()) {
+            if (strings.contains(string))
+                return true;
+        }
+        return false;
+    }
+
+    private void scan() {
+        // Only reads the constant pool offsets, the rest of the class is untouched
+        final ClassReader reader = new ClassReader(bytes);
+        final char[] buf = new char[reader.getMaxStringLength()];
+        classes = new HashSet<>();
+        methods = new HashSet<>();
+        fields = new HashSet<>();
+        strings = new HashSet<>();
+        for (int i = 1; i < reader.getItemCount(); i++) {
+            final int offset = reader.getItem(i);
+            // The second slot of longs and doubles
+            if (offset == 0)
+                continue;
+            switch (bytes[offset - 1]) {
+                case CLASS -> classes.add(reader.readUTF8(offset, buf));
+                case STRING -> strings.add(reader.readUTF8(offset, buf));
+                case FIELD_REF, METHOD_REF, INTERFACE_METHOD_REF -> {
+                    final String owner = reader.readClass(offset, buf);
+                    final int nameAndType = reader.getItem(reader.readUnsignedShort(offset + 2));
+                    final String name = reader.readUTF8(nameAndType, buf);
+                    final String descriptor = reader.readUTF8(nameAndType + 2, buf);
+                    final Set<String> members = bytes[offset - 1] == FIELD_REF ? fields : methods;
+                    members.add(key(owner, name, null));
+                    members.add(key(owner, name, descriptor));
+                }
+                default -> {}
+            }
+        }
+    }
+
+    private static String key(String owner, String name, String descriptor) {
+        return descriptor == null ? owner + '.' + name : owner + '.' + name + ' ' + descriptor;
+    }
+}
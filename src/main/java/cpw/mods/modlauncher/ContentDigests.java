@@ -0,0 +1,140 @@
+/*
+ * Copyright (c) Forge Development LLC
+ * SPDX-License-Identifier: LGPL-3.0-only
+ */
+
+package cpw.mods.modlauncher;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.lang.module.Configuration;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static cpw.mods.modlauncher.LogMarkers.MODLAUNCHER;
+
+/**
+ * SHA-256 digests of the jars taking part in transforming classes, so fingerprints depend on what the jars contain and
+ * not on where they are. Hashing every jar of the game on every launch is not cheap, so digests are remembered by
+ * path, size and modification time: for the rest of the launch, and in {@link TransformCache#CACHE_DIR_PROPERTY} for
+ * the next ones. Only the jars used by a launch are kept there.
+ * <p>
+ * Exploded modules have no content digest, only their location and timestamp, they are only used while developing.
+ */
+final class ContentDigests {
+    private static final Logger LOGGER = LogManager.getLogger();
+    private static final String FILE_NAME = "digests.txt";
+    private static final Map<String, String> KNOWN = new ConcurrentHashMap<>();
+    private static final Map<String, String> USED = new ConcurrentHashMap<>();
+    private static boolean loaded;
+    private static volatile boolean computed;
+
+    private ContentDigests() {}
+
+    static String of(Path path) throws IOException {
+        if (!Files.isRegularFile(path))
+            return path + "@" + Files.getLastModifiedTime(path).toMillis();
+
+        load();
+        final String stamp = path.toAbsolutePath() + "@" + Files.size(path) + "@" + Files.getLastModifiedTime(path).toMillis();
+        var ret = KNOWN.get(stamp);
+        if (ret == null) {
+            var digest = ClassDigest.sha256();
+            try (var in = Files.newInputStream(path)) {
+                final byte[] buffer = new byte[65536];
+                int read;
+                while ((read = in.read(buffer)) > 0)
+                    digest.update(buffer, 0, read);
+            }
+            ret = TransformCache.toHex(digest.digest());
+            KNOWN.put(stamp, ret);
+            computed = true;
+        }
+        USED.put(stamp, ret);
+        return ret;
+    }
+
+    /**
+     * Lists every module the configuration can see, through its parents as well, with the digest of its content. The
+     * modules of the runtime image are left out, they are identified by the Java version.
+     *
+     * @return A sorted {@code module <name> <digest>} line per module
+     */
+    static List<String> modules(Configuration root) {
+        var ret = new ArrayList<String>();
+        var seen = new HashSet<Configuration>();
+        var queue = new ArrayDeque<Configuration>(List.of(root));
+        while (!queue.isEmpty()) {
+            var config = queue.poll();
+            if (config == Configuration.empty() || !seen.add(config))
+                continue;
+            for (var module : config.modules()) {
+                module.reference().location().ifPresent(uri -> {
+                    if ("jrt".equals(uri.getScheme()))
+                        return;
+                    String digest;
+                    try {
+                        digest = of(Path.of(uri));
+                    } catch (Exception e) {
+                        digest = uri.toString();
+                    }
+                    ret.add("module " + module.name() + ' ' + digest);
+                });
+            }
+            queue.addAll(config.parents());
+        }
+        ret.sort(null);
+        return ret;
+    }
+
+    private static synchronized void load() {
+        if (loaded)
+            return;
+        loaded = true;
+        var dir = System.getProperty(TransformCache.CACHE_DIR_PROPERTY);
+        if (dir == null || dir.isEmpty())
+            return;
+
+        var file = Path.of(dir).resolve(FILE_NAME);
+        try {
+            for (var line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+                int split = line.indexOf('\t');
+                if (split > 0)
+                    KNOWN.put(line.substring(split + 1), line.substring(0, split));
+            }
+            LOGGER.debug(MODLAUNCHER, "Loaded {} jar digests from {}", KNOWN.size(), file);
+        } catch (NoSuchFileException e) {
+            LOGGER.debug(MODLAUNCHER, "No jar digests at {}", file);
+        } catch (IOException e) {
+            LOGGER.debug(MODLAUNCHER, "Failed to read jar digests {}", file, e);
+        }
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> save(file), "ModLauncher jar digests"));
+    }
+
+    private static void save(Path file) {
+        if (!computed && USED.size() == KNOWN.size())
+            return;
+        try {
+            var lines = new ArrayList<String>(USED.size());
+            USED.forEach((stamp, digest) -> lines.add(digest + '\t' + stamp));
+            lines.sort(null);
+            Files.createDirectories(file.getParent());
+            var tmp = Files.createTempFile(file.getParent(), FILE_NAME, ".tmp");
+            Files.write(tmp, lines, StandardCharsets.UTF_8);
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            LOGGER.debug(MODLAUNCHER, "Failed to write jar digests {}", file, e);
+        }
+    }
+}
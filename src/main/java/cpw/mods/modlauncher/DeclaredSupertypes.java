@@ -0,0 +1,232 @@
+/*
+ * Copyright (c) Forge Development LLC
+ * SPDX-License-Identifier: LGPL-3.0-only
+ */
+
+package cpw.mods.modlauncher;
+
+import cpw.mods.modlauncher.TargetPatternIndex.Bucket;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Matches classes against the patterns selecting subclasses, by the super types declared in their class files.
+ * <p>
+ * The super class and interfaces are found by walking the raw constant pool once, recording the offset of every entry
+ * in a table reused by the thread, and looked up by their bytes in a table of the types seen so far with the buckets
+ * each inherits, so a class whose super types are known costs no allocation.
+ * The others are resolved once from their untransformed headers, read by a {@link ClassHierarchy.Loader} that never
+ * runs transformers, so matching never transforms classes the JVM did not ask for.
+ */
+final class DeclaredSupertypes {
+    private static final int UTF8 = 1;
+    private static final int CLASS = 7;
+    private static final int INITIAL_CAPACITY = 256;
+    private static final int LIMIT = 1 << 16;
+    // Bounds the walk up the declared hierarchy, which is only cyclic in class files the JVM rejects anyway
+    private static final int MAX_DEPTH = 512;
+    // Matching never runs transformers, so it is never reentered on a thread while the table is in use
+    private static final ThreadLocal<int[]> OFFSETS = ThreadLocal.withInitial(() -> new int[INITIAL_CAPACITY]);
+
+    private final Map<String, Bucket> supertypes;
+    private volatile AtomicReferenceArray<Inherited> known = new AtomicReferenceArray<>(INITIAL_CAPACITY);
+    private int size;
+
+    private record Inherited(String name, Bucket[] buckets) {}
+
+    DeclaredSupertypes(Map<String, Bucket> supertypes) {
+        this.supertypes = supertypes;
+    }
+
+    /**
+     * @param loader Reads the headers of super types that were not seen yet, as declared in their class files
+     * @return The buckets of the super types the class extends or implements
+     * @throws RuntimeException if the class file is malformed or a super type can't be found
+     */
+    Bucket[] match(byte[] cls, ClassHierarchy.Loader loader) {
+        final int count = u2(cls, 8);
+        var offsets = OFFSETS.get();
+        if (offsets.length <= count) {
+            offsets = new int[Integer.highestOneBit(count) << 1];
+            OFFSETS.set(offsets);
+        }
+        final int header = indexConstantPool(cls, count, offsets);
+        Bucket[] ret = TargetPatternIndex.NO_BUCKETS;
+        final int superClass = u2(cls, header + 4);
+        if (superClass != 0)
+            ret = TargetPatternIndex.addAll(ret, inherited(cls, offsets, count, superClass, loader));
+        final int interfaces = u2(cls, header + 6);
+        for (int i = 0; i < interfaces; i++)
+            ret = TargetPatternIndex.addAll(ret, inherited(cls, offsets, count, u2(cls, header + 8 + i * 2), loader));
+        return ret;
+    }
+
+    private Bucket[] inherited(byte[] cls, int[] offsets, int count, int classIndex, ClassHierarchy.Loader loader) {
+        final int classEntry = entry(cls, offsets, count, classIndex, CLASS);
+        final int utf8 = entry(cls, offsets, count, u2(cls, classEntry + 1), UTF8);
+        final int length = u2(cls, utf8 + 1);
+        final Bucket[] ret = get(cls, utf8 + 3, length);
+        return ret != null ? ret : inherited(readUTF8(cls, utf8 + 1), loader, 0);
+    }
+
+    private Bucket[] inherited(String name, ClassHierarchy.Loader loader, int depth) {
+        var ret = get(name);
+        if (ret != null)
+            return ret;
+        if (depth > MAX_DEPTH)
+            throw new IllegalStateException("Class hierarchy of " + name + " is cyclic or too deep");
+
+        ret = TargetPatternIndex.NO_BUCKETS;
+        var own = supertypes.get(name);
+        if (own != null)
+            ret = TargetPatternIndex.add(ret, own);
+        var header = loader.load(name);
+        if (header.superName() != null)
+            ret = TargetPatternIndex.addAll(ret, inherited(header.superName(), loader, depth + 1));
+        for (var itf : header.interfaces())
+            ret = TargetPatternIndex.addAll(ret, inherited(itf, loader, depth + 1));
+        put(name, ret);
+        return ret;
+    }
+
+    /**
+     * @return The buckets inherited by the type named by the modified UTF-8 bytes, or null if it was not seen yet or
+     * its name is not ASCII
+     */
+    @Nullable
+    private Bucket[] get(byte[] data, int offset, int length) {
+        int hash = 0;
+        for (int i = 0; i < length; i++) {
+            final byte b = data[offset + i];
+            if (b < 0)
+                return null;
+            hash = 31 * hash + b;
+        }
+        final var table = known;
+        final int mask = table.length() - 1;
+        for (int i = spread(hash) & mask; ; i = (i + 1) & mask) {
+            final Inherited entry = table.get(i);
+            if (entry == null)
+                return null;
+            if (regionEquals(entry.name(), data, offset, length))
+                return entry.buckets();
+        }
+    }
+
+    @Nullable
+    private Bucket[] get(String name) {
+        final var table = known;
+        final int mask = table.length() - 1;
+        for (int i = spread(name.hashCode()) & mask; ; i = (i + 1) & mask) {
+            final Inherited entry = table.get(i);
+            if (entry == null)
+                return null;
+            if (entry.name().equals(name))
+                return entry.buckets();
+        }
+    }
+
+    private synchronized void put(String name, Bucket[] buckets) {
+        var table = known;
+        if ((size + 1) * 2 > table.length()) {
+            if (table.length() >= LIMIT) {
+                // Starts over rather than growing without bound, the entries are cheap to compute again
+                table = new AtomicReferenceArray<>(INITIAL_CAPACITY);
+                size = 0;
+            } else {
+                var grown = new AtomicReferenceArray<Inherited>(table.length() * 2);
+                for (int i = 0; i < table.length(); i++) {
+                    var entry = table.get(i);
+                    if (entry != null)
+                        insert(grown, entry);
+                }
+                table = grown;
+            }
+            known = table;
+        }
+        if (insert(table, new Inherited(name, buckets)))
+            size++;
+    }
+
+    private static boolean insert(AtomicReferenceArray<Inherited> table, Inherited inherited) {
+        final int mask = table.length() - 1;
+        for (int i = spread(inherited.name().hashCode()) & mask; ; i = (i + 1) & mask) {
+            final Inherited entry = table.get(i);
+            if (entry == null) {
+                table.set(i, inherited);
+                return true;
+            }
+            if (entry.name().equals(inherited.name()))
+                return false;
+        }
+    }
+
+    private static boolean regionEquals(String name, byte[] data, int offset, int length) {
+        if (name.length() != length)
+            return false;
+        for (int i = 0; i < length; i++) {
+            if (name.charAt(i) != data[offset + i])
+                return false;
+        }
+        return true;
+    }
+
+    private static int spread(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+
+    /**
+     * Walks the constant pool, only reading the tags and lengths of its entries.
+     *
+     * @param count The constant pool count, one more than the number of slots
+     * @param offsets Receives the offset of the tag of every entry by index
+     * @return The offset of the access flags, right after the constant pool
+     */
+    private static int indexConstantPool(byte[] cls, int count, int[] offsets) {
+        int offset = 10;
+        for (int i = 1; i < count; i++) {
+            offsets[i] = offset;
+            switch (cls[offset]) {
+                case 1 -> offset += 3 + u2(cls, offset + 1);
+                case 7, 8, 16, 19, 20 -> offset += 3;
+                case 15 -> offset += 4;
+                case 3, 4, 9, 10, 11, 12, 17, 18 -> offset += 5;
+                case 5, 6 -> {
+                    // Longs and doubles take two slots, the second one is unusable
+                    offset += 9;
+                    offsets[++i] = -1;
+                }
+                default -> throw new IllegalArgumentException("Unknown constant pool tag " + cls[offset] + " at " + offset);
+            }
+        }
+        return offset;
+    }
+
+    /**
+     * @param offsets The offsets of the entries of the class, see {@link #indexConstantPool}
+     * @return The offset of the tag of the entry
+     */
+    private static int entry(byte[] cls, int[] offsets, int count, int index, int tag) {
+        if (index < 1 || index >= count || offsets[index] < 0 || cls[offsets[index]] != tag)
+            throw new IllegalArgumentException("Constant pool entry " + index + " is not of tag " + tag);
+        return offsets[index];
+    }
+
+    private static int u2(byte[] cls, int offset) {
+        return ((cls[offset] & 0xFF) << 8) | (cls[offset + 1] & 0xFF);
+    }
+
+    private static String readUTF8(byte[] cls, int offset) {
+        try {
+            return new DataInputStream(new ByteArrayInputStream(cls, offset, cls.length - offset)).readUTF();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
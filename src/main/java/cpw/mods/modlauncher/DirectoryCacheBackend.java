@@ -0,0 +1,172 @@
+/*
+ * Copyright (c) Forge Development LLC
+ * SPDX-License-Identifier: LGPL-3.0-only
+ */
+
+package cpw.mods.modlauncher;
+
+import cpw.mods.modlauncher.serviceapi.ITransformCacheBackend;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Stream;
+
+import static cpw.mods.modlauncher.LogMarkers.MODLAUNCHER;
+
+/**
+ * Transform cache backend storing entries as files under {@link TransformCache#CACHE_DIR_PROPERTY}. Once the directory
+ * grows past {@link #MAX_SIZE_PROPERTY} the least recently used entries are dropped.
+ * <p>
+ * Only created by the service loader, it has to be public to be provided.
+ */
+public final class DirectoryCacheBackend implements ITransformCacheBackend {
+    private static final Logger LOGGER = LogManager.getLogger();
+    /** Maximum size of the cache in megabytes */
+    static final String MAX_SIZE_PROPERTY = "modlauncher.cacheMaxSize";
+    private static final long DEFAULT_MAX_SIZE = 512;
+
+    private Path root;
+    private long maxSize;
+    private final AtomicLong size = new AtomicLong();
+    private final LongAdder evictions = new LongAdder();
+
+    private DirectoryCacheBackend() {}
+
+    public static DirectoryCacheBackend provider() {
+        return new DirectoryCacheBackend();
+    }
+
+    @Override
+    public String name() {
+        return "directory";
+    }
+
+    @Override
+    public boolean initialize() {
+        var dir = System.getProperty(TransformCache.CACHE_DIR_PROPERTY);
+        if (dir == null || dir.isEmpty())
+            return false;
+
+        root = Path.of(dir).resolve("classes");
+        maxSize = Long.getLong(MAX_SIZE_PROPERTY, DEFAULT_MAX_SIZE) * 1024 * 1024;
+        try {
+            Files.createDirectories(root);
+            try (var files = Files.walk(root)) {
+                size.set(files.filter(Files::isRegularFile).mapToLong(DirectoryCacheBackend::sizeOf).sum());
+            }
+            LOGGER.debug(MODLAUNCHER, "Using transformed class cache at {} ({} bytes, limit {} bytes)", root, size.get(), maxSize);
+            return true;
+        } catch (IOException | UncheckedIOException e) {
+            LOGGER.error(MODLAUNCHER, "Failed to open transformed class cache at {}, caching disabled", root, e);
+            return false;
+        }
+    }
+
+    @Override
+    public byte @Nullable [] get(String key) throws IOException {
+        var file = pathFor(key);
+        try {
+            var data = Files.readAllBytes(file);
+            // Refresh the timestamp so eviction drops the least recently used entries first
+            Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+            return data;
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+    }
+
+    @Override
+    public void put(String key, byte[] data) throws IOException {
+        var file = pathFor(key);
+        Files.createDirectories(file.getParent());
+        // Writes of a backend happen one at a time, so nothing changes the entry in between
+        final long replaced = sizeOf(file);
+        var tmp = Files.createTempFile(file.getParent(), key, ".tmp");
+        try {
+            Files.write(tmp, data);
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            Files.deleteIfExists(tmp);
+            throw e;
+        }
+        if (size.addAndGet(data.length - replaced) > maxSize)
+            evict();
+    }
+
+    /**
+     * Drops the least recently used entries until the cache is back under 90% of its size cap.
+     */
+    private synchronized void evict() {
+        if (size.get() <= maxSize)
+            return;
+
+        record Entry(Path path, long size, long modified) {}
+        var entries = new ArrayList<Entry>();
+        try (Stream<Path> files = Files.walk(root)) {
+            files.filter(Files::isRegularFile).forEach(p -> {
+                try {
+                    entries.add(new Entry(p, Files.size(p), Files.getLastModifiedTime(p).toMillis()));
+                } catch (IOException ignored) {
+                    // Deleted by another process, nothing to evict
+                }
+            });
+        } catch (IOException | UncheckedIOException e) {
+            LOGGER.error(MODLAUNCHER, "Failed to scan transformed class cache at {}", root, e);
+            return;
+        }
+
+        entries.sort(Comparator.comparingLong(Entry::modified));
+        long total = entries.stream().mapToLong(Entry::size).sum();
+        long target = maxSize / 10 * 9;
+        for (var entry : entries) {
+            if (total <= target)
+                break;
+            try {
+                Files.deleteIfExists(entry.path());
+                total -= entry.size();
+                evictions.increment();
+            } catch (IOException e) {
+                LOGGER.debug(MODLAUNCHER, "Failed to evict cached class {}", entry.path(), e);
+            }
+        }
+        size.set(total);
+        LOGGER.debug(MODLAUNCHER, "Evicted transformed class cache down to {} bytes: {}", total, this);
+    }
+
+    long getEvictions() {
+        return evictions.sum();
+    }
+
+    long getSize() {
+        return size.get();
+    }
+
+    @Override
+    public String toString() {
+        return "DirectoryCacheBackend[" + root + ", evictions=" + getEvictions() + ", size=" + getSize() + "/" + maxSize + "]";
+    }
+
+    private Path pathFor(String key) {
+        return root.resolve(key.substring(0, 2)).resolve(key.substring(2));
+    }
+
+    private static long sizeOf(Path path) {
+        try {
+            return Files.size(path);
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright (c) Forge Development LLC
+ * SPDX-License-Identifier: LGPL-3.0-only
+ */
+
+package cpw.mods.modlauncher;
+
+import cpw.mods.modlauncher.serviceapi.ITransformCacheBackend;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+
+import static cpw.mods.modlauncher.LogMarkers.MODLAUNCHER;
+
+/**
+ * Transform cache backend storing entries in a blob store over HTTP, to share them between machines. Entries are read
+ * with {@code GET <url>/<key>} and written with {@code PUT <url>/<key>}, a missing entry is a 404. Any static file
+ * server accepting uploads, or an object store bucket, will do.
+ * <p>
+ * ModLauncher only requires {@code java.net.http} statically, the backend stays disabled on runtimes without it. It is
+ * only used when named in {@link TransformCache#BACKENDS_PROPERTY}, as it sends the keys of loaded classes to the
+ * server.
+ * <p>
+ * Only created by the service loader, it has to be public to be provided.
+ */
+public final class HttpCacheBackend implements ITransformCacheBackend {
+    private static final Logger LOGGER = LogManager.getLogger();
+    /** Base URL of the blob store, the backend is disabled if this is not set */
+    static final String URL_PROPERTY = "modlauncher.cacheUrl";
+    /** Timeout of each request in milliseconds */
+    static final String TIMEOUT_PROPERTY = "modlauncher.cacheTimeout";
+    private static final long DEFAULT_TIMEOUT = 2000;
+
+    private String base;
+    private Duration timeout;
+    private HttpClient client;
+
+    private HttpCacheBackend() {}
+
+    public static HttpCacheBackend provider() {
+        return new HttpCacheBackend();
+    }
+
+    @Override
+    public String name() {
+        return "http";
+    }
+
+    @Override
+    public boolean initialize() {
+        var url = System.getProperty(URL_PROPERTY);
+        if (url == null || url.isEmpty())
+            return false;
+        if (!isHttpClientPresent()) {
+            LOGGER.error(MODLAUNCHER, "Transformed class cache at {} needs the java.net.http module, which is not present. Add it with --add-modules java.net.http", url);
+            return false;
+        }
+
+        base = url.endsWith("/") ? url : url + '/';
+        timeout = Duration.ofMillis(Long.getLong(TIMEOUT_PROPERTY, DEFAULT_TIMEOUT));
+        client = HttpClient.newBuilder()
+            .connectTimeout(timeout)
+            .followRedirects(HttpClient.Redirect.NORMAL)
+            .build();
+        LOGGER.debug(MODLAUNCHER, "Using transformed class cache at {}", base);
+        return true;
+    }
+
+    private boolean isHttpClientPresent() {
+        var module = ModuleLayer.boot().findModule("java.net.http");
+        if (module.isEmpty())
+            return false;
+        // Optional dependencies are only read when something else resolved them, read them ourselves otherwise
+        var self = getClass().getModule();
+        if (!self.canRead(module.get()))
+            self.addReads(module.get());
+        return true;
+    }
+
+    @Override
+    public byte @Nullable [] get(String key) throws IOException {
+        var response = send(request(key).GET().build(), HttpResponse.BodyHandlers.ofByteArray());
+        return switch (response.statusCode()) {
+            case 200 -> response.body();
+            case 404 -> null;
+            default -> throw new IOException("GET " + response.uri() + " returned " + response.statusCode());
+        };
+    }
+
+    @Override
+    public void put(String key, byte[] data) throws IOException {
+        var response = send(request(key).PUT(HttpRequest.BodyPublishers.ofByteArray(data)).build(), HttpResponse.BodyHandlers.discarding());
+        if (response.statusCode() / 100 != 2)
+            throw new IOException("PUT " + response.uri() + " returned " + response.statusCode());
+    }
+
+    private HttpRequest.Builder request(String key) {
+        return HttpRequest.newBuilder(URI.create(base + key))
+            .timeout(timeout)
+            .header("Content-Type", "application/octet-stream");
+    }
+
+    private <T> HttpResponse<T> send(HttpRequest request, HttpResponse.BodyHandler<T> handler) throws IOException {
+        try {
+            return client.send(request, handler);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while requesting " + request.uri());
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "HttpCacheBackend[" + base + "]";
+    }
+}
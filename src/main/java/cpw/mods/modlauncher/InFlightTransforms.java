@@ -0,0 +1,68 @@
+/*
+ * Copyright (c) Forge Development LLC
+ * SPDX-License-Identifier: LGPL-3.0-only
+ */
+
+package cpw.mods.modlauncher;
+
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Makes sure a class is only transformed by one thread at a time for the same reason. Threads asking for a class that
+ * is already being transformed wait for that result instead of doing the same work again.
+ * <p>
+ * Waiting is skipped whenever it could deadlock: when the thread doing the work is the one asking again, through a
+ * plugin or frame computation, or when it is itself waiting, directly or not, on the thread asking. Waiting is also
+ * bounded, as the thread doing the work may be blocked on a class loading lock the thread asking holds, see
+ * {@link WaitingThreads}. The transform then simply runs twice, as it did before. If the first transform fails, the
+ * waiting threads run it themselves, so each of them gets its own exception.
+ */
+final class InFlightTransforms {
+    private final ConcurrentHashMap<Key, Flight> flights = new ConcurrentHashMap<>();
+
+    private record Key(String className, String reason) {}
+
+    private static final class Flight {
+        private final Thread owner = Thread.currentThread();
+        private final byte[] input;
+        private final CompletableFuture<byte[]> result = new CompletableFuture<>();
+
+        private Flight(byte[] input) {
+            this.input = input;
+        }
+    }
+
+    byte[] run(String className, String reason, byte[] input, Supplier<byte[]> transform) {
+        final Key key = new Key(className, reason);
+        final Flight flight = new Flight(input);
+        final Flight existing = flights.putIfAbsent(key, flight);
+        if (existing == null)
+            return lead(key, flight, transform);
+
+        // Someone handed us different bytes for the same class, their result is no use to us
+        if (existing.input != input && !Arrays.equals(existing.input, input))
+            return transform.get();
+
+        final byte[] result = WaitingThreads.join(existing.owner, existing.result);
+        if (result == null)
+            return transform.get();
+        // The array is shared with the thread that made it
+        return result == input ? result : result.clone();
+    }
+
+    private byte[] lead(Key key, Flight flight, Supplier<byte[]> transform) {
+        try {
+            final byte[] result = transform.get();
+            flight.result.complete(result);
+            return result;
+        } catch (Throwable t) {
+            flight.result.completeExceptionally(t);
+            throw t;
+        } finally {
+            flights.remove(key, flight);
+        }
+    }
+}
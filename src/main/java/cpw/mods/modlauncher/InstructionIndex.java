@@ -0,0 +1,77 @@
+/*
+ * Copyright (c) Forge Development LLC
+ * SPDX-License-Identifier: LGPL-3.0-only
+ */
+
+package cpw.mods.modlauncher;
+
+import org.jetbrains.annotations.Nullable;
+import org.objectweb.asm.tree.AbstractInsnNode;
+import org.objectweb.asm.tree.FieldInsnNode;
+import org.objectweb.asm.tree.LdcInsnNode;
+import org.objectweb.asm.tree.MethodInsnNode;
+import org.objectweb.asm.tree.MethodNode;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Summary of the instructions of a method, built in one pass the first time a voter asks about them, and shared by every
+ * voter until the method is transformed. Answers which opcodes, invocations, field accesses and constants the method
+ * contains without walking its instructions again.
+ */
+final class InstructionIndex {
+    private final AbstractInsnNode[] instructions;
+    private final int[] opcodes = new int[256];
+    private final Set<String> invocations = new HashSet<>();
+    private final Set<String> fieldAccesses = new HashSet<>();
+    private final Set<Object> constants = new HashSet<>();
+
+    InstructionIndex(MethodNode method) {
+        this.instructions = method.instructions.toArray();
+        for (var insn : instructions) {
+            final int opcode = insn.getOpcode();
+            // Labels, frames and line numbers have no opcode
+            if (opcode < 0)
+                continue;
+            opcodes[opcode]++;
+            if (insn instanceof MethodInsnNode min) {
+                invocations.add(key(min.owner, min.name, null));
+                invocations.add(key(min.owner, min.name, min.desc));
+            } else if (insn instanceof FieldInsnNode fin) {
+                fieldAccesses.add(key(fin.owner, fin.name, null));
+                fieldAccesses.add(key(fin.owner, fin.name, fin.desc));
+            } else if (insn instanceof LdcInsnNode ldc) {
+                constants.add(ldc.cst);
+            }
+        }
+    }
+
+    /**
+     * The instructions of the method when the index was built
+     */
+    AbstractInsnNode[] getInstructions() {
+        return instructions;
+    }
+
+    int getOpcodeCount(int opcode) {
+        return opcode < 0 || opcode >= opcodes.length ? 0 : opcodes[opcode];
+    }
+
+    boolean invokesMethod(String owner, String name, @Nullable String descriptor) {
+        return invocations.contains(key(owner, name, descriptor));
+    }
+
+    boolean accessesField(String owner, String name, @Nullable String descriptor) {
+        return fieldAccesses.contains(key(owner, name, descriptor));
+    }
+
+    boolean loadsConstant(Object constant) {
+        return constants.contains(constant);
+    }
+
+    private static String key(String owner, String name, @Nullable String descriptor) {
+        // Descriptors start with '(' or a type, so the key can't be confused with an owner and name without one
+        return descriptor == null ? owner + '.' + name : owner + '.' + name + ' ' + descriptor;
+    }
+}
@@ -0,0 +1,45 @@
+/*
+ * Copyright (c) Forge Development LLC
+ * SPDX-License-Identifier: LGPL-3.0-only
+ */
+
+package cpw.mods.modlauncher;
+
+import java.lang.module.Configuration;
+
+/**
+ * The fingerprint of the transformers, launch plugins and game jars of a launch, see
+ * {@link TransformCache#computeFingerprint}. It hashes every game jar that changed since it was last seen, so it is
+ * computed once, when first needed, and shared by the transformed class cache, the baked classes and the class
+ * hierarchy snapshot.
+ */
+final class LaunchFingerprint {
+    private final TransformStore transformStore;
+    private final LaunchPluginHandler pluginHandler;
+    private final Configuration gameLayer;
+    private volatile byte[] value;
+
+    /**
+     * @param gameLayer The configuration of the layer of the transforming class loader
+     */
+    LaunchFingerprint(TransformStore transformStore, LaunchPluginHandler pluginHandler, Configuration gameLayer) {
+        this.transformStore = transformStore;
+        this.pluginHandler = pluginHandler;
+        this.gameLayer = gameLayer;
+    }
+
+    /**
+     * @return The fingerprint, which must not be modified
+     */
+    byte[] get() {
+        var ret = value;
+        if (ret == null) {
+            synchronized (this) {
+                ret = value;
+                if (ret == null)
+                    value = ret = TransformCache.computeFingerprint(transformStore, pluginHandler, gameLayer);
+            }
+        }
+        return ret;
+    }
+}
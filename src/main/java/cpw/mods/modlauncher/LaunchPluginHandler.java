@@ -6,6 +6,7 @@
 package cpw.mods.modlauncher;
 
 import cpw.mods.jarhandling.SecureJar;
+import cpw.mods.modlauncher.api.ConstantPoolFilter;
 import cpw.mods.modlauncher.api.IEnvironment;
 import cpw.mods.modlauncher.api.IModuleLayerManager.Layer;
 import cpw.mods.modlauncher.api.NamedPath;
@@ -23,16 +24,18 @@ import static cpw.mods.modlauncher.LogMarkers.*;
 import java.util.ArrayList;
 import java.util.EnumMap;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.ServiceConfigurationError;
 import java.util.ServiceLoader;
+import java.util.function.Consumer;
 
 public class LaunchPluginHandler {
     private static final Logger LOGGER = LogManager.getLogger();
     private final Map<String, ILaunchPluginService> plugins = new HashMap<>();
+    private volatile Dispatch[] dispatch;
+    private boolean hasPrefilters;
 
     public LaunchPluginHandler(ModuleLayerHandler layerHandler) {
         var boot = layerHandler.getLayer(Layer.BOOT).orElseThrow();
@@ -65,21 +68,144 @@ public class LaunchPluginHandler {
         return Optional.ofNullable(plugins.get(name));
     }
 
+    void forEachPlugin(Consumer<ILaunchPluginService> consumer) {
+        plugins.values().forEach(consumer);
+    }
+
     public EnumMap<Phase, List<ILaunchPluginService>> computeLaunchPluginTransformerSet(Type className, boolean isEmpty, String reason, TransformerAuditTrail auditTrail) {
-        var uniqueValues = new HashSet<ILaunchPluginService>();
+        var phases = computeLaunchPluginPhases(className.getClassName(), isEmpty, reason, auditTrail);
         EnumMap<Phase, List<ILaunchPluginService>> phaseObjectEnumMap = new EnumMap<>(Phase.class);
-        for (var plugin : plugins.values()) {
-            for (var ph : plugin.handlesClass(className, isEmpty, reason)) {
-                phaseObjectEnumMap.computeIfAbsent(ph, e -> new ArrayList<>()).add(plugin);
-                if (uniqueValues.add(plugin)) {
-                    plugin.customAuditConsumer(className.getClassName(), strings -> auditTrail.addPluginCustomAuditTrail(className.getClassName(), plugin, strings));
-                }
-            }
+        for (var ph : Phase.values()) {
+            if (!phases.get(ph).isEmpty())
+                phaseObjectEnumMap.put(ph, phases.get(ph));
         }
-        LOGGER.debug(LAUNCHPLUGIN, "LaunchPluginService {}", ()->phaseObjectEnumMap);
         return phaseObjectEnumMap;
     }
 
+    /**
+     * Finds the plugins that wish to handle the class, without allocating anything when none of them do.
+     *
+     * @param className binary class name (using '.' instead of '/')
+     */
+    PhaseSet computeLaunchPluginPhases(String className, boolean isEmpty, String reason, TransformerAuditTrail auditTrail) {
+        PhaseSet ret = PhaseSet.EMPTY;
+        Type classType = null;
+        for (var entry : getDispatch()) {
+            if (!entry.filter().matches(className))
+                continue;
+            if (classType == null)
+                classType = Type.getObjectType(className.replace('.', '/'));
+            var plugin = entry.plugin();
+            var handled = plugin.handlesClass(classType, isEmpty, reason);
+            if (handled.isEmpty())
+                continue;
+            if (ret == PhaseSet.EMPTY)
+                ret = new PhaseSet();
+            for (var ph : handled)
+                ret.add(ph, plugin);
+            plugin.customAuditConsumer(className, strings -> auditTrail.addPluginCustomAuditTrail(className, plugin, strings));
+        }
+        if (ret != PhaseSet.EMPTY)
+            LOGGER.debug(LAUNCHPLUGIN, "LaunchPluginService {}", ret);
+        return ret;
+    }
+
+    private Dispatch[] getDispatch() {
+        var ret = this.dispatch;
+        if (ret == null) {
+            ret = new Dispatch[plugins.size()];
+            int i = 0;
+            for (var plugin : plugins.values()) {
+                var filter = plugin.handledPackages().isEmpty() ? ClassNameFilter.ALL : ClassNameFilter.builder().addPackages(plugin.handledPackages()).build();
+                var prefilter = plugin.prefilter();
+                LOGGER.debug(LAUNCHPLUGIN, "LaunchPluginService {} handles {}, prefilter {}", plugin.name(), filter, prefilter);
+                ret[i++] = new Dispatch(plugin, filter, prefilter);
+                this.hasPrefilters |= prefilter != null;
+            }
+            // Publishes hasPrefilters
+            this.dispatch = ret;
+        }
+        return ret;
+    }
+
+    /**
+     * Drops the plugins whose {@link ILaunchPluginService#prefilter()} the class does not pass.
+     */
+    PhaseSet prefilter(PhaseSet phases, ConstantPoolSummary constantPool) {
+        if (phases.isEmpty() || !this.hasPrefilters)
+            return phases;
+
+        PhaseSet ret = null;
+        for (var entry : getDispatch()) {
+            if (entry.prefilter() == null || constantPool.matches(entry.prefilter()))
+                continue;
+            if (ret == null)
+                ret = phases.copy();
+            ret.remove(entry.plugin());
+        }
+        if (ret == null)
+            return phases;
+        LOGGER.debug(LAUNCHPLUGIN, "LaunchPluginService prefiltered to {}", ret);
+        return ret.isEmpty() ? PhaseSet.EMPTY : ret;
+    }
+
+    /**
+     * @return true if some plugin declared a {@link ILaunchPluginService#prefilter()}
+     */
+    boolean hasPrefilters() {
+        return getDispatch().length > 0 && this.hasPrefilters;
+    }
+
+    private record Dispatch(ILaunchPluginService plugin, ClassNameFilter filter, @Nullable ConstantPoolFilter prefilter) {}
+
+    /**
+     * The plugins handling a class, by phase. {@link #EMPTY} is shared by every class no plugin handles.
+     */
+    static final class PhaseSet {
+        static final PhaseSet EMPTY = new PhaseSet();
+        private List<ILaunchPluginService> before = List.of();
+        private List<ILaunchPluginService> after = List.of();
+
+        private void add(Phase phase, ILaunchPluginService plugin) {
+            if (phase == Phase.BEFORE) {
+                if (before.isEmpty())
+                    before = new ArrayList<>(2);
+                before.add(plugin);
+            } else {
+                if (after.isEmpty())
+                    after = new ArrayList<>(2);
+                after.add(plugin);
+            }
+        }
+
+        private PhaseSet copy() {
+            var ret = new PhaseSet();
+            ret.before = before.isEmpty() ? before : new ArrayList<>(before);
+            ret.after = after.isEmpty() ? after : new ArrayList<>(after);
+            return ret;
+        }
+
+        private void remove(ILaunchPluginService plugin) {
+            if (!before.isEmpty())
+                before.remove(plugin);
+            if (!after.isEmpty())
+                after.remove(plugin);
+        }
+
+        List<ILaunchPluginService> get(Phase phase) {
+            return phase == Phase.BEFORE ? before : after;
+        }
+
+        boolean isEmpty() {
+            return before.isEmpty() && after.isEmpty();
+        }
+
+        @Override
+        public String toString() {
+            return "{BEFORE=" + before + ", AFTER=" + after + "}";
+        }
+    }
+
     void offerScanResultsToPlugins(List<SecureJar> scanResults) {
         for (ILaunchPluginService p : plugins.values()) {
             p.addResources(scanResults);
@@ -60,6 +60,7 @@ final class LaunchServiceHandler {
         var service = handlers.get(target);
         var paths = service.getPaths();
         launchPluginHandler.announceLaunch(classLoader, paths);
+        classLoader.prewarm();
         if (!quiet)
             LOGGER.info(MODLAUNCHER, "Launching target '{}' with arguments {}", target, hideAccessToken(arguments));
 
@@ -104,6 +105,14 @@ final class LaunchServiceHandler {
         launch(launchTarget, args, gameLayer, classLoader, launchPluginHandler);
     }
 
+    /**
+     * Initializes the launch plugins for the launch target without launching it, so classes are transformed as they
+     * would be for the launch.
+     */
+    void announceLaunch(ArgumentHandler argumentHandler, TransformingClassLoader classLoader, LaunchPluginHandler launchPluginHandler) {
+        launchPluginHandler.announceLaunch(classLoader, handlers.get(argumentHandler.getLaunchTarget()).getPaths());
+    }
+
     TransformingClassLoaderBuilder identifyTransformationTargets(final ArgumentHandler argumentHandler) {
         var builder = new TransformingClassLoaderBuilder();
         for (var path : argumentHandler.getSpecialJars())
@@ -148,6 +148,12 @@ public class Launcher {
         var oldCL = Thread.currentThread().getContextClassLoader();
         try {
             Thread.currentThread().setContextClassLoader(this.classLoader);
+            var bakeTarget = this.argumentHandler.getBakeTarget();
+            if (bakeTarget.isPresent()) {
+                this.launchService.announceLaunch(this.argumentHandler, this.classLoader, this.launchPlugins);
+                BakedClasses.bake(bakeTarget.get(), this.moduleLayerHandler.getLayer(Layer.GAME).orElseThrow(), this.classLoader);
+                return;
+            }
             this.launchService.launch(this.argumentHandler, this.moduleLayerHandler.getLayer(Layer.GAME).orElseThrow(), this.classLoader, this.launchPlugins);
         } finally {
             Thread.currentThread().setContextClassLoader(oldCL);
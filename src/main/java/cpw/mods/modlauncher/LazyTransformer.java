@@ -0,0 +1,149 @@
+/*
+ * Copyright (c) Forge Development LLC
+ * SPDX-License-Identifier: LGPL-3.0-only
+ */
+
+package cpw.mods.modlauncher;
+
+import cpw.mods.modlauncher.api.ConstantPoolFilter;
+import cpw.mods.modlauncher.api.ITransformer;
+import cpw.mods.modlauncher.api.ITransformerVotingContext;
+import cpw.mods.modlauncher.api.TransformerVoteResult;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Set;
+
+import static cpw.mods.modlauncher.LogMarkers.MODLAUNCHER;
+
+/**
+ * A transformer declared in a {@link TransformerManifest}. Targets, labels and ordering come from the manifest, the
+ * transformer itself is only created the first time it votes, which is when the first class it targets is transformed.
+ */
+final class LazyTransformer<T> implements ITransformer<T> {
+    private static final Logger LOGGER = LogManager.getLogger();
+    private final TransformerManifest.Entry entry;
+    private final Class<?> serviceClass;
+    private volatile ITransformer<T> instance;
+
+    LazyTransformer(TransformerManifest.Entry entry, Class<?> serviceClass) {
+        this.entry = entry;
+        this.serviceClass = serviceClass;
+    }
+
+    private ITransformer<T> get() {
+        var ret = instance;
+        if (ret == null) {
+            synchronized (this) {
+                ret = instance;
+                if (ret == null)
+                    instance = ret = create();
+            }
+        }
+        return ret;
+    }
+
+    @SuppressWarnings("unchecked")
+    private ITransformer<T> create() {
+        LOGGER.debug(MODLAUNCHER, "Creating declared transformer {}", entry::className);
+        try {
+            var cls = Class.forName(entry.className(), true, serviceClass.getClassLoader());
+            return cls.asSubclass(ITransformer.class).getConstructor().newInstance();
+        } catch (ReflectiveOperationException | ClassCastException e) {
+            throw new IllegalStateException("Failed to create declared transformer " + entry.className(), e);
+        }
+    }
+
+    /**
+     * @return The binary name of the declared transformer class, which may not be loaded yet
+     */
+    String getTransformerClassName() {
+        return entry.className();
+    }
+
+    /**
+     * @return The class of the service declaring the transformer, in the same module as the transformer
+     */
+    Class<?> getServiceClass() {
+        return serviceClass;
+    }
+
+    @NotNull
+    @Override
+    public T transform(T input, ITransformerVotingContext context) {
+        return get().transform(input, context);
+    }
+
+    @NotNull
+    @Override
+    public TransformerVoteResult castVote(ITransformerVotingContext context) {
+        return get().castVote(context);
+    }
+
+    @Override
+    public int getComputeFlags() {
+        return get().getComputeFlags();
+    }
+
+    @Override
+    public boolean isVoteDeterministic() {
+        return get().isVoteDeterministic();
+    }
+
+    @Override
+    public boolean isThreadSafe() {
+        return get().isThreadSafe();
+    }
+
+    @Override
+    public boolean supportsHeaderOnly() {
+        return get().supportsHeaderOnly();
+    }
+
+    /**
+     * Only creates the transformer if it overrides the prefilter, the others keep waiting for their first vote.
+     */
+    @Nullable
+    @Override
+    public ConstantPoolFilter prefilter() {
+        return entry.prefilter() ? get().prefilter() : null;
+    }
+
+    @NotNull
+    @Override
+    public Set<Target> targets() {
+        return entry.targets();
+    }
+
+    @Override
+    public Set<TargetPattern> targetPatterns() {
+        return entry.patterns();
+    }
+
+    @Override
+    public String[] labels() {
+        return entry.labels();
+    }
+
+    @Override
+    public int priority() {
+        return entry.priority();
+    }
+
+    @Override
+    public Set<String> runsBefore() {
+        return entry.runsBefore();
+    }
+
+    @Override
+    public Set<String> runsAfter() {
+        return entry.runsAfter();
+    }
+
+    @Override
+    public String toString() {
+        return "DeclaredTransformer[" + entry.className() + "]";
+    }
+}
@@ -0,0 +1,229 @@
+/*
+ * Copyright (c) Forge Development LLC
+ * SPDX-License-Identifier: LGPL-3.0-only
+ */
+
+package cpw.mods.modlauncher;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import static cpw.mods.modlauncher.LogMarkers.MODLAUNCHER;
+
+/**
+ * Records which classes are transformed, for which reason and in which order, and replays that on the next launch to
+ * transform them ahead of time on a pool of worker threads. Classes transformed ahead of time are handed to the loader
+ * when it asks for them, as long as the class bytes did not change in between. Classes the loader asks for first are
+ * simply transformed by the loader as usual, and the workers skip them.
+ * <p>
+ * Transforming ahead of time means transformers and launch plugins see classes in a different order, and possibly on
+ * other threads, than they are loaded in, so this is only enabled by {@link #PREWARM_PROPERTY}. The profile is stored
+ * next to the transformed class cache, so it also needs {@link TransformCache#CACHE_DIR_PROPERTY}. Results waiting to
+ * be loaded are bounded by {@link #PREWARM_BUDGET_PROPERTY}, in megabytes.
+ */
+final class LoadProfile {
+    private static final Logger LOGGER = LogManager.getLogger();
+    static final String PREWARM_PROPERTY = "modlauncher.prewarm";
+    static final String PREWARM_THREADS_PROPERTY = "modlauncher.prewarmThreads";
+    static final String PREWARM_BUDGET_PROPERTY = "modlauncher.prewarmBudget";
+    private static final int MAGIC = 0x4D4C4C50; // MLLP
+    private static final int VERSION = 1;
+    private static final String FILE_NAME = "load-profile.bin";
+    private static final int LIMIT = 1 << 18;
+    private static final ThreadLocal<Entry> PREWARMING = new ThreadLocal<>();
+
+    private final Path file;
+    private final Set<Entry> seen = ConcurrentHashMap.newKeySet();
+    private final ConcurrentLinkedQueue<Entry> order = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger recorded = new AtomicInteger();
+    private final ConcurrentHashMap<Entry, Ready> ready = new ConcurrentHashMap<>();
+    private final AtomicLong readyBytes = new AtomicLong();
+    private final long budget;
+    private final AtomicInteger hits = new AtomicInteger();
+    private final AtomicInteger prewarmed = new AtomicInteger();
+
+    private record Entry(String className, String reason) {}
+
+    private record Ready(byte[] input, byte[] result) {}
+
+    private LoadProfile(Path file, long budget) {
+        this.file = file;
+        this.budget = budget;
+    }
+
+    /**
+     * @return The profile of this launch, saved when the JVM exits, or null if prewarming is disabled
+     */
+    @Nullable
+    static LoadProfile create() {
+        var dir = System.getProperty(TransformCache.CACHE_DIR_PROPERTY);
+        if (!Boolean.getBoolean(PREWARM_PROPERTY) || dir == null || dir.isEmpty())
+            return null;
+
+        var ret = new LoadProfile(Path.of(dir).resolve(FILE_NAME), Long.getLong(PREWARM_BUDGET_PROPERTY, 256) << 20);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                ret.save();
+            } catch (IOException | RuntimeException e) {
+                LOGGER.debug(MODLAUNCHER, "Failed to write load profile {}", ret.file, e);
+            }
+        }, "ModLauncher load profile"));
+        return ret;
+    }
+
+    /**
+     * Starts transforming the classes of the previous launch, in the order they were transformed then.
+     */
+    void prewarm(TransformingClassLoader loader) {
+        final List<Entry> entries;
+        try {
+            entries = load();
+        } catch (NoSuchFileException e) {
+            LOGGER.debug(MODLAUNCHER, "No load profile at {}", file);
+            return;
+        } catch (IOException | RuntimeException e) {
+            LOGGER.debug(MODLAUNCHER, "Failed to read load profile {}", file, e);
+            return;
+        }
+        if (entries.isEmpty())
+            return;
+
+        final int threads = Integer.getInteger(PREWARM_THREADS_PROPERTY, Math.max(1, Runtime.getRuntime().availableProcessors() - 1));
+        final AtomicInteger ids = new AtomicInteger();
+        // Async mode runs the submitted tasks in order
+        final ForkJoinPool pool = new ForkJoinPool(threads, p -> {
+            var thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(p);
+            thread.setName("ModLauncher prewarm " + ids.incrementAndGet());
+            thread.setContextClassLoader(loader);
+            return thread;
+        }, null, true);
+        LOGGER.debug(MODLAUNCHER, "Prewarming {} classes from load profile {} on {} threads", entries.size(), file, threads);
+        for (var entry : entries)
+            pool.execute(() -> prewarm(loader, entry));
+        // Lets the workers exit once everything ran
+        pool.shutdown();
+    }
+
+    private void prewarm(TransformingClassLoader loader, Entry entry) {
+        // Someone asked for it already, or it would not fit
+        if (seen.contains(entry) || readyBytes.get() >= budget)
+            return;
+        PREWARMING.set(entry);
+        try {
+            loader.buildTransformedClassNodeFor(entry.className(), entry.reason());
+        } catch (ClassNotFoundException | RuntimeException | LinkageError e) {
+            LOGGER.debug(MODLAUNCHER, "Failed to prewarm {} for {}", entry.className(), entry.reason(), e);
+        } finally {
+            PREWARMING.remove();
+        }
+    }
+
+    /**
+     * Records the class, and returns the result of transforming it ahead of time if there is one for the same input.
+     * Otherwise transforms it, keeping the result if this thread is transforming it ahead of time. Nothing is recorded
+     * on threads transforming ahead of time.
+     */
+    byte[] transform(String className, String reason, byte[] input, Supplier<byte[]> transform) {
+        final Entry entry = new Entry(className, reason);
+        final Entry prewarming = PREWARMING.get();
+        if (entry.equals(prewarming)) {
+            final byte[] result = transform.get();
+            final int size = input.length + result.length;
+            if (readyBytes.addAndGet(size) > budget) {
+                readyBytes.addAndGet(-size);
+                return result;
+            }
+            ready.put(entry, new Ready(input, result));
+            // The loader may have asked for it in the meantime, and won't look again
+            if (seen.contains(entry) && ready.remove(entry) != null)
+                readyBytes.addAndGet(-size);
+            else
+                prewarmed.incrementAndGet();
+            return result;
+        }
+
+        // Classes transformed on the way while prewarming, to compute frames for example, were not asked for by the loader
+        if (prewarming == null && recorded.get() < LIMIT && seen.add(entry)) {
+            recorded.incrementAndGet();
+            order.add(entry);
+        }
+        final Ready ret = ready.remove(entry);
+        if (ret != null) {
+            readyBytes.addAndGet(-(ret.input().length + ret.result().length));
+            if (Arrays.equals(ret.input(), input)) {
+                hits.incrementAndGet();
+                return ret.result();
+            }
+        }
+        return transform.get();
+    }
+
+    private List<Entry> load() throws IOException {
+        try (var in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION)
+                return List.of();
+            var reasons = new String[in.readUnsignedByte()];
+            for (int i = 0; i < reasons.length; i++)
+                reasons[i] = in.readUTF();
+
+            final int count = in.readInt();
+            var ret = new ArrayList<Entry>(count);
+            for (int i = 0; i < count; i++) {
+                var className = in.readUTF();
+                ret.add(new Entry(className, reasons[in.readUnsignedByte()]));
+            }
+            return ret;
+        }
+    }
+
+    private void save() throws IOException {
+        var entries = new ArrayList<>(order);
+        var reasons = new HashMap<String, Integer>();
+        for (var entry : entries)
+            reasons.putIfAbsent(entry.reason(), reasons.size());
+        // Reasons are stored as a byte, there are only a few of them
+        if (reasons.size() > 255)
+            throw new IllegalStateException("Too many transformation reasons: " + reasons.size());
+        var names = new String[reasons.size()];
+        reasons.forEach((reason, index) -> names[index] = reason);
+
+        Files.createDirectories(file.getParent());
+        var tmp = Files.createTempFile(file.getParent(), FILE_NAME, ".tmp");
+        try (var out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeByte(names.length);
+            for (var name : names)
+                out.writeUTF(name);
+            out.writeInt(entries.size());
+            for (var entry : entries) {
+                out.writeUTF(entry.className());
+                out.writeByte(reasons.get(entry.reason()));
+            }
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        LOGGER.debug(MODLAUNCHER, "Wrote {} classes to load profile {}, {} of {} prewarmed classes were used", entries.size(), file, hits.get(), prewarmed.get());
+    }
+}
@@ -0,0 +1,434 @@
+/*
+ * Copyright (c) Forge Development LLC
+ * SPDX-License-Identifier: LGPL-3.0-only
+ */
+
+package cpw.mods.modlauncher;
+
+import org.objectweb.asm.AnnotationVisitor;
+import org.objectweb.asm.Attribute;
+import org.objectweb.asm.ConstantDynamic;
+import org.objectweb.asm.Handle;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+import org.objectweb.asm.TypePath;
+import org.objectweb.asm.tree.MethodNode;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Array;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * Serializes everything a {@link MethodNode} would emit into a compact byte form, so two methods can be compared
+ * exactly. Labels are numbered in the order they are first seen, which makes the result independent of label identity.
+ * <p>
+ * Non-standard attributes can not be inspected, so they are recorded by identity and never compare equal.
+ */
+final class MethodFingerprint extends MethodVisitor {
+    private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    private final DataOutputStream out = new DataOutputStream(bytes);
+    private final Map<Label, Integer> labels = new IdentityHashMap<>();
+
+    private MethodFingerprint() {
+        super(Opcodes.ASM9);
+    }
+
+    static byte[] of(MethodNode method) {
+        var fingerprint = new MethodFingerprint();
+        fingerprint.event('M');
+        fingerprint.integer(method.access);
+        fingerprint.string(method.name);
+        fingerprint.string(method.desc);
+        fingerprint.string(method.signature);
+        fingerprint.value(method.exceptions == null ? null : method.exceptions.toArray());
+        method.accept(fingerprint);
+        return fingerprint.bytes.toByteArray();
+    }
+
+    @Override
+    public void visitParameter(final String name, final int access) {
+        event('P');
+        string(name);
+        integer(access);
+    }
+
+    @Override
+    public AnnotationVisitor visitAnnotationDefault() {
+        event('D');
+        return annotation();
+    }
+
+    @Override
+    public AnnotationVisitor visitAnnotation(final String descriptor, final boolean visible) {
+        event('A');
+        string(descriptor);
+        bool(visible);
+        return annotation();
+    }
+
+    @Override
+    public AnnotationVisitor visitTypeAnnotation(final int typeRef, final TypePath typePath, final String descriptor, final boolean visible) {
+        event('T');
+        typeAnnotation(typeRef, typePath, descriptor, visible);
+        return annotation();
+    }
+
+    @Override
+    public void visitAnnotableParameterCount(final int parameterCount, final boolean visible) {
+        event('C');
+        integer(parameterCount);
+        bool(visible);
+    }
+
+    @Override
+    public AnnotationVisitor visitParameterAnnotation(final int parameter, final String descriptor, final boolean visible) {
+        event('p');
+        integer(parameter);
+        string(descriptor);
+        bool(visible);
+        return annotation();
+    }
+
+    @Override
+    public void visitAttribute(final Attribute attribute) {
+        event('a');
+        string(attribute.type);
+        integer(System.identityHashCode(attribute));
+    }
+
+    @Override
+    public void visitCode() {
+        event('c');
+    }
+
+    @Override
+    public void visitFrame(final int type, final int numLocal, final Object[] local, final int numStack, final Object[] stack) {
+        event('F');
+        integer(type);
+        integer(numLocal);
+        for (int i = 0; local != null && i < numLocal; i++)
+            value(local[i]);
+        integer(numStack);
+        for (int i = 0; stack != null && i < numStack; i++)
+            value(stack[i]);
+    }
+
+    @Override
+    public void visitInsn(final int opcode) {
+        event('i');
+        integer(opcode);
+    }
+
+    @Override
+    public void visitIntInsn(final int opcode, final int operand) {
+        event('I');
+        integer(opcode);
+        integer(operand);
+    }
+
+    @Override
+    public void visitVarInsn(final int opcode, final int varIndex) {
+        event('V');
+        integer(opcode);
+        integer(varIndex);
+    }
+
+    @Override
+    public void visitTypeInsn(final int opcode, final String type) {
+        event('t');
+        integer(opcode);
+        string(type);
+    }
+
+    @Override
+    public void visitFieldInsn(final int opcode, final String owner, final String name, final String descriptor) {
+        event('f');
+        integer(opcode);
+        string(owner);
+        string(name);
+        string(descriptor);
+    }
+
+    @Override
+    public void visitMethodInsn(final int opcode, final String owner, final String name, final String descriptor, final boolean isInterface) {
+        event('m');
+        integer(opcode);
+        string(owner);
+        string(name);
+        string(descriptor);
+        bool(isInterface);
+    }
+
+    @Override
+    public void visitInvokeDynamicInsn(final String name, final String descriptor, final Handle bootstrapMethodHandle, final Object... bootstrapMethodArguments) {
+        event('d');
+        string(name);
+        string(descriptor);
+        value(bootstrapMethodHandle);
+        value(bootstrapMethodArguments);
+    }
+
+    @Override
+    public void visitJumpInsn(final int opcode, final Label label) {
+        event('j');
+        integer(opcode);
+        value(label);
+    }
+
+    @Override
+    public void visitLabel(final Label label) {
+        event('L');
+        value(label);
+    }
+
+    @Override
+    public void visitLdcInsn(final Object value) {
+        event('l');
+        value(value);
+    }
+
+    @Override
+    public void visitIincInsn(final int varIndex, final int increment) {
+        event('+');
+        integer(varIndex);
+        integer(increment);
+    }
+
+    @Override
+    public void visitTableSwitchInsn(final int min, final int max, final Label dflt, final Label... labels) {
+        event('s');
+        integer(min);
+        integer(max);
+        value(dflt);
+        value(labels);
+    }
+
+    @Override
+    public void visitLookupSwitchInsn(final Label dflt, final int[] keys, final Label[] labels) {
+        event('S');
+        value(dflt);
+        value(keys);
+        value(labels);
+    }
+
+    @Override
+    public void visitMultiANewArrayInsn(final String descriptor, final int numDimensions) {
+        event('n');
+        string(descriptor);
+        integer(numDimensions);
+    }
+
+    @Override
+    public AnnotationVisitor visitInsnAnnotation(final int typeRef, final TypePath typePath, final String descriptor, final boolean visible) {
+        event('N');
+        typeAnnotation(typeRef, typePath, descriptor, visible);
+        return annotation();
+    }
+
+    @Override
+    public void visitTryCatchBlock(final Label start, final Label end, final Label handler, final String type) {
+        event('x');
+        value(start);
+        value(end);
+        value(handler);
+        string(type);
+    }
+
+    @Override
+    public AnnotationVisitor visitTryCatchAnnotation(final int typeRef, final TypePath typePath, final String descriptor, final boolean visible) {
+        event('X');
+        typeAnnotation(typeRef, typePath, descriptor, visible);
+        return annotation();
+    }
+
+    @Override
+    public void visitLocalVariable(final String name, final String descriptor, final String signature, final Label start, final Label end, final int index) {
+        event('v');
+        string(name);
+        string(descriptor);
+        string(signature);
+        value(start);
+        value(end);
+        integer(index);
+    }
+
+    @Override
+    public AnnotationVisitor visitLocalVariableAnnotation(final int typeRef, final TypePath typePath, final Label[] start, final Label[] end, final int[] index, final String descriptor, final boolean visible) {
+        event('W');
+        typeAnnotation(typeRef, typePath, descriptor, visible);
+        value(start);
+        value(end);
+        value(index);
+        return annotation();
+    }
+
+    @Override
+    public void visitLineNumber(final int line, final Label start) {
+        event('#');
+        integer(line);
+        value(start);
+    }
+
+    @Override
+    public void visitMaxs(final int maxStack, final int maxLocals) {
+        event('Z');
+        integer(maxStack);
+        integer(maxLocals);
+    }
+
+    @Override
+    public void visitEnd() {
+        event('E');
+    }
+
+    private AnnotationVisitor annotation() {
+        return new AnnotationVisitor(Opcodes.ASM9) {
+            @Override
+            public void visit(final String name, final Object value) {
+                event('=');
+                string(name);
+                value(value);
+            }
+
+            @Override
+            public void visitEnum(final String name, final String descriptor, final String value) {
+                event('e');
+                string(name);
+                string(descriptor);
+                string(value);
+            }
+
+            @Override
+            public AnnotationVisitor visitAnnotation(final String name, final String descriptor) {
+                event('@');
+                string(name);
+                string(descriptor);
+                return annotation();
+            }
+
+            @Override
+            public AnnotationVisitor visitArray(final String name) {
+                event('[');
+                string(name);
+                return annotation();
+            }
+
+            @Override
+            public void visitEnd() {
+                event(']');
+            }
+        };
+    }
+
+    private void typeAnnotation(final int typeRef, final TypePath typePath, final String descriptor, final boolean visible) {
+        integer(typeRef);
+        string(typePath == null ? null : typePath.toString());
+        string(descriptor);
+        bool(visible);
+    }
+
+    private void value(final Object value) {
+        try {
+            if (value == null) {
+                out.writeByte(0);
+            } else if (value instanceof Label label) {
+                Integer id = labels.get(label);
+                if (id == null)
+                    labels.put(label, id = labels.size());
+                out.writeByte(1);
+                out.writeInt(id);
+            } else if (value instanceof String str) {
+                out.writeByte(2);
+                string(str);
+            } else if (value instanceof Integer i) {
+                out.writeByte(3);
+                out.writeInt(i);
+            } else if (value instanceof Float f) {
+                out.writeByte(4);
+                out.writeInt(Float.floatToRawIntBits(f));
+            } else if (value instanceof Long l) {
+                out.writeByte(5);
+                out.writeLong(l);
+            } else if (value instanceof Double d) {
+                out.writeByte(6);
+                out.writeLong(Double.doubleToRawLongBits(d));
+            } else if (value instanceof Type type) {
+                out.writeByte(7);
+                out.writeInt(type.getSort());
+                string(type.getDescriptor());
+            } else if (value instanceof Handle handle) {
+                out.writeByte(8);
+                out.writeInt(handle.getTag());
+                string(handle.getOwner());
+                string(handle.getName());
+                string(handle.getDesc());
+                bool(handle.isInterface());
+            } else if (value instanceof ConstantDynamic condy) {
+                out.writeByte(9);
+                string(condy.getName());
+                string(condy.getDescriptor());
+                value(condy.getBootstrapMethod());
+                out.writeInt(condy.getBootstrapMethodArgumentCount());
+                for (int i = 0; i < condy.getBootstrapMethodArgumentCount(); i++)
+                    value(condy.getBootstrapMethodArgument(i));
+            } else if (value.getClass().isArray()) {
+                out.writeByte(10);
+                string(value.getClass().getComponentType().getName());
+                int length = Array.getLength(value);
+                out.writeInt(length);
+                for (int i = 0; i < length; i++)
+                    value(Array.get(value, i));
+            } else {
+                // Boxed byte, short, char and boolean from annotations
+                out.writeByte(11);
+                string(value.getClass().getName());
+                string(value.toString());
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void event(final char event) {
+        try {
+            out.writeByte(event);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void integer(final int value) {
+        try {
+            out.writeInt(value);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void bool(final boolean value) {
+        try {
+            out.writeBoolean(value);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void string(final String value) {
+        try {
+            if (value == null) {
+                out.writeInt(-1);
+            } else {
+                out.writeInt(value.length());
+                out.writeChars(value);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,150 @@
+/*
+ * Copyright (c) Forge Development LLC
+ * SPDX-License-Identifier: LGPL-3.0-only
+ */
+
+package cpw.mods.modlauncher;
+
+import cpw.mods.modlauncher.api.ITransformer;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntConsumer;
+
+/**
+ * Runs work on the members of large classes on a fork join pool: voting on and transforming their fields and methods,
+ * and computing the frames of the methods that changed. Enabled by {@link #PARALLEL_MEMBERS_PROPERTY}, the number of
+ * members a class needs for it to be worth it. Member transformers only take part when they declared
+ * {@link ITransformer#isThreadSafe()}.
+ * <p>
+ * Results are put back in member order, and anything that has to happen in order, like the audit trail, is done
+ * by the calling thread afterwards, so the outcome does not depend on how the work was scheduled.
+ * <p>
+ * The calling thread usually holds the class loading lock of the class, so the tasks must never load a class of the
+ * transforming class loader: a worker blocked on that lock would never finish. This is enforced by
+ * {@link #checkNotInTask(String)}. Frame computation only reads classes, through the transformer or the parent loaders, which takes no
+ * lock the caller could hold.
+ */
+final class ParallelMembers {
+    /** Minimum number of fields or methods of a class to handle them in parallel, disabled by default */
+    static final String PARALLEL_MEMBERS_PROPERTY = "modlauncher.parallelMembers";
+    /** Number of threads handling members in parallel, all processors by default */
+    static final String PARALLEL_MEMBERS_THREADS_PROPERTY = "modlauncher.parallelMembersThreads";
+    private static final ThreadLocal<Boolean> IN_TASK = ThreadLocal.withInitial(() -> false);
+    private static volatile ForkJoinPool pool;
+
+    private ParallelMembers() {}
+
+    /**
+     * @return The minimum number of members configured by {@link #PARALLEL_MEMBERS_PROPERTY}, 0 if disabled
+     */
+    static int threshold() {
+        return Integer.getInteger(PARALLEL_MEMBERS_PROPERTY, 0);
+    }
+
+    /**
+     * @return true if a class with this many fields or methods should have them handled in parallel
+     */
+    static boolean isEnabled(int threshold, int members) {
+        return threshold > 0 && members >= threshold;
+    }
+
+    static boolean isThreadSafe(ITransformer<?>[] transformers) {
+        for (var transformer : transformers) {
+            if (!transformer.isThreadSafe())
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Runs the task for every index from 0 to count, on the pool and on the calling thread. The caller takes every index
+     * no worker has started yet, so it never waits for a busy pool, then waits for the tasks the workers are still
+     * running, at most for {@link WaitingThreads#WAIT_MILLIS_PROPERTY}. If some fail, the failure of the lowest index is
+     * thrown.
+     *
+     * @return false if some tasks did not finish in time, they may still be running and their results must be ignored
+     */
+    static boolean forEach(int count, IntConsumer task) {
+        if (count == 0)
+            return true;
+        final Throwable[] failures = new Throwable[count];
+        final AtomicInteger next = new AtomicInteger();
+        final AtomicInteger remaining = new AtomicInteger(count);
+        final CompletableFuture<Void> done = new CompletableFuture<>();
+        final Runnable drain = () -> {
+            final boolean nested = IN_TASK.get();
+            IN_TASK.set(true);
+            try {
+                for (int i = next.getAndIncrement(); i < count; i = next.getAndIncrement()) {
+                    try {
+                        task.accept(i);
+                    } catch (RuntimeException | Error e) {
+                        failures[i] = e;
+                    }
+                    if (remaining.decrementAndGet() == 0)
+                        done.complete(null);
+                }
+            } finally {
+                IN_TASK.set(nested);
+            }
+        };
+
+        // Workers read classes through the loader of the class being transformed
+        final ClassLoader contextLoader = Thread.currentThread().getContextClassLoader();
+        final ForkJoinPool pool = pool();
+        for (int i = Math.min(pool.getParallelism(), count - 1); i > 0; i--) {
+            pool.execute(() -> {
+                final Thread thread = Thread.currentThread();
+                final ClassLoader previous = thread.getContextClassLoader();
+                thread.setContextClassLoader(contextLoader);
+                try {
+                    drain.run();
+                } finally {
+                    thread.setContextClassLoader(previous);
+                }
+            });
+        }
+        drain.run();
+        if (!WaitingThreads.await(done))
+            return false;
+
+        for (var failure : failures) {
+            if (failure instanceof RuntimeException e)
+                throw e;
+            if (failure instanceof Error e)
+                throw e;
+        }
+        return true;
+    }
+
+    /**
+     * Fails if the current thread is running a task, as loading a class there could deadlock with the thread waiting for
+     * the task.
+     */
+    static void checkNotInTask(String className) {
+        if (IN_TASK.get())
+            throw new IllegalStateException("Class " + className + " was loaded while transforming members in parallel, thread safe member transformers must not load classes");
+    }
+
+    private static ForkJoinPool pool() {
+        var ret = pool;
+        if (ret == null) {
+            synchronized (ParallelMembers.class) {
+                ret = pool;
+                if (ret == null) {
+                    final int threads = Integer.getInteger(PARALLEL_MEMBERS_THREADS_PROPERTY, Runtime.getRuntime().availableProcessors());
+                    final AtomicInteger ids = new AtomicInteger();
+                    pool = ret = new ForkJoinPool(threads, p -> {
+                        var thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(p);
+                        thread.setName("ModLauncher members " + ids.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    }, null, false);
+                }
+            }
+        }
+        return ret;
+    }
+}
@@ -0,0 +1,139 @@
+/*
+ * Copyright (c) Forge Development LLC
+ * SPDX-License-Identifier: LGPL-3.0-only
+ */
+
+package cpw.mods.modlauncher;
+
+import cpw.mods.modlauncher.api.ITransformationService;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import static cpw.mods.modlauncher.LogMarkers.MODLAUNCHER;
+
+/**
+ * Runs the steps of the transformation service lifecycle, each service after the ones it declared in
+ * {@link ITransformationService#runsAfter()}. Every step is finished by all services before it returns, so the steps
+ * stay barriers. Results are returned in a fixed order: dependencies first, then the order services were found in.
+ * <p>
+ * With {@link #THREADS_PROPERTY} above one, services that don't depend on each other run the same step concurrently on
+ * a pool of that many threads.
+ */
+final class ServiceGraph {
+    private static final Logger LOGGER = LogManager.getLogger();
+    /** Number of threads running a lifecycle step of independent services at once, one by default */
+    static final String THREADS_PROPERTY = "modlauncher.serviceThreads";
+
+    private final List<TransformationServiceDecorator> order;
+    private final Map<TransformationServiceDecorator, List<TransformationServiceDecorator>> dependencies = new HashMap<>();
+    private final int threads;
+
+    /**
+     * @throws InvalidLauncherSetupException if services run after each other in a cycle
+     */
+    ServiceGraph(Map<String, TransformationServiceDecorator> services) {
+        for (var service : services.values()) {
+            var after = new ArrayList<TransformationServiceDecorator>();
+            var names = service.getService().runsAfter();
+            for (var name : names == null ? Set.<String>of() : names) {
+                var other = services.get(name);
+                if (other == null)
+                    LOGGER.debug(MODLAUNCHER, "Service {} runs after {}, which is not present", service.getService().name(), name);
+                else if (other != service)
+                    after.add(other);
+            }
+            dependencies.put(service, after);
+        }
+        this.order = sort(services.values());
+        this.threads = Math.max(1, Integer.getInteger(THREADS_PROPERTY, 1));
+    }
+
+    private List<TransformationServiceDecorator> sort(Iterable<TransformationServiceDecorator> services) {
+        var pending = new LinkedHashSet<TransformationServiceDecorator>();
+        services.forEach(pending::add);
+        var ret = new ArrayList<TransformationServiceDecorator>(pending.size());
+        while (!pending.isEmpty()) {
+            TransformationServiceDecorator next = null;
+            for (var service : pending) {
+                if (ret.containsAll(dependencies.get(service))) {
+                    next = service;
+                    break;
+                }
+            }
+            if (next == null) {
+                var names = pending.stream().map(s -> s.getService().name()).toList();
+                LOGGER.error(MODLAUNCHER, "Found services that run after each other in a cycle: {}", names);
+                throw new InvalidLauncherSetupException("Services run after each other in a cycle " + String.join(", ", names));
+            }
+            pending.remove(next);
+            ret.add(next);
+        }
+        return ret;
+    }
+
+    /**
+     * Runs a step for every service, and waits for all of them. If some fail, the failure of the first one in order
+     * is thrown, services running after a failed one are skipped.
+     *
+     * @return The result of each service, in order
+     */
+    <R> List<R> run(String step, Function<TransformationServiceDecorator, R> action) {
+        if (threads == 1 || order.size() < 2) {
+            var ret = new ArrayList<R>(order.size());
+            for (var service : order)
+                ret.add(action.apply(service));
+            return ret;
+        }
+
+        LOGGER.debug(MODLAUNCHER, "Running {} of {} services on {} threads", step, order.size(), threads);
+        final ClassLoader contextLoader = Thread.currentThread().getContextClassLoader();
+        final AtomicInteger ids = new AtomicInteger();
+        final ExecutorService executor = Executors.newFixedThreadPool(Math.min(threads, order.size()), r -> {
+            var thread = new Thread(r, "ModLauncher services " + ids.incrementAndGet());
+            thread.setContextClassLoader(contextLoader);
+            thread.setDaemon(true);
+            return thread;
+        });
+        final Map<TransformationServiceDecorator, CompletableFuture<R>> futures = new HashMap<>();
+        try {
+            for (var service : order) {
+                var after = dependencies.get(service).stream().map(futures::get).toArray(CompletableFuture[]::new);
+                futures.put(service, CompletableFuture.allOf(after).thenApplyAsync(v -> action.apply(service), executor));
+            }
+            try {
+                CompletableFuture.allOf(futures.values().toArray(new CompletableFuture[0])).join();
+            } catch (CompletionException e) {
+                // Thrown in order below
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        var ret = new ArrayList<R>(order.size());
+        for (var service : order) {
+            try {
+                ret.add(futures.get(service).join());
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof RuntimeException cause)
+                    throw cause;
+                if (e.getCause() instanceof Error cause)
+                    throw cause;
+                throw e;
+            }
+        }
+        return ret;
+    }
+}
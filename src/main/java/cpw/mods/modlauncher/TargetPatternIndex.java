@@ -0,0 +1,379 @@
+/*
+ * Copyright (c) Forge Development LLC
+ * SPDX-License-Identifier: LGPL-3.0-only
+ */
+
+package cpw.mods.modlauncher;
+
+import cpw.mods.modlauncher.api.ConstantPoolFilter;
+import cpw.mods.modlauncher.api.ITransformer;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static cpw.mods.modlauncher.LogMarkers.MODLAUNCHER;
+
+/**
+ * Compiled form of the {@link ITransformer.TargetPattern}s, so matching a class costs a few hash lookups however many
+ * patterns there are.
+ * <p>
+ * Patterns are grouped into one {@link Bucket} per class, package and super type they name, plus one for the patterns
+ * matching every class. A class name is matched by looking up the class, then walking the name once and probing an
+ * open addressed table of the packages at every separator, which only happens once the {@link ClassNameFilter} of the
+ * {@link TransformerIndex} let the name through. Super types are matched by {@link DeclaredSupertypes}.
+ * Within a bucket, member patterns are indexed by literal name, then by descriptor, so only patterns whose name is a
+ * glob and whose descriptor is unknown are matched one by one.
+ */
+final class TargetPatternIndex {
+    private static final Logger LOGGER = LogManager.getLogger();
+    static final Bucket[] NO_BUCKETS = new Bucket[0];
+    private static final ITransformer<?>[] NONE = new ITransformer<?>[0];
+    private static final Rule[] NO_RULES = new Rule[0];
+    static final TargetPatternIndex EMPTY = new TargetPatternIndex(Map.of(), Map.of(), Map.of(), null);
+
+    private final Map<String, Bucket> classes;
+    private final Map<String, Bucket> packages;
+    private final String[] packageNames;
+    private final Bucket[] packageBuckets;
+    private final Map<String, Bucket> supertypes;
+    @Nullable
+    private final DeclaredSupertypes declared;
+    @Nullable
+    private final Bucket any;
+
+    record Entry(ITransformer.TargetPattern pattern, TransformerHolder<?> transformer) {}
+
+    private TargetPatternIndex(Map<String, Bucket> classes, Map<String, Bucket> packages, Map<String, Bucket> supertypes, @Nullable Bucket any) {
+        this.classes = classes;
+        this.packages = packages;
+        this.supertypes = supertypes;
+        this.declared = supertypes.isEmpty() ? null : new DeclaredSupertypes(supertypes);
+        this.any = any;
+
+        int capacity = Integer.highestOneBit(Math.max(packages.size() * 2 - 1, 1)) << 1;
+        this.packageNames = new String[capacity];
+        this.packageBuckets = new Bucket[capacity];
+        packages.forEach((name, bucket) -> {
+            int i = spread(name.hashCode()) & (capacity - 1);
+            while (packageNames[i] != null)
+                i = (i + 1) & (capacity - 1);
+            packageNames[i] = name;
+            packageBuckets[i] = bucket;
+        });
+    }
+
+    static TargetPatternIndex build(Collection<Entry> entries) {
+        if (entries.isEmpty())
+            return EMPTY;
+
+        var classes = new HashMap<String, BucketBuilder>();
+        var packages = new HashMap<String, BucketBuilder>();
+        var supertypes = new HashMap<String, BucketBuilder>();
+        BucketBuilder any = null;
+        for (var entry : entries) {
+            var pattern = entry.pattern();
+            var name = pattern.className().replace('.', '/');
+            var builder = switch (pattern.scope()) {
+                case CLASS -> classes.computeIfAbsent(name, k -> new BucketBuilder());
+                case PACKAGE -> packages.computeIfAbsent(name.endsWith("/") ? name.substring(0, name.length() - 1) : name, k -> new BucketBuilder());
+                case SUBCLASS -> supertypes.computeIfAbsent(name, k -> new BucketBuilder());
+                case ANY -> any == null ? any = new BucketBuilder() : any;
+            };
+            builder.add(pattern, entry.transformer());
+        }
+        return new TargetPatternIndex(build(classes), build(packages), build(supertypes), any == null ? null : any.build());
+    }
+
+    private static Map<String, Bucket> build(Map<String, BucketBuilder> builders) {
+        var ret = new HashMap<String, Bucket>(builders.size() * 2);
+        builders.forEach((name, builder) -> ret.put(name, builder.build()));
+        return ret;
+    }
+
+    /**
+     * Adds the classes and packages the patterns may match by name to the filter. Patterns selecting subclasses are not
+     * added, see {@link #hasSupertypePatterns()}.
+     */
+    void addTo(ClassNameFilter.Builder filter) {
+        filter.addClasses(classes.keySet());
+        filter.addPackages(packages.keySet());
+        if (any != null)
+            filter.addPackage("");
+    }
+
+    boolean hasSupertypePatterns() {
+        return !supertypes.isEmpty();
+    }
+
+    /**
+     * @param internalName A class name using '/' as separator
+     * @return The buckets matching the class by name
+     */
+    Bucket[] match(String internalName) {
+        Bucket[] ret = NO_BUCKETS;
+        if (any != null)
+            ret = add(ret, any);
+        var cls = classes.get(internalName);
+        if (cls != null)
+            ret = add(ret, cls);
+        if (!packages.isEmpty()) {
+            int hash = 0;
+            final int length = internalName.length();
+            for (int i = 0; i < length; i++) {
+                final char c = internalName.charAt(i);
+                if (c == '/') {
+                    var pkg = getPackage(hash, internalName, i);
+                    if (pkg != null)
+                        ret = add(ret, pkg);
+                }
+                hash = 31 * hash + c;
+            }
+        }
+        return ret;
+    }
+
+    @Nullable
+    private Bucket getPackage(int hash, String internalName, int length) {
+        final int mask = packageNames.length - 1;
+        for (int i = spread(hash) & mask; packageNames[i] != null; i = (i + 1) & mask) {
+            if (packageNames[i].length() == length && internalName.startsWith(packageNames[i]))
+                return packageBuckets[i];
+        }
+        return null;
+    }
+
+    private static int spread(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+
+    /**
+     * Matches the class by the super class and interfaces declared in its class file, and those declared by the class
+     * files of its super types. Nothing is transformed to find them.
+     *
+     * @param loader Reads the untransformed header of a class
+     * @return The buckets of the super types the class extends or implements
+     */
+    Bucket[] matchSupertypes(String className, byte[] inputClass, ClassHierarchy.Loader loader) {
+        if (declared == null || inputClass.length == 0)
+            return NO_BUCKETS;
+
+        try {
+            return declared.match(inputClass, loader);
+        } catch (RuntimeException e) {
+            // The class can't be loaded anyway if it is malformed or its super types are missing
+            LOGGER.debug(MODLAUNCHER, "Could not resolve the super types of {}", className, e);
+            return NO_BUCKETS;
+        }
+    }
+
+    static Bucket[] add(Bucket[] buckets, Bucket bucket) {
+        for (var existing : buckets) {
+            if (existing == bucket)
+                return buckets;
+        }
+        var ret = new Bucket[buckets.length + 1];
+        System.arraycopy(buckets, 0, ret, 0, buckets.length);
+        ret[buckets.length] = bucket;
+        return ret;
+    }
+
+    static Bucket[] addAll(Bucket[] buckets, Bucket[] others) {
+        if (buckets.length == 0)
+            return others;
+        for (var bucket : others)
+            buckets = add(buckets, bucket);
+        return buckets;
+    }
+
+    /**
+     * The transformers of all patterns naming the same class, package or super type.
+     */
+    static final class Bucket {
+        private final ITransformer<?>[] preClass;
+        private final ITransformer<?>[] cls;
+        private final ITransformer<?>[] visitors;
+        private final MemberRules fields;
+        private final MemberRules methods;
+        @Nullable
+        private final List<ConstantPoolFilter> prefilters;
+
+        private Bucket(ITransformer<?>[] preClass, ITransformer<?>[] cls, ITransformer<?>[] visitors, MemberRules fields, MemberRules methods, @Nullable List<ConstantPoolFilter> prefilters) {
+            this.preClass = preClass;
+            this.cls = cls;
+            this.visitors = visitors;
+            this.fields = fields;
+            this.methods = methods;
+            this.prefilters = prefilters;
+        }
+
+        ITransformer<?>[] getPreClass() {
+            return preClass;
+        }
+
+        ITransformer<?>[] getClassTransformers() {
+            return cls;
+        }
+
+        ITransformer<?>[] getClassVisitors() {
+            return visitors;
+        }
+
+        boolean hasFieldTransformers() {
+            return !fields.isEmpty();
+        }
+
+        boolean hasMethodTransformers() {
+            return !methods.isEmpty();
+        }
+
+        /**
+         * @return The prefilters of all transformers, or null if one of them has none
+         */
+        @Nullable
+        List<ConstantPoolFilter> getPrefilters() {
+            return prefilters;
+        }
+
+        void collectFieldTransformers(String name, List<ITransformer<?>> out) {
+            fields.collect(name, "", out);
+        }
+
+        void collectMethodTransformers(String name, String descriptor, List<ITransformer<?>> out) {
+            methods.collect(name, descriptor, out);
+        }
+    }
+
+    private record Rule(String name, String descriptor, ITransformer<?> transformer) {
+        private boolean matches(String name, String descriptor) {
+            return (this.descriptor.isEmpty() || this.descriptor.equals(descriptor)) && glob(this.name, name);
+        }
+    }
+
+    private static final class MemberRules {
+        private static final MemberRules EMPTY = new MemberRules(Map.of(), Map.of(), NO_RULES);
+        private final Map<String, Rule[]> byName;
+        private final Map<String, Rule[]> byDescriptor;
+        private final Rule[] others;
+
+        private MemberRules(Map<String, Rule[]> byName, Map<String, Rule[]> byDescriptor, Rule[] others) {
+            this.byName = byName;
+            this.byDescriptor = byDescriptor;
+            this.others = others;
+        }
+
+        private static MemberRules of(List<Rule> rules) {
+            if (rules.isEmpty())
+                return EMPTY;
+            var byName = new HashMap<String, List<Rule>>();
+            var byDescriptor = new HashMap<String, List<Rule>>();
+            var others = new ArrayList<Rule>();
+            for (var rule : rules) {
+                if (!isGlob(rule.name()))
+                    byName.computeIfAbsent(rule.name(), k -> new ArrayList<>()).add(rule);
+                else if (!rule.descriptor().isEmpty())
+                    byDescriptor.computeIfAbsent(rule.descriptor(), k -> new ArrayList<>()).add(rule);
+                else
+                    others.add(rule);
+            }
+            return new MemberRules(toArrays(byName), toArrays(byDescriptor), others.toArray(NO_RULES));
+        }
+
+        private static Map<String, Rule[]> toArrays(Map<String, List<Rule>> rules) {
+            if (rules.isEmpty())
+                return Map.of();
+            var ret = new HashMap<String, Rule[]>(rules.size() * 2);
+            rules.forEach((key, list) -> ret.put(key, list.toArray(NO_RULES)));
+            return ret;
+        }
+
+        private boolean isEmpty() {
+            return byName.isEmpty() && byDescriptor.isEmpty() && others.length == 0;
+        }
+
+        private void collect(String name, String descriptor, List<ITransformer<?>> out) {
+            collect(byName.get(name), name, descriptor, out);
+            if (!descriptor.isEmpty())
+                collect(byDescriptor.get(descriptor), name, descriptor, out);
+            collect(others, name, descriptor, out);
+        }
+
+        private static void collect(@Nullable Rule[] rules, String name, String descriptor, List<ITransformer<?>> out) {
+            if (rules == null)
+                return;
+            for (var rule : rules) {
+                if (rule.matches(name, descriptor) && !out.contains(rule.transformer()))
+                    out.add(rule.transformer());
+            }
+        }
+    }
+
+    private static final class BucketBuilder {
+        private final List<ITransformer<?>> preClass = new ArrayList<>();
+        private final List<ITransformer<?>> cls = new ArrayList<>();
+        private final List<ITransformer<?>> visitors = new ArrayList<>();
+        private final List<Rule> fields = new ArrayList<>();
+        private final List<Rule> methods = new ArrayList<>();
+        private final List<ITransformer<?>> all = new ArrayList<>();
+
+        private void add(ITransformer.TargetPattern pattern, ITransformer<?> transformer) {
+            all.add(transformer);
+            switch (pattern.targetType()) {
+                case PRE_CLASS -> preClass.add(transformer);
+                case CLASS -> cls.add(transformer);
+                case CLASS_VISITOR -> visitors.add(transformer);
+                case FIELD -> fields.add(new Rule(pattern.elementName(), "", transformer));
+                case METHOD -> methods.add(new Rule(pattern.elementName(), pattern.elementDescriptor(), transformer));
+            }
+        }
+
+        private Bucket build() {
+            List<ConstantPoolFilter> prefilters = new ArrayList<>(all.size());
+            for (var transformer : all) {
+                var filter = transformer.prefilter();
+                if (filter == null) {
+                    prefilters = null;
+                    break;
+                }
+                prefilters.add(filter);
+            }
+            return new Bucket(TransformerOrder.sort(preClass, NONE), TransformerOrder.sort(cls, NONE), TransformerOrder.sort(visitors, NONE),
+                MemberRules.of(fields), MemberRules.of(methods), prefilters == null ? null : List.copyOf(prefilters));
+        }
+    }
+
+    private static boolean isGlob(String name) {
+        return name.indexOf('*') >= 0 || name.indexOf('?') >= 0;
+    }
+
+    /**
+     * Matches a name against a glob of '*' and '?', backtracking to the last '*' only, so it runs in linear time for
+     * the usual patterns and never allocates.
+     */
+    static boolean glob(String glob, String name) {
+        int g = 0, n = 0;
+        int star = -1, mark = 0;
+        while (n < name.length()) {
+            if (g < glob.length() && (glob.charAt(g) == '?' || glob.charAt(g) == name.charAt(n))) {
+                g++;
+                n++;
+            } else if (g < glob.length() && glob.charAt(g) == '*') {
+                star = g++;
+                mark = n;
+            } else if (star >= 0) {
+                g = star + 1;
+                n = ++mark;
+            } else {
+                return false;
+            }
+        }
+        while (g < glob.length() && glob.charAt(g) == '*')
+            g++;
+        return g == glob.length();
+    }
+}
@@ -0,0 +1,366 @@
+/*
+ * Copyright (c) Forge Development LLC
+ * SPDX-License-Identifier: LGPL-3.0-only
+ */
+
+package cpw.mods.modlauncher;
+
+import cpw.mods.modlauncher.api.ITransformer;
+import cpw.mods.modlauncher.serviceapi.ITransformCacheBackend;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.lang.module.Configuration;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import static cpw.mods.modlauncher.LogMarkers.MODLAUNCHER;
+
+/**
+ * Content addressed cache of transformed class bytes, stored in one or more {@link ITransformCacheBackend}s.
+ * <p>
+ * Entries are keyed by a digest of the untransformed class (see {@link ClassDigest#forCacheKey()}), the class name, the transformation reason and a
+ * fingerprint of every registered transformer and launch plugin, and of every jar visible to the game layer, as
+ * computing frames depends on the hierarchy of other classes. Anything that could change the output of
+ * {@link ClassTransformer#transform(byte[], String, String)} changes the fingerprint, so a stale entry is simply
+ * never looked up again. The fingerprint only depends on the content of the participating jars, not on where they
+ * are, so machines running the same game can share a backend, see {@link ContentDigests}.
+ * <p>
+ * Backends are asked in the order of {@link #BACKENDS_PROPERTY}, and a hit is copied to the backends asked before it.
+ * Every entry carries a digest of its key and content, and entries failing the check are ignored. Writes are queued
+ * per backend so class loading never waits on them, a backend failing several times in a row is dropped for the rest
+ * of the launch.
+ * <p>
+ * A cache hit skips the whole transformation pipeline, including plugin callbacks, so it is only enabled when a
+ * backend is configured, {@link #CACHE_DIR_PROPERTY} for the local one.
+ */
+final class TransformCache {
+    private static final Logger LOGGER = LogManager.getLogger();
+    /** Directory to store cached classes in, the local cache is disabled if this is not set */
+    static final String CACHE_DIR_PROPERTY = "modlauncher.cacheDir";
+    /** Names of the backends to use, in the order they are asked, only the local one by default */
+    static final String BACKENDS_PROPERTY = "modlauncher.cacheBackends";
+    private static final String DEFAULT_BACKENDS = "directory";
+    private static final int MAGIC = 0x4D4C5443; // MLTC
+    private static final int HEADER = 4 + 32;
+    private static final int MAX_FAILURES = 3;
+    private static final int MAX_QUEUED = 4096;
+
+    private final List<Backend> backends;
+    private final LaunchFingerprint fingerprint;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder corrupt = new LongAdder();
+
+    private TransformCache(List<Backend> backends, LaunchFingerprint fingerprint) {
+        this.backends = backends;
+        this.fingerprint = fingerprint;
+    }
+
+    @Nullable
+    static TransformCache create(LaunchFingerprint fingerprint) {
+        var found = new HashMap<String, ITransformCacheBackend>();
+        // Our own layer is the boot layer, unless we are running from the class path
+        var layer = TransformCache.class.getModule().getLayer();
+        var loader = layer != null ? ServiceLoader.load(layer, ITransformCacheBackend.class) : ServiceLoader.load(ITransformCacheBackend.class, TransformCache.class.getClassLoader());
+        for (var itr = loader.iterator(); itr.hasNext(); ) {
+            try {
+                var backend = itr.next();
+                found.putIfAbsent(backend.name(), backend);
+            } catch (ServiceConfigurationError e) {
+                LOGGER.error(MODLAUNCHER, "Failed to load transform cache backend", e);
+            }
+        }
+
+        var backends = new ArrayList<Backend>();
+        for (var name : System.getProperty(BACKENDS_PROPERTY, DEFAULT_BACKENDS).split(",")) {
+            name = name.trim();
+            if (name.isEmpty())
+                continue;
+            var backend = found.remove(name);
+            if (backend == null) {
+                LOGGER.debug(MODLAUNCHER, "Unknown transform cache backend {}", name);
+                continue;
+            }
+            try {
+                if (backend.initialize())
+                    backends.add(new Backend(backend));
+            } catch (RuntimeException e) {
+                LOGGER.error(MODLAUNCHER, "Failed to initialize transform cache backend {}", name, e);
+            }
+        }
+        if (backends.isEmpty())
+            return null;
+
+        var ret = new TransformCache(List.copyOf(backends), fingerprint);
+        Runtime.getRuntime().addShutdownHook(new Thread(ret::flush, "ModLauncher cache flush"));
+        LOGGER.debug(MODLAUNCHER, "Using transform cache backends {}", ret.backends);
+        return ret;
+    }
+
+    /**
+     * Computes the cache key for a transformation request.
+     */
+    String key(byte[] inputDigest, String className, String reason) {
+        // Computing the fingerprint uses the same per thread digest
+        var fingerprint = this.fingerprint.get();
+        var digest = ClassDigest.sha256();
+        digest.update(ClassDigest.getCacheKeyAlgorithm().getBytes(StandardCharsets.UTF_8));
+        digest.update((byte)0);
+        digest.update(inputDigest);
+        digest.update(className.getBytes(StandardCharsets.UTF_8));
+        digest.update((byte)0);
+        digest.update(reason.getBytes(StandardCharsets.UTF_8));
+        digest.update((byte)0);
+        digest.update(fingerprint);
+        return toHex(digest.digest());
+    }
+
+    /**
+     * @return The cached output, {@code input} if the transformation left the class untouched, or null on a miss
+     */
+    byte @Nullable [] get(String key, byte[] input) {
+        for (int i = 0; i < backends.size(); i++) {
+            final Backend backend = backends.get(i);
+            final byte[] data = backend.get(key);
+            if (data == null)
+                continue;
+            if (!verify(key, data)) {
+                corrupt.increment();
+                LOGGER.warn(MODLAUNCHER, "Ignoring corrupt transform cache entry {} from {}", key, backend);
+                continue;
+            }
+            // Read through, the backends asked first won't miss it again
+            for (int j = 0; j < i; j++)
+                backends.get(j).put(key, data);
+            hits.increment();
+            return data.length == HEADER ? input : Arrays.copyOfRange(data, HEADER, data.length);
+        }
+        misses.increment();
+        return null;
+    }
+
+    void put(String key, byte[] input, byte[] output) {
+        final byte[] data = encode(key, output == input || Arrays.equals(input, output) ? new byte[0] : output);
+        for (var backend : backends)
+            backend.put(key, data);
+    }
+
+    /**
+     * @return The entry, a header with the digest of the key and content, followed by the content
+     */
+    private static byte[] encode(String key, byte[] content) {
+        var ret = ByteBuffer.allocate(HEADER + content.length);
+        ret.putInt(MAGIC);
+        ret.put(digest(key, content, 0));
+        ret.put(content);
+        return ret.array();
+    }
+
+    private static boolean verify(String key, byte[] data) {
+        if (data.length < HEADER || ByteBuffer.wrap(data).getInt() != MAGIC)
+            return false;
+        return MessageDigest.isEqual(digest(key, data, HEADER), Arrays.copyOfRange(data, 4, HEADER));
+    }
+
+    private static byte[] digest(String key, byte[] data, int offset) {
+        var digest = ClassDigest.sha256();
+        // The key makes an entry stored under another key fail the check too
+        digest.update(key.getBytes(StandardCharsets.UTF_8));
+        digest.update(data, offset, data.length - offset);
+        return digest.digest();
+    }
+
+    /**
+     * Waits a little for the queued writes, so the work of this launch is not lost on exit.
+     */
+    private void flush() {
+        for (var backend : backends)
+            backend.writer.shutdown();
+        try {
+            for (var backend : backends)
+                backend.writer.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        LOGGER.debug(MODLAUNCHER, "Closed transform cache: {}", this);
+    }
+
+    long getHits() {
+        return hits.sum();
+    }
+
+    long getMisses() {
+        return misses.sum();
+    }
+
+    long getCorrupt() {
+        return corrupt.sum();
+    }
+
+    /**
+     * @return The number of entries the local backend dropped to stay under its size cap
+     */
+    long getEvictions() {
+        long ret = 0;
+        for (var backend : backends) {
+            if (backend.backend instanceof DirectoryCacheBackend directory)
+                ret += directory.getEvictions();
+        }
+        return ret;
+    }
+
+    @Override
+    public String toString() {
+        return "TransformCache[" + backends + ", hits=" + getHits() + ", misses=" + getMisses() + ", corrupt=" + getCorrupt() + ", evictions=" + getEvictions() + "]";
+    }
+
+    /**
+     * A backend with its write queue, dropped once it failed {@link #MAX_FAILURES} times in a row.
+     */
+    private static final class Backend {
+        private final ITransformCacheBackend backend;
+        private final ThreadPoolExecutor writer;
+        private final AtomicInteger failures = new AtomicInteger();
+        private final LongAdder dropped = new LongAdder();
+
+        private Backend(ITransformCacheBackend backend) {
+            this.backend = backend;
+            this.writer = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(MAX_QUEUED), r -> {
+                var thread = new Thread(r, "ModLauncher cache writer " + backend.name());
+                thread.setDaemon(true);
+                return thread;
+            }, (r, executor) -> dropped.increment());
+        }
+
+        private boolean isDisabled() {
+            return failures.get() >= MAX_FAILURES;
+        }
+
+        private byte @Nullable [] get(String key) {
+            if (isDisabled())
+                return null;
+            try {
+                var ret = backend.get(key);
+                failures.set(0);
+                return ret;
+            } catch (IOException | RuntimeException e) {
+                failed("read " + key, e);
+                return null;
+            }
+        }
+
+        private void put(String key, byte[] data) {
+            if (isDisabled())
+                return;
+            writer.execute(() -> {
+                if (isDisabled())
+                    return;
+                try {
+                    backend.put(key, data);
+                    failures.set(0);
+                } catch (IOException | RuntimeException e) {
+                    failed("write " + key, e);
+                }
+            });
+        }
+
+        private void failed(String action, Exception e) {
+            if (failures.incrementAndGet() == MAX_FAILURES)
+                LOGGER.warn(MODLAUNCHER, "Transform cache backend {} failed {} times in a row, disabling it", backend, MAX_FAILURES, e);
+            else
+                LOGGER.debug(MODLAUNCHER, "Transform cache backend {} failed to {}", backend, action, e);
+        }
+
+        @Override
+        public String toString() {
+            return backend + (isDisabled() ? "(disabled)" : "") + (dropped.sum() == 0 ? "" : "(dropped " + dropped.sum() + " writes)");
+        }
+    }
+
+    /**
+     * Digests everything that takes part in transforming a class: each transformer with its owning service, labels and
+     * target, and each launch plugin. The code source of every participating class is included so updating a mod
+     * invalidates the entries it produced. So is every jar visible to the game layer, even those without transformers,
+     * as the frames of a transformed class depend on the hierarchy of the classes it uses.
+     */
+    static byte[] computeFingerprint(TransformStore transformStore, LaunchPluginHandler pluginHandler, Configuration gameLayer) {
+        var entries = new ArrayList<String>();
+        entries.add("modlauncher " + codeSource(TransformCache.class));
+        // The classes of the runtime image take part in frames as well
+        entries.add("java " + Runtime.version().feature());
+        entries.addAll(ContentDigests.modules(gameLayer));
+        transformStore.forEachTransformer((label, holder) -> {
+            ITransformer<?> transformer = holder.wrapped();
+            entries.add("transformer " + holder.owner().name() + ' ' + String.join(":", transformer.labels()) + ' ' +
+                    describe(transformer) + ' ' + label);
+        });
+        transformStore.forEachPattern((pattern, holder) -> {
+            ITransformer<?> transformer = holder.wrapped();
+            entries.add("pattern " + holder.owner().name() + ' ' + String.join(":", transformer.labels()) + ' ' +
+                    describe(transformer) + ' ' + pattern);
+        });
+        pluginHandler.forEachPlugin(plugin ->
+            entries.add("plugin " + plugin.name() + ' ' + plugin.getClass().getName() + ' ' + codeSource(plugin.getClass()))
+        );
+        entries.sort(null);
+
+        var digest = ClassDigest.sha256();
+        for (var entry : entries) {
+            digest.update(entry.getBytes(StandardCharsets.UTF_8));
+            digest.update((byte)'\n');
+        }
+        return digest.digest();
+    }
+
+    private static String describe(ITransformer<?> transformer) {
+        // Declared transformers are not loaded yet, they are in the module of their service
+        if (transformer instanceof LazyTransformer<?> lazy)
+            return lazy.getTransformerClassName() + ' ' + codeSource(lazy.getServiceClass());
+        return transformer.getClass().getName() + ' ' + codeSource(transformer.getClass());
+    }
+
+    private static String codeSource(Class<?> cls) {
+        var module = cls.getModule();
+        var descriptor = module.getDescriptor();
+        var version = descriptor == null ? "" : descriptor.rawVersion().orElse("");
+        var location = "";
+        if (module.getLayer() != null) {
+            location = module.getLayer().configuration().findModule(module.getName())
+                .flatMap(m -> m.reference().location())
+                .map(uri -> {
+                    try {
+                        return ContentDigests.of(Path.of(uri));
+                    } catch (Exception e) {
+                        return uri.toString();
+                    }
+                })
+                .orElse("");
+        }
+        return module.getName() + '@' + version + '@' + location;
+    }
+
+    static String toHex(byte[] data) {
+        var chars = new char[data.length * 2];
+        for (int i = 0; i < data.length; i++) {
+            chars[i * 2] = Character.forDigit((data[i] >> 4) & 0xF, 16);
+            chars[i * 2 + 1] = Character.forDigit(data[i] & 0xF, 16);
+        }
+        return new String(chars);
+    }
+}
@@ -10,6 +10,7 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiConsumer;
 
 import cpw.mods.modlauncher.api.ITransformer;
 
@@ -30,8 +31,12 @@ public class TransformList<T> {
         transformers.computeIfPresent(targetLabel, (k,l)-> { l.add(transformer); return l;});
     }
 
+    void forEach(BiConsumer<TransformTargetLabel, ITransformer<T>> consumer) {
+        transformers.forEach((label, list) -> list.forEach(transformer -> consumer.accept(label, transformer)));
+    }
+
     List<ITransformer<T>> getTransformersForLabel(TransformTargetLabel label) {
-        // thread safety - compute if absent to insert the list
-        return transformers.computeIfAbsent(label, v-> new ArrayList<>());
+        // don't insert empty lists for labels nobody targets, this is called for members of every transformed class
+        return transformers.getOrDefault(label, List.of());
     }
 }
@@ -8,9 +8,10 @@ package cpw.mods.modlauncher;
 import cpw.mods.modlauncher.api.*;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
-import org.objectweb.asm.tree.*;
+import org.jetbrains.annotations.Nullable;
 
 import java.util.*;
+import java.util.function.BiConsumer;
 
 import static cpw.mods.modlauncher.LogMarkers.*;
 
@@ -19,8 +20,9 @@ import static cpw.mods.modlauncher.LogMarkers.*;
  */
 public class TransformStore {
     private static final Logger LOGGER = LogManager.getLogger();
-    private final Set<String> classNeedsTransforming = new HashSet<>();
     private final EnumMap<TransformTargetLabel.LabelType, TransformList<?>> transformers;
+    private final List<TargetPatternIndex.Entry> patterns = new ArrayList<>();
+    private volatile TransformerIndex index;
 
     public TransformStore() {
         transformers = new EnumMap<>(TransformTargetLabel.LabelType.class);
@@ -28,36 +30,71 @@ public class TransformStore {
             transformers.put(type, new TransformList<>(type.getNodeType()));
     }
 
-    List<ITransformer<FieldNode>> getTransformersFor(String className, FieldNode field) {
-        TransformTargetLabel tl = new TransformTargetLabel(className, field.name);
-        TransformList<FieldNode> transformerlist = TransformTargetLabel.LabelType.FIELD.getFromMap(this.transformers);
-        return transformerlist.getTransformersForLabel(tl);
-    }
-
-    List<ITransformer<MethodNode>> getTransformersFor(String className, MethodNode method) {
-        TransformTargetLabel tl = new TransformTargetLabel(className, method.name, method.desc);
-        TransformList<MethodNode> transformerlist = TransformTargetLabel.LabelType.METHOD.getFromMap(this.transformers);
-        return transformerlist.getTransformersForLabel(tl);
+    /**
+     * Accepts both binary ('.') and internal ('/') class names
+     *
+     * @return The transformers targeting the class, or null if there are none
+     */
+    @Nullable
+    TransformerIndex.ClassTargets getTransformersFor(String className) {
+        return getIndex().get(className);
     }
 
-    List<ITransformer<ClassNode>> getTransformersFor(String className, TransformTargetLabel.LabelType classType) {
-        TransformTargetLabel tl = new TransformTargetLabel(className, classType);
-        TransformList<ClassNode> transformerlist = classType.getFromMap(this.transformers);
-        return transformerlist.getTransformersForLabel(tl);
+    /**
+     * Also matches the patterns selecting subclasses, which need the class bytes and the declared headers of its super
+     * types.
+     *
+     * @return The transformers targeting the class, or null if there are none
+     */
+    @Nullable
+    TransformerIndex.ClassTargets getTransformersFor(String className, byte[] inputClass, ClassHierarchy.Loader loader) {
+        return getIndex().get(className, inputClass, loader);
     }
 
     @SuppressWarnings("unchecked")
     <T> void addTransformer(TransformTargetLabel targetLabel, ITransformer<T> transformer, ITransformationService service) {
         LOGGER.debug(MODLAUNCHER,"Adding transformer {} to {}", () -> transformer, () -> targetLabel);
-        classNeedsTransforming.add(targetLabel.getClassName().getInternalName());
         final TransformList<T> transformList = (TransformList<T>) this.transformers.get(targetLabel.getLabelType());
         transformList.addTransformer(targetLabel, new TransformerHolder<>(transformer, service));
+        this.index = null;
+    }
+
+    <T> void addPattern(ITransformer.TargetPattern pattern, ITransformer<T> transformer, ITransformationService service) {
+        LOGGER.debug(MODLAUNCHER,"Adding transformer {} to pattern {}", () -> transformer, () -> pattern);
+        patterns.add(new TargetPatternIndex.Entry(pattern, new TransformerHolder<>(transformer, service)));
+        this.index = null;
     }
 
     /**
-     * Requires internal class name (using '/' instead of '.')
+     * Compiles the registered transformers into an immutable index used while classes are loading.
+     * Called once all services have gathered their transformers, adding more transformers afterwards discards the index.
      */
-    boolean needsTransforming(String internalClassName) {
-        return classNeedsTransforming.contains(internalClassName);
+    void freeze() {
+        var index = TransformerIndex.build(this.transformers, TargetPatternIndex.build(this.patterns));
+        this.index = index;
+        LOGGER.debug(MODLAUNCHER, "Indexed transformers for {} classes and {} patterns", index::size, this.patterns::size);
+    }
+
+    private TransformerIndex getIndex() {
+        var ret = this.index;
+        if (ret == null) {
+            synchronized (this) {
+                ret = this.index;
+                if (ret == null)
+                    freeze();
+                ret = this.index;
+            }
+        }
+        return ret;
+    }
+
+    void forEachTransformer(BiConsumer<TransformTargetLabel, TransformerHolder<?>> consumer) {
+        for (var list : this.transformers.values())
+            list.forEach((label, transformer) -> consumer.accept(label, (TransformerHolder<?>) transformer));
+    }
+
+    void forEachPattern(BiConsumer<ITransformer.TargetPattern, TransformerHolder<?>> consumer) {
+        for (var entry : this.patterns)
+            consumer.accept(entry.pattern(), entry.transformer());
     }
 }
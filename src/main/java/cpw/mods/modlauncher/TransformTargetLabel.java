@@ -5,6 +5,7 @@
 
 package cpw.mods.modlauncher;
 
+import org.objectweb.asm.ClassVisitor;
 import org.objectweb.asm.Type;
 import org.objectweb.asm.tree.ClassNode;
 import org.objectweb.asm.tree.FieldNode;
@@ -97,7 +98,8 @@ public final class TransformTargetLabel {
         FIELD(FieldNode.class),
         METHOD(MethodNode.class),
         CLASS(ClassNode.class),
-        PRE_CLASS(ClassNode.class);
+        PRE_CLASS(ClassNode.class),
+        CLASS_VISITOR(ClassVisitor.class);
 
         private final Class<?> nodeType;
 
@@ -12,9 +12,11 @@ import org.apache.logging.log4j.Logger;
 
 import java.lang.reflect.Type;
 import java.lang.reflect.ParameterizedType;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Objects;
 import java.util.Set;
+import java.util.function.Consumer;
 import static cpw.mods.modlauncher.LogMarkers.*;
 
 /**
@@ -52,10 +54,23 @@ public class TransformationServiceDecorator {
     }
 
     public void gatherTransformers(TransformStore transformStore) {
+        collectTransformers().accept(transformStore);
+    }
+
+    private record Gathered(ITransformer<?> transformer, String nodeType) {}
+
+    /**
+     * Asks the service for its transformers and reads its declared ones, which may run concurrently with other
+     * services. The store is only changed by the returned consumer.
+     *
+     * @return Adds the transformers to the store
+     */
+    Consumer<TransformStore> collectTransformers() {
         LOGGER.debug(MODLAUNCHER, "Initializing transformers for transformation service {}", this.service::name);
         var transformers = this.service.transformers();
         Objects.requireNonNull(transformers, "The transformers list should not be null");
 
+        var gathered = new ArrayList<Gathered>(transformers.size());
         for (ITransformer<?> transformer : transformers) {
             Type type = null;
             var genericInterfaces = transformer.getClass().getGenericInterfaces();
@@ -71,22 +86,51 @@ public class TransformationServiceDecorator {
                 throw new IllegalArgumentException("Invalid Transformer, could not determine generic type " + transformer.getClass().getSimpleName());
             }
 
-            LabelType seen = null;
-            for (var target : transformer.targets()) {
-                var label = new TransformTargetLabel(target);
-                if (
-                    (seen != null && label.getLabelType() != seen) ||
-                    !label.getLabelType().getNodeType().getName().equals(type.getTypeName())
-                ) {
-                    LOGGER.info(MODLAUNCHER, "Invalid target {} for transformer {}", label.getLabelType(), transformer);
-                    throw new IllegalArgumentException("Invalid target " + label.getLabelType() + " for transformer " + transformer);
-                }
+            gathered.add(new Gathered(transformer, type.getTypeName()));
+        }
+
+        var declared = TransformerManifest.read(this.service.getClass());
+        for (var entry : declared)
+            gathered.add(new Gathered(new LazyTransformer<>(entry, this.service.getClass()), entry.nodeType()));
+        if (!declared.isEmpty())
+            LOGGER.debug(MODLAUNCHER, "Found {} declared transformers for transformation service {}", declared::size, this.service::name);
+
+        return transformStore -> {
+            for (var entry : gathered)
+                addTargets(transformStore, entry.transformer(), entry.nodeType());
+            LOGGER.debug(MODLAUNCHER, "Initialized transformers for transformation service {}", this.service::name);
+        };
+    }
+
+    private void addTargets(TransformStore transformStore, ITransformer<?> transformer, String nodeType) {
+        LabelType seen = null;
+        for (var target : transformer.targets()) {
+            var label = new TransformTargetLabel(target);
+            if (
+                (seen != null && label.getLabelType() != seen) ||
+                !label.getLabelType().getNodeType().getName().equals(nodeType)
+            ) {
+                LOGGER.info(MODLAUNCHER, "Invalid target {} for transformer {}", label.getLabelType(), transformer);
+                throw new IllegalArgumentException("Invalid target " + label.getLabelType() + " for transformer " + transformer);
+            }
 
-                seen = label.getLabelType();
-                transformStore.addTransformer(label, transformer, service);
+            seen = label.getLabelType();
+            transformStore.addTransformer(label, transformer, service);
+        }
+
+        for (var pattern : transformer.targetPatterns()) {
+            var labelType = LabelType.valueOf(pattern.targetType().name());
+            if (
+                (seen != null && labelType != seen) ||
+                !labelType.getNodeType().getName().equals(nodeType)
+            ) {
+                LOGGER.info(MODLAUNCHER, "Invalid target pattern {} for transformer {}", labelType, transformer);
+                throw new IllegalArgumentException("Invalid target pattern " + labelType + " for transformer " + transformer);
             }
+
+            seen = labelType;
+            transformStore.addPattern(pattern, transformer, service);
         }
-        LOGGER.debug(MODLAUNCHER, "Initialized transformers for transformation service {}", this.service::name);
     }
 
     ITransformationService getService() {
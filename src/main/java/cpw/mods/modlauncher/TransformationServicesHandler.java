@@ -30,6 +30,7 @@ import static cpw.mods.modlauncher.LogMarkers.*;
 final class TransformationServicesHandler {
     private static final Logger LOGGER = LogManager.getLogger();
     private Map<String, TransformationServiceDecorator> serviceLookup;
+    private ServiceGraph serviceGraph;
     private final TransformStore transformStore;
     private final ModuleLayerHandler layerHandler;
 
@@ -79,25 +80,26 @@ final class TransformationServicesHandler {
     void initialiseServiceTransformers() {
         LOGGER.debug(MODLAUNCHER,"Transformation services loading transformers");
 
-        for (TransformationServiceDecorator s : serviceLookup.values()) {
-            s.gatherTransformers(transformStore);
-        }
+        // Services may take their time making transformers, the store is filled in order afterwards
+        for (var transformers : serviceGraph.run("transformers", TransformationServiceDecorator::collectTransformers))
+            transformers.accept(transformStore);
+        transformStore.freeze();
     }
 
     private void initialiseTransformationServices(Environment environment) {
         LOGGER.debug(MODLAUNCHER,"Transformation services initializing");
 
-        for (TransformationServiceDecorator s : serviceLookup.values()) {
+        serviceGraph.run("initialize", s -> {
             s.onInitialize(environment);
-        }
+            return null;
+        });
     }
 
     private List<ITransformationService.Resource> runScanningTransformationServices(Environment environment) {
         LOGGER.debug(MODLAUNCHER,"Transformation services begin scanning");
 
-        return serviceLookup.values()
+        return serviceGraph.run("beginScanning", s -> s.runScan(environment))
                 .stream()
-                .map(s -> s.runScan(environment))
                 .flatMap(List::stream)
                 .toList();
     }
@@ -117,9 +119,10 @@ final class TransformationServicesHandler {
 
     private void loadTransformationServices(Environment environment) {
         LOGGER.debug(MODLAUNCHER,"Transformation services loading");
-        for (TransformationServiceDecorator s : serviceLookup.values()) {
+        serviceGraph.run("onLoad", s -> {
             s.onLoad(environment, serviceLookup.keySet());
-        }
+            return null;
+        });
     }
 
     void discoverServices(final ArgumentHandler.DiscoveryData discoveryData) {
@@ -170,11 +173,12 @@ final class TransformationServicesHandler {
             }
         }
         serviceLookup = transformers;
+        serviceGraph = new ServiceGraph(transformers);
     }
 
     public List<ITransformationService.Resource> triggerScanCompletion(IModuleLayerManager moduleLayerManager) {
-        return serviceLookup.values().stream()
-                .map(tsd -> tsd.onCompleteScan(moduleLayerManager))
+        return serviceGraph.run("completeScan", tsd -> tsd.onCompleteScan(moduleLayerManager))
+                .stream()
                 .flatMap(List::stream)
                 .toList();
 
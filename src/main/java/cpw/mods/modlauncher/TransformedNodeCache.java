@@ -0,0 +1,75 @@
+/*
+ * Copyright (c) Forge Development LLC
+ * SPDX-License-Identifier: LGPL-3.0-only
+ */
+
+package cpw.mods.modlauncher;
+
+import org.jetbrains.annotations.Nullable;
+import org.objectweb.asm.tree.ClassNode;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Bounded cache of class nodes produced while {@link TransformerClassWriter} computes frames.
+ * <p>
+ * Resolving a class hierarchy runs the full transformer pipeline with the
+ * {@link cpw.mods.modlauncher.api.ITransformerActivity#COMPUTING_FRAMES_REASON} reason, only to read the header of the
+ * result. The class is usually loaded for real shortly afterwards, so the transformed node is kept here and written
+ * out again with frames instead of transforming the class a second time.
+ * <p>
+ * A node is only offered when the result could not have depended on the reason: no transformer looked at the reason
+ * through its voting context, and no launch plugin ran before the transformers, as plugins are handed the reason
+ * directly. Plugins running after the transformers don't prevent reuse: the node is kept as it was before they ran,
+ * and they are offered it again when the class is loaded. Classes transformed in header only mode (see
+ * {@link ClassTransformer#HEADER_ONLY_PROPERTY}) have no code and are never offered.
+ */
+final class TransformedNodeCache {
+    /** Maximum number of nodes to keep, 0 disables the cache */
+    static final String SIZE_PROPERTY = "modlauncher.nodeCacheSize";
+    private static final int DEFAULT_SIZE = 128;
+
+    private final Map<String, Cached> entries;
+    private final boolean enabled;
+
+    record Cached(byte[] input, ClassNode node, @Nullable UntouchedMethods untouched) {}
+
+    TransformedNodeCache() {
+        this(Integer.getInteger(SIZE_PROPERTY, DEFAULT_SIZE));
+    }
+
+    TransformedNodeCache(int maxSize) {
+        this.enabled = maxSize > 0;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<String, Cached> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    boolean isEnabled() {
+        return enabled;
+    }
+
+    synchronized void put(String className, byte[] input, ClassNode node, @Nullable UntouchedMethods untouched) {
+        entries.put(className, new Cached(input, node, untouched));
+    }
+
+    /**
+     * Removes and returns the node previously transformed from the same input bytes, if any.
+     * The caller owns the returned node.
+     */
+    @Nullable
+    Cached take(String className, byte[] input) {
+        Cached entry;
+        synchronized (this) {
+            if (entries.isEmpty())
+                return null;
+            entry = entries.remove(className);
+        }
+        return entry != null && Arrays.equals(entry.input(), input) ? entry : null;
+    }
+}
@@ -9,139 +9,124 @@ import cpw.mods.modlauncher.api.ITransformerActivity;
 import cpw.mods.modlauncher.serviceapi.ILaunchPluginService;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.jetbrains.annotations.Nullable;
 import org.objectweb.asm.ClassReader;
 import org.objectweb.asm.ClassVisitor;
 import org.objectweb.asm.ClassWriter;
 import org.objectweb.asm.Opcodes;
 import org.objectweb.asm.tree.ClassNode;
 
-import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
 
 final class TransformerClassWriter extends ClassWriter {
     private static final Logger LOGGER = LogManager.getLogger();
-    private static final Map<String, String> CLASS_PARENTS = new ConcurrentHashMap<>();
-    private static final Map<String, Set<String>> CLASS_HIERARCHIES = new ConcurrentHashMap<>();
-    private static final Map<String, Boolean> IS_INTERFACE = new ConcurrentHashMap<>();
-    private final ClassTransformer classTransformer;
-    private final ClassNode clazzAccessor;
+    private static final ClassHierarchy HIERARCHY = new ClassHierarchy();
+    private final ClassHierarchy.Loader loader;
+    private String name;
+    private String superName;
+    private String[] interfaces;
+    private int access;
     private boolean computedThis = false;
 
+    /**
+     * @param clazzAccessor The node being written, which describes the class to frame computation
+     */
     public static ClassWriter createClassWriter(final int mlFlags, final ClassTransformer classTransformer, final ClassNode clazzAccessor) {
-        final int writerFlag = mlFlags & ~ILaunchPluginService.ComputeFlags.SIMPLE_REWRITE; //Strip any modlauncher-custom fields
-
-        //Only use the TransformerClassWriter when needed as it's slower, and only COMPUTE_FRAMES calls getCommonSuperClass
-        return (writerFlag & ILaunchPluginService.ComputeFlags.COMPUTE_FRAMES) != 0 ? new TransformerClassWriter(writerFlag, classTransformer, clazzAccessor) : new ClassWriter(writerFlag);
-    }
-
-    private TransformerClassWriter(final int writerFlags, final ClassTransformer classTransformer, final ClassNode clazzAccessor) {
-        super(writerFlags);
-        this.classTransformer = classTransformer;
-        this.clazzAccessor = clazzAccessor;
-    }
-
-    @Override
-    protected String getCommonSuperClass(final String type1, final String type2) {
-        if (!computedThis) {
-            computeHierarchy(clazzAccessor);
-            computedThis = true;
-        }
-
-        if (getSupers(type2).contains(type1)) {
-            return type1;
-        }
-        if (getSupers(type1).contains(type2)) {
-            return type2;
+        final ClassWriter ret = createClassWriter(mlFlags, classTransformer, (ClassReader) null);
+        if (ret instanceof TransformerClassWriter writer) {
+            writer.name = clazzAccessor.name;
+            writer.superName = clazzAccessor.superName;
+            writer.interfaces = clazzAccessor.interfaces.toArray(new String[0]);
+            writer.access = clazzAccessor.access;
         }
-
-        if (isIntf(type1) || isIntf(type2)) {
-            return "java/lang/Object";
-        }
-
-        String type = type1;
-        do {
-            type = getSuper(type);
-        } while (!getSupers(type2).contains(type));
-        return type;
+        return ret;
     }
 
+    /**
+     * @param source The reader the class was read from. The writer then shares its constant pool, which allows methods to be copied from it unchanged
+     */
+    static ClassWriter createClassWriter(final int mlFlags, final ClassTransformer classTransformer, @Nullable final ClassReader source) {
+        final int writerFlag = mlFlags & ~ILaunchPluginService.ComputeFlags.SIMPLE_REWRITE; //Strip any modlauncher-custom fields
 
-    private Set<String> getSupers(final String typeName) {
-        computeHierarchy(typeName);
-        return CLASS_HIERARCHIES.get(typeName);
+        //Only use the TransformerClassWriter when needed as it's slower, and only COMPUTE_FRAMES calls getCommonSuperClass
+        return (writerFlag & ILaunchPluginService.ComputeFlags.COMPUTE_FRAMES) != 0 ? new TransformerClassWriter(source, writerFlag, classTransformer) : new ClassWriter(source, writerFlag);
     }
 
-    private static boolean isIntf(final String typeName) {
-        //We don't need computeHierarchy as it has been called already from a different method every time this method is called
-        return IS_INTERFACE.get(typeName);
+    private TransformerClassWriter(@Nullable final ClassReader source, final int writerFlags, final ClassTransformer classTransformer) {
+        super(source, writerFlags);
+        this.loader = loader(classTransformer);
     }
 
-    private String getSuper(final String typeName) {
-        computeHierarchy(typeName);
-        return CLASS_PARENTS.get(typeName);
+    /**
+     * Returns the visitor to write the class to. Class visitors may change the header on the way, so frames of a
+     * {@link TransformerClassWriter} are computed against the header it is actually handed. Methods are still passed
+     * to the writer directly, so they can be copied.
+     */
+    static ClassVisitor front(final ClassWriter cw) {
+        if (!(cw instanceof TransformerClassWriter writer))
+            return cw;
+        return new ClassVisitor(Opcodes.ASM9, cw) {
+            @Override
+            public void visit(final int version, final int access, final String name, final String signature, final String superName, final String[] interfaces) {
+                writer.name = name;
+                writer.superName = superName;
+                writer.interfaces = interfaces == null ? new String[0] : interfaces.clone();
+                writer.access = access;
+                super.visit(version, access, name, signature, superName, interfaces);
+            }
+        };
     }
 
-    private void computeHierarchy(final ClassNode clazzNode) {
-        if (!CLASS_HIERARCHIES.containsKey(clazzNode.name)) {
-            clazzNode.accept(new SuperCollectingVisitor());
-        }
+    static ClassHierarchy getHierarchy() {
+        return HIERARCHY;
     }
 
     /**
-     * Computes the hierarchy for a specific class if it has not been computed yet
+     * @return A loader reading class headers for the {@link #getHierarchy() hierarchy}, as seen by the class transformer
      */
-    private void computeHierarchy(final String className) {
-        if (CLASS_HIERARCHIES.containsKey(className)) return; //already computed
-        Class<?> clz = classTransformer.getTransformingClassLoader().getLoadedClass(className.replace('/', '.'));
-        if (clz != null) {
-            computeHierarchyFromClass(className, clz);
-        } else {
-            computeHierarchyFromFile(className);
-        }
+    static ClassHierarchy.Loader loader(final ClassTransformer classTransformer) {
+        return className -> loadHeader(classTransformer, className);
     }
 
     /**
-     * Computes the hierarchy for a specific class using the already loaded class object
-     * Must be kept in sync with the file counterpart {@link SuperCollectingVisitor#visit(int, int, String, String, String, String[])}
+     * @return A loader reading class headers as declared in the class files, before any transformer ran. It never
+     * transforms a class, so it is safe to use while deciding which transformers a class gets
      */
-    private static void computeHierarchyFromClass(final String name, final Class<?> clazz) {
-        Class<?> superClass = clazz.getSuperclass();
-        Set<String> hierarchies = new HashSet<>();
-        if (superClass != null) {
-            String superName = superClass.getName().replace('.', '/');
-            CLASS_PARENTS.put(name, superName);
-            if (!CLASS_HIERARCHIES.containsKey(superName))
-                computeHierarchyFromClass(superName, superClass);
-            hierarchies.add(name);
-            hierarchies.addAll(CLASS_HIERARCHIES.get(superName));
-        } else {
-            hierarchies.add("java/lang/Object");
-        }
-        IS_INTERFACE.put(name, clazz.isInterface());
-        for (Class<?> c : clazz.getInterfaces()) {
-            String n = c.getName().replace('.', '/');
-            if (!CLASS_HIERARCHIES.containsKey(n))
-                computeHierarchyFromClass(n, c);
-            hierarchies.add(n);
-            hierarchies.addAll(CLASS_HIERARCHIES.get(n));
+    static ClassHierarchy.Loader declaredLoader(final ClassTransformer classTransformer) {
+        return className -> loadDeclaredHeader(classTransformer, className);
+    }
+
+    @Override
+    protected String getCommonSuperClass(final String type1, final String type2) {
+        if (!computedThis) {
+            // The class being written is not loadable yet, describe it from its header
+            HIERARCHY.define(name, superName, interfaces, (access & Opcodes.ACC_INTERFACE) != 0, loader);
+            computedThis = true;
         }
-        CLASS_HIERARCHIES.put(name, hierarchies); //Only put the set in the map once it is fully populated, to prevent another thread from using incomplete data
+        return HIERARCHY.getCommonSuperClass(type1, type2, loader);
     }
 
     /**
-     * Computes the hierarchy for a specific class by loading the class from disk and running it through modlauncher.
+     * Reads the header of a class from the already loaded class object if there is one, or by loading the class from disk and running it through modlauncher.
      */
-    private void computeHierarchyFromFile(final String className) {
+    private static ClassHierarchy.Header loadHeader(final ClassTransformer classTransformer, final String className) {
+        final TransformingClassLoader tcl = classTransformer.getTransformingClassLoader();
+        Class<?> clz = tcl.getLoadedClass(className.replace('/', '.'));
+        if (clz != null)
+            return ClassHierarchy.Header.of(clz);
+
         try {
-            byte[] classData = classTransformer.getTransformingClassLoader().buildTransformedClassNodeFor(className.replace('/', '.'), ITransformerActivity.COMPUTING_FRAMES_REASON);
+            byte[] classData = tcl.buildTransformedClassNodeFor(className.replace('/', '.'), ITransformerActivity.COMPUTING_FRAMES_REASON);
             ClassReader classReader = new ClassReader(classData);
-            classReader.accept(new SuperCollectingVisitor(), ClassReader.SKIP_CODE | ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES);
+            return new ClassHierarchy.Header(classReader.getSuperName(), classReader.getInterfaces(), (classReader.getAccess() & Opcodes.ACC_INTERFACE) != 0, null);
         } catch (ClassNotFoundException e) {
             //Don't panic just yet. Do a classload on the super classloader
             //This is safe, as the TCL can't find the class, so it has to be on the super classloader, and it can't cause circulation,
             //as classes from the parent classloader cannot reference classes from the TCL, as the parent only contains libraries and std lib
             try {
-                computeHierarchyFromClass(className, Class.forName(className.replace('/', '.'), false, classTransformer.getTransformingClassLoader()));
+                return ClassHierarchy.Header.of(Class.forName(className.replace('/', '.'), false, tcl));
             } catch (ClassNotFoundException classNotFoundException) {
                 classNotFoundException.addSuppressed(e);
                 LOGGER.fatal("Failed to find class {} ", className, classNotFoundException);
@@ -150,30 +135,26 @@ final class TransformerClassWriter extends ClassWriter {
         }
     }
 
-    private final class SuperCollectingVisitor extends ClassVisitor {
+    private static ClassHierarchy.Header loadDeclaredHeader(final ClassTransformer classTransformer, final String className) {
+        final TransformingClassLoader tcl = classTransformer.getTransformingClassLoader();
+        Class<?> clz = tcl.getLoadedClass(className.replace('/', '.'));
+        if (clz != null)
+            return ClassHierarchy.Header.of(clz);
 
-        public SuperCollectingVisitor() {
-            super(Opcodes.ASM9);
+        try (InputStream is = tcl.getResourceAsStream(className + ".class")) {
+            if (is != null) {
+                ClassReader classReader = new ClassReader(is);
+                return new ClassHierarchy.Header(classReader.getSuperName(), classReader.getInterfaces(), (classReader.getAccess() & Opcodes.ACC_INTERFACE) != 0, null);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read class " + className, e);
         }
 
-        @Override
-        public void visit(final int version, final int access, final String name, final String signature, final String superName, final String[] interfaces) {
-            Set<String> hierarchies = new HashSet<>();
-            if (superName != null) {
-                CLASS_PARENTS.put(name, superName);
-                computeHierarchy(superName);
-                hierarchies.add(name);
-                hierarchies.addAll(CLASS_HIERARCHIES.get(superName));
-            } else {
-                hierarchies.add("java/lang/Object");
-            }
-            IS_INTERFACE.put(name, (access & Opcodes.ACC_INTERFACE) != 0);
-            for (String n : interfaces) {
-                computeHierarchy(n);
-                hierarchies.add(n);
-                hierarchies.addAll(CLASS_HIERARCHIES.get(n));
-            }
-            CLASS_HIERARCHIES.put(name, hierarchies); //Only put the set in the map once it is fully populated, to prevent another thread from using incomplete data
+        // Not a resource of the loader, the class can only come from the super classloader, which does not transform
+        try {
+            return ClassHierarchy.Header.of(Class.forName(className.replace('/', '.'), false, tcl));
+        } catch (ClassNotFoundException e) {
+            throw new RuntimeException("Cannot find class " + className, e);
         }
     }
 }
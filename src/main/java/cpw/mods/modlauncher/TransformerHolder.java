@@ -5,12 +5,14 @@
 
 package cpw.mods.modlauncher;
 
+import cpw.mods.modlauncher.api.ConstantPoolFilter;
 import cpw.mods.modlauncher.api.ITransformationService;
 import cpw.mods.modlauncher.api.ITransformer;
 import cpw.mods.modlauncher.api.ITransformerVotingContext;
 import cpw.mods.modlauncher.api.TransformerVoteResult;
 
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 import java.util.Set;
 
 public class TransformerHolder<T> implements ITransformer<T> {
@@ -40,11 +42,61 @@ public class TransformerHolder<T> implements ITransformer<T> {
         return wrapped.targets();
     }
 
+    @Override
+    public Set<TargetPattern> targetPatterns() {
+        return wrapped.targetPatterns();
+    }
+
     @Override
     public String[] labels() {
         return wrapped.labels();
     }
 
+    @Nullable
+    @Override
+    public ConstantPoolFilter prefilter() {
+        return wrapped.prefilter();
+    }
+
+    @Override
+    public int getComputeFlags() {
+        return wrapped.getComputeFlags();
+    }
+
+    @Override
+    public boolean isVoteDeterministic() {
+        return wrapped.isVoteDeterministic();
+    }
+
+    @Override
+    public boolean isThreadSafe() {
+        return wrapped.isThreadSafe();
+    }
+
+    @Override
+    public boolean supportsHeaderOnly() {
+        return wrapped.supportsHeaderOnly();
+    }
+
+    @Override
+    public int priority() {
+        return wrapped.priority();
+    }
+
+    @Override
+    public Set<String> runsBefore() {
+        return wrapped.runsBefore();
+    }
+
+    @Override
+    public Set<String> runsAfter() {
+        return wrapped.runsAfter();
+    }
+
+    ITransformer<T> wrapped() {
+        return wrapped;
+    }
+
     public ITransformationService owner() {
         return owner;
     }
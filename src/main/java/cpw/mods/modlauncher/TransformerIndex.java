@@ -0,0 +1,340 @@
+/*
+ * Copyright (c) Forge Development LLC
+ * SPDX-License-Identifier: LGPL-3.0-only
+ */
+
+package cpw.mods.modlauncher;
+
+import cpw.mods.modlauncher.api.ConstantPoolFilter;
+import cpw.mods.modlauncher.api.ITransformer;
+import org.jetbrains.annotations.Nullable;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.tree.FieldNode;
+import org.objectweb.asm.tree.MethodNode;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Immutable, compiled view of a {@link TransformStore}.
+ * <p>
+ * Every targeted class gets a single {@link ClassTargets} entry holding pre-built transformer arrays, so transforming a
+ * class costs one map lookup plus one lookup per member name for classes that actually have member transformers.
+ * Nothing is inserted while classes are loading, and classes that are not targeted are rejected by a
+ * {@link ClassNameFilter} before their name is converted to an internal name. The arrays are in the order the
+ * transformers vote in, see {@link TransformerOrder}.
+ * <p>
+ * Classes matched by {@link TargetPatternIndex patterns} get the transformers of the matching pattern buckets merged in.
+ * Classes matched by the same buckets share the merged entry, so it is only built once per combination.
+ */
+final class TransformerIndex {
+    private static final ITransformer<?>[] NONE = new ITransformer<?>[0];
+    private static final MemberTargets[] NO_MEMBERS = new MemberTargets[0];
+    private static final int MERGED_LIMIT = 1 << 12;
+    private final Map<String, ClassTargets> classes;
+    private final TargetPatternIndex patterns;
+    private final ClassNameFilter filter;
+    private final ConcurrentHashMap<List<Object>, ClassTargets> merged = new ConcurrentHashMap<>();
+
+    private TransformerIndex(Map<String, ClassTargets> classes, TargetPatternIndex patterns) {
+        this.classes = classes;
+        this.patterns = patterns;
+        var filter = ClassNameFilter.builder().addClasses(classes.keySet());
+        patterns.addTo(filter);
+        this.filter = filter.build();
+    }
+
+    /**
+     * Accepts both binary ('.') and internal ('/') class names. Patterns selecting subclasses are not matched.
+     */
+    @Nullable
+    ClassTargets get(String className) {
+        if (!filter.matches(className))
+            return null;
+        return get(className.indexOf('.') < 0 ? className : className.replace('.', '/'), TargetPatternIndex.NO_BUCKETS);
+    }
+
+    /**
+     * Accepts both binary ('.') and internal ('/') class names. If some patterns select subclasses, the super types
+     * declared by every class are matched against them, which costs a walk of its constant pool once its super types
+     * were seen.
+     *
+     * @param loader Reads the untransformed header of a super type seen for the first time
+     */
+    @Nullable
+    ClassTargets get(String className, byte[] inputClass, ClassHierarchy.Loader loader) {
+        if (!patterns.hasSupertypePatterns())
+            return get(className);
+        var inherited = patterns.matchSupertypes(className, inputClass, loader);
+        if (!filter.matches(className) && inherited.length == 0)
+            return null;
+        return get(className.indexOf('.') < 0 ? className : className.replace('.', '/'), inherited);
+    }
+
+    @Nullable
+    private ClassTargets get(String internalName, TargetPatternIndex.Bucket[] inherited) {
+        var exact = classes.get(internalName);
+        var buckets = TargetPatternIndex.addAll(patterns.match(internalName), inherited);
+        if (buckets.length == 0)
+            return exact;
+
+        var key = new ArrayList<Object>(buckets.length + 1);
+        key.add(exact);
+        Collections.addAll(key, buckets);
+        var ret = merged.get(key);
+        if (ret == null) {
+            ret = ClassTargets.merge(exact, buckets);
+            if (merged.size() >= MERGED_LIMIT)
+                merged.clear();
+            merged.put(key, ret);
+        }
+        return ret;
+    }
+
+    /**
+     * @return The number of classes targeted by name
+     */
+    int size() {
+        return classes.size();
+    }
+
+    static TransformerIndex build(EnumMap<TransformTargetLabel.LabelType, TransformList<?>> transformers, TargetPatternIndex patterns) {
+        var builders = new HashMap<String, Builder>();
+        for (var entry : transformers.entrySet()) {
+            var type = entry.getKey();
+            entry.getValue().forEach((label, transformer) ->
+                builders.computeIfAbsent(label.getClassName().getInternalName(), k -> new Builder()).add(type, label, transformer)
+            );
+        }
+
+        var classes = new HashMap<String, ClassTargets>(builders.size() * 2);
+        builders.forEach((name, builder) -> classes.put(name, builder.build()));
+        return new TransformerIndex(classes, patterns);
+    }
+
+    /**
+     * The transformers targeting a single class, grouped by target type.
+     */
+    static final class ClassTargets {
+        private final ITransformer<?>[] preClass;
+        private final ITransformer<?>[] cls;
+        private final ITransformer<?>[] visitors;
+        private final Map<String, ITransformer<?>[]> fields;
+        private final Map<String, MemberTargets[]> methods;
+        private final TargetPatternIndex.Bucket[] fieldPatterns;
+        private final TargetPatternIndex.Bucket[] methodPatterns;
+        @Nullable
+        private final ConstantPoolFilter prefilter;
+        private final boolean headerOnly;
+
+        private ClassTargets(ITransformer<?>[] preClass, ITransformer<?>[] cls, ITransformer<?>[] visitors, Map<String, ITransformer<?>[]> fields, Map<String, MemberTargets[]> methods,
+                TargetPatternIndex.Bucket[] fieldPatterns, TargetPatternIndex.Bucket[] methodPatterns, @Nullable ConstantPoolFilter prefilter) {
+            this.preClass = preClass;
+            this.cls = cls;
+            this.visitors = visitors;
+            this.fields = fields;
+            this.methods = methods;
+            this.fieldPatterns = fieldPatterns;
+            this.methodPatterns = methodPatterns;
+            this.prefilter = prefilter;
+            this.headerOnly = supportsHeaderOnly(preClass) && supportsHeaderOnly(cls) && supportsHeaderOnly(visitors);
+        }
+
+        private static boolean supportsHeaderOnly(ITransformer<?>[] transformers) {
+            for (var transformer : transformers) {
+                if (!transformer.supportsHeaderOnly())
+                    return false;
+            }
+            return true;
+        }
+
+        /**
+         * Adds the transformers of the pattern buckets to the transformers targeting the class by name, if any.
+         * Member patterns are kept as they are, and matched against each member.
+         */
+        private static ClassTargets merge(@Nullable ClassTargets exact, TargetPatternIndex.Bucket[] buckets) {
+            var preClass = new ArrayList<ITransformer<?>>();
+            var cls = new ArrayList<ITransformer<?>>();
+            var visitors = new ArrayList<ITransformer<?>>();
+            var fieldPatterns = new ArrayList<TargetPatternIndex.Bucket>();
+            var methodPatterns = new ArrayList<TargetPatternIndex.Bucket>();
+            List<ConstantPoolFilter> prefilters = new ArrayList<>();
+            if (exact != null) {
+                Collections.addAll(preClass, exact.preClass);
+                Collections.addAll(cls, exact.cls);
+                Collections.addAll(visitors, exact.visitors);
+                if (exact.prefilter == null)
+                    prefilters = null;
+                else
+                    prefilters.add(exact.prefilter);
+            }
+            for (var bucket : buckets) {
+                Collections.addAll(preClass, bucket.getPreClass());
+                Collections.addAll(cls, bucket.getClassTransformers());
+                Collections.addAll(visitors, bucket.getClassVisitors());
+                if (bucket.hasFieldTransformers())
+                    fieldPatterns.add(bucket);
+                if (bucket.hasMethodTransformers())
+                    methodPatterns.add(bucket);
+                if (prefilters != null && bucket.getPrefilters() != null)
+                    prefilters.addAll(bucket.getPrefilters());
+                else
+                    prefilters = null;
+            }
+            return new ClassTargets(TransformerOrder.sort(preClass, NONE), TransformerOrder.sort(cls, NONE), TransformerOrder.sort(visitors, NONE),
+                exact == null ? Map.of() : exact.fields, exact == null ? Map.of() : exact.methods,
+                fieldPatterns.toArray(TargetPatternIndex.NO_BUCKETS), methodPatterns.toArray(TargetPatternIndex.NO_BUCKETS),
+                prefilters == null ? null : ConstantPoolFilter.anyOf(prefilters));
+        }
+
+        /**
+         * @return A filter passing the classes at least one transformer may be interested in, or null if some
+         * transformer has no prefilter and the class always needs to be parsed
+         */
+        @Nullable
+        ConstantPoolFilter getPrefilter() {
+            return prefilter;
+        }
+
+        /**
+         * @return true if every transformer that can change the header of the class works without its code
+         */
+        boolean supportsHeaderOnly() {
+            return headerOnly;
+        }
+
+        @SuppressWarnings("unchecked")
+        ITransformer<ClassNode>[] getPreClass() {
+            return (ITransformer<ClassNode>[]) preClass;
+        }
+
+        @SuppressWarnings("unchecked")
+        ITransformer<ClassNode>[] getClassTransformers() {
+            return (ITransformer<ClassNode>[]) cls;
+        }
+
+        @SuppressWarnings("unchecked")
+        ITransformer<ClassVisitor>[] getClassVisitors() {
+            return (ITransformer<ClassVisitor>[]) visitors;
+        }
+
+        /**
+         * @return true if some transformer needs the class as a tree, false if it can be streamed through the class visitors
+         */
+        boolean hasTreeTransformers() {
+            return preClass.length != 0 || cls.length != 0 || hasFieldTransformers() || hasMethodTransformers();
+        }
+
+        boolean hasFieldTransformers() {
+            return !fields.isEmpty() || fieldPatterns.length != 0;
+        }
+
+        boolean hasMethodTransformers() {
+            return !methods.isEmpty() || methodPatterns.length != 0;
+        }
+
+        @SuppressWarnings("unchecked")
+        ITransformer<FieldNode>[] getFieldTransformers(FieldNode field) {
+            var ret = fields.getOrDefault(field.name, NONE);
+            if (fieldPatterns.length == 0)
+                return (ITransformer<FieldNode>[]) ret;
+
+            var all = new ArrayList<ITransformer<?>>();
+            for (var bucket : fieldPatterns)
+                bucket.collectFieldTransformers(field.name, all);
+            return (ITransformer<FieldNode>[]) withPatterns(ret, all);
+        }
+
+        @SuppressWarnings("unchecked")
+        ITransformer<MethodNode>[] getMethodTransformers(MethodNode method) {
+            var ret = NONE;
+            var candidates = methods.get(method.name);
+            if (candidates != null) {
+                for (var candidate : candidates) {
+                    if (candidate.descriptor().equals(method.desc)) {
+                        ret = candidate.transformers();
+                        break;
+                    }
+                }
+            }
+            if (methodPatterns.length == 0)
+                return (ITransformer<MethodNode>[]) ret;
+
+            var all = new ArrayList<ITransformer<?>>();
+            for (var bucket : methodPatterns)
+                bucket.collectMethodTransformers(method.name, method.desc, all);
+            return (ITransformer<MethodNode>[]) withPatterns(ret, all);
+        }
+
+        private static ITransformer<?>[] withPatterns(ITransformer<?>[] exact, List<ITransformer<?>> matched) {
+            if (matched.isEmpty())
+                return exact;
+            if (exact.length == 0 && matched.size() == 1)
+                return matched.toArray(NONE);
+            Collections.addAll(matched, exact);
+            return TransformerOrder.sort(matched, NONE);
+        }
+    }
+
+    private record MemberTargets(String descriptor, ITransformer<?>[] transformers) {}
+
+    private static final class Builder {
+        private final List<ITransformer<?>> preClass = new ArrayList<>();
+        private final List<ITransformer<?>> cls = new ArrayList<>();
+        private final List<ITransformer<?>> visitors = new ArrayList<>();
+        private final Map<String, List<ITransformer<?>>> fields = new LinkedHashMap<>();
+        private final Map<String, Map<String, List<ITransformer<?>>>> methods = new LinkedHashMap<>();
+
+        private void add(TransformTargetLabel.LabelType type, TransformTargetLabel label, ITransformer<?> transformer) {
+            switch (type) {
+                case PRE_CLASS -> preClass.add(transformer);
+                case CLASS -> cls.add(transformer);
+                case CLASS_VISITOR -> visitors.add(transformer);
+                case FIELD -> fields.computeIfAbsent(label.getElementName(), k -> new ArrayList<>()).add(transformer);
+                case METHOD -> methods.computeIfAbsent(label.getElementName(), k -> new LinkedHashMap<>())
+                    .computeIfAbsent(label.getElementDescriptor().getDescriptor(), k -> new ArrayList<>()).add(transformer);
+            }
+        }
+
+        private ClassTargets build() {
+            var fieldArrays = new HashMap<String, ITransformer<?>[]>();
+            fields.forEach((name, list) -> fieldArrays.put(name, TransformerOrder.sort(list, NONE)));
+
+            var methodArrays = new HashMap<String, MemberTargets[]>();
+            methods.forEach((name, descs) -> {
+                var targets = new ArrayList<MemberTargets>(descs.size());
+                descs.forEach((desc, list) -> targets.add(new MemberTargets(desc, TransformerOrder.sort(list, NONE))));
+                methodArrays.put(name, targets.toArray(NO_MEMBERS));
+            });
+
+            return new ClassTargets(TransformerOrder.sort(preClass, NONE), TransformerOrder.sort(cls, NONE), TransformerOrder.sort(visitors, NONE),
+                fieldArrays.isEmpty() ? Map.of() : fieldArrays, methodArrays.isEmpty() ? Map.of() : methodArrays,
+                TargetPatternIndex.NO_BUCKETS, TargetPatternIndex.NO_BUCKETS, prefilter());
+        }
+
+        @Nullable
+        private ConstantPoolFilter prefilter() {
+            var all = new ArrayList<ITransformer<?>>(preClass);
+            all.addAll(cls);
+            all.addAll(visitors);
+            fields.values().forEach(all::addAll);
+            methods.values().forEach(descs -> descs.values().forEach(all::addAll));
+
+            var filters = new ArrayList<ConstantPoolFilter>(all.size());
+            for (var transformer : all) {
+                var filter = transformer.prefilter();
+                if (filter == null)
+                    return null;
+                filters.add(filter);
+            }
+            return ConstantPoolFilter.anyOf(filters);
+        }
+    }
+}
@@ -0,0 +1,146 @@
+/*
+ * Copyright (c) Forge Development LLC
+ * SPDX-License-Identifier: LGPL-3.0-only
+ */
+
+package cpw.mods.modlauncher;
+
+import cpw.mods.modlauncher.api.ITransformer;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * The transformers a service declared with {@link cpw.mods.modlauncher.api.DeclaredTransformer}, as written by the
+ * annotation processor of the {@code processor} artifact. The manifest is a text file of tab separated lines. Each
+ * transformer starts with a {@code transformer} line, and the lines after it describe it until the next one:
+ * <pre>
+ * transformer  class  node type  priority
+ * label        label
+ * before       service[:label]
+ * after        service[:label]
+ * target       target type  class  element  descriptor
+ * pattern      scope  target type  class  element  descriptor
+ * prefilter
+ * </pre>
+ * The {@code prefilter} line is written for transformers overriding {@link ITransformer#prefilter()}.
+ */
+final class TransformerManifest {
+    static final String PATH = "META-INF/modlauncher/transformers/";
+    static final String TRANSFORMER = "transformer";
+    static final String LABEL = "label";
+    static final String BEFORE = "before";
+    static final String AFTER = "after";
+    static final String TARGET = "target";
+    static final String PATTERN = "pattern";
+    static final String PREFILTER = "prefilter";
+
+    private TransformerManifest() {}
+
+    /**
+     * @param className  The binary name of the transformer class
+     * @param nodeType   The binary name of the T variable of the transformer
+     * @param prefilter  If the transformer overrides {@link ITransformer#prefilter()}, and has to be created to get it
+     */
+    record Entry(String className, String nodeType, int priority, String[] labels, Set<String> runsBefore, Set<String> runsAfter,
+                 Set<ITransformer.Target> targets, Set<ITransformer.TargetPattern> patterns, boolean prefilter) {}
+
+    static String line(String... fields) {
+        return String.join("\t", fields) + '\n';
+    }
+
+    /**
+     * Reads the manifest of a service, from the module or class loader of the service class.
+     *
+     * @return The declared transformers, or an empty list if the service has no manifest
+     * @throws IllegalArgumentException if the manifest is malformed
+     */
+    static List<Entry> read(Class<?> serviceClass) {
+        final String path = PATH + serviceClass.getName();
+        try (var in = serviceClass.getResourceAsStream('/' + path)) {
+            if (in == null)
+                return List.of();
+            return parse(path, new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8)));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read transformer manifest " + path, e);
+        }
+    }
+
+    private static List<Entry> parse(String path, BufferedReader reader) throws IOException {
+        var ret = new ArrayList<Entry>();
+        Builder current = null;
+        int number = 0;
+        String line;
+        while ((line = reader.readLine()) != null) {
+            number++;
+            if (line.isEmpty())
+                continue;
+            final String[] fields = line.split("\t", -1);
+            try {
+                if (fields[0].equals(TRANSFORMER)) {
+                    check(fields, 4);
+                    if (current != null)
+                        ret.add(current.build());
+                    current = new Builder(fields[1], fields[2], Integer.parseInt(fields[3]));
+                    continue;
+                }
+                if (current == null)
+                    throw new IllegalArgumentException("expected a transformer first");
+                switch (fields[0]) {
+                    case LABEL -> current.labels.add(check(fields, 2)[1]);
+                    case BEFORE -> current.runsBefore.add(check(fields, 2)[1]);
+                    case AFTER -> current.runsAfter.add(check(fields, 2)[1]);
+                    case TARGET -> current.targets.add(new ITransformer.Target(check(fields, 5)[2], fields[3], fields[4], ITransformer.TargetType.valueOf(fields[1])));
+                    case PATTERN -> current.patterns.add(new ITransformer.TargetPattern(ITransformer.TargetPattern.Scope.valueOf(check(fields, 6)[1]),
+                        fields[3], fields[4], fields[5], ITransformer.TargetType.valueOf(fields[2])));
+                    case PREFILTER -> {
+                        check(fields, 1);
+                        current.prefilter = true;
+                    }
+                    default -> throw new IllegalArgumentException("unknown entry " + fields[0]);
+                }
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Invalid transformer manifest " + path + ":" + number + ", " + e.getMessage(), e);
+            }
+        }
+        if (current != null)
+            ret.add(current.build());
+        return ret;
+    }
+
+    private static String[] check(String[] fields, int count) {
+        if (fields.length != count)
+            throw new IllegalArgumentException("expected " + count + " fields, found " + fields.length);
+        return fields;
+    }
+
+    private static final class Builder {
+        private final String className;
+        private final String nodeType;
+        private final int priority;
+        private final List<String> labels = new ArrayList<>();
+        private final Set<String> runsBefore = new HashSet<>();
+        private final Set<String> runsAfter = new HashSet<>();
+        private final Set<ITransformer.Target> targets = new HashSet<>();
+        private final Set<ITransformer.TargetPattern> patterns = new HashSet<>();
+        private boolean prefilter;
+
+        private Builder(String className, String nodeType, int priority) {
+            this.className = className;
+            this.nodeType = nodeType;
+            this.priority = priority;
+        }
+
+        private Entry build() {
+            return new Entry(className, nodeType, priority, labels.isEmpty() ? ITransformer.DEFAULT_LABEL : labels.toArray(new String[0]),
+                Set.copyOf(runsBefore), Set.copyOf(runsAfter), Set.copyOf(targets), Set.copyOf(patterns), prefilter);
+        }
+    }
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright (c) Forge Development LLC
+ * SPDX-License-Identifier: LGPL-3.0-only
+ */
+
+package cpw.mods.modlauncher;
+
+import cpw.mods.modlauncher.api.ITransformer;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.stream.Collectors;
+
+import static cpw.mods.modlauncher.LogMarkers.MODLAUNCHER;
+
+/**
+ * Computes the order transformers targeting the same element are offered that element in, see
+ * {@link ITransformer#priority()}, {@link ITransformer#runsBefore()} and {@link ITransformer#runsAfter()}.
+ * <p>
+ * The order is a topological sort of the before and after constraints, picking the highest priority, then the
+ * earliest registered transformer whenever there is a choice. If the constraints contain a cycle, it is logged and the
+ * transformers on it are appended by priority instead.
+ */
+final class TransformerOrder {
+    private static final Logger LOGGER = LogManager.getLogger();
+
+    private TransformerOrder() {}
+
+    static ITransformer<?>[] sort(List<ITransformer<?>> transformers, ITransformer<?>[] empty) {
+        final ITransformer<?>[] ret = transformers.toArray(empty);
+        if (ret.length < 2 || isDefault(ret))
+            return ret;
+
+        final int n = ret.length;
+        final List<BitSet> successors = new ArrayList<>(n);
+        for (int i = 0; i < n; i++)
+            successors.add(new BitSet(n));
+        for (int i = 0; i < n; i++) {
+            for (var entry : ret[i].runsBefore())
+                link(ret, entry, i, successors, true);
+            for (var entry : ret[i].runsAfter())
+                link(ret, entry, i, successors, false);
+        }
+
+        final int[] incoming = new int[n];
+        for (var next : successors)
+            next.stream().forEach(j -> incoming[j]++);
+
+        final Comparator<Integer> byPriority = Comparator.<Integer>comparingInt(i -> -ret[i].priority()).thenComparingInt(i -> i);
+        final PriorityQueue<Integer> ready = new PriorityQueue<>(byPriority);
+        for (int i = 0; i < n; i++) {
+            if (incoming[i] == 0)
+                ready.add(i);
+        }
+
+        final ITransformer<?>[] sorted = new ITransformer<?>[n];
+        final BitSet placed = new BitSet(n);
+        int count = 0;
+        while (!ready.isEmpty()) {
+            final int i = ready.poll();
+            sorted[count++] = ret[i];
+            placed.set(i);
+            successors.get(i).stream().forEach(j -> {
+                if (--incoming[j] == 0)
+                    ready.add(j);
+            });
+        }
+
+        if (count < n) {
+            final List<Integer> rest = new ArrayList<>();
+            for (int i = placed.nextClearBit(0); i < n; i = placed.nextClearBit(i + 1))
+                rest.add(i);
+            rest.sort(byPriority);
+            LOGGER.error(MODLAUNCHER, "Transformers have cyclic ordering constraints, ordering them by priority instead: {}",
+                () -> rest.stream().map(i -> describe(ret[i])).collect(Collectors.joining(", ")));
+            for (var i : rest)
+                sorted[count++] = ret[i];
+        }
+        return sorted;
+    }
+
+    private static boolean isDefault(ITransformer<?>[] transformers) {
+        for (var transformer : transformers) {
+            if (transformer.priority() != 0 || !transformer.runsBefore().isEmpty() || !transformer.runsAfter().isEmpty())
+                return false;
+        }
+        return true;
+    }
+
+    private static void link(ITransformer<?>[] transformers, String entry, int self, List<BitSet> successors, boolean before) {
+        final int split = entry.indexOf(':');
+        final String service = split < 0 ? entry : entry.substring(0, split);
+        final String label = split < 0 ? null : entry.substring(split + 1);
+        for (int i = 0; i < transformers.length; i++) {
+            if (i == self || !matches(transformers[i], service, label))
+                continue;
+            if (before)
+                successors.get(self).set(i);
+            else
+                successors.get(i).set(self);
+        }
+    }
+
+    private static boolean matches(ITransformer<?> transformer, String service, @Nullable String label) {
+        if (!service.equals(owner(transformer)))
+            return false;
+        return label == null || Arrays.asList(transformer.labels()).contains(label);
+    }
+
+    @Nullable
+    private static String owner(ITransformer<?> transformer) {
+        return transformer instanceof TransformerHolder<?> holder ? holder.owner().name() : null;
+    }
+
+    private static String describe(ITransformer<?> transformer) {
+        return owner(transformer) + ':' + String.join(":", transformer.labels());
+    }
+}
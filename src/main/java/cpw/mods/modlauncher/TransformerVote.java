@@ -7,4 +7,4 @@ package cpw.mods.modlauncher;
 
 import cpw.mods.modlauncher.api.*;
 
-record TransformerVote<T>(TransformerVoteResult result, ITransformer<T> transformer) {}
+record TransformerVote<T>(TransformerVoteResult result, ITransformer<T> transformer, int index) {}
@@ -10,6 +10,8 @@ import cpw.mods.modlauncher.api.IEnvironment;
 import cpw.mods.modlauncher.api.ITransformerActivity;
 import cpw.mods.modlauncher.api.IModuleLayerManager.Layer;
 
+import org.jetbrains.annotations.Nullable;
+
 import java.lang.module.Configuration;
 import java.util.*;
 
@@ -22,6 +24,9 @@ public class TransformingClassLoader extends ModuleClassLoader {
         ClassLoader.registerAsParallelCapable();
     }
     private final ClassTransformer classTransformer;
+    private final LaunchFingerprint fingerprint;
+    @Nullable
+    private final LoadProfile loadProfile;
 
     private static ModuleLayer get(ModuleLayerHandler layers, Layer layer) {
         var moduleLayer = layers.getLayer(layer).orElse(null);
@@ -33,7 +38,10 @@ public class TransformingClassLoader extends ModuleClassLoader {
 
     public TransformingClassLoader(TransformStore transformStore, LaunchPluginHandler pluginHandler, ModuleLayerHandler layers) {
         super("TRANSFORMER", get(layers, Layer.GAME).configuration(), List.of(get(layers, Layer.SERVICE)));
-        this.classTransformer = new ClassTransformer(transformStore, pluginHandler, this);
+        this.fingerprint = new LaunchFingerprint(transformStore, pluginHandler, get(layers, Layer.GAME).configuration());
+        this.classTransformer = new ClassTransformer(transformStore, pluginHandler, this, new TransformerAuditTrail(), fingerprint);
+        this.loadProfile = null;
+        ClassHierarchySnapshot.install(fingerprint);
     }
 
     TransformingClassLoader(String name, ClassLoader parent, Configuration config, List<ModuleLayer> parentLayers, List<ClassLoader> parentLoaders,
@@ -41,12 +49,43 @@ public class TransformingClassLoader extends ModuleClassLoader {
         super(name, parent, config, parentLayers, parentLoaders, true);
         TransformerAuditTrail tat = new TransformerAuditTrail();
         environment.putPropertyIfAbsent(IEnvironment.Keys.AUDITTRAIL.get(), tat);
-        this.classTransformer = new ClassTransformer(transformStore, pluginHandler, this, tat);
+        this.fingerprint = new LaunchFingerprint(transformStore, pluginHandler, config);
+        this.classTransformer = new ClassTransformer(transformStore, pluginHandler, this, tat, fingerprint);
+        this.loadProfile = LoadProfile.create();
+        ClassHierarchySnapshot.install(fingerprint);
+    }
+
+    /**
+     * Starts transforming the classes the previous launch loaded, if enabled. Called once the launch plugins were
+     * initialized for the launch, as they transform classes differently before.
+     */
+    void prewarm() {
+        if (loadProfile != null)
+            loadProfile.prewarm(this);
     }
 
     @Override
     protected byte[] maybeTransformClassBytes(final byte[] bytes, final String name, final String context) {
-        return classTransformer.transform(bytes, name, context != null ? context : ITransformerActivity.CLASSLOADING_REASON);
+        final String reason = context != null ? context : ITransformerActivity.CLASSLOADING_REASON;
+        if (ITransformerActivity.CLASSLOADING_REASON.equals(reason))
+            ParallelMembers.checkNotInTask(name);
+        if (loadProfile != null)
+            return loadProfile.transform(name, reason, bytes, () -> classTransformer.transform(bytes, name, reason));
+        return classTransformer.transform(bytes, name, reason);
+    }
+
+    /**
+     * Transforms the class for loading without loading it, and without recording it in the load profile.
+     */
+    byte[] bake(final byte[] bytes, final String name) {
+        return classTransformer.transform(bytes, name, ITransformerActivity.CLASSLOADING_REASON);
+    }
+
+    /**
+     * The fingerprint of the transformers, launch plugins and game jars of this loader, computed on first use
+     */
+    LaunchFingerprint getFingerprint() {
+        return fingerprint;
     }
 
     public Class<?> getLoadedClass(String name) {
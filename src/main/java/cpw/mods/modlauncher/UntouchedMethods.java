@@ -0,0 +1,170 @@
+/*
+ * Copyright (c) Forge Development LLC
+ * SPDX-License-Identifier: LGPL-3.0-only
+ */
+
+package cpw.mods.modlauncher;
+
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.tree.MethodNode;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Tracks which methods of a class are still exactly as they were read, so they can be copied verbatim from the original
+ * bytes instead of being re-emitted from the tree.
+ * <p>
+ * Copying relies on the {@link org.objectweb.asm.ClassWriter} sharing the constant pool of the {@link ClassReader} it was created from:
+ * when the reader visits a method straight into a visitor returned by that writer, ASM copies the method attributes
+ * as-is, StackMapTable included. Frames and maxs are then only computed for the methods that were emitted from the tree.
+ * <p>
+ * Methods are tracked by identity. Anything that may have changed a method without saying which one, like a class
+ * transformer or a rewriting launch plugin, has to call {@link #touchedAll()}.
+ * <p>
+ * With {@link #PER_METHOD_FRAMES_PROPERTY} set, touched methods are not given up straight away. Instead they are
+ * compared against a fresh copy of the original method when the class is written, and the ones that turn out
+ * unchanged are still copied with their original frames. That comparison costs a second parse of the class, which
+ * only pays off when class transformers or plugins usually change few methods of large classes.
+ */
+final class UntouchedMethods {
+    /** Compare touched methods against the original instead of recomputing frames for all of them */
+    static final String PER_METHOD_FRAMES_PROPERTY = "modlauncher.perMethodFrames";
+    private static final boolean PER_METHOD_FRAMES = Boolean.getBoolean(PER_METHOD_FRAMES_PROPERTY);
+
+    private final ClassReader reader;
+    private final MethodNode[] original;
+    private final Set<MethodNode> untouched = Collections.newSetFromMap(new IdentityHashMap<>());
+    private final boolean compare;
+    private boolean suspect;
+
+    /**
+     * @param clazz The node freshly read from {@code reader}, before anything had a chance to change it
+     */
+    UntouchedMethods(ClassReader reader, ClassNode clazz) {
+        this(reader, clazz, PER_METHOD_FRAMES);
+    }
+
+    UntouchedMethods(ClassReader reader, ClassNode clazz, boolean compare) {
+        this.reader = reader;
+        this.compare = compare;
+        this.original = clazz.methods.toArray(new MethodNode[0]);
+        Collections.addAll(this.untouched, this.original);
+    }
+
+    ClassReader getReader() {
+        return reader;
+    }
+
+    void touched(MethodNode method) {
+        if (compare)
+            suspect = true;
+        else
+            untouched.remove(method);
+    }
+
+    void touchedAll() {
+        if (compare)
+            suspect = true;
+        else
+            untouched.clear();
+    }
+
+    /**
+     * Settles which methods are untouched, must be called once the class is in its final state and before writing it.
+     */
+    void resolve(ClassNode clazz) {
+        if (!suspect)
+            return;
+        suspect = false;
+
+        // Copied frames were computed against the original hierarchy
+        if (!clazz.name.equals(reader.getClassName()) || !Objects.equals(clazz.superName, reader.getSuperName()) ||
+            !clazz.interfaces.equals(List.of(reader.getInterfaces())) || ((clazz.access ^ reader.getAccess()) & Opcodes.ACC_INTERFACE) != 0) {
+            untouched.clear();
+            return;
+        }
+
+        final ClassNode fresh = new ClassNode(Opcodes.ASM9);
+        reader.accept(fresh, 0);
+        for (int i = 0; i < original.length; i++) {
+            final MethodNode method = original[i];
+            if (untouched.contains(method) && !Arrays.equals(MethodFingerprint.of(method), MethodFingerprint.of(fresh.methods.get(i))))
+                untouched.remove(method);
+        }
+    }
+
+    boolean isEmpty() {
+        return untouched.isEmpty();
+    }
+
+    /**
+     * @return true if {@link #accept(ClassNode, ClassVisitor)} will copy the method instead of writing it from the tree
+     */
+    boolean copies(ClassNode clazz, MethodNode method) {
+        // Copied methods keep their frames, which must match the class version, and reference the class by its original name
+        return untouched.contains(method) && clazz.version == reader.readInt(4) && clazz.name.equals(reader.getClassName());
+    }
+
+    /**
+     * Writes the class to a writer created from {@link #getReader()}, copying the methods that are still untouched.
+     * The writer may be behind class visitors, methods whose visitor they pass through unchanged are still copied.
+     */
+    void accept(ClassNode clazz, ClassVisitor cw) {
+        final Set<MethodNode> copied = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (MethodNode method : clazz.methods) {
+            if (copies(clazz, method))
+                copied.add(method);
+        }
+
+        if (copied.isEmpty()) {
+            clazz.accept(cw);
+            return;
+        }
+
+        reader.accept(new ClassVisitor(Opcodes.ASM9) {
+            private int index;
+
+            @Override
+            public void visit(final int version, final int access, final String name, final String signature, final String superName, final String[] interfaces) {
+                cw.visit(clazz.version, clazz.access, clazz.name, clazz.signature, clazz.superName, clazz.interfaces == null ? null : clazz.interfaces.toArray(new String[0]));
+            }
+
+            @Override
+            public MethodVisitor visitMethod(final int access, final String name, final String descriptor, final String signature, final String[] exceptions) {
+                // Returning the writer's own visitor is what makes ASM copy the method
+                return copied.contains(original[index++]) ? cw.visitMethod(access, name, descriptor, signature, exceptions) : null;
+            }
+
+            @Override
+            public void visitEnd() {
+                // Everything else comes from the tree, which is the source of truth for the header, fields and changed methods
+                clazz.accept(new ClassVisitor(Opcodes.ASM9, cw) {
+                    private int index;
+
+                    @Override
+                    public void visit(final int version, final int access, final String name, final String signature, final String superName, final String[] interfaces) {
+                    }
+
+                    @Override
+                    public MethodVisitor visitMethod(final int access, final String name, final String descriptor, final String signature, final String[] exceptions) {
+                        return copied.contains(clazz.methods.get(index++)) ? null : super.visitMethod(access, name, descriptor, signature, exceptions);
+                    }
+
+                    @Override
+                    public void visitEnd() {
+                    }
+                });
+                cw.visitEnd();
+            }
+        }, 0);
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright (c) Forge Development LLC
+ * SPDX-License-Identifier: LGPL-3.0-only
+ */
+
+package cpw.mods.modlauncher;
+
+import cpw.mods.modlauncher.api.ITransformer;
+import cpw.mods.modlauncher.api.TransformerVoteResult;
+import org.jetbrains.annotations.Nullable;
+import org.objectweb.asm.tree.FieldNode;
+import org.objectweb.asm.tree.MethodNode;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Remembers the votes of transformers declaring {@link ITransformer#isVoteDeterministic()}, keyed by class and target
+ * element, so transforming the same class again does not ask them again. A remembered NO takes the transformer out of
+ * the vote without calling it at all.
+ * <p>
+ * A vote that looked at the reason is remembered with that reason, and only reused for it, so a vote cast while
+ * computing frames is reused when the class is loaded unless it depended on why it was transformed. Observing the
+ * reason is replayed on the context, as the votes cast after it on the same context can't tell it apart from their
+ * own. The memo is bounded and simply starts over when full.
+ */
+final class VoteMemo {
+    private static final int LIMIT = 1 << 16;
+    private static final TransformerVoteResult[] RESULTS = TransformerVoteResult.values();
+    private static final Vote[] UNOBSERVED = new Vote[RESULTS.length];
+    static {
+        for (int i = 0; i < UNOBSERVED.length; i++)
+            UNOBSERVED[i] = new Vote(RESULTS[i], null);
+    }
+
+    private final ConcurrentHashMap<Key, Vote> votes = new ConcurrentHashMap<>();
+
+    private record Key(ITransformer<?> transformer, String className, String element) {}
+
+    /**
+     * @param reason The reason the vote was cast for, if it observed it, or null if it holds for any reason
+     */
+    private record Vote(TransformerVoteResult result, @Nullable String reason) {
+        private static Vote of(TransformerVoteResult result, @Nullable String reason) {
+            return reason == null ? UNOBSERVED[result.ordinal()] : new Vote(result, reason);
+        }
+
+        private boolean appliesTo(String reason) {
+            return this.reason == null || this.reason.equals(reason);
+        }
+    }
+
+    <T> TransformerVoteResult castVote(ITransformer<T> transformer, T node, VotingContext context) {
+        if (!transformer.isVoteDeterministic())
+            return transformer.castVote(context);
+
+        final Key key = new Key(transformer, context.getClassName(), element(node));
+        Vote vote = votes.get(key);
+        if (vote == null || !vote.appliesTo(context.reason())) {
+            // If someone else looked at the reason first, we can't tell whether this vote did
+            final boolean observedBefore = context.isReasonObserved();
+            final TransformerVoteResult result = transformer.castVote(context);
+            vote = Vote.of(result, observedBefore || context.isReasonObserved() ? context.reason() : null);
+            if (votes.size() >= LIMIT)
+                votes.clear();
+            votes.put(key, vote);
+        } else if (vote.reason() != null) {
+            context.observeReason();
+        }
+        return vote.result();
+    }
+    private static String element(Object node) {
+        if (node instanceof MethodNode method)
+            return method.name + method.desc;
+        if (node instanceof FieldNode field)
+            return field.name;
+        return "";
+    }
+}
@@ -6,6 +6,7 @@
 package cpw.mods.modlauncher;
 
 import cpw.mods.modlauncher.api.*;
+import org.jetbrains.annotations.Nullable;
 import org.objectweb.asm.tree.*;
 
 import java.util.List;
@@ -20,12 +21,12 @@ record VotingContext(
         Supplier<byte[]> sha256,
         List<ITransformerActivity> getAuditActivities,
         String reason,
-        NodeHolder node
+        State state
 ) implements ITransformerVotingContext {
     private static final Object[] EMPTY = new Object[0];
 
     VotingContext(String className, boolean classExists, Supplier<byte[]> sha256sum, List<ITransformerActivity> activities, String reason) {
-        this(className, classExists, sha256sum, activities, reason, new NodeHolder());
+        this(className, classExists, sha256sum, activities, reason, new State());
     }
 
     @Override
@@ -33,18 +34,83 @@ record VotingContext(
         return sha256.get();
     }
 
+    @Override
+    public List<ITransformerActivity> getAuditActivities() {
+        // The activities include the reasons this class was transformed for
+        this.state.reasonObserved = true;
+        return getAuditActivities;
+    }
+
     @Override
     public String getReason() {
+        this.state.reasonObserved = true;
         return reason;
     }
 
+    /**
+     * @return true if a transformer has looked at the reason for this transformation, so its result can not be reused for another reason
+     */
+    boolean isReasonObserved() {
+        return this.state.reasonObserved;
+    }
+
+    /**
+     * Records that the reason was looked at, when a remembered vote that depended on it is replayed
+     */
+    void observeReason() {
+        this.state.reasonObserved = true;
+    }
+
+    /**
+     * Called whenever a transformer has been applied with this context
+     */
+    void markTransformed() {
+        this.state.transformations++;
+        // The node may have been changed in place
+        this.state.instructions = null;
+    }
+
+    /**
+     * @return The number of transformers applied so far, used to find out what a vote changed
+     */
+    int getTransformationCount() {
+        return this.state.transformations;
+    }
+
+    /**
+     * @return A context for voting on one member of the class on another thread, see {@link #join(VotingContext)}
+     */
+    VotingContext fork() {
+        final Supplier<byte[]> digest = this.sha256;
+        final VotingContext ret = new VotingContext(getClassName, doesClassExist, () -> {
+            synchronized (digest) {
+                return digest.get();
+            }
+        }, getAuditActivities, reason, new State());
+        ret.state.reasonObserved = this.state.reasonObserved;
+        return ret;
+    }
+
+    /**
+     * Takes over what happened in a context returned by {@link #fork()}, once its thread is done with it.
+     *
+     * @return The number of transformers applied in the forked context
+     */
+    int join(final VotingContext forked) {
+        this.state.reasonObserved |= forked.state.reasonObserved;
+        this.state.transformations += forked.state.transformations;
+        return forked.state.transformations;
+    }
+
     <T> void setNode(final T node) {
-        this.node.value = node;
+        if (this.state.node != node)
+            this.state.instructions = null;
+        this.state.node = node;
     }
 
     @Override
     public boolean applyFieldPredicate(FieldPredicate fieldPredicate) {
-        FieldNode fn = (FieldNode) this.node.value;
+        FieldNode fn = (FieldNode) this.state.node;
         final PredicateVisitor predicateVisitor = new PredicateVisitor(fieldPredicate);
         fn.accept(predicateVisitor);
         return predicateVisitor.getResult();
@@ -52,7 +118,7 @@ record VotingContext(
 
     @Override
     public boolean applyMethodPredicate(MethodPredicate methodPredicate) {
-        MethodNode mn = (MethodNode) this.node.value;
+        MethodNode mn = (MethodNode) this.state.node;
         final PredicateVisitor predicateVisitor = new PredicateVisitor(methodPredicate);
         mn.accept(predicateVisitor);
         return predicateVisitor.getResult();
@@ -60,7 +126,7 @@ record VotingContext(
 
     @Override
     public boolean applyClassPredicate(ClassPredicate classPredicate) {
-        ClassNode cn = (ClassNode) this.node.value;
+        ClassNode cn = (ClassNode) this.state.node;
         final PredicateVisitor predicateVisitor = new PredicateVisitor(classPredicate);
         cn.accept(predicateVisitor);
         return predicateVisitor.getResult();
@@ -68,15 +134,44 @@ record VotingContext(
 
     @Override
     public boolean applyInstructionPredicate(InsnPredicate insnPredicate) {
-        MethodNode mn = (MethodNode) this.node.value;
         boolean result = false;
-        final AbstractInsnNode[] insnNodes = mn.instructions.toArray();
+        final AbstractInsnNode[] insnNodes = getInstructionIndex().getInstructions();
         for (int i = 0; i < insnNodes.length; i++) {
-            result |= insnPredicate.test(i, insnNodes[i].getOpcode(), toObjectArray(insnNodes[0]));
+            result |= insnPredicate.test(i, insnNodes[i].getOpcode(), toObjectArray(insnNodes[i]));
         }
         return result;
     }
 
+    @Override
+    public int getOpcodeCount(int opcode) {
+        return getInstructionIndex().getOpcodeCount(opcode);
+    }
+
+    @Override
+    public boolean invokesMethod(String owner, String name, @Nullable String descriptor) {
+        return getInstructionIndex().invokesMethod(owner, name, descriptor);
+    }
+
+    @Override
+    public boolean accessesField(String owner, String name, @Nullable String descriptor) {
+        return getInstructionIndex().accessesField(owner, name, descriptor);
+    }
+
+    @Override
+    public boolean loadsConstant(Object constant) {
+        return getInstructionIndex().loadsConstant(constant);
+    }
+
+    /**
+     * Built for the first voter asking, and shared with the following ones until the method is transformed
+     */
+    private InstructionIndex getInstructionIndex() {
+        var ret = this.state.instructions;
+        if (ret == null)
+            this.state.instructions = ret = new InstructionIndex((MethodNode) this.state.node);
+        return ret;
+    }
+
     private static Object[] toObjectArray(final AbstractInsnNode insnNode) {
         if (insnNode instanceof MethodInsnNode methodInsnNode) {
             return new Object[] {methodInsnNode.name, methodInsnNode.desc, methodInsnNode.owner, methodInsnNode.itf};
@@ -84,10 +179,16 @@ record VotingContext(
         if (insnNode instanceof FieldInsnNode fieldInsnNode) {
             return new Object[] {fieldInsnNode.name, fieldInsnNode.desc, fieldInsnNode.owner};
         }
+        if (insnNode instanceof LdcInsnNode ldcInsnNode) {
+            return new Object[] {ldcInsnNode.cst};
+        }
         return EMPTY;
     }
 
-    private static final class NodeHolder {
-        private Object value;
+    private static final class State {
+        private Object node;
+        private boolean reasonObserved;
+        private int transformations;
+        private InstructionIndex instructions;
     }
 }
@@ -0,0 +1,86 @@
+/*
+ * Copyright (c) Forge Development LLC
+ * SPDX-License-Identifier: LGPL-3.0-only
+ */
+
+package cpw.mods.modlauncher;
+
+import org.jetbrains.annotations.Nullable;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Lets a thread wait for work another thread is doing, unless that could deadlock. Every waiting thread is registered
+ * with the thread it waits on, so waiting is refused when the owner is, directly or not, waiting on the caller. This is
+ * shared by everything waiting for someone else's work while classes load, as a class load can wait on several of them
+ * in turn.
+ * <p>
+ * Waits registered here are not the only ones: the owner may block on a class loading lock the caller holds, for
+ * example when a transformer loads the class the caller is defining. Such a cycle can't be seen, so no thread waits
+ * longer than {@link #WAIT_MILLIS_PROPERTY} and does the work itself after that.
+ */
+final class WaitingThreads {
+    /** How long a thread waits for another thread's work before doing it itself, one second by default */
+    static final String WAIT_MILLIS_PROPERTY = "modlauncher.waitMillis";
+    private static final long WAIT_MILLIS = Long.getLong(WAIT_MILLIS_PROPERTY, 1000);
+    private static final ConcurrentHashMap<Thread, Thread> WAITING = new ConcurrentHashMap<>();
+
+    private WaitingThreads() {}
+
+    /**
+     * @param owner  The thread that will complete the future
+     * @return The result, or null if waiting could deadlock, took too long or the owner failed, the caller should do the
+     * work itself
+     */
+    @Nullable
+    static <T> T join(Thread owner, CompletableFuture<T> future) {
+        final Thread self = Thread.currentThread();
+        if (owner == self)
+            return null;
+        // Registering before looking for a cycle means two threads closing one at the same time both see it
+        WAITING.put(self, owner);
+        try {
+            if (!wouldDeadlock(self, owner))
+                return future.get(WAIT_MILLIS, TimeUnit.MILLISECONDS);
+        } catch (ExecutionException | CancellationException | TimeoutException e) {
+            // Failed for them or possibly blocked on us, the caller runs it itself
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            WAITING.remove(self);
+        }
+        return null;
+    }
+
+    /**
+     * Waits for work that can't be registered with an owner, like tasks shared by several threads.
+     *
+     * @return true if the future completed in time
+     */
+    static boolean await(CompletableFuture<?> future) {
+        try {
+            future.get(WAIT_MILLIS, TimeUnit.MILLISECONDS);
+            return true;
+        } catch (ExecutionException | CancellationException | TimeoutException e) {
+            return false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private static boolean wouldDeadlock(Thread self, @Nullable Thread owner) {
+        // Bounded, the chain may be changing under us
+        for (int i = WAITING.size() + 1; i >= 0 && owner != null; i--) {
+            if (owner == self)
+                return true;
+            owner = WAITING.get(owner);
+        }
+        return false;
+    }
+}
@@ -0,0 +1,138 @@
+/*
+ * Copyright (c) Forge Development LLC
+ * SPDX-License-Identifier: LGPL-3.0-only
+ */
+
+package cpw.mods.modlauncher.api;
+
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Describes the classes a transformer or launch plugin may be interested in, by what their constant pool references.
+ * A class passes the filter if its constant pool contains <em>at least one</em> of the listed references. It is
+ * checked against the raw class bytes before they are parsed, so classes nobody is interested in are never parsed.
+ * <p>
+ * All class names are internal names, using '/' as separator. A class is referenced if the class file names it as a
+ * class constant, which is the case when it is instantiated, cast to, checked against, or owns a method or field that
+ * is used. Classes only appearing in descriptors are not referenced.
+ */
+public final class ConstantPoolFilter {
+    private final Set<String> classes;
+    private final Set<Member> methods;
+    private final Set<Member> fields;
+    private final Set<String> strings;
+
+    /**
+     * A method or field reference.
+     *
+     * @param owner      The internal name of the class owning the member
+     * @param name       The name of the member
+     * @param descriptor The descriptor of the member, or null to match any
+     */
+    public record Member(String owner, String name, @Nullable String descriptor) {
+        public Member {
+            Objects.requireNonNull(owner, "Owner cannot be null");
+            Objects.requireNonNull(name, "Name cannot be null");
+        }
+    }
+
+    private ConstantPoolFilter(Set<String> classes, Set<Member> methods, Set<Member> fields, Set<String> strings) {
+        this.classes = Set.copyOf(classes);
+        this.methods = Set.copyOf(methods);
+        this.fields = Set.copyOf(fields);
+        this.strings = Set.copyOf(strings);
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * @return A filter passing every class that passes at least one of the supplied filters
+     */
+    public static ConstantPoolFilter anyOf(Collection<ConstantPoolFilter> filters) {
+        var builder = builder();
+        for (var filter : filters) {
+            builder.classes.addAll(filter.classes);
+            builder.methods.addAll(filter.methods);
+            builder.fields.addAll(filter.fields);
+            builder.strings.addAll(filter.strings);
+        }
+        return builder.build();
+    }
+
+    public Set<String> getClasses() {
+        return classes;
+    }
+
+    public Set<Member> getMethods() {
+        return methods;
+    }
+
+    public Set<Member> getFields() {
+        return fields;
+    }
+
+    public Set<String> getStrings() {
+        return strings;
+    }
+
+    @Override
+    public String toString() {
+        return "ConstantPoolFilter[classes=" + classes + ", methods=" + methods + ", fields=" + fields + ", strings=" + strings + "]";
+    }
+
+    public static final class Builder {
+        private final Set<String> classes = new HashSet<>();
+        private final Set<Member> methods = new HashSet<>();
+        private final Set<Member> fields = new HashSet<>();
+        private final Set<String> strings = new HashSet<>();
+
+        private Builder() {}
+
+        public Builder referencesClass(String internalName) {
+            classes.add(Objects.requireNonNull(internalName, "Class name cannot be null"));
+            return this;
+        }
+
+        public Builder referencesMethod(String owner, String name) {
+            return referencesMethod(owner, name, null);
+        }
+
+        public Builder referencesMethod(String owner, String name, @Nullable String descriptor) {
+            methods.add(new Member(owner, name, descriptor));
+            return this;
+        }
+
+        public Builder referencesField(String owner, String name) {
+            return referencesField(owner, name, null);
+        }
+
+        public Builder referencesField(String owner, String name, @Nullable String descriptor) {
+            fields.add(new Member(owner, name, descriptor));
+            return this;
+        }
+
+        /**
+         * The class must contain the string constant, as loaded by an LDC instruction or used as a constant field value.
+         */
+        public Builder containsString(String value) {
+            strings.add(Objects.requireNonNull(value, "String cannot be null"));
+            return this;
+        }
+
+        /**
+         * @throws IllegalStateException if nothing was added, such a filter would reject every class
+         */
+        public ConstantPoolFilter build() {
+            if (classes.isEmpty() && methods.isEmpty() && fields.isEmpty() && strings.isEmpty())
+                throw new IllegalStateException("A constant pool filter needs at least one reference");
+            return new ConstantPoolFilter(classes, methods, fields, strings);
+        }
+    }
+}
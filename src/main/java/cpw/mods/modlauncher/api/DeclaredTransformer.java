@@ -0,0 +1,113 @@
+/*
+ * Copyright (c) Forge Development LLC
+ * SPDX-License-Identifier: LGPL-3.0-only
+ */
+
+package cpw.mods.modlauncher.api;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+
+/**
+ * Declares an {@link ITransformer} in a manifest generated at compile time, instead of returning it from
+ * {@link ITransformationService#transformers()}. The transformer is then only created when the first class it targets
+ * is transformed, so transformers for classes that are never loaded cost nothing but their manifest entry.
+ * <p>
+ * Add modlauncher and its {@code processor} artifact, {@code net.minecraftforge:modlauncher:<version>:processor}, to
+ * the annotation processor path to generate the manifest. The processor lists every annotated
+ * transformer under {@code META-INF/modlauncher/transformers/} followed by the binary name of its
+ * {@link #service()}. The transformer must be a public, non abstract class with a public constructor taking no
+ * arguments, in a package the module exports to modlauncher.
+ * <p>
+ * Everything needed before the transformer exists comes from this annotation, the methods of the transformer giving
+ * the same information are not called. The exception is {@link ITransformer#prefilter()}: transformers overriding it
+ * are created when the transformers are indexed, to ask for it.
+ */
+@Documented
+@Retention(RetentionPolicy.SOURCE)
+@java.lang.annotation.Target(ElementType.TYPE)
+public @interface DeclaredTransformer {
+    /**
+     * @return The service owning the transformer
+     */
+    Class<? extends ITransformationService> service();
+
+    /**
+     * @return The exact targets, see {@link ITransformer#targets()}
+     */
+    Target[] targets() default {};
+
+    /**
+     * @return The target patterns, see {@link ITransformer#targetPatterns()}
+     */
+    Pattern[] patterns() default {};
+
+    /**
+     * @see ITransformer#labels()
+     */
+    String[] labels() default {"default"};
+
+    /**
+     * @see ITransformer#priority()
+     */
+    int priority() default 0;
+
+    /**
+     * @see ITransformer#runsBefore()
+     */
+    String[] runsBefore() default {};
+
+    /**
+     * @see ITransformer#runsAfter()
+     */
+    String[] runsAfter() default {};
+
+    /**
+     * An {@link ITransformer.Target}
+     */
+    @Retention(RetentionPolicy.SOURCE)
+    @java.lang.annotation.Target({})
+    @interface Target {
+        ITransformer.TargetType type();
+
+        String className();
+
+        /**
+         * @return The field or method name, empty for other types
+         */
+        String element() default "";
+
+        /**
+         * @return The method descriptor, empty for other types
+         */
+        String descriptor() default "";
+    }
+
+    /**
+     * An {@link ITransformer.TargetPattern}
+     */
+    @Retention(RetentionPolicy.SOURCE)
+    @java.lang.annotation.Target({})
+    @interface Pattern {
+        ITransformer.TargetPattern.Scope scope();
+
+        ITransformer.TargetType type();
+
+        /**
+         * @return The class, package or super type, empty for {@link ITransformer.TargetPattern.Scope#ANY}
+         */
+        String className() default "";
+
+        /**
+         * @return The glob matching field or method names, empty for other types
+         */
+        String element() default "";
+
+        /**
+         * @return The method descriptor, or empty to match any
+         */
+        String descriptor() default "";
+    }
+}
@@ -91,6 +91,21 @@ public interface ITransformationService {
     @NotNull
     List<ITransformer> transformers();
 
+    /**
+     * The services this one has to run after, by {@link #name()}. Each step of the lifecycle, from
+     * {@link #onLoad(IEnvironment, Set)} to {@link #transformers()}, is done by every service before the next step
+     * starts, and this service does each step once the services it names are done with it. Services that are not
+     * present are ignored.
+     * <p>
+     * When the launcher is configured to run services in parallel, services that don't run after each other may do
+     * the same step at the same time, on different threads.
+     *
+     * @return the names of the services to run after
+     */
+    default Set<String> runsAfter() {
+        return Set.of();
+    }
+
     /** Hasn't been called in ages, will be removed in next breaking bump */
     @Deprecated(forRemoval = true, since = "10.1")
     default Map.Entry<Set<String>,Supplier<Function<String, Optional<URL>>>> additionalClassesLocator() {
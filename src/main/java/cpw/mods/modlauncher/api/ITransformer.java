@@ -6,6 +6,7 @@
 package cpw.mods.modlauncher.api;
 
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import java.util.*;
 
@@ -46,9 +47,10 @@ public interface ITransformer<T> {
      * incompatibility is present, it should detect and handle it in the {@link ITransformationService#onLoad}
      * </li>
      * </ul>
-     * After all votes from candidate transformers are collected, the NOs are removed from the
-     * current set of voters, one from the set of YES voters is selected and it's {@link ITransformer#transform(Object, ITransformerVotingContext)}
-     * method called. It is then removed from the set of transformers and another round is performed.
+     * Transformers vote one at a time, in the order described by {@link #priority()}. A YES voter has its
+     * {@link ITransformer#transform(Object, ITransformerVotingContext)} method called straight away, so the next
+     * transformer votes on the transformed element. NO voters are removed. DEFER voters are asked again, in the same
+     * order, once everyone else voted, for as long as someone keeps transforming the element.
      *
      * @param context The context of the vote
      * @return A TransformerVoteResult indicating the desire of this transformer
@@ -56,6 +58,73 @@ public interface ITransformer<T> {
     @NotNull
     TransformerVoteResult castVote(ITransformerVotingContext context);
 
+    /**
+     * Only used by {@link TargetType#CLASS_VISITOR} transformers, which change the class while it is written: what the
+     * writer has to recompute for the methods their visitors changed. Transformers that don't change any code, or keep
+     * the frames correct themselves, can save the cost of computing frames, which needs the class hierarchy.
+     *
+     * @return One of {@link cpw.mods.modlauncher.serviceapi.ILaunchPluginService.ComputeFlags}, COMPUTE_FRAMES by default
+     */
+    default int getComputeFlags() {
+        return org.objectweb.asm.ClassWriter.COMPUTE_FRAMES;
+    }
+
+    /**
+     * Declares that {@link #castVote(ITransformerVotingContext)} always returns the same result for the same class,
+     * target element and {@link ITransformerVotingContext#getReason() reason}, whatever the element looks like and
+     * whatever happened to it before. The launcher may then remember the vote and skip asking again when the same class
+     * is transformed another time, for example once to compute frames and once to load it.
+     * <p>
+     * Deterministic transformers must not look at the node through the predicates, the initial class digest or the
+     * audit activities of the voting context when voting.
+     *
+     * @return true if the vote only depends on the class, the target element and the reason
+     */
+    default boolean isVoteDeterministic() {
+        return false;
+    }
+
+    /**
+     * Declares that this transformer can vote on and transform several elements of the same class at once, from
+     * different threads. Only used by {@link TargetType#METHOD} and {@link TargetType#FIELD} transformers: when enabled,
+     * the members of large classes are transformed in parallel if all of their transformers are thread safe.
+     * <p>
+     * Each element is still voted on and transformed by one thread at a time, in the usual order, so only state shared
+     * between elements needs to be safe. A thread safe transformer must not load classes while voting or transforming,
+     * as the thread loading the class being transformed waits for it.
+     *
+     * @return true if this transformer can handle several elements concurrently
+     */
+    default boolean isThreadSafe() {
+        return false;
+    }
+
+    /**
+     * When a class is only needed for its header, to compute frames of another class, the launcher can skip parsing its
+     * method bodies and only run what may change the super class or interfaces. Only used by
+     * {@link TargetType#PRE_CLASS}, {@link TargetType#CLASS} and {@link TargetType#CLASS_VISITOR} transformers: if all of
+     * them targeting a class return true, they are offered that code-less class with the "computing_frames" reason and
+     * field and method transformers don't run. Otherwise the class goes through the full pipeline.
+     *
+     * @return true if this transformer works with classes whose methods have no code
+     */
+    default boolean supportsHeaderOnly() {
+        return false;
+    }
+
+    /**
+     * An optional, cheap check of the raw class before it is parsed. If every transformer targeting a class declares
+     * a prefilter and the class passes none of them, the class is not parsed or transformed at all. Otherwise all of
+     * them vote as usual, so the prefilter is only an optimisation and must never reject a class the transformer
+     * would have changed.
+     *
+     * @return The references a class must contain for this transformer to be interested, or null to always be asked
+     */
+    @Nullable
+    default ConstantPoolFilter prefilter() {
+        return null;
+    }
+
     /**
      * Return a set of {@link Target} identifying which elements this transformer wishes to try
      * and apply to. The {@link Target#targetType()} must match the T variable for the transformer
@@ -66,12 +135,55 @@ public interface ITransformer<T> {
     @NotNull
     Set<Target> targets();
 
+    /**
+     * Patterns matching many elements at once, in addition to the exact {@link #targets()}. Use them instead of
+     * enumerating large numbers of targets. The {@link TargetPattern#targetType()} must match the T variable for the
+     * transformer, like for targets.
+     *
+     * @return The set of patterns matching the elements this transformer wishes to try and apply to, none by default
+     */
+    default Set<TargetPattern> targetPatterns() {
+        return Set.of();
+    }
+
     /**
      * @return A string array for uniquely identifying this transformer instance within the service.
      */
     default String[] labels() {
         return DEFAULT_LABEL;
     }
+
+    /**
+     * Transformers targeting the same element are offered the element in a fixed order, computed once when all
+     * transformers are known. Transformers with a higher priority come first, unless {@link #runsBefore()} or
+     * {@link #runsAfter()} say otherwise. Equal priorities keep the order they were registered in.
+     *
+     * @return The priority of this transformer, 0 by default
+     */
+    default int priority() {
+        return 0;
+    }
+
+    /**
+     * Transformers that must be offered the element after this one. Each entry is either the name of an
+     * {@link ITransformationService}, matching all of its transformers, or a service name and one of the
+     * {@link #labels()} of a transformer separated by a colon, such as {@code "myservice:mylabel"}.
+     * Entries matching nothing are ignored.
+     *
+     * @return The transformers that must run after this one
+     */
+    default Set<String> runsBefore() {
+        return Set.of();
+    }
+
+    /**
+     * Transformers that must be offered the element before this one, in the format of {@link #runsBefore()}.
+     *
+     * @return The transformers that must run before this one
+     */
+    default Set<String> runsAfter() {
+        return Set.of();
+    }
     /**
      * Specifies the target type for the {@link Target}. Note that the type of the transformer T
      * dictates what are acceptable targets for this transformer.
@@ -93,7 +205,19 @@ public interface ITransformer<T> {
          * Target a class, before field and method transforms operate. SHOULD ONLY BE USED to "replace" a complete class
          * The {@link ITransformer} T variable must refer to {@link org.objectweb.asm.tree.ClassNode}
          */
-        PRE_CLASS;
+        PRE_CLASS,
+        /**
+         * Target a class, streaming it through a visitor instead of building a tree. The {@link ITransformer} T
+         * variable must refer to {@link org.objectweb.asm.ClassVisitor}. {@link ITransformer#transform(Object, ITransformerVotingContext)}
+         * is handed the visitor the class is written to, and returns a visitor delegating to it. These transformers
+         * run after every other transformer, and if they are the only ones targeting a class, the class is transformed
+         * in a single pass without ever building a {@link org.objectweb.asm.tree.ClassNode}. Methods whose visitor is
+         * passed through unchanged are then copied as they are.
+         * <p>
+         * There is no node to vote on, so the predicates of the voting context can not be used, and voting
+         * {@link TransformerVoteResult#DEFER} is not supported.
+         */
+        CLASS_VISITOR;
     }
 
     /**
@@ -142,6 +266,17 @@ public interface ITransformer<T> {
         public static Target targetPreClass(String className) {
             return new Target(className, "", "", TargetType.PRE_CLASS);
         }
+        /**
+         * Convenience method returning a {@link Target} for a class, transformed by a {@link org.objectweb.asm.ClassVisitor}
+         *
+         * @param className The name of the class
+         * @return A target for the named class
+         */
+        @NotNull
+        public static Target targetClassVisitor(String className) {
+            return new Target(className, "", "", TargetType.CLASS_VISITOR);
+        }
+
         /**
          * Convenience method return a {@link Target} for a method
          *
@@ -195,4 +330,98 @@ public interface ITransformer<T> {
             return targetType;
         }
     }
+
+    /**
+     * Describes many {@link Target}s at once. A pattern selects classes by {@link Scope}, and for methods and fields,
+     * the members of these classes by name and descriptor.
+     * <p>
+     * Element names are globs: {@code *} matches any number of characters and {@code ?} matches a single character.
+     * Class and package names may use either '.' or '/' as separator.
+     *
+     * @param scope             How {@code className} selects classes
+     * @param className         The class, package or super type selecting the classes, empty for {@link Scope#ANY}
+     * @param elementName       The glob matching the field or method names. Empty string for other types
+     * @param elementDescriptor The method descriptor, or empty to match any descriptor. Empty string for other types
+     * @param targetType        The {@link TargetType} of the matched elements, it should match the ITransformer
+     *                          type variable T
+     */
+    record TargetPattern(Scope scope, String className, String elementName, String elementDescriptor, TargetType targetType) {
+        public TargetPattern {
+            Objects.requireNonNull(scope, "Scope cannot be null");
+            Objects.requireNonNull(className, "Class Name cannot be null");
+            Objects.requireNonNull(elementName, "Element Name cannot be null");
+            Objects.requireNonNull(elementDescriptor, "Element Descriptor cannot be null");
+            Objects.requireNonNull(targetType, "Target Type cannot be null");
+            if (scope == Scope.ANY != className.isEmpty())
+                throw new IllegalArgumentException("Only the ANY scope has no class name");
+            if ((targetType == TargetType.METHOD || targetType == TargetType.FIELD) == elementName.isEmpty())
+                throw new IllegalArgumentException("Only method and field patterns have an element name");
+            if (targetType != TargetType.METHOD && !elementDescriptor.isEmpty())
+                throw new IllegalArgumentException("Only method patterns have a descriptor");
+        }
+
+        /**
+         * Convenience method returning a pattern for whole classes
+         *
+         * @param scope      How {@code className} selects classes
+         * @param className  The class, package or super type
+         * @param targetType One of {@link TargetType#CLASS}, {@link TargetType#PRE_CLASS} or {@link TargetType#CLASS_VISITOR}
+         * @return A pattern matching the selected classes
+         */
+        @NotNull
+        public static TargetPattern classes(Scope scope, String className, TargetType targetType) {
+            return new TargetPattern(scope, className, "", "", targetType);
+        }
+
+        /**
+         * Convenience method returning a pattern for methods, such as all methods with a given descriptor in a package
+         *
+         * @param scope            How {@code className} selects classes
+         * @param className        The class, package or super type
+         * @param methodName       The glob matching the method names
+         * @param methodDescriptor The method descriptor, or empty to match any
+         * @return A pattern matching the methods of the selected classes
+         */
+        @NotNull
+        public static TargetPattern methods(Scope scope, String className, String methodName, String methodDescriptor) {
+            return new TargetPattern(scope, className, methodName, methodDescriptor, TargetType.METHOD);
+        }
+
+        /**
+         * Convenience method returning a pattern for fields
+         *
+         * @param scope     How {@code className} selects classes
+         * @param className The class, package or super type
+         * @param fieldName The glob matching the field names
+         * @return A pattern matching the fields of the selected classes
+         */
+        @NotNull
+        public static TargetPattern fields(Scope scope, String className, String fieldName) {
+            return new TargetPattern(scope, className, fieldName, "", TargetType.FIELD);
+        }
+
+        /**
+         * How a {@link TargetPattern} selects classes by its class name.
+         */
+        public enum Scope {
+            /**
+             * The named class only
+             */
+            CLASS,
+            /**
+             * Every class in the named package and its sub packages
+             */
+            PACKAGE,
+            /**
+             * Every class extending or implementing the named class or interface, directly or not, but not the class
+             * itself. The super types are the ones the class files declare before they are transformed, matching a class
+             * never transforms its super types.
+             */
+            SUBCLASS,
+            /**
+             * Every class. The class name is empty.
+             */
+            ANY
+        }
+    }
 }
@@ -5,6 +5,9 @@
 
 package cpw.mods.modlauncher.api;
 
+import org.jetbrains.annotations.Nullable;
+import org.objectweb.asm.Opcodes;
+
 import java.util.List;
 
 public interface ITransformerVotingContext {
@@ -66,6 +69,62 @@ public interface ITransformerVotingContext {
      */
     boolean applyInstructionPredicate(InsnPredicate insnPredicate);
 
+    /**
+     * Count the instructions with the supplied opcode in the current method node.
+     * Can only be used on a Method target.
+     *
+     * @param opcode The opcode, as in {@link org.objectweb.asm.Opcodes}
+     * @return The number of instructions with that opcode
+     */
+    default int getOpcodeCount(int opcode) {
+        final int[] count = {0};
+        applyInstructionPredicate((insnCount, insnOpcode, args) -> {
+            if (insnOpcode == opcode)
+                count[0]++;
+            return false;
+        });
+        return count[0];
+    }
+
+    /**
+     * Whether the current method node calls the supplied method.
+     * Can only be used on a Method target.
+     *
+     * @param owner The internal name of the class owning the method
+     * @param name The name of the method
+     * @param descriptor The descriptor of the method, or null to match any
+     * @return true if the method contains a call to the supplied method
+     */
+    default boolean invokesMethod(String owner, String name, @Nullable String descriptor) {
+        return applyInstructionPredicate((insnCount, opcode, args) -> args.length == 4 && name.equals(args[0]) &&
+            owner.equals(args[2]) && (descriptor == null || descriptor.equals(args[1])));
+    }
+
+    /**
+     * Whether the current method node reads or writes the supplied field.
+     * Can only be used on a Method target.
+     *
+     * @param owner The internal name of the class owning the field
+     * @param name The name of the field
+     * @param descriptor The descriptor of the field, or null to match any
+     * @return true if the method contains an access to the supplied field
+     */
+    default boolean accessesField(String owner, String name, @Nullable String descriptor) {
+        return applyInstructionPredicate((insnCount, opcode, args) -> args.length == 3 && name.equals(args[0]) &&
+            owner.equals(args[2]) && (descriptor == null || descriptor.equals(args[1])));
+    }
+
+    /**
+     * Whether the current method node loads the supplied constant with an LDC instruction.
+     * Can only be used on a Method target.
+     *
+     * @param constant The constant, as in {@link org.objectweb.asm.tree.LdcInsnNode#cst}
+     * @return true if the method loads the constant
+     */
+    default boolean loadsConstant(Object constant) {
+        return applyInstructionPredicate((insnCount, opcode, args) -> opcode == Opcodes.LDC && args.length == 1 && constant.equals(args[0]));
+    }
+
     interface FieldPredicate {
         boolean test(final int access, final String name, final String descriptor, final String signature, final Object value);
     }
@@ -6,7 +6,9 @@
 package cpw.mods.modlauncher.serviceapi;
 
 import cpw.mods.jarhandling.SecureJar;
+import cpw.mods.modlauncher.api.ConstantPoolFilter;
 import cpw.mods.modlauncher.api.NamedPath;
+import org.jetbrains.annotations.Nullable;
 import org.objectweb.asm.ClassWriter;
 import org.objectweb.asm.Type;
 import org.objectweb.asm.tree.ClassNode;
@@ -14,6 +16,7 @@ import org.objectweb.asm.tree.ClassNode;
 import java.nio.file.Path;
 import java.util.EnumSet;
 import java.util.List;
+import java.util.Set;
 import java.util.function.Consumer;
 
 /**
@@ -98,6 +101,45 @@ public interface ILaunchPluginService {
         return handlesClass(classType, isEmpty);
     }
 
+    /**
+     * Packages containing every class this plugin may wish to handle, using '.' as separator. Sub packages are included.
+     * Classes outside of these packages are never offered to {@link #handlesClass(Type, boolean, String)}, which lets
+     * the launcher skip untouched classes without any work. An empty set means every class is offered.
+     *
+     * This is queried once, when the first class is offered to the plugins, and must not change afterwards.
+     *
+     * @return the packages this plugin is limited to, or an empty set for no restriction
+     */
+    default Set<String> handledPackages() {
+        return Set.of();
+    }
+
+    /**
+     * An optional, cheap check of the raw class before it is parsed. Classes that do not pass it are not offered to
+     * {@link #processClassWithFlags(Phase, ClassNode, Type, String)}, even if {@link #handlesClass(Type, boolean, String)}
+     * asked for them, and are not parsed at all if nothing else is interested in them.
+     *
+     * This is queried once, when the first class is offered to the plugins, and must not change afterwards.
+     *
+     * @return The references a class must contain for this plugin to process it, or null to process every class it handles
+     */
+    @Nullable
+    default ConstantPoolFilter prefilter() {
+        return null;
+    }
+
+    /**
+     * When a class is only needed for its header, to compute frames of another class, the launcher can skip parsing its
+     * method bodies and only run what may change the super class or interfaces. Plugins returning true here are then
+     * offered that code-less {@link ClassNode}, with the "computing_frames" reason. If any plugin handling the class
+     * returns false, the class goes through the full pipeline instead.
+     *
+     * @return true if this plugin works with class nodes whose methods have no code
+     */
+    default boolean supportsHeaderOnly() {
+        return false;
+    }
+
     /**
      * Each class loaded is offered to the plugin for processing.
      * Ordering between plugins is not known.
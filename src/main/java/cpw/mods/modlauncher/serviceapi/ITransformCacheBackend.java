@@ -0,0 +1,54 @@
+/*
+ * Copyright (c) Forge Development LLC
+ * SPDX-License-Identifier: LGPL-3.0-only
+ */
+
+package cpw.mods.modlauncher.serviceapi;
+
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+
+/**
+ * Loaded from the boot layer to store the classes transformed by ModLauncher, so later launches, or other machines
+ * running the same game, transformers and launch plugins, can skip transforming them.
+ *
+ * The backends named by the {@code modlauncher.cacheBackends} system property are asked in that order, the built in
+ * ones are {@code directory}, a local directory used by default, and {@code http}, a blob store served over HTTP which
+ * has to be named to be used. A hit in a later backend is copied to the earlier ones.
+ *
+ * Keys are lowercase hex digests of the untransformed class and of everything taking part in transforming it, so a key
+ * always maps to the same data and entries never need to be invalidated. The data is opaque and checked by ModLauncher
+ * when it is read, backends do not need to verify it. Writes happen on a background thread, one per backend.
+ */
+public interface ITransformCacheBackend {
+    /**
+     * The name of this backend, as used in {@code modlauncher.cacheBackends}.
+     *
+     * @return the name of the backend
+     */
+    String name();
+
+    /**
+     * Called once, before the first class is transformed.
+     *
+     * @return false if this backend is not configured for this launch, it will not be used
+     */
+    boolean initialize();
+
+    /**
+     * @param key The key of the entry
+     * @return the data of the entry, or null if there is none
+     * @throws IOException if the backend failed, the entry is treated as missing
+     */
+    byte @Nullable [] get(String key) throws IOException;
+
+    /**
+     * Stores an entry, replacing any existing entry for the same key.
+     *
+     * @param key  The key of the entry
+     * @param data The data of the entry
+     * @throws IOException if the backend failed, the entry is dropped
+     */
+    void put(String key, byte[] data) throws IOException;
+}
@@ -0,0 +1,338 @@
+/*
+ * Copyright (c) Forge Development LLC
+ * SPDX-License-Identifier: LGPL-3.0-only
+ */
+
+package cpw.mods.modlauncher.util;
+
+import cpw.mods.modlauncher.api.ITransformer;
+import cpw.mods.modlauncher.api.ITransformerVotingContext;
+import cpw.mods.modlauncher.api.TransformerVoteResult;
+import cpw.mods.modlauncher.serviceapi.ILaunchPluginService;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.FieldVisitor;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+
+import java.io.IOException;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Applies access transformer files, in the format described by FMLAT.md, as a single class visitor transformer.
+ * <p>
+ * All files are parsed up front into one index by class, holding the change for the class itself, for each named
+ * member, and for the {@code *} wildcards. Entries targeting the same element are merged: the most open access wins,
+ * and removing the final flag wins over adding it. Classes are then transformed in a single streaming pass, and only
+ * access flags change, so the frames are kept as they are. Calls to private methods made accessible are turned
+ * from {@code invokespecial} into virtual calls, as the JVM requires.
+ * <p>
+ * Add the engine to the list returned by {@link cpw.mods.modlauncher.api.ITransformationService#transformers()}
+ * instead of one transformer per entry.
+ */
+public final class AccessTransformerEngine implements ITransformer<ClassVisitor> {
+    private static final String[] LABELS = {"access_transformer"};
+    // Access levels, ordered from the least to the most open
+    private static final int PRIVATE = 1;
+    private static final int DEFAULT = 2;
+    private static final int PROTECTED = 3;
+    private static final int PUBLIC = 4;
+    private static final int LEVEL_MASK = 7;
+    private static final int ADD_FINAL = 8;
+    private static final int REMOVE_FINAL = 16;
+    private static final int[] LEVEL_FLAGS = {0, Opcodes.ACC_PRIVATE, 0, Opcodes.ACC_PROTECTED, Opcodes.ACC_PUBLIC};
+    private static final int ACCESS_FLAGS = Opcodes.ACC_PUBLIC | Opcodes.ACC_PRIVATE | Opcodes.ACC_PROTECTED;
+
+    private final Map<String, ClassEntry> classes;
+    private final Set<Target> targets;
+
+    private AccessTransformerEngine(Map<String, ClassEntry> classes) {
+        this.classes = classes;
+        var targets = new HashSet<Target>(classes.size() * 2);
+        for (var name : classes.keySet())
+            targets.add(Target.targetClassVisitor(name));
+        this.targets = Set.copyOf(targets);
+    }
+
+    /**
+     * Reads and merges the supplied access transformer files. The files are memory mapped, and can be deleted or
+     * changed once this returns.
+     *
+     * @throws IllegalArgumentException if a line is not a valid directive
+     */
+    public static AccessTransformerEngine load(Collection<Path> files) throws IOException {
+        var classes = new HashMap<String, ClassEntry>();
+        for (var file : files) {
+            try (var channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                var content = StandardCharsets.UTF_8.decode(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+                parse(file.toString(), content, classes);
+            }
+        }
+        return new AccessTransformerEngine(classes);
+    }
+
+    /**
+     * Parses access transformer directives from memory.
+     *
+     * @param source A name for the directives, used in error messages
+     * @throws IllegalArgumentException if a line is not a valid directive
+     */
+    public static AccessTransformerEngine parse(String source, CharSequence content) {
+        var classes = new HashMap<String, ClassEntry>();
+        parse(source, CharBuffer.wrap(content), classes);
+        return new AccessTransformerEngine(classes);
+    }
+
+    private static void parse(String source, CharBuffer content, Map<String, ClassEntry> classes) {
+        final String[] tokens = new String[3];
+        final int length = content.length();
+        int line = 0;
+        int pos = 0;
+        while (pos < length) {
+            line++;
+            int count = 0;
+            // Split the line on whitespace, up to a comment
+            while (pos < length) {
+                char c = content.charAt(pos);
+                if (c == '\n') {
+                    pos++;
+                    break;
+                }
+                if (c == '#') {
+                    while (pos < length && content.charAt(pos) != '\n')
+                        pos++;
+                    continue;
+                }
+                if (Character.isWhitespace(c)) {
+                    pos++;
+                    continue;
+                }
+                final int start = pos;
+                while (pos < length && (c = content.charAt(pos)) != '#' && !Character.isWhitespace(c))
+                    pos++;
+                if (count == tokens.length)
+                    throw invalid(source, line, "too many elements");
+                tokens[count++] = content.subSequence(start, pos).toString();
+            }
+            if (count == 0)
+                continue;
+            if (count < 2)
+                throw invalid(source, line, "expected an access modifier, a class and an optional member");
+
+            final int modifier = parseModifier(tokens[0], source, line);
+            final ClassEntry entry = classes.computeIfAbsent(tokens[1].replace('.', '/'), k -> new ClassEntry());
+            if (count == 2) {
+                entry.cls = merge(entry.cls, modifier);
+                continue;
+            }
+
+            final String member = tokens[2];
+            final int paren = member.indexOf('(');
+            if (paren < 0) {
+                if (member.equals("*"))
+                    entry.allFields = merge(entry.allFields, modifier);
+                else
+                    entry.fields = put(entry.fields, member, modifier);
+            } else if (member.startsWith("*(")) {
+                entry.allMethods = merge(entry.allMethods, modifier);
+            } else {
+                if (paren == 0 || member.indexOf(')', paren) < 0)
+                    throw invalid(source, line, "invalid method " + member);
+                entry.methods = put(entry.methods, member, modifier);
+            }
+        }
+    }
+
+    private static int parseModifier(String token, String source, int line) {
+        int finalChange = 0;
+        String level = token;
+        if (token.endsWith("-f")) {
+            finalChange = REMOVE_FINAL;
+            level = token.substring(0, token.length() - 2);
+        } else if (token.endsWith("+f")) {
+            finalChange = ADD_FINAL;
+            level = token.substring(0, token.length() - 2);
+        }
+        return finalChange | switch (level) {
+            case "public" -> PUBLIC;
+            case "protected" -> PROTECTED;
+            case "default" -> DEFAULT;
+            case "private" -> PRIVATE;
+            default -> throw invalid(source, line, "invalid access modifier " + token);
+        };
+    }
+
+    private static IllegalArgumentException invalid(String source, int line, String message) {
+        return new IllegalArgumentException("Invalid access transformer " + source + ":" + line + ", " + message);
+    }
+
+    private static Map<String, Integer> put(@Nullable Map<String, Integer> map, String key, int modifier) {
+        if (map == null)
+            map = new HashMap<>();
+        map.merge(key, modifier, AccessTransformerEngine::merge);
+        return map;
+    }
+
+    private static int merge(int a, int b) {
+        final int level = Math.max(a & LEVEL_MASK, b & LEVEL_MASK);
+        final int finalChange = ((a | b) & REMOVE_FINAL) != 0 ? REMOVE_FINAL : (a | b) & ADD_FINAL;
+        return level | finalChange;
+    }
+
+    private static int apply(int modifier, int access) {
+        final int level = modifier & LEVEL_MASK;
+        if (level != 0)
+            access = (access & ~ACCESS_FLAGS) | LEVEL_FLAGS[level];
+        if ((modifier & REMOVE_FINAL) != 0)
+            access &= ~Opcodes.ACC_FINAL;
+        else if ((modifier & ADD_FINAL) != 0)
+            access |= Opcodes.ACC_FINAL;
+        return access;
+    }
+
+    private static final class ClassEntry {
+        private int cls;
+        private int allFields;
+        private int allMethods;
+        @Nullable
+        private Map<String, Integer> fields;
+        @Nullable
+        private Map<String, Integer> methods;
+
+        private int field(String name) {
+            final Integer ret = fields == null ? null : fields.get(name);
+            return ret == null ? allFields : merge(ret, allFields);
+        }
+
+        private int method(String name, String descriptor) {
+            final Integer ret = methods == null ? null : methods.get(name + descriptor);
+            // The static initializer has no access
+            final int all = name.equals("<clinit>") ? 0 : allMethods;
+            return ret == null ? all : merge(ret, all);
+        }
+
+        /**
+         * @return true if some private method may become accessible, calls to it then need to be virtual
+         */
+        private boolean opensMethods() {
+            if ((allMethods & LEVEL_MASK) > PRIVATE)
+                return true;
+            if (methods != null) {
+                for (var modifier : methods.values()) {
+                    if ((modifier & LEVEL_MASK) > PRIVATE)
+                        return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    /**
+     * @return The number of classes targeted
+     */
+    public int size() {
+        return classes.size();
+    }
+
+    @NotNull
+    @Override
+    public ClassVisitor transform(ClassVisitor input, ITransformerVotingContext context) {
+        final ClassEntry entry = classes.get(context.getClassName().replace('.', '/'));
+        return entry == null ? input : new Applier(input, entry);
+    }
+
+    @NotNull
+    @Override
+    public TransformerVoteResult castVote(ITransformerVotingContext context) {
+        return TransformerVoteResult.YES;
+    }
+
+    @Override
+    public boolean isVoteDeterministic() {
+        return true;
+    }
+
+    @Override
+    public int getComputeFlags() {
+        // Only flags change, invokespecial and invokevirtual have the same stack effect
+        return ILaunchPluginService.ComputeFlags.SIMPLE_REWRITE;
+    }
+
+    @NotNull
+    @Override
+    public Set<Target> targets() {
+        return targets;
+    }
+
+    @Override
+    public String[] labels() {
+        return LABELS;
+    }
+
+    private final class Applier extends ClassVisitor {
+        private final ClassEntry entry;
+        private String name;
+        private boolean isInterface;
+
+        private Applier(ClassVisitor cv, ClassEntry entry) {
+            super(Opcodes.ASM9, cv);
+            this.entry = entry;
+        }
+
+        @Override
+        public void visit(int version, int access, String name, String signature, String superName, String[] interfaces) {
+            this.name = name;
+            this.isInterface = (access & Opcodes.ACC_INTERFACE) != 0;
+            if (entry.cls != 0) {
+                // Class files only know public and package private classes
+                access = apply(entry.cls, access);
+                if ((access & Opcodes.ACC_PROTECTED) != 0)
+                    access = (access & ~Opcodes.ACC_PROTECTED) | Opcodes.ACC_PUBLIC;
+                access &= ~Opcodes.ACC_PRIVATE;
+            }
+            super.visit(version, access, name, signature, superName, interfaces);
+        }
+
+        @Override
+        public void visitInnerClass(String name, String outerName, String innerName, int access) {
+            // Nested classes have their real access in the InnerClasses attribute of every class referencing them
+            final ClassEntry inner = name.equals(this.name) ? entry : classes.get(name);
+            if (inner != null && inner.cls != 0)
+                access = apply(inner.cls, access);
+            super.visitInnerClass(name, outerName, innerName, access);
+        }
+
+        @Override
+        public FieldVisitor visitField(int access, String name, String descriptor, String signature, Object value) {
+            final int modifier = entry.field(name);
+            return super.visitField(modifier == 0 ? access : apply(modifier, access), name, descriptor, signature, value);
+        }
+
+        @Override
+        public MethodVisitor visitMethod(int access, String name, String descriptor, String signature, String[] exceptions) {
+            final int modifier = entry.method(name, descriptor);
+            final MethodVisitor mv = super.visitMethod(modifier == 0 ? access : apply(modifier, access), name, descriptor, signature, exceptions);
+            // Leaves the writer's own visitor in place when possible, so the method can be copied
+            if (mv == null || !entry.opensMethods())
+                return mv;
+            return new MethodVisitor(Opcodes.ASM9, mv) {
+                @Override
+                public void visitMethodInsn(int opcode, String owner, String name, String descriptor, boolean isInterface) {
+                    if (opcode == Opcodes.INVOKESPECIAL && owner.equals(Applier.this.name) && !name.equals("<init>") && (entry.method(name, descriptor) & LEVEL_MASK) > PRIVATE)
+                        opcode = Applier.this.isInterface ? Opcodes.INVOKEINTERFACE : Opcodes.INVOKEVIRTUAL;
+                    super.visitMethodInsn(opcode, owner, name, descriptor, isInterface);
+                }
+            };
+        }
+    }
+}
@@ -11,6 +11,7 @@ module cpw.mods.modlauncher {
     requires transitive jopt.simple;
     requires transitive cpw.mods.securejarhandler;
     requires static org.jetbrains.annotations;
+    requires static java.net.http;
     requires org.objectweb.asm;
     requires transitive org.objectweb.asm.tree;
 
@@ -25,6 +26,11 @@ module cpw.mods.modlauncher {
     uses cpw.mods.modlauncher.serviceapi.ILaunchPluginService;
     uses cpw.mods.modlauncher.serviceapi.ITransformerDiscoveryService;
 
+    uses cpw.mods.modlauncher.serviceapi.ITransformCacheBackend;
+    provides cpw.mods.modlauncher.serviceapi.ITransformCacheBackend with
+            cpw.mods.modlauncher.DirectoryCacheBackend,
+            cpw.mods.modlauncher.HttpCacheBackend;
+
     uses cpw.mods.modlauncher.api.ILaunchHandlerService;
     provides cpw.mods.modlauncher.api.ILaunchHandlerService with
             cpw.mods.modlauncher.DefaultLaunchHandlerService,
@@ -0,0 +1,242 @@
+/*
+ * Copyright (c) Forge Development LLC
+ * SPDX-License-Identifier: LGPL-3.0-only
+ */
+
+package cpw.mods.modlauncher;
+
+import cpw.mods.modlauncher.api.ITransformer;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.NestingKind;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+import javax.tools.StandardLocation;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Writes the {@link TransformerManifest} of every service from the transformers annotated with
+ * {@link cpw.mods.modlauncher.api.DeclaredTransformer}. Mistakes that would make the transformer fail to register or
+ * to be created at runtime are reported as compile errors instead.
+ */
+@SupportedAnnotationTypes(TransformerManifestProcessor.ANNOTATION)
+public final class TransformerManifestProcessor extends AbstractProcessor {
+    static final String ANNOTATION = "cpw.mods.modlauncher.api.DeclaredTransformer";
+    private static final String TRANSFORMER = "cpw.mods.modlauncher.api.ITransformer";
+    private static final Map<String, String> NODE_TYPES = Map.of(
+        "CLASS", "org.objectweb.asm.tree.ClassNode",
+        "PRE_CLASS", "org.objectweb.asm.tree.ClassNode",
+        "METHOD", "org.objectweb.asm.tree.MethodNode",
+        "FIELD", "org.objectweb.asm.tree.FieldNode",
+        "CLASS_VISITOR", "org.objectweb.asm.ClassVisitor"
+    );
+
+    private final Map<String, StringBuilder> manifests = new TreeMap<>();
+    private final Map<String, List<Element>> origins = new HashMap<>();
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        if (roundEnv.processingOver()) {
+            write();
+            return false;
+        }
+
+        final TypeElement annotation = processingEnv.getElementUtils().getTypeElement(ANNOTATION);
+        if (annotation == null)
+            return false;
+        for (var element : roundEnv.getElementsAnnotatedWith(annotation)) {
+            for (var mirror : element.getAnnotationMirrors()) {
+                if (mirror.getAnnotationType().asElement().equals(annotation))
+                    process((TypeElement) element, mirror);
+            }
+        }
+        return true;
+    }
+
+    private void process(TypeElement element, AnnotationMirror mirror) {
+        final Map<String, AnnotationValue> values = values(mirror);
+        if (!isInstantiable(element)) {
+            error(element, mirror, "Declared transformers must be public, non abstract, top level or static classes with a public constructor taking no arguments");
+            return;
+        }
+        final String nodeType = nodeType(element.asType());
+        if (nodeType == null) {
+            error(element, mirror, "Could not determine the type of node " + element + " transforms, it must implement " + TRANSFORMER + " with a concrete type");
+            return;
+        }
+
+        final StringBuilder entry = new StringBuilder();
+        final String binaryName = processingEnv.getElementUtils().getBinaryName(element).toString();
+        entry.append(TransformerManifest.line(TransformerManifest.TRANSFORMER, binaryName, nodeType, String.valueOf(values.get("priority").getValue())));
+        for (var label : strings(values.get("labels")))
+            entry.append(TransformerManifest.line(TransformerManifest.LABEL, label));
+        for (var before : strings(values.get("runsBefore")))
+            entry.append(TransformerManifest.line(TransformerManifest.BEFORE, before));
+        for (var after : strings(values.get("runsAfter")))
+            entry.append(TransformerManifest.line(TransformerManifest.AFTER, after));
+
+        int count = 0;
+        for (var target : annotations(values.get("targets"))) {
+            final Map<String, AnnotationValue> fields = values(target);
+            final String type = enumName(fields.get("type"));
+            final String className = (String) fields.get("className").getValue();
+            final String member = (String) fields.get("element").getValue();
+            final String descriptor = (String) fields.get("descriptor").getValue();
+            if (!nodeType.equals(NODE_TYPES.get(type))) {
+                error(element, target, "Target type " + type + " does not match the transformed node type " + nodeType);
+                return;
+            }
+            entry.append(TransformerManifest.line(TransformerManifest.TARGET, type, className, member, descriptor));
+            count++;
+        }
+        for (var pattern : annotations(values.get("patterns"))) {
+            final Map<String, AnnotationValue> fields = values(pattern);
+            final String scope = enumName(fields.get("scope"));
+            final String type = enumName(fields.get("type"));
+            final String className = (String) fields.get("className").getValue();
+            final String member = (String) fields.get("element").getValue();
+            final String descriptor = (String) fields.get("descriptor").getValue();
+            if (!nodeType.equals(NODE_TYPES.get(type))) {
+                error(element, pattern, "Pattern type " + type + " does not match the transformed node type " + nodeType);
+                return;
+            }
+            try {
+                // Runs the same checks as the runtime will
+                new ITransformer.TargetPattern(ITransformer.TargetPattern.Scope.valueOf(scope), className, member, descriptor, ITransformer.TargetType.valueOf(type));
+            } catch (IllegalArgumentException e) {
+                error(element, pattern, "Invalid pattern: " + e.getMessage());
+                return;
+            }
+            entry.append(TransformerManifest.line(TransformerManifest.PATTERN, scope, type, className, member, descriptor));
+            count++;
+        }
+        if (count == 0) {
+            error(element, mirror, "Declared transformers need at least one target or pattern");
+            return;
+        }
+        if (hasPrefilter(element))
+            entry.append(TransformerManifest.line(TransformerManifest.PREFILTER));
+
+        final TypeElement service = (TypeElement) ((DeclaredType) values.get("service").getValue()).asElement();
+        final String serviceName = processingEnv.getElementUtils().getBinaryName(service).toString();
+        manifests.computeIfAbsent(serviceName, k -> new StringBuilder()).append(entry);
+        origins.computeIfAbsent(serviceName, k -> new ArrayList<>()).add(element);
+    }
+
+    private void write() {
+        manifests.forEach((service, content) -> {
+            try {
+                var file = processingEnv.getFiler().createResource(StandardLocation.CLASS_OUTPUT, "", TransformerManifest.PATH + service,
+                    origins.get(service).toArray(new Element[0]));
+                try (Writer writer = new OutputStreamWriter(file.openOutputStream(), StandardCharsets.UTF_8)) {
+                    writer.write(content.toString());
+                }
+            } catch (IOException e) {
+                processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, "Failed to write transformer manifest for " + service + ": " + e);
+            }
+        });
+        manifests.clear();
+        origins.clear();
+    }
+
+    private static boolean isInstantiable(TypeElement element) {
+        if (element.getKind() != ElementKind.CLASS || !element.getModifiers().contains(Modifier.PUBLIC) || element.getModifiers().contains(Modifier.ABSTRACT))
+            return false;
+        if (element.getNestingKind() != NestingKind.TOP_LEVEL && (element.getNestingKind() != NestingKind.MEMBER || !element.getModifiers().contains(Modifier.STATIC)))
+            return false;
+        for (var constructor : ElementFilter.constructorsIn(element.getEnclosedElements())) {
+            if (constructor.getParameters().isEmpty() && constructor.getModifiers().contains(Modifier.PUBLIC))
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * @return true if the type or one of its super types overrides the default {@link ITransformer#prefilter()}
+     */
+    private boolean hasPrefilter(TypeElement element) {
+        for (var method : ElementFilter.methodsIn(processingEnv.getElementUtils().getAllMembers(element))) {
+            if (method.getSimpleName().contentEquals("prefilter") && method.getParameters().isEmpty() &&
+                !((TypeElement) method.getEnclosingElement()).getQualifiedName().contentEquals(TRANSFORMER))
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * @return The binary name of the T variable of ITransformer, as implemented by the type or one of its super types
+     */
+    private String nodeType(TypeMirror type) {
+        for (var supertype : processingEnv.getTypeUtils().directSupertypes(type)) {
+            if (supertype instanceof DeclaredType declared && ((TypeElement) declared.asElement()).getQualifiedName().contentEquals(TRANSFORMER)) {
+                var arguments = declared.getTypeArguments();
+                if (arguments.size() != 1 || arguments.get(0).getKind() != TypeKind.DECLARED)
+                    return null;
+                return processingEnv.getElementUtils().getBinaryName((TypeElement) ((DeclaredType) arguments.get(0)).asElement()).toString();
+            }
+            var ret = nodeType(supertype);
+            if (ret != null)
+                return ret;
+        }
+        return null;
+    }
+
+    private Map<String, AnnotationValue> values(AnnotationMirror mirror) {
+        var ret = new HashMap<String, AnnotationValue>();
+        for (Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> entry : processingEnv.getElementUtils().getElementValuesWithDefaults(mirror).entrySet())
+            ret.put(entry.getKey().getSimpleName().toString(), entry.getValue());
+        return ret;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<String> strings(AnnotationValue value) {
+        var ret = new ArrayList<String>();
+        for (var item : (List<? extends AnnotationValue>) value.getValue())
+            ret.add((String) item.getValue());
+        return ret;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<AnnotationMirror> annotations(AnnotationValue value) {
+        var ret = new ArrayList<AnnotationMirror>();
+        for (var item : (List<? extends AnnotationValue>) value.getValue())
+            ret.add((AnnotationMirror) item.getValue());
+        return ret;
+    }
+
+    private static String enumName(AnnotationValue value) {
+        return ((VariableElement) value.getValue()).getSimpleName().toString();
+    }
+
+    private void error(Element element, AnnotationMirror mirror, String message) {
+        processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, message, element, mirror);
+    }
+}